@@ -9,18 +9,21 @@ import static org.gazzax.labs.jena.nosql.cassandra.Table.SC_OP;
 import static org.gazzax.labs.jena.nosql.cassandra.Table.SPC_O;
 import static org.gazzax.labs.jena.nosql.cassandra.Table.SPC_O_INDEX_PC;
 import static org.gazzax.labs.jena.nosql.cassandra.Table.S_POC;
+import static org.gazzax.labs.jena.nosql.cassandra.Table.TRIPLE_COUNTS;
 
 import java.util.Map;
+import java.util.concurrent.Semaphore;
 
 import org.gazzax.labs.jena.nosql.cassandra.dao.Cassandra2xBidirectionalMapDAO;
 import org.gazzax.labs.jena.nosql.cassandra.dao.Cassandra2xMapDAO;
-import org.gazzax.labs.jena.nosql.cassandra.dao.CassandraTripleIndexDAO;
+import org.gazzax.labs.jena.nosql.cassandra.dao.CassandraQuadIndexDAO;
 import org.gazzax.labs.jena.nosql.fwk.InitialisationException;
 import org.gazzax.labs.jena.nosql.fwk.configuration.Configuration;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.node.TransientNodeDictionary;
 import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
 import org.gazzax.labs.jena.nosql.fwk.ds.MapDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QuadDAO;
 import org.gazzax.labs.jena.nosql.fwk.factory.ClientShutdownHook;
 import org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory;
 
@@ -52,6 +55,7 @@ public class CassandraStorageLayerFactory extends StorageLayerFactory {
 	private Cluster cluster;
 	private TopLevelDictionary dictionary;
 	private int deletionBatchSize;
+	private Semaphore inFlightQueries;
 
 	@Override
 	public <K, V> MapDAO<K, V> getMapDAO(
@@ -78,18 +82,26 @@ public class CassandraStorageLayerFactory extends StorageLayerFactory {
 
 	@Override
 	public GraphDAO<byte[][], byte[][]> getGraphDAO(final Node name) {
-		return new CassandraTripleIndexDAO(session, deletionBatchSize);
+		return new CassandraQuadIndexDAO(session, deletionBatchSize, inFlightQueries);
 	}
 
 	@Override
 	public GraphDAO<byte[][], byte[][]> getGraphDAO() {
-		return new CassandraTripleIndexDAO(session, deletionBatchSize);
+		return new CassandraQuadIndexDAO(session, deletionBatchSize, inFlightQueries);
+	}
+
+	@Override
+	public QuadDAO<byte[][], byte[][]> getQuadDAO() {
+		return new CassandraQuadIndexDAO(session, deletionBatchSize, inFlightQueries);
 	}
 
 	@Override
 	public void accept(final Configuration<Map<String, Object>> configuration) {
 		deletionBatchSize = configuration.getParameter("delete-batch-size", Integer.valueOf(1000));
 		
+		final Integer maxInFlightQueries = configuration.getParameter("cassandra-max-in-flight-queries", Integer.valueOf(256));
+		inFlightQueries = maxInFlightQueries > 0 ? new Semaphore(maxInFlightQueries) : null;
+		
 		final String hosts = configuration.getParameter("cassandra-contact-points", "localhost");
 
 		final Cluster.Builder builder = Cluster.builder()
@@ -202,6 +214,8 @@ public class CassandraStorageLayerFactory extends StorageLayerFactory {
 
 		session.execute("CREATE TABLE " + SPC_O + "(s BLOB, p BLOB, c BLOB, o BLOB, pc_index BLOB, PRIMARY KEY ((s, p, c), o)) " + options);
 		session.execute("CREATE INDEX " + SPC_O_INDEX_PC + " ON " + SPC_O + "(pc_index)");						
+
+		session.execute("CREATE TABLE " + TRIPLE_COUNTS + "(k BLOB, p BLOB, triples COUNTER, PRIMARY KEY (k, p)) " + options);
 	}
 	
 	/**
@@ -18,4 +18,6 @@ public interface Table {
 
 	String SPC_O = "spc_o"; 
 	String SPC_O_INDEX_PC = "spc_o_index_pc";		
+
+	String TRIPLE_COUNTS = "triple_counts";
 }
\ No newline at end of file
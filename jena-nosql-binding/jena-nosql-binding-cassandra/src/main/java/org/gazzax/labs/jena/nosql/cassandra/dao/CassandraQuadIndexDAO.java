@@ -0,0 +1,338 @@
+package org.gazzax.labs.jena.nosql.cassandra.dao;
+
+import static org.gazzax.labs.jena.nosql.cassandra.Table.C_OPS;
+import static org.gazzax.labs.jena.nosql.cassandra.Table.OC_PS;
+import static org.gazzax.labs.jena.nosql.cassandra.Table.SC_OP;
+import static org.gazzax.labs.jena.nosql.cassandra.Table.SPC_O;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.ds.QuadDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.util.ClosingIterator;
+import org.gazzax.labs.jena.nosql.fwk.util.SliceIterator;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Session;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+
+/**
+ * Cassandra 2x (CQL-based) implementation of {@link QuadDAO}.
+ * Quads (i.e. triples that belong to a named graph) are written in the triple tables and in the context-first tables,
+ * so any quad pattern with a bound context is answered by a single partition read on the cheapest table.
+ *
+ * This class has been derived from CumulusRDF code, with many thanks to CumulusRDF team for allowing this.
+ *
+ * @see https://code.google.com/p/cumulusrdf
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class CassandraQuadIndexDAO extends CassandraTripleIndexDAO implements QuadDAO<byte[][], byte[][]> {
+	private PreparedStatement insertOCPSStatement;
+	private PreparedStatement insertCOPSStatement;
+	private PreparedStatement insertSCOPStatement;
+	private PreparedStatement insertSPCOStatement;
+
+	private PreparedStatement deleteOCPSStatement;
+	private PreparedStatement deleteCOPSStatement;
+	private PreparedStatement deleteSCOPStatement;
+	private PreparedStatement deleteSPCOStatement;
+
+	private PreparedStatement clearOCPSStatement;
+	private PreparedStatement clearCOPSStatement;
+	private PreparedStatement clearSCOPStatement;
+	private PreparedStatement clearSPCOStatement;
+
+	private PreparedStatement[] quadQueries;
+	private PreparedStatement[] quadExistenceQueries;
+	private PreparedStatement[] quadCountQueries;
+
+	/**
+	 * Buils a new {@link CassandraQuadIndexDAO} with the given data.
+	 *
+	 * @param deletionBatchSize the batch size used in deletions.
+	 * @param session The connection to Cassandra.
+	 */
+	public CassandraQuadIndexDAO(
+			final Session session,
+			final int deletionBatchSize) {
+		this(session, deletionBatchSize, null);
+	}
+
+	/**
+	 * Buils a new {@link CassandraQuadIndexDAO} with the given data.
+	 *
+	 * @param deletionBatchSize the batch size used in deletions.
+	 * @param session The connection to Cassandra.
+	 * @param inFlightQueries the permits for concurrent (asynchronous) reads, null means unbounded.
+	 */
+	public CassandraQuadIndexDAO(
+			final Session session,
+			final int deletionBatchSize,
+			final Semaphore inFlightQueries) {
+		super(session, deletionBatchSize, inFlightQueries);
+	}
+
+	@Override
+	public void insertTriple(final byte[][] ids) throws StorageLayerException {
+		super.insertTriple(ids);
+
+		if (!hasContext(ids)) {
+			return;
+		}
+
+		final BoundStatement ocpsStatement = insertOCPSStatement.bind();
+		ocpsStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[2]));
+		ocpsStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[3]));
+		ocpsStatement.setBytesUnsafe(2, ByteBuffer.wrap(ids[1]));
+		ocpsStatement.setBytesUnsafe(3, ByteBuffer.wrap(ids[0]));
+		batchStatements.get().add(ocpsStatement);
+
+		final BoundStatement copsStatement = insertCOPSStatement.bind();
+		copsStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[3]));
+		copsStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[2]));
+		copsStatement.setBytesUnsafe(2, ByteBuffer.wrap(ids[1]));
+		copsStatement.setBytesUnsafe(3, ByteBuffer.wrap(ids[0]));
+		batchStatements.get().add(copsStatement);
+
+		final BoundStatement scopStatement = insertSCOPStatement.bind();
+		scopStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[0]));
+		scopStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[3]));
+		scopStatement.setBytesUnsafe(2, ByteBuffer.wrap(ids[2]));
+		scopStatement.setBytesUnsafe(3, ByteBuffer.wrap(ids[1]));
+		batchStatements.get().add(scopStatement);
+
+		final BoundStatement spcoStatement = insertSPCOStatement.bind();
+		spcoStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[0]));
+		spcoStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[1]));
+		spcoStatement.setBytesUnsafe(2, ByteBuffer.wrap(ids[3]));
+		spcoStatement.setBytesUnsafe(3, ByteBuffer.wrap(ids[2]));
+		spcoStatement.setBytesUnsafe(4, ByteBuffer.wrap(pcIndex(ids[1], ids[3])));
+		batchStatements.get().add(spcoStatement);
+	}
+
+	@Override
+	public void insertQuad(final byte[][] quad) throws StorageLayerException {
+		insertTriple(quad);
+	}
+
+	@Override
+	public void deleteQuad(final byte[][] quad) throws StorageLayerException {
+		deleteTriple(quad);
+	}
+
+	@Override
+	public List<byte[][]> deleteQuads(final Iterator<byte[][]> quads) throws StorageLayerException {
+		return deleteTriples(quads);
+	}
+
+	@Override
+	public Iterator<byte[][]> query(final byte[][] query, final QueryContext context) throws StorageLayerException {
+		if (query.length < 4) {
+			return super.query(query, context);
+		}
+
+		if (query[3] == null) {
+			return namedGraphsOnly(super.query(query, context));
+		}
+
+		return asIdentifiersIterator(executeAsync(profiled(bind(quadQueries, query), context), context), context);
+	}
+
+	@Override
+	public Iterator<byte[][]> query(final byte[][] query, final long offset, final long limit) throws StorageLayerException {
+		if (query.length < 4) {
+			return super.query(query, offset, limit);
+		}
+
+		if (query[3] == null) {
+			return new SliceIterator<byte[][]>(namedGraphsOnly(super.query(query, new QueryContext())), offset, limit);
+		}
+
+		return slice(bind(quadQueries, query), offset, limit);
+	}
+
+	@Override
+	public boolean exists(final byte[][] pattern) throws StorageLayerException {
+		if (pattern.length < 4) {
+			return super.exists(pattern);
+		}
+
+		if (pattern[3] == null) {
+			final ClosableIterator<byte[][]> quads = namedGraphsOnly(super.query(pattern, new QueryContext()));
+			try {
+				return quads.hasNext();
+			} finally {
+				quads.close();
+			}
+		}
+
+		try {
+			return session.execute(bind(quadExistenceQueries, pattern)).one() != null;
+		} catch (final Exception exception) {
+			throw new StorageLayerException(exception);
+		}
+	}
+
+	@Override
+	protected long countMatches(final byte[][] pattern) throws StorageLayerException {
+		if (pattern.length < 4) {
+			return super.countMatches(pattern);
+		}
+
+		if (pattern[3] == null) {
+			return Iterators.size(namedGraphsOnly(super.query(pattern, new QueryContext())));
+		}
+
+		return count(bind(quadCountQueries, pattern));
+	}
+
+	@Override
+	protected BoundStatement bind(final PreparedStatement[] statements, final byte[][] query) {
+		if (query.length < 4 || query[3] == null) {
+			return super.bind(statements, query);
+		}
+
+		if (query[0] == null && query[1] != null && query[2] == null) {
+			final BoundStatement statement = statements[5].bind();
+			statement.setBytesUnsafe(0, ByteBuffer.wrap(pcIndex(query[1], query[3])));
+			return statement;
+		}
+		return super.bind(statements, query);
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		session.execute(clearOCPSStatement.bind());
+		session.execute(clearCOPSStatement.bind());
+		session.execute(clearSCOPStatement.bind());
+		session.execute(clearSPCOStatement.bind());
+	}
+
+	@Override
+	void internalDelete(final byte[][] ids) throws StorageLayerException {
+		super.internalDelete(ids);
+
+		if (!hasContext(ids)) {
+			return;
+		}
+
+		final BoundStatement ocpsStatement = deleteOCPSStatement.bind();
+		ocpsStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[2]));
+		ocpsStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[3]));
+		ocpsStatement.setBytesUnsafe(2, ByteBuffer.wrap(ids[1]));
+		ocpsStatement.setBytesUnsafe(3, ByteBuffer.wrap(ids[0]));
+		batchStatements.get().add(ocpsStatement);
+
+		final BoundStatement copsStatement = deleteCOPSStatement.bind();
+		copsStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[3]));
+		copsStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[2]));
+		copsStatement.setBytesUnsafe(2, ByteBuffer.wrap(ids[1]));
+		copsStatement.setBytesUnsafe(3, ByteBuffer.wrap(ids[0]));
+		batchStatements.get().add(copsStatement);
+
+		final BoundStatement scopStatement = deleteSCOPStatement.bind();
+		scopStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[0]));
+		scopStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[3]));
+		scopStatement.setBytesUnsafe(2, ByteBuffer.wrap(ids[2]));
+		scopStatement.setBytesUnsafe(3, ByteBuffer.wrap(ids[1]));
+		batchStatements.get().add(scopStatement);
+
+		final BoundStatement spcoStatement = deleteSPCOStatement.bind();
+		spcoStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[0]));
+		spcoStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[1]));
+		spcoStatement.setBytesUnsafe(2, ByteBuffer.wrap(ids[3]));
+		spcoStatement.setBytesUnsafe(3, ByteBuffer.wrap(ids[2]));
+		batchStatements.get().add(spcoStatement);
+	}
+
+	@Override
+	protected void prepareStatements() {
+		super.prepareStatements();
+
+		insertOCPSStatement = session.prepare("INSERT INTO " + OC_PS + "(o, c, p, s) VALUES (?, ?, ?, ?)");
+		insertCOPSStatement = session.prepare("INSERT INTO " + C_OPS + "(c, o, p, s) VALUES (?, ?, ?, ?)");
+		insertSCOPStatement = session.prepare("INSERT INTO " + SC_OP + "(s, c, o, p) VALUES (?, ?, ?, ?)");
+		insertSPCOStatement = session.prepare("INSERT INTO " + SPC_O + "(s, p, c, o, pc_index) VALUES (?, ?, ?, ?, ?)");
+
+		deleteOCPSStatement = session.prepare("DELETE FROM " + OC_PS + " WHERE o = ? AND c = ? AND p = ? AND s = ?");
+		deleteCOPSStatement = session.prepare("DELETE FROM " + C_OPS + " WHERE c = ? AND o = ? AND p = ? AND s = ?");
+		deleteSCOPStatement = session.prepare("DELETE FROM " + SC_OP + " WHERE s = ? AND c = ? AND o = ? AND p = ?");
+		deleteSPCOStatement = session.prepare("DELETE FROM " + SPC_O + " WHERE s = ? AND p = ? AND c = ? AND o = ?");
+
+		clearOCPSStatement = session.prepare("TRUNCATE " + OC_PS);
+		clearCOPSStatement = session.prepare("TRUNCATE " + C_OPS);
+		clearSCOPStatement = session.prepare("TRUNCATE " + SC_OP);
+		clearSPCOStatement = session.prepare("TRUNCATE " + SPC_O);
+
+		// Bindings are always in s, p, o, c order (the only exception is the pc_index query).
+		quadQueries = new PreparedStatement[] {
+				session.prepare(SELECT_SPOC_FROM + SPC_O + " WHERE s = ? AND p = ? AND o = ? AND c = ?"),
+				session.prepare(SELECT_SPOC_FROM + SPC_O + " WHERE s = ? AND p = ? AND c = ?"),
+				session.prepare(SELECT_SPOC_FROM + SC_OP + " WHERE s = ? AND o = ? AND c = ?"),
+				session.prepare(SELECT_SPOC_FROM + SC_OP + " WHERE s = ? AND c = ?"),
+				session.prepare(SELECT_SPOC_FROM + OC_PS + " WHERE p = ? AND o = ? AND c = ?"),
+				session.prepare(SELECT_SPOC_FROM + SPC_O + " WHERE pc_index = ?"),
+				session.prepare(SELECT_SPOC_FROM + OC_PS + " WHERE o = ? AND c = ?"),
+				session.prepare(SELECT_SPOC_FROM + C_OPS + " WHERE c = ?")
+		};
+
+		quadExistenceQueries = existenceQueries(quadQueries);
+		quadCountQueries = countQueries(quadQueries);
+	}
+
+	/**
+	 * Filters out, from the given iterator, those triples that belong to the unnamed graph.
+	 *
+	 * @param triples the triples iterator.
+	 * @return an iterator that returns only quads. Closing it closes the given iterator too.
+	 */
+	ClosableIterator<byte[][]> namedGraphsOnly(final Iterator<byte[][]> triples) {
+		return new ClosingIterator<byte[][]>(new AbstractIterator<byte[][]>() {
+			@Override
+			protected byte[][] computeNext() {
+				while (triples.hasNext()) {
+					final byte[][] ids = triples.next();
+					if (hasContext(ids)) {
+						return ids;
+					}
+				}
+				return endOfData();
+			}
+		}, triples);
+	}
+
+	/**
+	 * Returns true if the given identifiers include a (non empty) context.
+	 *
+	 * @param ids the identifiers.
+	 * @return true if the given identifiers include a (non empty) context.
+	 */
+	static boolean hasContext(final byte[][] ids) {
+		return ids.length == 4 && ids[3] != null && ids[3].length > 0;
+	}
+
+	/**
+	 * Builds the value of the (predicate, context) secondary index.
+	 * The predicate identifier is length-prefixed, so two different pairs never produce the same value.
+	 *
+	 * @param p the predicate identifier.
+	 * @param c the context identifier.
+	 * @return the value of the (predicate, context) secondary index.
+	 */
+	static byte[] pcIndex(final byte[] p, final byte[] c) {
+		return ByteBuffer.allocate(4 + p.length + c.length)
+				.putInt(p.length)
+				.put(p)
+				.put(c)
+				.array();
+	}
+}
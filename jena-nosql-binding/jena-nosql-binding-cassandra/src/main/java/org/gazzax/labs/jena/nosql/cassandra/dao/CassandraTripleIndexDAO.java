@@ -3,26 +3,62 @@ package org.gazzax.labs.jena.nosql.cassandra.dao;
 import static org.gazzax.labs.jena.nosql.cassandra.Table.O_SPC;
 import static org.gazzax.labs.jena.nosql.cassandra.Table.PO_SC;
 import static org.gazzax.labs.jena.nosql.cassandra.Table.S_POC;
+import static org.gazzax.labs.jena.nosql.cassandra.Table.TRIPLE_COUNTS;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
 import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.util.ClosingIterator;
+import org.gazzax.labs.jena.nosql.fwk.util.SliceIterator;
 
 import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.utils.Bytes;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.hp.hpl.jena.query.QueryCancelledException;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
 
 /**
  * Cassandra 2x (CQL-based) implementation of {@link GraphDAO}.
  * 
+ * Pending mutations are flushed with several logged batches of (about) {@link #MAX_BATCH_STATEMENTS} statements, split on 
+ * triple boundaries, so that the entries of a triple in all index tables are always written together.
+ * 
+ * Triple counts (for the whole store, for each named graph and, within those scopes, for each predicate) are maintained 
+ * in a counter table, which is updated in the same flush of the corresponding mutations. 
+ * Counts are approximate: the storage is never read before a write, so inserting a triple that already exists 
+ * (or deleting a triple that doesn't exist) makes counters drift. Only duplicates within the same flush are counted once.
+ * Counters are reset by {@link #clear()}.
+ * 
+ * Reads are asynchronous: a query returns immediately and its result is awaited only when it is consumed, so several 
+ * queries (e.g. the substituted patterns of a join) can be in flight at the same time. 
+ * The number of concurrent reads can be bounded with a (shared) semaphore.
+ * 
  * This class has been derived from CumulusRDF code, with many thanks to CumulusRDF team for allowing this.
  * 
  * @see https://code.google.com/p/cumulusrdf
@@ -32,14 +68,34 @@ import com.google.common.collect.AbstractIterator;
 public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 	protected static final byte[] EMPTY_VAL = new byte[0]; 
 	protected static final String SELECT_SPOC_FROM = "SELECT s, p, o, c FROM ";
+	protected static final String SELECT_COUNT_FROM = "SELECT COUNT(*) FROM ";
+	
+	/** How often (in milliseconds) a blocked read checks whether its query has been cancelled. */
+	protected static final long CANCELLATION_CHECK_INTERVAL = 100;
+	
+	/** The size of a logged batch: once a batch has reached it, the statements of the next triple start a new batch. */
+	protected static final int MAX_BATCH_STATEMENTS = 50;
 	
 	protected final Session session;
+	protected final Semaphore inFlightQueries;
 	
 	protected final ThreadLocal<BatchStatement> batchStatements = new ThreadLocal<BatchStatement>() {
 		protected BatchStatement initialValue() {
 			return new BatchStatement();
 		}
 	};
+
+	protected final ThreadLocal<List<BatchStatement>> fullBatches = new ThreadLocal<List<BatchStatement>>() {
+		protected List<BatchStatement> initialValue() {
+			return new ArrayList<BatchStatement>();
+		}
+	};
+
+	protected final ThreadLocal<Map<List<ByteBuffer>, Boolean>> pendingTriples = new ThreadLocal<Map<List<ByteBuffer>, Boolean>>() {
+		protected Map<List<ByteBuffer>, Boolean> initialValue() {
+			return new LinkedHashMap<List<ByteBuffer>, Boolean>();
+		}
+	};
 	
 	private PreparedStatement insertSPOCStatement;
 	private PreparedStatement insertOSPCStatement;
@@ -53,7 +109,13 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 	private PreparedStatement clearOSPCStatement;
 	private PreparedStatement clearPOSCStatement;
 
+	private PreparedStatement updateCountStatement;
+	private PreparedStatement selectCountStatement;
+	private PreparedStatement clearCountsStatement;
+
 	private PreparedStatement[] queries;
+	private PreparedStatement[] existenceQueries;
+	private PreparedStatement[] countQueries;
 	
 	private int deletionBatchSize;
 	
@@ -66,14 +128,31 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 	public CassandraTripleIndexDAO(
 			final Session session, 
 			final int deletionBatchSize) {
+		this(session, deletionBatchSize, null);
+	}
+	
+	/**
+	 * Buils a new {@link CassandraTripleIndexDAO} with the given data.
+	 * 
+	 * @param deletionBatchSize the batch size used in deletions.
+	 * @param session The connection to Cassandra.
+	 * @param inFlightQueries the permits for concurrent (asynchronous) reads, null means unbounded.
+	 */
+	public CassandraTripleIndexDAO(
+			final Session session, 
+			final int deletionBatchSize,
+			final Semaphore inFlightQueries) {
 		this.session = session;
 		this.deletionBatchSize = deletionBatchSize;
+		this.inFlightQueries = inFlightQueries;
 		
 		prepareStatements();
 	}
 
 	@Override
 	public void insertTriple(final byte[][] ids) throws StorageLayerException {
+		nextMutation();
+		
 		final BoundStatement poscStatement = insertPOSCStatement.bind();
 
 		poscStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[1]));
@@ -117,6 +196,8 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 		}
 		
 		batchStatements.get().add(ospcStatement);
+		
+		pending(ids, true);
 	}
 
 	@Override
@@ -131,6 +212,7 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 		final List<byte[][]> deleted = new ArrayList<byte[][]>(deletionBatchSize);
 		
 		while (nodes.hasNext()) {
+			int pendingDeletes = 0;
 			for (int i = 0; i < deletionBatchSize && nodes.hasNext(); i++) {
 
 				byte[][] ids = nodes.next();
@@ -141,6 +223,10 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 				internalDelete(ids);
 				
 				deleted.add(ids);
+				pendingDeletes++;
+			}
+			
+			if (pendingDeletes > 0) {
 				executePendingMutations();
 			}
 		}
@@ -150,36 +236,316 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 
 	@Override
 	public void executePendingMutations() throws StorageLayerException {
+		final Map<List<ByteBuffer>, Boolean> pending = pendingTriples.get();
 		try {
+			final Map<List<ByteBuffer>, Long> deltas = countDeltas(pending);
+			for (final BatchStatement batch : fullBatches.get()) {
+				session.execute(batch);
+			}
 			session.execute(batchStatements.get());
-			batchStatements.get().clear();
+			
+			if (!deltas.isEmpty()) {
+				final BatchStatement counters = new BatchStatement(BatchStatement.Type.COUNTER);
+				for (final Entry<List<ByteBuffer>, Long> delta : deltas.entrySet()) {
+					if (delta.getValue() != 0) {
+						final BoundStatement statement = updateCountStatement.bind();
+						statement.setLong(0, delta.getValue());
+						statement.setBytesUnsafe(1, delta.getKey().get(0));
+						statement.setBytesUnsafe(2, delta.getKey().get(1));
+						counters.add(statement);
+					}
+				}
+				
+				if (!counters.getStatements().isEmpty()) {
+					session.execute(counters);
+				}
+			}
 		} catch (final Exception exception) {
 			throw new StorageLayerException(exception);
+		} finally {
+			discardPendingMutations();
+		}
+	}
+	
+	@Override
+	public void discardPendingMutations() {
+		fullBatches.get().clear();
+		batchStatements.set(new BatchStatement());
+		pendingTriples.get().clear();
+	}
+	
+	/**
+	 * Prepares the (current thread) batch for the statements of a new triple mutation.
+	 * If the current batch is full, it is set aside and a new batch is started.
+	 */
+	void nextMutation() {
+		if (batchStatements.get().getStatements().size() >= MAX_BATCH_STATEMENTS) {
+			fullBatches.get().add(batchStatements.get());
+			batchStatements.set(new BatchStatement());
 		}
 	}
 
 	@Override
 	public Iterator<byte[][]> query(final byte[][] query) throws StorageLayerException {
+		return query(query, new QueryContext());
+	}	
+	
+	@Override
+	public Iterator<byte[][]> query(final byte[][] query, final QueryContext context) throws StorageLayerException {
+		return asIdentifiersIterator(executeAsync(profiled(bind(queries, query), context), context), context);
+	}	
+	
+	@Override
+	public Iterator<byte[][]> query(final byte[][] query, final long offset, final long limit) throws StorageLayerException {
+		return slice(bind(queries, query), offset, limit);
+	}
+	
+	/**
+	 * Since {@link #query(byte[][])} doesn't wait for the query response, here all queries are sent concurrently 
+	 * (up to the in-flight limit) and the corresponding results are consumed, in order, as they arrive.
+	 */
+	@Override
+	public List<Iterator<byte[][]>> batchQuery(final List<byte[][]> queries) throws StorageLayerException {
+		return batchQuery(queries, new QueryContext());
+	}
+	
+	@Override
+	public List<Iterator<byte[][]>> batchQuery(final List<byte[][]> queries, final QueryContext context) throws StorageLayerException {
+		final List<Iterator<byte[][]>> results = new ArrayList<Iterator<byte[][]>>(queries.size());
+		for (final byte[][] query : queries) {
+			results.add(query(query, context));
+		}
+		return results;
+	}
+	
+	/**
+	 * Records, in the (pattern) profile of the given context, the CQL query that has been chosen for answering a pattern.
+	 * 
+	 * @param statement the statement that answers the pattern.
+	 * @param context the query execution context.
+	 * @return the given statement.
+	 */
+	protected BoundStatement profiled(final BoundStatement statement, final QueryContext context) {
+		if (context.getPatternProfile() != null) {
+			context.recordIndex(statement.preparedStatement().getQueryString());
+		}
+		return statement;
+	}
+	
+	/**
+	 * Sends the given statement without waiting for its response.
+	 * If the number of concurrent reads is bounded, this method blocks until a permit is available; 
+	 * the permit is released as soon as the (first page of the) response arrives.
+	 * 
+	 * @param statement the statement.
+	 * @return the (future) result set.
+	 * @throws StorageLayerException in case the statement cannot be sent.
+	 */
+	protected ResultSetFuture executeAsync(final Statement statement) throws StorageLayerException {
+		return executeAsync(statement, new QueryContext());
+	}
+	
+	/**
+	 * Sends the given statement, on behalf of a query that may be cancelled, without waiting for its response.
+	 * If the number of concurrent reads is bounded, this method waits for a permit only until the query is cancelled.
+	 * 
+	 * @param statement the statement.
+	 * @param context the query execution context.
+	 * @return the (future) result set.
+	 * @throws StorageLayerException in case the statement cannot be sent.
+	 * @throws QueryCancelledException in case the query has been cancelled or its deadline has passed.
+	 */
+	protected ResultSetFuture executeAsync(final Statement statement, final QueryContext context) throws StorageLayerException {
+		context.checkpoint();
+		context.recordPage();
+		if (inFlightQueries == null) {
+			return session.executeAsync(statement);
+		}
+		
+		try {
+			while (!inFlightQueries.tryAcquire(Math.min(CANCELLATION_CHECK_INTERVAL, context.remainingMillis()), TimeUnit.MILLISECONDS)) {
+				context.checkpoint();
+			}
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new StorageLayerException(exception);
+		}
+		
+		try {
+			final ResultSetFuture resultSet = session.executeAsync(statement);
+			resultSet.addListener(new Runnable() {
+				@Override
+				public void run() {
+					inFlightQueries.release();
+				}
+			}, MoreExecutors.sameThreadExecutor());
+			return resultSet;
+		} catch (final RuntimeException exception) {
+			inFlightQueries.release();
+			throw new StorageLayerException(exception);
+		}
+	}
+	
+	/**
+	 * Executes the given statement, skipping the first "offset" rows and returning at most "limit" rows.
+	 * Prepared statements are shared by all pattern shapes so, instead of a CQL LIMIT, the fetch size of the statement 
+	 * is reduced to the required rows: the first page contains everything we need and no further page is requested.
+	 * 
+	 * @param statement the statement.
+	 * @param offset how many rows will be skipped.
+	 * @param limit the max number of rows, a negative value means no limit.
+	 * @return an iterator over (at most "limit") identifiers rows.
+	 * @throws StorageLayerException in case the statement cannot be sent.
+	 */
+	protected Iterator<byte[][]> slice(final BoundStatement statement, final long offset, final long limit) throws StorageLayerException {
+		if (limit == 0) {
+			return Iterators.emptyIterator();
+		}
+		
+		if (limit > 0) {
+			final long rows = Math.max(0, offset) + limit;
+			final int defaultFetchSize = session.getCluster().getConfiguration().getQueryOptions().getFetchSize();
+			if (rows < defaultFetchSize) {
+				statement.setFetchSize((int) rows);
+			}
+		}
+		return new SliceIterator<byte[][]>(asIdentifiersIterator(executeAsync(statement)), offset, limit);
+	}
+	
+	/**
+	 * Converts the given (future) result set in an iterator of identifiers.
+	 * The result set is awaited only when the iterator is consumed, so several queries can be in flight at the same time.
+	 * The returned iterator is closeable: once closed, it stops consuming rows so no further result page is fetched.
+	 *
+	 * @param resultSet the (future) result set.
+	 * @return an iterator of identifiers.
+	 */
+	protected ClosableIterator<byte[][]> asIdentifiersIterator(final ResultSetFuture resultSet) {
+		return asIdentifiersIterator(resultSet, new QueryContext());
+	}
+
+	/**
+	 * Converts the given (future) result set in an iterator of identifiers, on behalf of a query that may be cancelled.
+	 * Once the query has been cancelled (or its deadline has passed), the pending request is abandoned and no further 
+	 * result page is requested: the iterator raises a {@link QueryCancelledException}.
+	 *
+	 * @param resultSet the (future) result set.
+	 * @param context the query execution context.
+	 * @return an iterator of identifiers.
+	 */
+	protected ClosableIterator<byte[][]> asIdentifiersIterator(final ResultSetFuture resultSet, final QueryContext context) {
+		return new ClosingIterator<byte[][]>(new AbstractIterator<byte[][]>() {
+			private ResultSet rows;
+			
+			@Override
+			protected byte[][] computeNext() {
+				if (rows == null) {
+					rows = await(resultSet, context);
+				}
+				
+				if (rows.getAvailableWithoutFetching() == 0 && !rows.isFullyFetched()) {
+					context.recordPage();
+					await(rows.fetchMoreResults(), context);
+				}
+				
+				final Row row = rows.one();
+				return row != null ? asByteArray(row) : endOfData();
+			}
+		});
+	}
+	
+	/**
+	 * Waits for the given (storage) response, until the query it belongs to is cancelled.
+	 * In that case the request is cancelled too.
+	 * 
+	 * @param response the (future) storage response.
+	 * @param context the query execution context.
+	 * @param <V> the response kind.
+	 * @return the storage response.
+	 * @throws QueryCancelledException in case the query has been cancelled or its deadline has passed.
+	 */
+	<V> V await(final Future<V> response, final QueryContext context) {
+		try {
+			while (true) {
+				try {
+					return response.get(Math.min(CANCELLATION_CHECK_INTERVAL, context.remainingMillis()), TimeUnit.MILLISECONDS);
+				} catch (final TimeoutException exception) {
+					if (context.isCancelled()) {
+						response.cancel(true);
+						throw new QueryCancelledException();
+					}
+				}
+			}
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			response.cancel(true);
+			throw new QueryCancelledException();
+		} catch (final ExecutionException exception) {
+			if (exception.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) exception.getCause();
+			}
+			throw new IllegalStateException(exception.getCause());
+		}
+	}
+
+	@Override
+	public boolean exists(final byte[][] pattern) throws StorageLayerException {
+		try {
+			return session.execute(bind(existenceQueries, pattern)).one() != null;
+		} catch (final Exception exception) {
+			throw new StorageLayerException(exception);
+		}
+	}
+	
+	/**
+	 * Selects, among the given statements, the one that answers the given pattern and binds it.
+	 * 
+	 * @param statements the candidate statements, ordered by pattern shape.
+	 * @param query the pattern query.
+	 * @return the statement that answers the given pattern, with its parameters bound.
+	 */
+	protected BoundStatement bind(final PreparedStatement[] statements, final byte[][] query) {
 		int qindex = (query[0] == null) ? 4 : 0;
 		qindex += (query[1] == null) ? 2 : 0;
 		qindex += (query[2] == null) ? 1 : 0;
 		
-		final BoundStatement statement = queries[qindex].bind();			
+		final BoundStatement statement = statements[qindex].bind();			
 		int index = 0;
 		for (final byte[] binding : query) {
 			if (binding != null) {
 				statement.setBytesUnsafe(index++, ByteBuffer.wrap(binding));
 			}
 		}
-
-		final Iterator<Row> iterator = session.executeAsync(statement).getUninterruptibly().iterator();
-		return new AbstractIterator<byte[][]>() {
-			@Override
-			protected byte[][] computeNext() {
-				return iterator.hasNext() ? asByteArray(iterator.next()) : endOfData();
-			}
-		};
-	}	
+		return statement;
+	}
+	
+	/**
+	 * Prepares, for each of the given queries, the corresponding existence query (i.e. the same query limited to one row).
+	 * 
+	 * @param statements the queries.
+	 * @return the corresponding existence queries.
+	 */
+	protected PreparedStatement[] existenceQueries(final PreparedStatement[] statements) {
+		final PreparedStatement[] result = new PreparedStatement[statements.length];
+		for (int i = 0; i < statements.length; i++) {
+			result[i] = session.prepare(statements[i].getQueryString() + " LIMIT 1");
+		}
+		return result;
+	}
+	
+	/**
+	 * Prepares, for each of the given queries, the corresponding count query (i.e. SELECT COUNT(*) with the same restrictions).
+	 * 
+	 * @param statements the queries.
+	 * @return the corresponding count queries.
+	 */
+	protected PreparedStatement[] countQueries(final PreparedStatement[] statements) {
+		final PreparedStatement[] result = new PreparedStatement[statements.length];
+		for (int i = 0; i < statements.length; i++) {
+			result[i] = session.prepare(statements[i].getQueryString().replace(SELECT_SPOC_FROM, SELECT_COUNT_FROM));
+		}
+		return result;
+	}
 	
 	/**
 	 * Transforms the given row in a byte array containing term identifiers.
@@ -187,12 +553,12 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 	 * @param row the row.
 	 * @return a byte array containing term identifiers.
 	 */
-	private byte[][] asByteArray(final Row row) {
+	protected byte[][] asByteArray(final Row row) {
 		final byte[] s = Bytes.getArray(row.getBytesUnsafe(0));
 		final byte[] p = Bytes.getArray(row.getBytesUnsafe(1));
 		final byte[] o = Bytes.getArray(row.getBytesUnsafe(2));
 		final ByteBuffer c = row.getBytesUnsafe(3);
-		return (c != null)
+		return (c == null || !c.hasRemaining())
 			? new byte[][] {s, p, o}
 			: new byte[][] {s, p, o, Bytes.getArray(c)};
 	}
@@ -202,6 +568,7 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 		session.execute(clearSPOCStatement.bind());
 		session.execute(clearOSPCStatement.bind());
 		session.execute(clearPOSCStatement.bind());
+		session.execute(clearCountsStatement.bind());
 	}
 	
 	/**
@@ -220,6 +587,10 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 		clearOSPCStatement = session.prepare("TRUNCATE " + O_SPC);
 		clearPOSCStatement = session.prepare("TRUNCATE " + PO_SC);
 
+		updateCountStatement = session.prepare("UPDATE " + TRIPLE_COUNTS + " SET triples = triples + ? WHERE k = ? AND p = ?");
+		selectCountStatement = session.prepare("SELECT triples FROM " + TRIPLE_COUNTS + " WHERE k = ? AND p = ?");
+		clearCountsStatement = session.prepare("TRUNCATE " + TRIPLE_COUNTS);
+
 		queries = new PreparedStatement[] {
 				session.prepare(SELECT_SPOC_FROM + S_POC + " WHERE s = ? AND p = ? AND o = ?"),
 				session.prepare(SELECT_SPOC_FROM + S_POC + " WHERE s = ? AND p = ?"),
@@ -230,6 +601,9 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 				session.prepare(SELECT_SPOC_FROM + O_SPC + " WHERE o = ?"),
 				session.prepare(SELECT_SPOC_FROM + S_POC)
 		};
+		
+		existenceQueries = existenceQueries(queries);
+		countQueries = countQueries(queries);
 	}
 		
 	/**
@@ -239,6 +613,8 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 	 * @throws StorageLayerException in case of data access failure.
 	 */
 	void internalDelete(final byte [][]ids) throws StorageLayerException {
+		nextMutation();
+		
 		final BoundStatement poscStatement = deletePOSCStatement.bind();
 		poscStatement.setBytesUnsafe(0, ByteBuffer.wrap(ids[1]));
 		poscStatement.setBytesUnsafe(1, ByteBuffer.wrap(ids[2]));
@@ -277,11 +653,141 @@ public class CassandraTripleIndexDAO implements GraphDAO<byte[][], byte[][]> {
 		}
 
 		batchStatements.get().add(ospcStatement);
+		
+		pending(ids, false);
 	}
 
 	@Override
 	public long countTriples() throws StorageLayerException {
-		// TODO Auto-generated method stub
-		return 0;
+		return readCount(EMPTY_VAL, EMPTY_VAL);
+	}
+
+	@Override
+	public long countTriples(final byte[][] pattern) throws StorageLayerException {
+		if (pattern[0] == null && pattern[2] == null) {
+			return readCount(
+					(pattern.length == 4 && pattern[3] != null) ? pattern[3] : EMPTY_VAL, 
+					pattern[1] != null ? pattern[1] : EMPTY_VAL);
+		}
+		return countMatches(pattern);
+	}
+
+	/**
+	 * CQL doesn't have a distinct count over clustering columns, so the matching rows are scanned. 
+	 * Anyway, only identifiers are read and collected (i.e. nothing is decoded).
+	 */
+	@Override
+	public long countDistinct(final byte[][] pattern, final int position) throws StorageLayerException {
+		if (pattern[position] != null) {
+			return exists(pattern) ? 1 : 0;
+		}
+
+		final Set<ByteBuffer> values = new HashSet<ByteBuffer>();
+		final Iterator<byte[][]> iterator = query(pattern);
+		while (iterator.hasNext()) {
+			values.add(ByteBuffer.wrap(iterator.next()[position]));
+		}
+		return values.size();
+	}
+	
+	/**
+	 * Counts, on the storage side, the triples that match a given pattern.
+	 * 
+	 * @param pattern the triple pattern.
+	 * @return how many triples match the given pattern.
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	protected long countMatches(final byte[][] pattern) throws StorageLayerException {
+		return count(bind(countQueries, pattern));
+	}
+	
+	/**
+	 * Executes a given count query.
+	 * 
+	 * @param statement the (bound) count query.
+	 * @return the count.
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	protected long count(final BoundStatement statement) throws StorageLayerException {
+		try {
+			final Row row = session.execute(statement).one();
+			return row != null ? row.getLong(0) : 0;
+		} catch (final Exception exception) {
+			throw new StorageLayerException(exception);
+		}
+	}
+	
+	/**
+	 * Records the state a triple will have once pending mutations are flushed.
+	 * 
+	 * @param ids the triple identifiers.
+	 * @param stored true in case of insertion, false in case of deletion.
+	 */
+	void pending(final byte[][] ids, final boolean stored) {
+		pendingTriples.get().put(
+				Arrays.asList(
+						ByteBuffer.wrap(ids[0]), 
+						ByteBuffer.wrap(ids[1]), 
+						ByteBuffer.wrap(ids[2]), 
+						ByteBuffer.wrap((ids.length == 4 && ids[3] != null) ? ids[3] : EMPTY_VAL)), 
+				stored);
+	}
+	
+	/**
+	 * Computes the counter updates associated with the given pending triples.
+	 * Each pending triple counts as a change (the storage is not read in order to check its current state).
+	 * Within a flush, updates are aggregated by counter, so a single statement is sent for each counter.
+	 * 
+	 * @param pending the pending triples, with the state they will have once flushed.
+	 * @return the counter updates.
+	 */
+	Map<List<ByteBuffer>, Long> countDeltas(final Map<List<ByteBuffer>, Boolean> pending) {
+		final Map<List<ByteBuffer>, Long> deltas = new HashMap<List<ByteBuffer>, Long>();
+		for (final Entry<List<ByteBuffer>, Boolean> triple : pending.entrySet()) {
+			final long delta = triple.getValue() ? 1 : -1;
+			final ByteBuffer p = triple.getKey().get(1);
+			final ByteBuffer c = triple.getKey().get(3);
+			increment(deltas, ByteBuffer.wrap(EMPTY_VAL), ByteBuffer.wrap(EMPTY_VAL), delta);
+			increment(deltas, ByteBuffer.wrap(EMPTY_VAL), p, delta);
+			if (c.hasRemaining()) {
+				increment(deltas, c, ByteBuffer.wrap(EMPTY_VAL), delta);
+				increment(deltas, c, p, delta);
+			}
+		}
+		return deltas;
+	}
+	
+	/**
+	 * Adds a given delta to a counter.
+	 * 
+	 * @param deltas the pending counter updates.
+	 * @param k the counter scope (the graph identifier, or an empty value for the whole store).
+	 * @param p the predicate identifier (or an empty value for all predicates).
+	 * @param delta the delta.
+	 */
+	private void increment(final Map<List<ByteBuffer>, Long> deltas, final ByteBuffer k, final ByteBuffer p, final long delta) {
+		final List<ByteBuffer> key = Arrays.asList(k, p);
+		final Long current = deltas.get(key);
+		deltas.put(key, current != null ? current + delta : delta);
+	}
+	
+	/**
+	 * Reads the value of a given counter.
+	 * 
+	 * @param k the counter scope (the graph identifier, or an empty value for the whole store).
+	 * @param p the predicate identifier (or an empty value for all predicates).
+	 * @return the value of the given counter.
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	private long readCount(final byte[] k, final byte[] p) throws StorageLayerException {
+		try {
+			final BoundStatement statement = selectCountStatement.bind();
+			statement.setBytesUnsafe(0, ByteBuffer.wrap(k));
+			statement.setBytesUnsafe(1, ByteBuffer.wrap(p));
+			final Row row = session.execute(statement).one();
+			return row != null ? row.getLong(0) : 0;
+		} catch (final Exception exception) {
+			throw new StorageLayerException(exception);
+		}
 	}
 }
\ No newline at end of file
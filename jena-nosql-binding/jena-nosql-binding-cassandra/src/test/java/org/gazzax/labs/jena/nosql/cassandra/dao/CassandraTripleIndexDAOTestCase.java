@@ -0,0 +1,204 @@
+package org.gazzax.labs.jena.nosql.cassandra.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.Statement;
+import com.hp.hpl.jena.query.QueryCancelledException;
+
+/**
+ * Test case for {@link CassandraTripleIndexDAO}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class CassandraTripleIndexDAOTestCase {
+	private static final byte[] EMPTY = new byte[0];
+
+	private final byte[] s = {1};
+	private final byte[] p = {2};
+	private final byte[] o = {3};
+	private final byte[] g = {4};
+
+	private InMemorySession storage;
+	private CassandraTripleIndexDAO cut;
+
+	/**
+	 * Setup fixture for this test case.
+	 */
+	@Before
+	public void setUp() {
+		storage = new InMemorySession();
+		cut = new CassandraQuadIndexDAO(storage.session, 1000);
+	}
+
+	/**
+	 * Counts are approximate: the storage is not read before a write, so redundant mutations are counted too.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void countsAreNotCheckedAgainstTheStorage() throws Exception {
+		cut.insertTriple(new byte[][] {s, p, o});
+		cut.executePendingMutations();
+		assertEquals(1, cut.countTriples());
+
+		cut.deleteTriple(new byte[][] {s, p, o});
+		assertEquals(0, cut.countTriples());
+
+		cut.insertTriple(new byte[][] {s, p, o});
+		cut.executePendingMutations();
+		cut.insertTriple(new byte[][] {s, p, o});
+		cut.executePendingMutations();
+		assertEquals(2, cut.countTriples());
+	}
+
+	/**
+	 * Duplicates within the same flush must be counted once.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void countsDuplicatesWithinFlushOnce() throws Exception {
+		cut.insertTriple(new byte[][] {s, p, o});
+		cut.insertTriple(new byte[][] {s, p, o});
+		cut.insertTriple(new byte[][] {s, p, o, g});
+		cut.executePendingMutations();
+
+		assertEquals(2, cut.countTriples());
+		assertEquals(2, cut.countTriples(new byte[][] {null, p, null}));
+		assertEquals(1, cut.countTriples(new byte[][] {null, null, null, g}));
+		assertEquals(1, storage.counter(g, p));
+		assertEquals(2, storage.counter(EMPTY, EMPTY));
+	}
+
+	/**
+	 * A large flush must be split in several (bounded) batches, without splitting the statements of a triple.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void largeFlushIsSplitInBatches() throws Exception {
+		final int howManyTriples = 100;
+		for (int i = 0; i < howManyTriples; i++) {
+			cut.insertTriple(new byte[][] {s, p, {(byte) i}, g});
+		}
+		cut.executePendingMutations();
+
+		assertEquals(howManyTriples, storage.triples.size());
+		assertEquals(howManyTriples, cut.countTriples());
+
+		final ArgumentCaptor<Statement> statements = ArgumentCaptor.forClass(Statement.class);
+		verify(storage.session, atLeastOnce()).execute(statements.capture());
+
+		final List<BatchStatement> batches = new ArrayList<BatchStatement>();
+		for (final Statement statement : statements.getAllValues()) {
+			if (statement instanceof BatchStatement) {
+				batches.add((BatchStatement) statement);
+			}
+		}
+
+		// The last batch updates the counters, the others write the 7 index entries of each quad.
+		final int statementsPerQuad = 7;
+		int dataStatements = 0;
+		for (final BatchStatement batch : batches.subList(0, batches.size() - 1)) {
+			final int size = batch.getStatements().size();
+			assertTrue(size < CassandraTripleIndexDAO.MAX_BATCH_STATEMENTS + statementsPerQuad);
+			assertEquals(0, size % statementsPerQuad);
+			dataStatements += size;
+		}
+		assertEquals(howManyTriples * statementsPerQuad, dataStatements);
+		assertTrue(batches.size() > 2);
+	}
+
+	/**
+	 * Concurrent reads must be bounded by the in-flight permits, which must come back as soon as a response arrives 
+	 * (even if nobody consumes it), fails or is cancelled.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void inFlightReadsAreBounded() throws Exception {
+		final Semaphore permits = new Semaphore(2);
+		final CassandraTripleIndexDAO bounded = new CassandraQuadIndexDAO(storage.session, 1000, permits);
+		final List<byte[][]> patterns = Collections.singletonList(new byte[][] {s, null, null});
+		storage.deferReads = true;
+
+		bounded.batchQuery(patterns);
+		bounded.batchQuery(patterns);
+		assertEquals(0, permits.availablePermits());
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final Future<?> third = executor.submit(new Callable<List<Iterator<byte[][]>>>() {
+				@Override
+				public List<Iterator<byte[][]>> call() throws StorageLayerException {
+					return bounded.batchQuery(patterns);
+				}
+			});
+			Thread.sleep(200);
+			assertFalse(third.isDone());
+			assertEquals(2, storage.deferred.size());
+
+			storage.complete(0);
+			third.get(1, TimeUnit.SECONDS);
+			assertEquals(3, storage.deferred.size());
+			assertEquals(0, permits.availablePermits());
+
+			storage.fail(1);
+			assertEquals(1, permits.availablePermits());
+
+			storage.deferred.get(2).cancel(true);
+			assertEquals(2, permits.availablePermits());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * A read that is waiting for a permit must give up once its query is cancelled.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void waitingForPermitEndsWithTheQuery() throws Exception {
+		final Semaphore permits = new Semaphore(1);
+		final CassandraTripleIndexDAO bounded = new CassandraQuadIndexDAO(storage.session, 1000, permits);
+		final List<byte[][]> patterns = Collections.singletonList(new byte[][] {s, null, null});
+		storage.deferReads = true;
+
+		bounded.batchQuery(patterns);
+		try {
+			bounded.batchQuery(patterns, new QueryContext(200, TimeUnit.MILLISECONDS));
+			fail();
+		} catch (final QueryCancelledException expected) {
+			assertEquals(1, storage.deferred.size());
+			assertEquals(0, permits.availablePermits());
+		}
+
+		storage.complete(0);
+		assertEquals(1, permits.availablePermits());
+	}
+}
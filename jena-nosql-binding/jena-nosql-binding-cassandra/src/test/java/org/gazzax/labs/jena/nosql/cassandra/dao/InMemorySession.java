@@ -0,0 +1,269 @@
+package org.gazzax.labs.jena.nosql.cassandra.dao;
+
+import static org.gazzax.labs.jena.nosql.cassandra.Table.S_POC;
+import static org.gazzax.labs.jena.nosql.cassandra.Table.TRIPLE_COUNTS;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * A (mock) Cassandra session that keeps, in memory, the S_POC index and the triple counters.
+ * Any other statement is accepted and answered with an empty result.
+ *
+ * Asynchronous requests can be deferred: in that case they are completed (or failed) by the test,
+ * see {@link #complete(int)} and {@link #fail(int)}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+class InMemorySession {
+	/**
+	 * A response that is completed by the test.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static class Response extends AbstractFuture<ResultSet> implements ResultSetFuture {
+		@Override
+		public ResultSet getUninterruptibly() {
+			try {
+				return Uninterruptibles.getUninterruptibly(this);
+			} catch (final ExecutionException exception) {
+				throw new IllegalStateException(exception.getCause());
+			}
+		}
+
+		@Override
+		public ResultSet getUninterruptibly(final long timeout, final TimeUnit unit) throws TimeoutException {
+			try {
+				return Uninterruptibles.getUninterruptibly(this, timeout, unit);
+			} catch (final ExecutionException exception) {
+				throw new IllegalStateException(exception.getCause());
+			}
+		}
+
+		@Override
+		public boolean set(final ResultSet value) {
+			return super.set(value);
+		}
+
+		@Override
+		public boolean setException(final Throwable throwable) {
+			return super.setException(throwable);
+		}
+	}
+
+	final Session session = mock(Session.class);
+	final Set<List<ByteBuffer>> triples = new HashSet<List<ByteBuffer>>();
+	final Map<List<ByteBuffer>, Long> counters = new HashMap<List<ByteBuffer>, Long>();
+	final List<Response> deferred = new ArrayList<Response>();
+
+	boolean deferReads;
+
+	private final Map<BoundStatement, String> queries = new HashMap<BoundStatement, String>();
+	private final Map<BoundStatement, Object[]> parameters = new HashMap<BoundStatement, Object[]>();
+
+	/**
+	 * Builds a new (empty) session.
+	 */
+	InMemorySession() {
+		when(session.prepare(anyString())).thenAnswer(new Answer<PreparedStatement>() {
+			@Override
+			public PreparedStatement answer(final InvocationOnMock invocation) {
+				return prepare((String) invocation.getArguments()[0]);
+			}
+		});
+
+		when(session.execute(any(Statement.class))).thenAnswer(new Answer<ResultSet>() {
+			@Override
+			public ResultSet answer(final InvocationOnMock invocation) {
+				return execute((Statement) invocation.getArguments()[0]);
+			}
+		});
+
+		when(session.executeAsync(any(Statement.class))).thenAnswer(new Answer<ResultSetFuture>() {
+			@Override
+			public ResultSetFuture answer(final InvocationOnMock invocation) {
+				final Response response = new Response();
+				if (deferReads) {
+					deferred.add(response);
+				} else {
+					response.set(execute((Statement) invocation.getArguments()[0]));
+				}
+				return response;
+			}
+		});
+	}
+
+	/**
+	 * Completes, with an empty result, a deferred request.
+	 *
+	 * @param index the index of the request.
+	 */
+	void complete(final int index) {
+		deferred.get(index).set(resultSet(new ArrayList<Row>()));
+	}
+
+	/**
+	 * Fails a deferred request.
+	 *
+	 * @param index the index of the request.
+	 */
+	void fail(final int index) {
+		deferred.get(index).setException(new IllegalStateException());
+	}
+
+	/**
+	 * Returns the value of a given counter.
+	 *
+	 * @param k the counter scope.
+	 * @param p the predicate identifier.
+	 * @return the value of the given counter.
+	 */
+	long counter(final byte[] k, final byte[] p) {
+		final Long value = counters.get(Arrays.asList(ByteBuffer.wrap(k), ByteBuffer.wrap(p)));
+		return value != null ? value : 0;
+	}
+
+	/**
+	 * Builds a prepared statement whose bound statements record their parameters.
+	 *
+	 * @param cql the CQL query.
+	 * @return a prepared statement.
+	 */
+	PreparedStatement prepare(final String cql) {
+		final PreparedStatement statement = mock(PreparedStatement.class);
+		when(statement.getQueryString()).thenReturn(cql);
+		when(statement.bind()).thenAnswer(new Answer<BoundStatement>() {
+			@Override
+			public BoundStatement answer(final InvocationOnMock invocation) {
+				final BoundStatement bound = mock(BoundStatement.class);
+				final Object[] values = new Object[5];
+				final Answer<BoundStatement> setter = new Answer<BoundStatement>() {
+					@Override
+					public BoundStatement answer(final InvocationOnMock invocation) {
+						values[(Integer) invocation.getArguments()[0]] = invocation.getArguments()[1];
+						return bound;
+					}
+				};
+				when(bound.setBytesUnsafe(anyInt(), any(ByteBuffer.class))).thenAnswer(setter);
+				when(bound.setLong(anyInt(), anyLong())).thenAnswer(setter);
+				synchronized (queries) {
+					queries.put(bound, cql);
+					parameters.put(bound, values);
+				}
+				return bound;
+			}
+		});
+		return statement;
+	}
+
+	/**
+	 * Executes a given statement against the in-memory data.
+	 *
+	 * @param statement the statement.
+	 * @return the result of the given statement.
+	 */
+	synchronized ResultSet execute(final Statement statement) {
+		final List<Row> rows = new ArrayList<Row>();
+		if (statement instanceof BatchStatement) {
+			for (final Statement child : ((BatchStatement) statement).getStatements()) {
+				execute(child);
+			}
+			return resultSet(rows);
+		}
+
+		final String cql;
+		final Object[] values;
+		synchronized (queries) {
+			cql = queries.get(statement);
+			values = parameters.get(statement);
+		}
+
+		if (cql == null) {
+			return resultSet(rows);
+		}
+
+		if (cql.startsWith("INSERT INTO " + S_POC + "(")) {
+			triples.add(key(values, 4));
+		} else if (cql.startsWith("DELETE FROM " + S_POC + " ")) {
+			triples.remove(key(values, 4));
+		} else if (cql.startsWith("UPDATE " + TRIPLE_COUNTS)) {
+			final List<ByteBuffer> counter = Arrays.asList((ByteBuffer) values[1], (ByteBuffer) values[2]);
+			final Long current = counters.get(counter);
+			counters.put(counter, (current != null ? current : 0) + (Long) values[0]);
+		} else if (cql.startsWith("SELECT triples FROM " + TRIPLE_COUNTS)) {
+			final Long value = counters.get(Arrays.asList((ByteBuffer) values[0], (ByteBuffer) values[1]));
+			if (value != null) {
+				final Row row = mock(Row.class);
+				when(row.getLong(0)).thenReturn(value);
+				rows.add(row);
+			}
+		}
+		return resultSet(rows);
+	}
+
+	/**
+	 * Builds a (fully fetched) result set with the given rows.
+	 *
+	 * @param rows the rows.
+	 * @return a result set with the given rows.
+	 */
+	ResultSet resultSet(final List<Row> rows) {
+		final Iterator<Row> iterator = rows.iterator();
+		final ResultSet result = mock(ResultSet.class);
+		when(result.isFullyFetched()).thenReturn(true);
+		when(result.one()).thenAnswer(new Answer<Row>() {
+			@Override
+			public Row answer(final InvocationOnMock invocation) {
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Returns the first parameters of a bound statement, as a key.
+	 *
+	 * @param values the parameters.
+	 * @param size how many parameters make the key.
+	 * @return the key.
+	 */
+	private List<ByteBuffer> key(final Object[] values, final int size) {
+		final List<ByteBuffer> key = new ArrayList<ByteBuffer>(size);
+		for (int i = 0; i < size; i++) {
+			key.add((ByteBuffer) values[i]);
+		}
+		return key;
+	}
+}
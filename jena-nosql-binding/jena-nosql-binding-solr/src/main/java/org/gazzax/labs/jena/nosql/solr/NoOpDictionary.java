@@ -3,6 +3,7 @@ package org.gazzax.labs.jena.nosql.solr;
 import java.util.Iterator;
 
 import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
 import org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory;
 
 import com.hp.hpl.jena.graph.Node;
@@ -110,6 +111,12 @@ class NoOpDictionary implements TopLevelDictionary {
 		return null;
 	}
 
+	@Override
+	public Iterator<Triple> asTripleIterator(final Iterator<byte[][]> identifiers, final QueryContext context) {
+		// Nothing to be done here...
+		return null;
+	}
+
 	@Override
 	public Iterator<Quad> asQuadIterator(final Iterator<byte[][]> quads) {
 		// Nothing to be done here...
@@ -1,6 +1,7 @@
 package org.gazzax.labs.jena.nosql.solr.dao;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
@@ -8,15 +9,21 @@ import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.CursorMarkParams;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
 import org.gazzax.labs.jena.nosql.fwk.util.NTriples;
 import org.gazzax.labs.jena.nosql.solr.Field;
 
 import com.google.common.collect.UnmodifiableIterator;
 import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
 
 /**
  * An iterator over SOLR results that uses the built-in Deep Paging strategy.
  * Internally it uses other iterators to represents each iteration state. 
+ * Closing the iterator moves it in a final state, so no further page query will be sent to SOLR.
+ * Deep paging can be disabled: in that case only one page (i.e. the start / rows of the given query) is requested.
+ * Once the query this iterator belongs to has been cancelled (or its deadline has passed), no further page is requested;
+ * each page request is also bounded, on SOLR side, by the time left before the deadline.
  * 
  * @see http://solr.pl/en/2014/03/10/solr-4-7-efficient-deep-paging
  * @see http://heliosearch.org/solr/paging-and-deep-paging
@@ -24,10 +31,12 @@ import com.hp.hpl.jena.graph.Triple;
  * @author Andrea Gazzarini
  * @since 1.0
  */
-public class SolrDeepPagingIterator extends UnmodifiableIterator<Triple> {
+public class SolrDeepPagingIterator extends UnmodifiableIterator<Triple> implements ClosableIterator<Triple> {
 
 	private final SolrServer solr;
 	private final SolrQuery query;
+	private final boolean deepPaging;
+	private final QueryContext context;
 	private SolrDocumentList page;
 	
 	private String nextCursorMark;
@@ -41,10 +50,18 @@ public class SolrDeepPagingIterator extends UnmodifiableIterator<Triple> {
 	private final Iterator<Triple> executeQuery = new UnmodifiableIterator<Triple>() {
 		@Override
 		public boolean hasNext() {
+			context.checkpoint();
+			context.recordPage();
+			if (context.hasDeadline()) {
+				query.setTimeAllowed((int) Math.max(1, Math.min(Integer.MAX_VALUE, context.remainingMillis())));
+			}
+			
 			try {
 				final QueryResponse response = solr.query(query);
-				sentCursorMark = query.get(CursorMarkParams.CURSOR_MARK_PARAM);
-				nextCursorMark = response.getNextCursorMark();
+				if (deepPaging) {
+					sentCursorMark = query.get(CursorMarkParams.CURSOR_MARK_PARAM);
+					nextCursorMark = response.getNextCursorMark();
+				}
 				page = response.getResults();
 				return !page.isEmpty();
 			} catch (final Exception exception) {
@@ -100,7 +117,7 @@ public class SolrDeepPagingIterator extends UnmodifiableIterator<Triple> {
 	private final Iterator<Triple> checkForConsumptionCompleteness = new UnmodifiableIterator<Triple>() {
 		@Override
 		public boolean hasNext() {
-			final boolean hasNext = (page.size() == query.getRows() && !sentCursorMark.equals(nextCursorMark));
+			final boolean hasNext = deepPaging && page.size() == query.getRows() && !sentCursorMark.equals(nextCursorMark);
 			if (hasNext) {
 				query.set(CursorMarkParams.CURSOR_MARK_PARAM, nextCursorMark);			
 				currentState = executeQuery;
@@ -115,6 +132,21 @@ public class SolrDeepPagingIterator extends UnmodifiableIterator<Triple> {
 		}
 	};
 	
+	/**
+	 * Iteration state: the iterator has been closed, so no further query will be issued. 
+	 */
+	private final Iterator<Triple> closed = new UnmodifiableIterator<Triple>() {
+		@Override
+		public boolean hasNext() {
+			return false;
+		}
+
+		@Override
+		public Triple next() {
+			throw new NoSuchElementException();
+		}
+	};
+	
 	private Iterator<Triple> currentState = executeQuery;
 	
 	/**
@@ -124,10 +156,37 @@ public class SolrDeepPagingIterator extends UnmodifiableIterator<Triple> {
 	 * @param query the query that will be submitted.
 	 */
 	SolrDeepPagingIterator(final SolrServer solr, final SolrQuery query) {
+		this(solr, query, true);
+	}
+
+	/**
+	 * Builds a new iterator with the given data.
+	 * 
+	 * @param solr the SOLR facade.
+	 * @param query the query that will be submitted.
+	 * @param deepPaging if false, only one page (i.e. the start / rows of the given query) will be requested.
+	 */
+	SolrDeepPagingIterator(final SolrServer solr, final SolrQuery query, final boolean deepPaging) {
+		this(solr, query, deepPaging, new QueryContext());
+	}
+
+	/**
+	 * Builds a new iterator with the given data.
+	 * 
+	 * @param solr the SOLR facade.
+	 * @param query the query that will be submitted.
+	 * @param deepPaging if false, only one page (i.e. the start / rows of the given query) will be requested.
+	 * @param context the execution context of the query this iterator belongs to.
+	 */
+	SolrDeepPagingIterator(final SolrServer solr, final SolrQuery query, final boolean deepPaging, final QueryContext context) {
 		this.solr = solr;
 		this.query = query;
+		this.deepPaging = deepPaging;
+		this.context = context;
 		this.sentCursorMark = CursorMarkParams.CURSOR_MARK_START;
-		this.query.set(CursorMarkParams.CURSOR_MARK_PARAM, CursorMarkParams.CURSOR_MARK_START);
+		if (deepPaging) {
+			this.query.set(CursorMarkParams.CURSOR_MARK_PARAM, CursorMarkParams.CURSOR_MARK_START);
+		}
 	}
 
 	@Override
@@ -139,4 +198,10 @@ public class SolrDeepPagingIterator extends UnmodifiableIterator<Triple> {
 	public Triple next() {
 		return currentState.next();
 	}
+
+	@Override
+	public void close() {
+		currentState = closed;
+		page = null;
+	}
 }
\ No newline at end of file
@@ -3,18 +3,25 @@ package org.gazzax.labs.jena.nosql.solr.dao;
 import static org.gazzax.labs.jena.nosql.fwk.util.NTriples.asNt;
 import static org.gazzax.labs.jena.nosql.fwk.util.NTriples.asNtURI;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.GroupParams;
 import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
 import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
 import org.gazzax.labs.jena.nosql.fwk.log.Log;
 import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.util.SliceIterator;
 import org.gazzax.labs.jena.nosql.fwk.util.Strings;
 import org.gazzax.labs.jena.nosql.solr.Field;
 import org.slf4j.LoggerFactory;
@@ -24,6 +31,7 @@ import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.query.QueryCancelledException;
 
 /**
  * {@link GraphDAO} implementation for Apache SOLR.
@@ -149,6 +157,11 @@ public class SolrGraphDAO implements GraphDAO<Triple, TripleMatch> {
 		}
 	}
 	
+	@Override
+	public void discardPendingMutations() {
+		// Nothing to be done here: mutations are immediately sent to Solr.
+	}
+	
 	@Override
 	public void clear() {
 		try {
@@ -160,8 +173,116 @@ public class SolrGraphDAO implements GraphDAO<Triple, TripleMatch> {
 
 	@Override
 	public Iterator<Triple> query(final TripleMatch query) throws StorageLayerException {
-		final SolrQuery q = new SolrQuery();
+		return query(query, new QueryContext());
+	}
+
+	@Override
+	public Iterator<Triple> query(final TripleMatch query, final QueryContext context) throws StorageLayerException {
+		final SolrQuery q = asSolrQuery(query);
 		q.setRows(10);
+		context.recordIndex(Arrays.toString(q.getFilterQueries()));
+		return new SolrDeepPagingIterator(searcher, q, true, context);
+	}
+
+	/**
+	 * The slice is pushed down as start / rows of a single (i.e. not deep paged) SOLR query.
+	 */
+	@Override
+	public Iterator<Triple> query(final TripleMatch query, final long offset, final long limit) throws StorageLayerException {
+		if (limit < 0 || offset + limit > Integer.MAX_VALUE) {
+			return new SliceIterator<Triple>(query(query), offset, limit);
+		}
+		
+		final SolrQuery q = asSolrQuery(query);
+		q.setStart((int) Math.max(0, offset));
+		q.setRows((int) limit);
+		return new SolrDeepPagingIterator(searcher, q, false);
+	}
+
+	@Override
+	public List<Iterator<Triple>> batchQuery(final List<TripleMatch> queries) throws StorageLayerException {
+		return batchQuery(queries, new QueryContext());
+	}
+
+	/**
+	 * All patterns are OR-ed in one SOLR query, then each resulting triple is assigned to the pattern(s) it matches.
+	 * Result pages are requested only until the given query context is cancelled.
+	 */
+	@Override
+	public List<Iterator<Triple>> batchQuery(final List<TripleMatch> queries, final QueryContext context) throws StorageLayerException {
+		final List<Triple> patterns = new ArrayList<Triple>(queries.size());
+		final List<List<Triple>> matches = new ArrayList<List<Triple>>(queries.size());
+		final StringBuilder builder = new StringBuilder();
+		for (final TripleMatch query : queries) {
+			patterns.add(Triple.createMatch(query.getMatchSubject(), query.getMatchPredicate(), query.getMatchObject()));
+			matches.add(new ArrayList<Triple>());
+			
+			if (builder.length() != 0) {
+				builder.append(" OR ");
+			}
+			builder.append("(").append(asBooleanQuery(asSolrQuery(query).getFilterQueries())).append(")");
+		}
+
+		if (!queries.isEmpty()) {
+			final SolrQuery q = new SolrQuery(builder.toString());
+			q.setRows(100);
+			try {
+				for (final Iterator<Triple> triples = new SolrDeepPagingIterator(searcher, q, true, context); triples.hasNext();) {
+					final Triple triple = triples.next();
+					for (int i = 0; i < patterns.size(); i++) {
+						if (patterns.get(i).matches(triple)) {
+							matches.get(i).add(triple);
+						}
+					}
+				}
+			} catch (final QueryCancelledException exception) {
+				throw exception;
+			} catch (final Exception exception) {
+				throw new StorageLayerException(exception);
+			}
+		}
+		
+		final List<Iterator<Triple>> results = new ArrayList<Iterator<Triple>>(matches.size());
+		for (final List<Triple> triples : matches) {
+			results.add(triples.iterator());
+		}
+		return results;
+	}
+	
+	/**
+	 * Combines the given filter queries in one (AND) boolean query.
+	 * 
+	 * @param filterQueries the filter queries.
+	 * @return a boolean query that corresponds to the given filter queries.
+	 */
+	String asBooleanQuery(final String[] filterQueries) {
+		if (filterQueries == null || filterQueries.length == 0) {
+			return "*:*";
+		}
+		
+		final StringBuilder builder = new StringBuilder();
+		for (final String filterQuery : filterQueries) {
+			if (builder.length() != 0) {
+				builder.append(" AND ");
+			}
+			builder.append(filterQuery);
+		}
+		return builder.toString();
+	}
+	
+	@Override
+	public boolean exists(final TripleMatch pattern) throws StorageLayerException {
+		return countTriples(pattern) > 0;
+	}
+	
+	/**
+	 * Builds a SOLR query that matches a given triple pattern.
+	 * 
+	 * @param query the triple pattern.
+	 * @return a SOLR query that matches a given triple pattern.
+	 */
+	SolrQuery asSolrQuery(final TripleMatch query) {
+		final SolrQuery q = new SolrQuery();
 		final Node s = query.getMatchSubject();
 		final Node p = query.getMatchPredicate();
 		final Node o = query.getMatchObject();
@@ -213,7 +334,7 @@ public class SolrGraphDAO implements GraphDAO<Triple, TripleMatch> {
 			q.addFilterQuery(newFilterQuery(Field.C, asNtURI(name), true));			
 		}
 		
-		return new SolrDeepPagingIterator(searcher, q);
+		return q;
 	}
 	
 
@@ -226,6 +347,45 @@ public class SolrGraphDAO implements GraphDAO<Triple, TripleMatch> {
 			throw new StorageLayerException(exception);
 		}		
 	} 	
+
+	@Override
+	public long countTriples(final TripleMatch pattern) throws StorageLayerException {
+		final SolrQuery query = asSolrQuery(pattern);
+		query.setRows(0);
+		try {
+			return searcher.query(query).getResults().getNumFound();
+		} catch (final Exception exception) {
+			throw new StorageLayerException(exception);
+		}		
+	}
+	
+	/**
+	 * Subjects and predicates are counted by SOLR, grouping the matching documents (rows=0) and asking for the number of groups.
+	 * Objects are not indexed as they are (i.e. with their datatype), so in that case matching triples are scanned.
+	 */
+	@Override
+	public long countDistinct(final TripleMatch pattern, final int position) throws StorageLayerException {
+		if (position == 2) {
+			final Set<Node> objects = new HashSet<Node>();
+			final Iterator<Triple> iterator = query(pattern);
+			while (iterator.hasNext()) {
+				objects.add(iterator.next().getObject());
+			}
+			return objects.size();
+		}
+
+		final SolrQuery query = asSolrQuery(pattern);
+		query.setRows(0);
+		query.set(GroupParams.GROUP, true);
+		query.set(GroupParams.GROUP_FIELD, position == 0 ? Field.S : Field.P);
+		query.set(GroupParams.GROUP_TOTAL_COUNT, true);
+		try {
+			final Integer groups = searcher.query(query).getGroupResponse().getValues().get(0).getNGroups();
+			return groups != null ? groups : 0;
+		} catch (final Exception exception) {
+			throw new StorageLayerException(exception);
+		}		
+	}
 	
 	/**
 	 * Builds a filter query with the given data.
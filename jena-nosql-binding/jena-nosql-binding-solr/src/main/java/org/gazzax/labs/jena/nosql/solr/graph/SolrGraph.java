@@ -4,7 +4,10 @@ import java.util.ArrayList;
 
 import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
 import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
 import org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory;
+import org.gazzax.labs.jena.nosql.fwk.graph.CountableGraph;
+import org.gazzax.labs.jena.nosql.fwk.graph.SliceableGraph;
 import org.gazzax.labs.jena.nosql.fwk.log.Log;
 import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
 import org.gazzax.labs.jena.nosql.fwk.log.MessageFactory;
@@ -26,7 +29,7 @@ import com.hp.hpl.jena.util.iterator.WrappedIterator;
  * @author Andrea Gazzarini
  * @since 1.0
  */
-public class SolrGraph extends GraphBase {
+public class SolrGraph extends GraphBase implements SliceableGraph, CountableGraph {
 	private static final Log LOGGER = new Log(LoggerFactory.getLogger(SolrGraph.class));
 	private static final ExtendedIterator<Triple> EMPTY_TRIPLES_ITERATOR = WrappedIterator.createNoRemove(new ArrayList<Triple>(0).iterator());
 
@@ -100,7 +103,28 @@ public class SolrGraph extends GraphBase {
 	@Override
 	public ExtendedIterator<Triple> graphBaseFind(final TripleMatch pattern) {
 		try  {
-			return WrappedIterator.createNoRemove(dao.query(pattern));
+			final QueryContext running = QueryContext.running();
+			return WrappedIterator.createNoRemove(running != null ? dao.query(pattern, running) : dao.query(pattern));
+		} catch (StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			return EMPTY_TRIPLES_ITERATOR;
+		}
+	}
+	
+	@Override
+	public long count(final Triple pattern) throws StorageLayerException {
+		return dao.countTriples(pattern);
+	}
+
+	@Override
+	public long countDistinct(final Triple pattern, final int position) throws StorageLayerException {
+		return dao.countDistinct(pattern, position);
+	}
+
+	@Override
+	public ExtendedIterator<Triple> find(final Triple pattern, final long offset, final long limit) {
+		try  {
+			return WrappedIterator.createNoRemove(dao.query(pattern, offset, limit));
 		} catch (StorageLayerException exception) {
 			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
 			return EMPTY_TRIPLES_ITERATOR;
@@ -1,5 +1,8 @@
 package org.gazzax.labs.jena.nosql.fwk.dictionary;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.gazzax.labs.jena.nosql.fwk.InitialisationException;
@@ -83,6 +86,31 @@ public abstract class DictionaryBase<V> implements Dictionary<V>, ManageableDict
 		return idLookupsCount.get();
 	}	
 	
+	/**
+	 * Returns this dictionary and all dictionaries it is made of (e.g. its decoratees), from the outermost.
+	 * 
+	 * @return this dictionary and all dictionaries it is made of.
+	 */
+	public final List<ManageableDictionary> getTiers() {
+		final List<ManageableDictionary> tiers = new ArrayList<ManageableDictionary>();
+		tiers.add(this);
+		for (final Dictionary<?> decoratee : getDecoratees()) {
+			if (decoratee instanceof DictionaryBase) {
+				tiers.addAll(((DictionaryBase<?>) decoratee).getTiers());
+			}
+		}
+		return tiers;
+	}
+	
+	/**
+	 * Returns the dictionaries this dictionary delegates to.
+	 * 
+	 * @return the dictionaries this dictionary delegates to, an empty list by default.
+	 */
+	protected List<? extends Dictionary<?>> getDecoratees() {
+		return Collections.emptyList();
+	}
+	
 	@Override
 	public final void close() {
 		ManagementRegistrar.unregisterDictionary(this);
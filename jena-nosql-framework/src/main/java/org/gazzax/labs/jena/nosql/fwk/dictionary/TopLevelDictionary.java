@@ -3,6 +3,7 @@ package org.gazzax.labs.jena.nosql.fwk.dictionary;
 import java.util.Iterator;
 
 import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
 
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
@@ -113,6 +114,16 @@ public interface TopLevelDictionary extends Dictionary<Node> {
 	 */
 	Iterator<Triple> asTripleIterator(Iterator<byte[][]> identifiers);
 
+	/**
+	 * Converts a given iterator of identifiers in an iterator of Triples, on behalf of a query that may be cancelled 
+	 * or that has a deadline: once that happens, no further value is decoded.
+	 * 
+	 * @param identifiers the iterator of identifiers.
+	 * @param context the execution context of the query.
+	 * @return the corresponding iterator of Triples.
+	 */
+	Iterator<Triple> asTripleIterator(Iterator<byte[][]> identifiers, QueryContext context);
+
 	/**
 	 * Converts the incoming ids iterator in a Triple iterator.
 	 * Each id in the incoming iterator is converted into the corresponding Triple.
@@ -1,12 +1,15 @@
 package org.gazzax.labs.jena.nosql.fwk.dictionary.node;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.gazzax.labs.jena.nosql.fwk.InitialisationException;
 import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.CacheStrategy;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.Dictionary;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.DictionaryRuntimeContext;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
 import org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory;
@@ -299,4 +302,9 @@ public class CacheNodectionary extends TopLevelDictionaryBase implements Managea
 	public long getValueEvictionsCount() {
 		return valueEvictionsCount.get();
 	}
+
+	@Override
+	protected List<? extends Dictionary<?>> getDecoratees() {
+		return Collections.singletonList(decoratee);
+	}
 }
\ No newline at end of file
@@ -7,10 +7,13 @@ import static org.gazzax.labs.jena.nosql.fwk.util.Utility.murmurHash3;
 import static org.gazzax.labs.jena.nosql.fwk.util.Utility.namespace;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.gazzax.labs.jena.nosql.fwk.InitialisationException;
 import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.Dictionary;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
 import org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory;
 import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
@@ -202,4 +205,9 @@ public class KnownURIsDictionary extends SingleIndexNodeDictionary implements Ma
 	protected void closeInternal() {
 		decoratee.close();
 	}	
+
+	@Override
+	protected List<? extends Dictionary<?>> getDecoratees() {
+		return Collections.singletonList(decoratee);
+	}
 }
\ No newline at end of file
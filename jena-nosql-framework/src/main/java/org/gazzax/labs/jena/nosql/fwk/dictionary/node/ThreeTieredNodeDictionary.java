@@ -5,6 +5,9 @@ import static org.gazzax.labs.jena.nosql.fwk.util.Bytes.subarray;
 import static org.gazzax.labs.jena.nosql.fwk.util.Utility.localName;
 import static org.gazzax.labs.jena.nosql.fwk.util.Utility.namespace;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.gazzax.labs.jena.nosql.fwk.InitialisationException;
 import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.Dictionary;
@@ -123,4 +126,9 @@ public class ThreeTieredNodeDictionary extends TopLevelDictionaryBase {
 	public boolean isResource(final byte[] id) {
 		return id != null && id[0] == MARKER;
 	}
+
+	@Override
+	protected List<? extends Dictionary<?>> getDecoratees() {
+		return Arrays.<Dictionary<?>>asList(namespaces, localNames, bNodesAndLiterals);
+	}
 }
\ No newline at end of file
@@ -10,7 +10,9 @@ import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.DictionaryBase;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.DictionaryRuntimeContext;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
 import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.util.ClosingIterator;
 
 import com.google.common.collect.AbstractIterator;
 import com.hp.hpl.jena.graph.Node;
@@ -134,7 +136,7 @@ public abstract class TopLevelDictionaryBase extends DictionaryBase<Node> implem
 
 	@Override
 	public Iterator<Quad> asQuadIterator(final Iterator<byte[][]> quads) {
-		return new AbstractIterator<Quad>() {
+		return new ClosingIterator<Quad>(new AbstractIterator<Quad>() {
 
 			@Override
 			protected Quad computeNext() {
@@ -153,18 +155,26 @@ public abstract class TopLevelDictionaryBase extends DictionaryBase<Node> implem
 
 				return endOfData();
 			}
-		};
+		}, quads);
 	}
 
 	@Override
 	public Iterator<Triple> asTripleIterator(final Iterator<byte[][]> triples) {
+		return asTripleIterator(triples, null);
+	}
+
+	@Override
+	public Iterator<Triple> asTripleIterator(final Iterator<byte[][]> triples, final QueryContext context) {
 
-		return new AbstractIterator<Triple>() {
+		return new ClosingIterator<Triple>(new AbstractIterator<Triple>() {
 
 			@Override
 			protected Triple computeNext() {
 
 				while (triples.hasNext()) {
+					if (context != null) {
+						context.checkpoint();
+					}
 
 					final byte[][] ids = triples.next();
 					try {
@@ -177,7 +187,7 @@ public abstract class TopLevelDictionaryBase extends DictionaryBase<Node> implem
 
 				return endOfData();
 			}
-		};
+		}, triples);
 	}
 
 	@Override
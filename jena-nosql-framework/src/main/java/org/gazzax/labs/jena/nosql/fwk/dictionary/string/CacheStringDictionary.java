@@ -1,6 +1,8 @@
 package org.gazzax.labs.jena.nosql.fwk.dictionary.string;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -263,4 +265,9 @@ public class CacheStringDictionary extends StringDictionaryBase implements Manag
 	public long getValueEvictionsCount() {
 		return valueEvictionsCount.get();
 	}
+
+	@Override
+	protected List<? extends Dictionary<?>> getDecoratees() {
+		return Collections.singletonList(decoratee);
+	}
 }
\ No newline at end of file
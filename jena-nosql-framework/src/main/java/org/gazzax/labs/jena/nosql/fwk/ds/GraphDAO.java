@@ -47,6 +47,13 @@ public interface GraphDAO<T, P> {
 	 */
 	void executePendingMutations() throws StorageLayerException;
 
+	/**
+	 * Discards the mutations that have been collected (by the current thread) and not yet executed.
+	 * A requestor is supposed to call this method when a command fails, so that its mutations won't be executed
+	 * together with those of the next command.
+	 */
+	void discardPendingMutations();
+
 	/**
 	 * Clears the storage (i.e. remove all triples from the storage).
 	 */
@@ -54,6 +61,8 @@ public interface GraphDAO<T, P> {
 
 	/**
 	 * Executes a given query.
+	 * Implementors may return a {@link com.hp.hpl.jena.util.iterator.ClosableIterator}: in that case a consumer that 
+	 * abandons the iteration is supposed to close it, in order to stop any further storage (paging) request.
 	 * 
 	 * @param query the pattern query.
 	 * @return an iterator over query results.
@@ -61,6 +70,66 @@ public interface GraphDAO<T, P> {
 	 */
 	Iterator<T> query(P query) throws StorageLayerException;
 
+	/**
+	 * Executes a given query, skipping the first "offset" results and returning at most "limit" results.
+	 * This is used when the caller knows how many rows it needs (e.g. a SPARQL LIMIT / OFFSET): implementors 
+	 * are supposed to push the slice down to the storage, so that no more than the required rows are read.
+	 * 
+	 * @param query the pattern query.
+	 * @param offset how many results will be skipped.
+	 * @param limit the max number of results, a negative value means no limit.
+	 * @return an iterator over (at most "limit") query results.
+	 * @throws StorageLayerException in case of storage access failure.
+	 */
+	Iterator<T> query(P query, long offset, long limit) throws StorageLayerException;
+
+	/**
+	 * Executes several (partially bound) pattern queries at once.
+	 * This is mainly used for bind joins, where the same pattern is executed for many intermediate bindings: 
+	 * implementors are supposed to answer the whole batch with one storage round trip (or with concurrent requests).
+	 * 
+	 * @param queries the pattern queries.
+	 * @return the query results, one iterator for each query, in the same order of the given queries.
+	 * @throws StorageLayerException in case of storage access failure.
+	 */
+	List<Iterator<T>> batchQuery(List<P> queries) throws StorageLayerException;
+
+	/**
+	 * Executes a given query on behalf of a query that may be cancelled or that has a deadline.
+	 * Once the given context has been cancelled (or its deadline has passed) implementors are supposed to abandon 
+	 * any in-flight request and to stop requesting further result pages, raising a 
+	 * {@link com.hp.hpl.jena.query.QueryCancelledException} to the consumer.
+	 * 
+	 * @param query the pattern query.
+	 * @param context the query execution context.
+	 * @return an iterator over query results.
+	 * @throws StorageLayerException in case of storage access failure.
+	 * @see #query(Object)
+	 */
+	Iterator<T> query(P query, QueryContext context) throws StorageLayerException;
+
+	/**
+	 * Executes several pattern queries at once, on behalf of a query that may be cancelled or that has a deadline.
+	 * 
+	 * @param queries the pattern queries.
+	 * @param context the query execution context.
+	 * @return the query results, one iterator for each query, in the same order of the given queries.
+	 * @throws StorageLayerException in case of storage access failure.
+	 * @see #batchQuery(List)
+	 * @see #query(Object, QueryContext)
+	 */
+	List<Iterator<T>> batchQuery(List<P> queries, QueryContext context) throws StorageLayerException;
+
+	/**
+	 * Returns true if at least one triple matches the given pattern.
+	 * Implementors should answer with a dedicated (i.e. limited to one result) query.
+	 * 
+	 * @param pattern the triple pattern.
+	 * @return true if at least one triple matches the given pattern.
+	 * @throws StorageLayerException in case of storage access failure.
+	 */
+	boolean exists(P pattern) throws StorageLayerException;
+
 	/**
 	 * Counts how many triples we have in the graph associated with this DAO.
 	 * 
@@ -68,4 +137,25 @@ public interface GraphDAO<T, P> {
 	 * @throws StorageLayerException in case of data access failure.
 	 */
 	long countTriples() throws StorageLayerException;
+
+	/**
+	 * Counts how many triples match a given pattern.
+	 * Implementors are expected to answer, at least, graph-wide and per-predicate patterns without scanning the matching triples.
+	 * That may require maintained counters, so the result can be approximate.
+	 * 
+	 * @param pattern the triple pattern.
+	 * @return how many triples match the given pattern.
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	long countTriples(P pattern) throws StorageLayerException;
+
+	/**
+	 * Counts how many distinct values the triples that match a given pattern have in a given position.
+	 * 
+	 * @param pattern the triple pattern.
+	 * @param position the position (0 = subject, 1 = predicate, 2 = object).
+	 * @return how many distinct values the triples that match the given pattern have in the given position.
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	long countDistinct(P pattern, int position) throws StorageLayerException;
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package org.gazzax.labs.jena.nosql.fwk.ds;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.ds.GroupCommitter.Mutation;
+
+/**
+ * A {@link GraphDAO} decorator that routes mutations through a {@link GroupCommitter}.
+ * Insertions are collected (per thread) until {@link #executePendingMutations()} is called: at that point they are
+ * submitted to the committer and the caller waits until the shared batch they belong to has been acknowledged.
+ * Queries are directly executed by the decorated DAO.
+ *
+ * @see http://en.wikipedia.org/wiki/Decorator_pattern
+ * @author Andrea Gazzarini
+ * @since 1.0
+ * @param <T> how this DAO represents a triple.
+ * @param <P> how this DAO represents a triple pattern.
+ */
+public class GroupCommitGraphDAO<T, P> implements GraphDAO<T, P> {
+	private final GraphDAO<T, P> decoratee;
+	private final GroupCommitter committer;
+
+	private final ThreadLocal<List<Mutation<?>>> pendingMutations = new ThreadLocal<List<Mutation<?>>>() {
+		protected List<Mutation<?>> initialValue() {
+			return new ArrayList<Mutation<?>>();
+		};
+	};
+
+	/**
+	 * Builds a new decorator with the given data.
+	 *
+	 * @param decoratee the decorated DAO.
+	 * @param committer the group committer.
+	 */
+	public GroupCommitGraphDAO(final GraphDAO<T, P> decoratee, final GroupCommitter committer) {
+		this.decoratee = decoratee;
+		this.committer = committer;
+	}
+
+	@Override
+	public void insertTriple(final T triple) throws StorageLayerException {
+		pendingMutations.get().add(new Mutation<T>(decoratee, triple, true));
+	}
+
+	@Override
+	public void deleteTriple(final T triple) throws StorageLayerException {
+		pendingMutations.get().add(new Mutation<T>(decoratee, triple, false));
+		executePendingMutations();
+	}
+
+	@Override
+	public List<T> deleteTriples(final Iterator<T> triples) throws StorageLayerException {
+		final List<T> deleted = new ArrayList<T>();
+		final List<Mutation<?>> mutations = pendingMutations.get();
+		while (triples.hasNext()) {
+			final T triple = triples.next();
+			mutations.add(new Mutation<T>(decoratee, triple, false));
+			deleted.add(triple);
+		}
+		executePendingMutations();
+		return deleted;
+	}
+
+	@Override
+	public void executePendingMutations() throws StorageLayerException {
+		final List<Mutation<?>> mutations = pendingMutations.get();
+		if (mutations.isEmpty()) {
+			return;
+		}
+
+		pendingMutations.set(new ArrayList<Mutation<?>>());
+		committer.commit(mutations);
+	}
+
+	@Override
+	public void discardPendingMutations() {
+		pendingMutations.get().clear();
+	}
+
+	@Override
+	public void clear() {
+		pendingMutations.get().clear();
+		decoratee.clear();
+	}
+
+	@Override
+	public Iterator<T> query(final P query) throws StorageLayerException {
+		return decoratee.query(query);
+	}
+
+	@Override
+	public Iterator<T> query(final P query, final long offset, final long limit) throws StorageLayerException {
+		return decoratee.query(query, offset, limit);
+	}
+
+	@Override
+	public List<Iterator<T>> batchQuery(final List<P> queries) throws StorageLayerException {
+		return decoratee.batchQuery(queries);
+	}
+
+	@Override
+	public Iterator<T> query(final P query, final QueryContext context) throws StorageLayerException {
+		return decoratee.query(query, context);
+	}
+
+	@Override
+	public List<Iterator<T>> batchQuery(final List<P> queries, final QueryContext context) throws StorageLayerException {
+		return decoratee.batchQuery(queries, context);
+	}
+
+	@Override
+	public boolean exists(final P pattern) throws StorageLayerException {
+		return decoratee.exists(pattern);
+	}
+
+	@Override
+	public long countTriples() throws StorageLayerException {
+		return decoratee.countTriples();
+	}
+
+	@Override
+	public long countTriples(final P pattern) throws StorageLayerException {
+		return decoratee.countTriples(pattern);
+	}
+
+	@Override
+	public long countDistinct(final P pattern, final int position) throws StorageLayerException {
+		return decoratee.countDistinct(pattern, position);
+	}
+}
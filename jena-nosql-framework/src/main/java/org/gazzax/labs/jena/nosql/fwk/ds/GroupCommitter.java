@@ -0,0 +1,281 @@
+package org.gazzax.labs.jena.nosql.fwk.ds;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces mutations coming from several (concurrent) writers in shared batches.
+ * Each writer submits its pending mutations and waits until the batch they have been merged in is acknowledged by the storage.
+ * A batch is sent to the storage when it reaches a given size or when its first mutation waited for a given max latency,
+ * whichever comes first. That trades a small (and bounded) latency for a reduced number of storage requests.
+ *
+ * Mutations are applied by a single (daemon) thread, so the underlying {@link GraphDAO} instances see them as coming
+ * from the same writer.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class GroupCommitter {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(GroupCommitter.class));
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+	public static final int DEFAULT_MAX_LATENCY = 2;
+
+	/**
+	 * A single mutation (insert or delete) against a given {@link GraphDAO}.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 * @param <T> how the target DAO represents a triple.
+	 */
+	static class Mutation<T> {
+		final GraphDAO<T, ?> dao;
+		final T triple;
+		final boolean isInsert;
+
+		/**
+		 * Builds a new mutation with the given data.
+		 *
+		 * @param dao the target DAO.
+		 * @param triple the triple.
+		 * @param isInsert true in case of insert, false in case of delete.
+		 */
+		Mutation(final GraphDAO<T, ?> dao, final T triple, final boolean isInsert) {
+			this.dao = dao;
+			this.triple = triple;
+			this.isInsert = isInsert;
+		}
+
+		/**
+		 * Applies this mutation.
+		 *
+		 * @throws StorageLayerException in case of data access failure.
+		 */
+		void apply() throws StorageLayerException {
+			if (isInsert) {
+				dao.insertTriple(triple);
+			} else {
+				dao.deleteTriple(triple);
+			}
+		}
+	}
+
+	/**
+	 * A group of mutations submitted by a single writer.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static class Commit {
+		final List<Mutation<?>> mutations;
+		final CountDownLatch acknowledged = new CountDownLatch(1);
+		volatile StorageLayerException failure;
+
+		/**
+		 * Builds a new commit with the given mutations.
+		 *
+		 * @param mutations the mutations.
+		 */
+		Commit(final List<Mutation<?>> mutations) {
+			this.mutations = mutations;
+		}
+	}
+
+	private final BlockingQueue<Commit> commits = new LinkedBlockingQueue<Commit>();
+	private final int maxBatchSize;
+	private final long maxLatencyInNanos;
+	private final Thread worker;
+
+	private volatile boolean running = true;
+
+	/**
+	 * Builds and starts a new group committer.
+	 *
+	 * @param maxBatchSize the max number of mutations that will be grouped in a single batch.
+	 * @param maxLatencyInMillis the max time (in ms) a mutation will wait for other mutations before being sent to the storage.
+	 */
+	public GroupCommitter(final int maxBatchSize, final long maxLatencyInMillis) {
+		this.maxBatchSize = maxBatchSize > 0 ? maxBatchSize : DEFAULT_MAX_BATCH_SIZE;
+		this.maxLatencyInNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyInMillis >= 0 ? maxLatencyInMillis : DEFAULT_MAX_LATENCY);
+		this.worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				commitLoop();
+			}
+		}, "jena-nosql-group-committer");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Submits the given mutations and waits until the batch they belong to has been acknowledged.
+	 *
+	 * @param mutations the mutations.
+	 * @throws StorageLayerException in case the batch cannot be applied.
+	 */
+	void commit(final List<Mutation<?>> mutations) throws StorageLayerException {
+		if (mutations.isEmpty()) {
+			return;
+		}
+
+		if (!running) {
+			throw new StorageLayerException(new IllegalStateException(MessageCatalog._00104_GROUP_COMMITTER_IS_CLOSED));
+		}
+
+		final Commit commit = new Commit(mutations);
+		commits.add(commit);
+		try {
+			while (!commit.acknowledged.await(100, TimeUnit.MILLISECONDS)) {
+				if (!worker.isAlive()) {
+					throw new StorageLayerException(new IllegalStateException(MessageCatalog._00104_GROUP_COMMITTER_IS_CLOSED));
+				}
+			}
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new StorageLayerException(exception);
+		}
+
+		if (commit.failure != null) {
+			throw commit.failure;
+		}
+	}
+
+	/**
+	 * Stops this committer.
+	 * Mutations that have been already submitted are applied before the worker thread terminates.
+	 */
+	public void shutdown() {
+		running = false;
+		try {
+			worker.join();
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Worker loop: collects commits in groups and applies them.
+	 */
+	void commitLoop() {
+		while (running || !commits.isEmpty()) {
+			final List<Commit> group = new ArrayList<Commit>();
+			try {
+				final Commit first = commits.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+
+				group.add(first);
+				int size = first.mutations.size();
+				final long deadline = System.nanoTime() + maxLatencyInNanos;
+				while (size < maxBatchSize) {
+					final Commit next = commits.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					group.add(next);
+					size += next.mutations.size();
+				}
+			} catch (final InterruptedException exception) {
+				running = false;
+			}
+
+			if (!group.isEmpty()) {
+				apply(group);
+			}
+		}
+	}
+
+	/**
+	 * Applies a group of commits as a whole and wakes up the corresponding writers.
+	 * If the group fails, its commits are retried one by one, so that only the writers whose mutations actually fail 
+	 * get the failure. Retrying is safe because inserting an existing triple or deleting a missing triple doesn't change data.
+	 *
+	 * @param group the group of commits.
+	 */
+	void apply(final List<Commit> group) {
+		final StorageLayerException failure = apply(group, group.size() == 1);
+		if (failure == null || group.size() == 1) {
+			acknowledge(group, failure);
+			return;
+		}
+
+		for (final Commit commit : group) {
+			final List<Commit> single = Collections.singletonList(commit);
+			acknowledge(single, apply(single, true));
+		}
+	}
+
+	/**
+	 * Applies the given commits within one batch.
+	 * On failure, the mutations that have been collected and not yet executed are discarded, so that they won't be 
+	 * executed together with the next batch.
+	 *
+	 * @param commits the commits.
+	 * @param logFailure true if a failure must be logged (i.e. it is going to be propagated to the writers).
+	 * @return the failure, null if the commits have been successfully applied.
+	 */
+	private StorageLayerException apply(final List<Commit> commits, final boolean logFailure) {
+		final Set<GraphDAO<?, ?>> touched = new LinkedHashSet<GraphDAO<?, ?>>();
+		final Set<GraphDAO<?, ?>> pending = new LinkedHashSet<GraphDAO<?, ?>>();
+		StorageLayerException failure = null;
+		try {
+			for (final Commit commit : commits) {
+				for (final Mutation<?> mutation : commit.mutations) {
+					touched.add(mutation.dao);
+					mutation.apply();
+					if (mutation.isInsert) {
+						pending.add(mutation.dao);
+					} else {
+						// A delete is immediately executed together with the mutations that have been collected so far.
+						pending.remove(mutation.dao);
+					}
+				}
+			}
+
+			for (final GraphDAO<?, ?> dao : pending) {
+				dao.executePendingMutations();
+			}
+		} catch (final StorageLayerException exception) {
+			failure = exception;
+		} catch (final RuntimeException exception) {
+			failure = new StorageLayerException(exception);
+		}
+
+		if (failure != null) {
+			for (final GraphDAO<?, ?> dao : touched) {
+				dao.discardPendingMutations();
+			}
+			
+			if (logFailure) {
+				LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, failure);
+			}
+		}
+		return failure;
+	}
+
+	/**
+	 * Wakes up the writers of the given commits.
+	 *
+	 * @param commits the commits.
+	 * @param failure the failure that will be propagated to the writers, null in case of success.
+	 */
+	private void acknowledge(final List<Commit> commits, final StorageLayerException failure) {
+		for (final Commit commit : commits) {
+			commit.failure = failure;
+			commit.acknowledged.countDown();
+		}
+	}
+}
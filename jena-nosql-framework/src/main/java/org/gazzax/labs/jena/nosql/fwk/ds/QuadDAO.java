@@ -0,0 +1,62 @@
+package org.gazzax.labs.jena.nosql.fwk.ds;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+
+/**
+ * Data Access Object that encapsulates the persistence of a dataset at quad level.
+ * Differently from {@link GraphDAO}, which is bound to a single graph, a quad DAO is able to answer
+ * a quad pattern (where the context, too, may be unbound) with just one storage query.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ * @param <Q> how this DAO represents a quad.
+ * @param <P> how this DAO represents a quad pattern.
+ */
+public interface QuadDAO<Q, P> {
+	/**
+	 * Inserts a quad.
+	 *
+	 * @param quad the incoming quad.
+	 * @throws StorageLayerException in case of storage layer access failure.
+	 */
+	void insertQuad(Q quad) throws StorageLayerException;
+
+	/**
+	 * Removes a quad from the storage.
+	 *
+	 * @param quad the incoming quad.
+	 * @throws StorageLayerException in case of storage layer access failure.
+	 */
+	void deleteQuad(Q quad) throws StorageLayerException;
+
+	/**
+	 * Removes the given quads from the storage.
+	 *
+	 * @param quads the incoming quads.
+	 * @return the quads that have been removed.
+	 * @throws StorageLayerException in case of storage layer access failure.
+	 */
+	List<Q> deleteQuads(Iterator<Q> quads) throws StorageLayerException;
+
+	/**
+	 * When a command defines multiple mutations, then at the end the requestor is supposed to call this method.
+	 *
+	 * @throws StorageLayerException in case of storage layer access failure.
+	 */
+	void executePendingMutations() throws StorageLayerException;
+
+	/**
+	 * Executes a given quad pattern query.
+	 * A null identifier acts as a wildcard. Note that a wildcard context matches any named graph: 
+	 * triples belonging to the unnamed graph are never part of the result.
+	 * As for {@link GraphDAO#query(Object)}, the returned iterator may be closed in order to stop any further storage request.
+	 *
+	 * @param query the quad pattern query.
+	 * @return an iterator over query results.
+	 * @throws StorageLayerException in case of storage access failure.
+	 */
+	Iterator<Q> query(P query) throws StorageLayerException;
+}
@@ -0,0 +1,216 @@
+package org.gazzax.labs.jena.nosql.fwk.ds;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile.PatternProfile;
+
+import com.hp.hpl.jena.query.QueryCancelledException;
+
+/**
+ * The execution context of a (read) query: a deadline plus a cancellation flag.
+ * The same context is shared by all storage requests issued on behalf of the same query (e.g. all batch queries
+ * of a SPARQL query, including those running on other threads), so that, once the query has been cancelled or
+ * its deadline has passed, in-flight requests are abandoned and no further result page is requested.
+ * 
+ * If the query is profiled, the context also carries the {@link QueryProfile} of the query. In that case each pattern 
+ * is evaluated with its own (child) context (see {@link #forPattern(String)}), where the storage records the chosen index 
+ * and the fetched pages.
+ * 
+ * While a SPARQL query is running, its context is also bound to the thread that evaluates it (see {@link #running()}), so that
+ * storage requests issued through plain graph API calls (e.g. {@link com.hp.hpl.jena.graph.Graph#find(com.hp.hpl.jena.graph.TripleMatch)})
+ * are abandoned as well, once the query has been cancelled or its deadline has passed.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class QueryContext {
+	private static final ThreadLocal<QueryContext> RUNNING = new ThreadLocal<QueryContext>();
+	
+	private final QueryContext parent;
+	private final long deadline;
+	private final QueryProfile profile;
+	private final PatternProfile patternProfile;
+	private volatile boolean cancelled;
+
+	/**
+	 * Builds a new context without deadline (i.e. the query can only be explicitly cancelled).
+	 */
+	public QueryContext() {
+		this(0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Builds a new context with a given timeout.
+	 *
+	 * @param timeout the timeout, starting from now, a non positive value means no deadline.
+	 * @param unit the timeout unit.
+	 */
+	public QueryContext(final long timeout, final TimeUnit unit) {
+		this(timeout, unit, null);
+	}
+
+	/**
+	 * Builds a new context with a given timeout, for a profiled query.
+	 *
+	 * @param timeout the timeout, starting from now, a non positive value means no deadline.
+	 * @param unit the timeout unit.
+	 * @param profile the query profile, null if the query is not profiled.
+	 */
+	public QueryContext(final long timeout, final TimeUnit unit, final QueryProfile profile) {
+		this.parent = null;
+		this.deadline = timeout > 0 ? System.currentTimeMillis() + unit.toMillis(timeout) : Long.MAX_VALUE;
+		this.profile = profile;
+		this.patternProfile = null;
+	}
+
+	/**
+	 * Builds a new pattern context, which shares deadline and cancellation with the given (query) context.
+	 *
+	 * @param parent the query context.
+	 * @param patternProfile the pattern profile.
+	 */
+	private QueryContext(final QueryContext parent, final PatternProfile patternProfile) {
+		this.parent = parent;
+		this.deadline = parent.deadline;
+		this.profile = parent.profile;
+		this.patternProfile = patternProfile;
+	}
+
+	/**
+	 * Returns the context that will be used for evaluating a given triple pattern.
+	 * If the query is not profiled, the context is this one, otherwise a new pattern profile is started.
+	 *
+	 * @param pattern the pattern, as it will appear in the query profile.
+	 * @return the context that will be used for evaluating the given triple pattern.
+	 */
+	public QueryContext forPattern(final String pattern) {
+		return profile != null ? new QueryContext(parent != null ? parent : this, profile.newPattern(pattern)) : this;
+	}
+
+	/**
+	 * Returns the context of the query that is running on the current thread.
+	 * 
+	 * @return the context of the query that is running on the current thread, null if no query is running.
+	 * @see #bind()
+	 */
+	public static QueryContext running() {
+		return RUNNING.get();
+	}
+	
+	/**
+	 * Makes this the context of the query that is running on the current thread.
+	 * 
+	 * @return the context that was previously running on the current thread, which must be restored once done.
+	 * @see #restore(QueryContext)
+	 */
+	public QueryContext bind() {
+		final QueryContext previous = RUNNING.get();
+		RUNNING.set(this);
+		return previous;
+	}
+	
+	/**
+	 * Restores the context that was running on the current thread before a {@link #bind()}.
+	 * 
+	 * @param previous the context returned by {@link #bind()}.
+	 */
+	public static void restore(final QueryContext previous) {
+		if (previous != null) {
+			RUNNING.set(previous);
+		} else {
+			RUNNING.remove();
+		}
+	}
+
+	/**
+	 * Returns the profile of the query associated with this context.
+	 *
+	 * @return the profile of the query associated with this context, null if the query is not profiled.
+	 */
+	public QueryProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Returns the profile of the pattern associated with this context.
+	 *
+	 * @return the profile of the pattern associated with this context, null if the query is not profiled.
+	 * @see #forPattern(String)
+	 */
+	public PatternProfile getPatternProfile() {
+		return patternProfile;
+	}
+
+	/**
+	 * Records, in the pattern profile (if any), the index that has been chosen for answering the pattern.
+	 *
+	 * @param index the index (e.g. the table, the statement or the filter set) that answers the pattern.
+	 */
+	public void recordIndex(final String index) {
+		if (patternProfile != null) {
+			patternProfile.setIndex(index);
+		}
+	}
+
+	/**
+	 * Records, in the pattern profile (if any), a storage round trip (i.e. a result page request).
+	 */
+	public void recordPage() {
+		if (patternProfile != null) {
+			patternProfile.pageFetched();
+		}
+	}
+
+	/**
+	 * Cancels the query associated with this context.
+	 */
+	public void cancel() {
+		if (parent != null) {
+			parent.cancel();
+		} else {
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * Returns true if the query associated with this context has been cancelled or if its deadline has passed.
+	 *
+	 * @return true if the query associated with this context has been cancelled or if its deadline has passed.
+	 */
+	public boolean isCancelled() {
+		if (parent != null) {
+			return parent.isCancelled();
+		}
+		return cancelled || (deadline != Long.MAX_VALUE && System.currentTimeMillis() >= deadline);
+	}
+
+	/**
+	 * Returns true if this context has a deadline.
+	 *
+	 * @return true if this context has a deadline.
+	 */
+	public boolean hasDeadline() {
+		return deadline != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns how many milliseconds are left before the deadline.
+	 *
+	 * @return how many milliseconds are left before the deadline, {@link Long#MAX_VALUE} if this context has no deadline.
+	 */
+	public long remainingMillis() {
+		return hasDeadline() ? Math.max(0, deadline - System.currentTimeMillis()) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Makes sure the query associated with this context can go on.
+	 * This is supposed to be called before each (blocking) storage request.
+	 *
+	 * @throws QueryCancelledException in case the query has been cancelled or its deadline has passed.
+	 */
+	public void checkpoint() {
+		if (isCancelled()) {
+			throw new QueryCancelledException();
+		}
+	}
+}
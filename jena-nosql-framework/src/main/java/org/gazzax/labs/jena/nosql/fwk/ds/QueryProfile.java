@@ -0,0 +1,297 @@
+package org.gazzax.labs.jena.nosql.fwk.ds;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableCacheDictionary;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableDictionary;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableKnownURIsDictionary;
+
+/**
+ * The profile of a (read) query: what has been done, for each triple pattern, in order to answer the query.
+ *
+ * For each pattern the profile records the chosen index (e.g. the CQL statement or the SOLR filter queries),
+ * the returned rows, the storage round trips (i.e. the fetched result pages), the dictionary lookups / hits per tier
+ * and the wall time, from the request until the pattern results have been consumed (or closed).
+ *
+ * Dictionaries are shared, so lookups / hits are the difference between the tier counters at the beginning and at the
+ * end of the pattern evaluation: concurrent queries (or patterns of the same query) are therefore included.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class QueryProfile {
+	/**
+	 * The profile of a single triple pattern.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	public static class PatternProfile {
+		private final String pattern;
+		private final long startTime = System.nanoTime();
+		private final AtomicLong rows = new AtomicLong();
+		private final AtomicInteger pages = new AtomicInteger();
+		private final Map<ManageableDictionary, long[]> dictionaries = new LinkedHashMap<ManageableDictionary, long[]>();
+
+		private volatile String index;
+		private volatile long elapsed = -1;
+
+		/**
+		 * Builds a new profile for the given pattern.
+		 *
+		 * @param pattern the pattern, as it will appear in reports.
+		 * @param dictionaries the dictionary tiers that will be watched while the pattern is evaluated.
+		 */
+		PatternProfile(final String pattern, final List<ManageableDictionary> dictionaries) {
+			this.pattern = pattern;
+			for (final ManageableDictionary dictionary : dictionaries) {
+				this.dictionaries.put(dictionary, new long[] {lookups(dictionary), hits(dictionary)});
+			}
+		}
+
+		/**
+		 * Records the index that has been chosen for answering this pattern.
+		 *
+		 * @param index the index (e.g. the table, the statement or the filter set) that answers this pattern.
+		 */
+		public void setIndex(final String index) {
+			this.index = index;
+		}
+
+		/**
+		 * Records a storage round trip (i.e. a result page request).
+		 */
+		public void pageFetched() {
+			pages.incrementAndGet();
+		}
+
+		/**
+		 * Records a returned row.
+		 */
+		public void rowReturned() {
+			rows.incrementAndGet();
+		}
+
+		/**
+		 * Marks the end of this pattern evaluation.
+		 * Only the first call has effect.
+		 */
+		public synchronized void finish() {
+			if (elapsed != -1) {
+				return;
+			}
+
+			elapsed = System.nanoTime() - startTime;
+			for (final Map.Entry<ManageableDictionary, long[]> entry : dictionaries.entrySet()) {
+				final long[] counters = entry.getValue();
+				counters[0] = lookups(entry.getKey()) - counters[0];
+				counters[1] = hits(entry.getKey()) - counters[1];
+			}
+		}
+
+		/**
+		 * Returns the profiled pattern.
+		 *
+		 * @return the profiled pattern.
+		 */
+		public String getPattern() {
+			return pattern;
+		}
+
+		/**
+		 * Returns the index that has been chosen for answering this pattern.
+		 *
+		 * @return the index that has been chosen for answering this pattern, null if the storage hasn't been accessed.
+		 */
+		public String getIndex() {
+			return index;
+		}
+
+		/**
+		 * Returns the number of rows returned so far.
+		 *
+		 * @return the number of rows returned so far.
+		 */
+		public long getRows() {
+			return rows.get();
+		}
+
+		/**
+		 * Returns the number of storage round trips (i.e. result pages) so far.
+		 *
+		 * @return the number of storage round trips so far.
+		 */
+		public int getPages() {
+			return pages.get();
+		}
+
+		/**
+		 * Returns the wall time, in milliseconds, of this pattern evaluation.
+		 *
+		 * @return the wall time, in milliseconds, of this pattern evaluation, -1 if the evaluation is still in progress.
+		 */
+		public long getElapsedMillis() {
+			return elapsed != -1 ? TimeUnit.NANOSECONDS.toMillis(elapsed) : -1;
+		}
+
+		/**
+		 * Returns the lookups and the hits, for each dictionary tier, occurred while this pattern was evaluated.
+		 * Tiers that don't have a hit counter (e.g. persistent dictionaries) report -1 hits.
+		 *
+		 * @return the lookups and the hits, for each dictionary tier, occurred while this pattern was evaluated.
+		 */
+		public synchronized Map<String, long[]> getDictionaryLookups() {
+			final Map<String, long[]> result = new LinkedHashMap<String, long[]>();
+			for (final Map.Entry<ManageableDictionary, long[]> entry : dictionaries.entrySet()) {
+				final long[] counters = entry.getValue();
+				result.put(
+						entry.getKey().getName(),
+						new long[] {counters[0], entry.getKey() instanceof ManageableCacheDictionary
+								|| entry.getKey() instanceof ManageableKnownURIsDictionary ? counters[1] : -1});
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder()
+				.append(pattern)
+				.append(" index=").append(index)
+				.append(" rows=").append(rows.get())
+				.append(" pages=").append(pages.get())
+				.append(" time=").append(getElapsedMillis()).append("ms");
+
+			if (elapsed != -1) {
+				for (final Map.Entry<String, long[]> entry : getDictionaryLookups().entrySet()) {
+					builder.append(" ").append(entry.getKey()).append("=").append(entry.getValue()[0]);
+					if (entry.getValue()[1] != -1) {
+						builder.append("/").append(entry.getValue()[1]);
+					}
+				}
+			}
+			return builder.toString();
+		}
+	}
+
+	private final String query;
+	private final List<ManageableDictionary> dictionaries;
+	private final long startTime = System.nanoTime();
+	private final List<PatternProfile> patterns = new ArrayList<PatternProfile>();
+	private volatile long elapsed = -1;
+
+	/**
+	 * Builds a new profile for the given query.
+	 *
+	 * @param query the query, as it will appear in reports.
+	 * @param dictionaries the dictionary tiers that will be watched while each pattern is evaluated.
+	 */
+	public QueryProfile(final String query, final List<ManageableDictionary> dictionaries) {
+		this.query = query;
+		this.dictionaries = dictionaries;
+	}
+
+	/**
+	 * Starts the profile of a new triple pattern.
+	 *
+	 * @param pattern the pattern, as it will appear in reports.
+	 * @return the profile of the given pattern.
+	 */
+	public PatternProfile newPattern(final String pattern) {
+		final PatternProfile profile = new PatternProfile(pattern, dictionaries);
+		synchronized (patterns) {
+			patterns.add(profile);
+		}
+		return profile;
+	}
+
+	/**
+	 * Marks the end of the query evaluation.
+	 * Only the first call has effect.
+	 *
+	 * @return true if this call actually ended the query evaluation.
+	 */
+	public synchronized boolean finish() {
+		if (elapsed != -1) {
+			return false;
+		}
+
+		elapsed = System.nanoTime() - startTime;
+		for (final PatternProfile pattern : getPatterns()) {
+			pattern.finish();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the profiled query.
+	 *
+	 * @return the profiled query.
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * Returns the profiles of the evaluated patterns, in evaluation order.
+	 *
+	 * @return the profiles of the evaluated patterns.
+	 */
+	public List<PatternProfile> getPatterns() {
+		synchronized (patterns) {
+			return new ArrayList<PatternProfile>(patterns);
+		}
+	}
+
+	/**
+	 * Returns the wall time, in milliseconds, of the query evaluation.
+	 *
+	 * @return the wall time, in milliseconds, of the query evaluation, -1 if the evaluation is still in progress.
+	 */
+	public long getElapsedMillis() {
+		return elapsed != -1 ? TimeUnit.NANOSECONDS.toMillis(elapsed) : -1;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder()
+			.append(query.trim())
+			.append(" (").append(getElapsedMillis()).append("ms)");
+		for (final PatternProfile pattern : getPatterns()) {
+			builder.append("\n\t").append(pattern);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns the total lookups of the given dictionary.
+	 *
+	 * @param dictionary the dictionary.
+	 * @return the total lookups of the given dictionary.
+	 */
+	static long lookups(final ManageableDictionary dictionary) {
+		return dictionary.getIdLookupsCount() + dictionary.getValueLookupsCount();
+	}
+
+	/**
+	 * Returns the total hits of the given dictionary.
+	 *
+	 * @param dictionary the dictionary.
+	 * @return the total hits of the given dictionary, 0 if the dictionary doesn't have a hit counter.
+	 */
+	static long hits(final ManageableDictionary dictionary) {
+		if (dictionary instanceof ManageableCacheDictionary) {
+			final ManageableCacheDictionary cache = (ManageableCacheDictionary) dictionary;
+			return cache.getIdHitsCount() + cache.getValueHitsCount();
+		} else if (dictionary instanceof ManageableKnownURIsDictionary) {
+			final ManageableKnownURIsDictionary knownURIs = (ManageableKnownURIsDictionary) dictionary;
+			return knownURIs.getIdKnownURIsHitsCount() + knownURIs.getValueKnownURIsHitsCount();
+		}
+		return 0;
+	}
+}
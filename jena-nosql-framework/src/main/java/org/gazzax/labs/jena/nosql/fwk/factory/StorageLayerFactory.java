@@ -1,18 +1,40 @@
 package org.gazzax.labs.jena.nosql.fwk.factory;
 
+import java.io.File;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
 import org.gazzax.labs.jena.nosql.fwk.configuration.Configurable;
 import org.gazzax.labs.jena.nosql.fwk.configuration.Configuration;
 import org.gazzax.labs.jena.nosql.fwk.configuration.DefaultConfigurator;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
 import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.GroupCommitter;
 import org.gazzax.labs.jena.nosql.fwk.ds.MapDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QuadDAO;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManagementRegistrar;
+import org.gazzax.labs.jena.nosql.fwk.graph.CacheCoordinator;
+import org.gazzax.labs.jena.nosql.fwk.graph.GraphStatistics;
+import org.gazzax.labs.jena.nosql.fwk.graph.SlowQueryLog;
 import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlDatasetGraph;
 import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.gazzax.labs.jena.nosql.fwk.sparql.EvaluationSettings;
+import org.gazzax.labs.jena.nosql.fwk.sparql.NoSqlOpExecutor;
+import org.gazzax.labs.jena.nosql.fwk.sparql.NoSqlQueryEngine;
+import org.gazzax.labs.jena.nosql.fwk.sparql.NoSqlStageGenerator;
+import org.gazzax.labs.jena.nosql.fwk.sparql.ParallelEvaluator;
+import org.gazzax.labs.jena.nosql.fwk.sparql.QueryPlanCache;
+import org.gazzax.labs.jena.nosql.fwk.sparql.ResultCache;
+import org.gazzax.labs.jena.nosql.fwk.util.HyperLogLog;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.sparql.core.DatasetGraph;
@@ -34,6 +56,8 @@ import com.hp.hpl.jena.sparql.core.DatasetGraph;
  * @since 1.0
  */
 public abstract class StorageLayerFactory implements Configurable {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(StorageLayerFactory.class));
+	
 	private static StorageLayerFactory default_factory;
 	static 
 	{
@@ -42,6 +66,21 @@ public abstract class StorageLayerFactory implements Configurable {
 		default_factory = iterator.hasNext() ? iterator.next() : null;
 	}
 	
+	private GroupCommitter groupCommitter;
+	private ExecutorService readAheadExecutor;
+	private int readAheadBufferSize = 1000;
+	private int patternCacheMaxRows;
+	private int patternCacheMaxRowsPerPattern = 1000;
+	private int entityCacheMaxTriples;
+	private int entityCacheMaxTriplesPerEntity = 1000;
+	private GraphStatistics statistics;
+	private ParallelEvaluator parallelEvaluator;
+	private SlowQueryLog slowQueryLog;
+	private QueryPlanCache queryPlanCache;
+	private ResultCache resultCache;
+	private EvaluationSettings evaluationSettings;
+	private final CacheCoordinator cacheCoordinator = new CacheCoordinator();
+	
 	/**
 	 * Returns the {@link MapDAO}.
 	 * A {@link MapDAO} instance is required in order to manage the persistent logic of a BIndex.
@@ -79,6 +118,17 @@ public abstract class StorageLayerFactory implements Configurable {
 	@SuppressWarnings("rawtypes")
 	public abstract GraphDAO getGraphDAO();
 	
+	/**
+	 * Returns the Data Access Object for interacting with the whole dataset at quad level.
+	 * Storages that don't support native quad access return null (that is the default behaviour): in that case 
+	 * quad patterns are answered by iterating over the named graphs.
+	 * 
+	 * @return the Data Access Object for interacting with the quad index, or null if quad access is not supported.
+	 */
+	public QuadDAO<byte[][], byte[][]> getQuadDAO() {
+		return null;
+	}
+	
 	/**
 	 * Returns an unnamed {@link Graph} specific implementation associated with the underlying kind of storage.
 	 * 
@@ -121,6 +171,7 @@ public abstract class StorageLayerFactory implements Configurable {
 	public static StorageLayerFactory getFactory(final Configuration<Map<String, Object>> configuration) {
 		try {
 			configuration.configure(default_factory);
+			default_factory.configureFrameworkServices(configuration);
 			return default_factory;
 		} catch (final Exception exception) {
 			throw new RuntimeException(exception);
@@ -136,6 +187,265 @@ public abstract class StorageLayerFactory implements Configurable {
 		return getFactory(new DefaultConfigurator());
 	}
 	
+	/**
+	 * Configures the services that the framework provides regardless the concrete storage.
+	 * 
+	 * @param configuration the configuration.
+	 * @throws StorageLayerException in case of storage access failure.
+	 */
+	void configureFrameworkServices(final Configuration<Map<String, Object>> configuration) throws StorageLayerException {
+		final Boolean groupCommitEnabled = configuration.getParameter("group-commit-enabled", Boolean.FALSE);
+		if (groupCommitEnabled && groupCommitter == null) {
+			groupCommitter = new GroupCommitter(
+					configuration.getParameter("group-commit-max-batch-size", GroupCommitter.DEFAULT_MAX_BATCH_SIZE),
+					configuration.getParameter("group-commit-max-latency-msecs", GroupCommitter.DEFAULT_MAX_LATENCY));
+		} else if (!groupCommitEnabled && groupCommitter != null) {
+			groupCommitter.shutdown();
+			groupCommitter = null;
+		}
+		
+		final Integer readAheadThreads = configuration.getParameter("read-ahead-threads", Integer.valueOf(0));
+		readAheadBufferSize = configuration.getParameter("read-ahead-buffer-size", Integer.valueOf(1000));
+		if (readAheadExecutor != null) {
+			readAheadExecutor.shutdownNow();
+			readAheadExecutor = null;
+		}
+		
+		if (readAheadThreads > 0) {
+			readAheadExecutor = Executors.newFixedThreadPool(
+					readAheadThreads, 
+					new ThreadFactoryBuilder()
+						.setDaemon(true)
+						.setNameFormat("jena-nosql-read-ahead-%d")
+						.build());
+		}
+		
+		patternCacheMaxRows = configuration.getParameter("pattern-cache-max-rows", Integer.valueOf(0));
+		patternCacheMaxRowsPerPattern = configuration.getParameter("pattern-cache-max-rows-per-pattern", Integer.valueOf(1000));
+		entityCacheMaxTriples = configuration.getParameter("entity-cache-max-triples", Integer.valueOf(0));
+		entityCacheMaxTriplesPerEntity = configuration.getParameter("entity-cache-max-triples-per-entity", Integer.valueOf(1000));
+		
+		final Boolean statisticsEnabled = configuration.getParameter("statistics-enabled", Boolean.FALSE);
+		if (statisticsEnabled && statistics == null) {
+			final MapDAO<byte[], byte[]> statisticsDao = getMapDAO(byte[].class, byte[].class, false, "STATISTICS");
+			statisticsDao.setDefaultValue(null);
+			statisticsDao.createRequiredSchemaEntities();
+			statistics = new GraphStatistics(
+					getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this)), 
+					statisticsDao, 
+					configuration.getParameter("statistics-sketch-precision", HyperLogLog.DEFAULT_PRECISION),
+					configuration.getParameter("statistics-persist-interval-msecs", Integer.valueOf((int) GraphStatistics.DEFAULT_PERSIST_INTERVAL)));
+			try {
+				ManagementRegistrar.registerGraphStatistics(statistics);
+			} catch (final Exception exception) {
+				LOGGER.error(MessageCatalog._00166_MBEAN_ALREADY_REGISTERED, statistics.getName());
+			}
+		} else if (!statisticsEnabled && statistics != null) {
+			statistics.persist();
+			ManagementRegistrar.unregisterGraphStatistics(statistics);
+			statistics = null;
+		}
+		
+		final Boolean queryProfilingEnabled = configuration.getParameter("query-profiling-enabled", Boolean.FALSE);
+		if (queryProfilingEnabled && slowQueryLog == null) {
+			slowQueryLog = new SlowQueryLog(
+					getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this)), 
+					configuration.getParameter("slow-query-threshold-msecs", Integer.valueOf((int) SlowQueryLog.DEFAULT_THRESHOLD)),
+					configuration.getParameter("slow-query-log-size", SlowQueryLog.DEFAULT_MAX_SIZE));
+			try {
+				ManagementRegistrar.registerSlowQueryLog(slowQueryLog);
+			} catch (final Exception exception) {
+				LOGGER.error(MessageCatalog._00166_MBEAN_ALREADY_REGISTERED, slowQueryLog.getName());
+			}
+		} else if (!queryProfilingEnabled && slowQueryLog != null) {
+			ManagementRegistrar.unregisterSlowQueryLog(slowQueryLog);
+			slowQueryLog = null;
+		}
+		
+		final Integer planCacheSize = configuration.getParameter("sparql-plan-cache-size", Integer.valueOf(0));
+		if (queryPlanCache != null && queryPlanCache.getMaxPlans() != planCacheSize) {
+			ManagementRegistrar.unregisterQueryPlanCache(queryPlanCache);
+			queryPlanCache = null;
+		}
+		
+		if (planCacheSize > 0 && queryPlanCache == null) {
+			queryPlanCache = new QueryPlanCache(
+					getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this)), 
+					planCacheSize);
+			try {
+				ManagementRegistrar.registerQueryPlanCache(queryPlanCache);
+			} catch (final Exception exception) {
+				LOGGER.error(MessageCatalog._00166_MBEAN_ALREADY_REGISTERED, queryPlanCache.getName());
+			}
+		}
+		
+		if (resultCache != null) {
+			ManagementRegistrar.unregisterResultCache(resultCache);
+			resultCache.clear();
+			resultCache = null;
+		}
+		
+		final Integer resultCacheMaxBytes = configuration.getParameter("sparql-result-cache-max-bytes", Integer.valueOf(0));
+		if (resultCacheMaxBytes > 0) {
+			final String spillDirectory = configuration.getParameter("sparql-result-cache-spill-directory", (String) null);
+			resultCache = new ResultCache(
+					getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this)), 
+					resultCacheMaxBytes,
+					configuration.getParameter("sparql-result-cache-max-bytes-per-query", ResultCache.DEFAULT_MAX_BYTES_PER_QUERY),
+					spillDirectory != null ? new File(spillDirectory) : null,
+					configuration.getParameter("sparql-result-cache-spill-max-bytes", ResultCache.DEFAULT_SPILL_MAX_BYTES));
+			try {
+				ManagementRegistrar.registerResultCache(resultCache);
+			} catch (final Exception exception) {
+				LOGGER.error(MessageCatalog._00166_MBEAN_ALREADY_REGISTERED, resultCache.getName());
+			}
+		}
+		
+		if (parallelEvaluator != null) {
+			parallelEvaluator.shutdown();
+			parallelEvaluator = null;
+		}
+		
+		final Integer parallelThreads = configuration.getParameter("sparql-parallel-threads", Integer.valueOf(0));
+		if (parallelThreads > 0) {
+			parallelEvaluator = new ParallelEvaluator(parallelThreads, readAheadBufferSize);
+		}
+		
+		if (configuration.getParameter("sparql-identifiers-space-bgp", Boolean.FALSE)) {
+			final String spillDirectory = configuration.getParameter("sparql-spill-directory", (String) null);
+			evaluationSettings = new EvaluationSettings(
+					configuration.getParameter("sparql-bind-join-batch-size", EvaluationSettings.DEFAULT_BIND_JOIN_BATCH_SIZE),
+					parallelEvaluator,
+					configuration.getParameter("sparql-distinct-max-bytes", EvaluationSettings.DEFAULT_DISTINCT_MAX_BYTES),
+					spillDirectory != null ? new File(spillDirectory) : null);
+			NoSqlStageGenerator.register();
+		} else {
+			evaluationSettings = null;
+		}
+		
+		NoSqlOpExecutor.register();
+		if (queryPlanCache != null || resultCache != null) {
+			NoSqlQueryEngine.register();
+		}
+	}
+	
+	/**
+	 * Returns the store statistics used for planning queries.
+	 * 
+	 * @return the store statistics, or null if statistics have not been enabled.
+	 */
+	public GraphStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * Returns the log that collects query profiles.
+	 * 
+	 * @return the log that collects query profiles, or null if query profiling has not been enabled.
+	 */
+	public SlowQueryLog getSlowQueryLog() {
+		return slowQueryLog;
+	}
+	
+	/**
+	 * Returns the cache of the plans of the SPARQL queries over this store.
+	 * 
+	 * @return the cache of the plans of the SPARQL queries, or null if the plan cache has not been enabled.
+	 */
+	public QueryPlanCache getQueryPlanCache() {
+		return queryPlanCache;
+	}
+	
+	/**
+	 * Returns the cache of the results of the SPARQL queries over this store.
+	 * 
+	 * @return the cache of the results of the SPARQL queries, or null if the result cache has not been enabled.
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+	
+	/**
+	 * Returns the settings of the SPARQL evaluation, in identifiers space, over the graphs of this store.
+	 * 
+	 * @return the settings of the SPARQL evaluation in identifiers space, null if it has not been enabled.
+	 */
+	public EvaluationSettings getEvaluationSettings() {
+		return evaluationSettings;
+	}
+	
+	/**
+	 * Returns the coordinator that invalidates the caches of all graphs of this store, whatever graph a mutation goes through.
+	 * 
+	 * @return the cache coordinator of this store.
+	 */
+	public CacheCoordinator getCacheCoordinator() {
+		return cacheCoordinator;
+	}
+	
+	/**
+	 * Returns the max number of rows that each graph will keep in its pattern cache.
+	 * 
+	 * @return the max number of rows that each graph will keep in its pattern cache, 0 if the pattern cache has not been enabled.
+	 */
+	public int getPatternCacheMaxRows() {
+		return patternCacheMaxRows;
+	}
+	
+	/**
+	 * Returns the max number of rows a pattern result can have in order to be cached.
+	 * 
+	 * @return the max number of rows a pattern result can have in order to be cached.
+	 */
+	public int getPatternCacheMaxRowsPerPattern() {
+		return patternCacheMaxRowsPerPattern;
+	}
+	
+	/**
+	 * Returns the max number of triples that each graph will keep in its entity cache.
+	 * 
+	 * @return the max number of triples that each graph will keep in its entity cache, 0 if the entity cache has not been enabled.
+	 */
+	public int getEntityCacheMaxTriples() {
+		return entityCacheMaxTriples;
+	}
+	
+	/**
+	 * Returns the max number of triples an entity can have in order to be cached.
+	 * 
+	 * @return the max number of triples an entity can have in order to be cached.
+	 */
+	public int getEntityCacheMaxTriplesPerEntity() {
+		return entityCacheMaxTriplesPerEntity;
+	}
+	
+	/**
+	 * Returns the executor that runs read-ahead (i.e. background fetching and decoding) of query results.
+	 * 
+	 * @return the read-ahead executor, or null if read-ahead has not been enabled.
+	 */
+	public ExecutorService getReadAheadExecutor() {
+		return readAheadExecutor;
+	}
+	
+	/**
+	 * Returns the max number of results that will be read ahead for each query.
+	 * 
+	 * @return the max number of results that will be read ahead for each query.
+	 */
+	public int getReadAheadBufferSize() {
+		return readAheadBufferSize;
+	}
+	
+	/**
+	 * Returns the {@link GroupCommitter} that coalesces mutations coming from concurrent writers.
+	 * 
+	 * @return the {@link GroupCommitter} in use, or null if group commit has not been enabled.
+	 */
+	public GroupCommitter getGroupCommitter() {
+		return groupCommitter;
+	}
+	
 	/**
 	 * Returns the front dictionary that will be in use.
 	 * 
@@ -0,0 +1,121 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the mutations that a thread buffered on a {@link NoSqlGraph} and that haven't yet been sent to the storage.
+ * A session can be explicit (i.e. opened by the user with {@link NoSqlGraph#beginBulkLoad()}) or implicit.
+ * In the latter case, mutations are flushed as soon as Jena signals the end of the current add operation
+ * (that could be a single triple or a whole list / array / iterator / graph).
+ *
+ * Note that a session is confined to a single thread, because the storage layer collects pending mutations on a per-thread basis.
+ * That's also the reason why the time bound is checked each time a new mutation is buffered, and not by a background timer.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+class BulkLoadSession {
+	private boolean explicit;
+	private int batchSize = NoSqlGraph.DEFAULT_BULK_LOAD_BATCH_SIZE;
+	private long maxDelayInMillis = NoSqlGraph.DEFAULT_BULK_LOAD_MAX_DELAY;
+
+	private int pendingMutations;
+	private long lastFlushTimestamp = System.currentTimeMillis();
+	private final List<byte[]> modifiedSubjects = new ArrayList<byte[]>();
+
+	/**
+	 * Starts an explicit bulk load session.
+	 *
+	 * @param batchSize the max number of mutations that will be buffered before a flush.
+	 * @param maxDelayInMillis the max time (in ms) mutations will be buffered before a flush.
+	 */
+	void begin(final int batchSize, final long maxDelayInMillis) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Bulk load batch size must be greater than 0 (was " + batchSize + ")");
+		}
+
+		this.explicit = true;
+		this.batchSize = batchSize;
+		this.maxDelayInMillis = maxDelayInMillis;
+		this.lastFlushTimestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Ends an explicit bulk load session.
+	 * From now on, this session will behave as an implicit session, using default settings.
+	 * Note that this method doesn't flush anything: that is a responsibility of the owning graph.
+	 */
+	void end() {
+		explicit = false;
+		batchSize = NoSqlGraph.DEFAULT_BULK_LOAD_BATCH_SIZE;
+		maxDelayInMillis = NoSqlGraph.DEFAULT_BULK_LOAD_MAX_DELAY;
+	}
+
+	/**
+	 * Returns true if this session has been explicitly opened.
+	 *
+	 * @return true if this session has been explicitly opened.
+	 */
+	boolean isExplicit() {
+		return explicit;
+	}
+
+	/**
+	 * Returns true if this session holds mutations that haven't been yet flushed.
+	 *
+	 * @return true if this session holds mutations that haven't been yet flushed.
+	 */
+	boolean hasPendingMutations() {
+		return pendingMutations > 0;
+	}
+
+	/**
+	 * Returns the number of buffered mutations that haven't been yet flushed.
+	 *
+	 * @return the number of buffered mutations that haven't been yet flushed.
+	 */
+	int getPendingMutations() {
+		return pendingMutations;
+	}
+
+	/**
+	 * Informs this session about a new buffered mutation.
+	 * The time bound is checked only here, so an idle session can hold its mutations longer than the max delay.
+	 *
+	 * @return true if a size or time bound has been reached and therefore the owning graph should flush.
+	 */
+	boolean mutationHasBeenBuffered() {
+		pendingMutations++;
+		return pendingMutations >= batchSize
+				|| (explicit && System.currentTimeMillis() - lastFlushTimestamp >= maxDelayInMillis);
+	}
+
+	/**
+	 * Informs this session that a buffered mutation concerns a given subject.
+	 * Used by the owning graph for invalidating the cached entities once mutations have been flushed.
+	 *
+	 * @param subject the subject identifier.
+	 */
+	void subjectHasBeenModified(final byte[] subject) {
+		modifiedSubjects.add(subject);
+	}
+
+	/**
+	 * Returns the subjects of the buffered mutations (only if the owning graph asked to track them).
+	 *
+	 * @return the subjects of the buffered mutations.
+	 */
+	List<byte[]> getModifiedSubjects() {
+		return modifiedSubjects;
+	}
+
+	/**
+	 * Informs this session that all pending mutations have been flushed.
+	 */
+	void pendingMutationsHaveBeenFlushed() {
+		pendingMutations = 0;
+		modifiedSubjects.clear();
+		lastFlushTimestamp = System.currentTimeMillis();
+	}
+}
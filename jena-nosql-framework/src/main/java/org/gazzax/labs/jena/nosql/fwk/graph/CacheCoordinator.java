@@ -0,0 +1,97 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coordinates the invalidation of the caches that belong to the graphs of the same store (i.e. the graphs built with the
+ * same {@link org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory}).
+ * A graph may see the triples written through another graph (e.g. the default graph of a {@link NoSqlDatasetGraph} sees
+ * the triples of the named graphs), so a mutation through any graph of the store must invalidate the caches of all graphs.
+ *
+ * Pattern caches share the same version: as for the result cache, each mutation increments it, so that all pattern
+ * results cached before that mutation are no longer valid.
+ * Entity caches, instead, are registered here: a mutation on a subject invalidates the corresponding entity in all of them.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class CacheCoordinator {
+	private final AtomicLong patternsVersion = new AtomicLong();
+	private final Set<EntityCache> entityCaches = new CopyOnWriteArraySet<EntityCache>();
+
+	/**
+	 * Returns the version shared by the pattern caches of the store.
+	 *
+	 * @return the version shared by the pattern caches of the store.
+	 */
+	AtomicLong patternsVersion() {
+		return patternsVersion;
+	}
+
+	/**
+	 * Invalidates all pattern caches of the store, because of a mutation.
+	 */
+	void invalidatePatterns() {
+		patternsVersion.incrementAndGet();
+	}
+
+	/**
+	 * Registers the entity cache of a graph of the store.
+	 *
+	 * @param cache the entity cache.
+	 */
+	void register(final EntityCache cache) {
+		entityCaches.add(cache);
+	}
+
+	/**
+	 * Unregisters the entity cache of a graph of the store.
+	 *
+	 * @param cache the entity cache.
+	 */
+	void unregister(final EntityCache cache) {
+		entityCaches.remove(cache);
+	}
+
+	/**
+	 * Returns true if at least one graph of the store has an entity cache.
+	 *
+	 * @return true if at least one graph of the store has an entity cache.
+	 */
+	boolean hasEntityCaches() {
+		return !entityCaches.isEmpty();
+	}
+
+	/**
+	 * Invalidates the entity associated with a given subject in all entity caches of the store, because of a mutation.
+	 *
+	 * @param subject the subject identifier.
+	 */
+	void invalidateEntity(final byte[] subject) {
+		for (final EntityCache cache : entityCaches) {
+			cache.invalidate(subject);
+		}
+	}
+
+	/**
+	 * Invalidates the entities associated with the subjects of the given triples in all entity caches of the store.
+	 *
+	 * @param triples the identifiers of the triples that have been inserted or deleted.
+	 */
+	void invalidateEntities(final Iterable<byte[][]> triples) {
+		for (final EntityCache cache : entityCaches) {
+			cache.invalidate(triples);
+		}
+	}
+
+	/**
+	 * Removes all cached entities, in all entity caches of the store.
+	 */
+	void clearEntities() {
+		for (final EntityCache cache : entityCaches) {
+			cache.clear();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+
+/**
+ * A Bloom filter over the (s, p, o) identifiers of the triples that belong to a graph.
+ * It answers "definitely not present" without any storage access, while a positive answer needs a storage check.
+ * Deleted triples are never removed from the filter: they simply stay "maybe present".
+ *
+ * @see http://en.wikipedia.org/wiki/Bloom_filter
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+class ContainsFilter {
+
+	/**
+	 * Feeds the filter with the (s, p, o) identifiers of a triple.
+	 * The context, if present, is ignored because a filter is always bound to a single graph.
+	 */
+	@SuppressWarnings("serial")
+	static final Funnel<byte[][]> IDENTIFIERS_FUNNEL = new Funnel<byte[][]>() {
+		@Override
+		public void funnel(final byte[][] ids, final PrimitiveSink into) {
+			for (int i = 0; i < 3; i++) {
+				into.putInt(ids[i].length).putBytes(ids[i]);
+			}
+		}
+	};
+
+	private final BloomFilter<byte[][]> filter;
+
+	/**
+	 * Builds a new filter with the given settings.
+	 *
+	 * @param expectedInsertions the expected number of triples.
+	 * @param falsePositiveProbability the desired false positive probability.
+	 */
+	ContainsFilter(final int expectedInsertions, final double falsePositiveProbability) {
+		this.filter = BloomFilter.create(IDENTIFIERS_FUNNEL, expectedInsertions, falsePositiveProbability);
+	}
+
+	/**
+	 * Records the given triple identifiers.
+	 *
+	 * @param ids the triple identifiers.
+	 */
+	synchronized void put(final byte[][] ids) {
+		filter.put(ids);
+	}
+
+	/**
+	 * Returns true if the triple with the given identifiers might belong to the graph, false if it definitely doesn't.
+	 *
+	 * @param ids the triple identifiers.
+	 * @return true if the triple with the given identifiers might belong to the graph, false if it definitely doesn't.
+	 */
+	synchronized boolean mightContain(final byte[][] ids) {
+		return filter.mightContain(ids);
+	}
+}
@@ -0,0 +1,34 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * A {@link Graph} that is able to count the triples that match a pattern without reading (and decoding) them.
+ * The SPARQL engine uses this capability for answering COUNT aggregates over a single triple pattern.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public interface CountableGraph extends Graph {
+	/**
+	 * Counts the triples that match the given pattern.
+	 *
+	 * @param pattern the triple pattern.
+	 * @return how many triples match the given pattern.
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	long count(Triple pattern) throws StorageLayerException;
+
+	/**
+	 * Counts the distinct values that the triples matching the given pattern have in a given position.
+	 *
+	 * @param pattern the triple pattern.
+	 * @param position the position (0 = subject, 1 = predicate, 2 = object).
+	 * @return how many distinct values the triples matching the given pattern have in the given position.
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	long countDistinct(Triple pattern, int position) throws StorageLayerException;
+}
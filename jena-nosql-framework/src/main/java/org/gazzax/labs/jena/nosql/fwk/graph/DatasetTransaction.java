@@ -0,0 +1,116 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ReadWrite;
+
+/**
+ * A transaction opened against a {@link NoSqlDatasetGraph}.
+ * Within a write transaction, inserts and deletes are collected (already encoded as identifiers) and sent
+ * to the storage, graph by graph, only at commit time.
+ *
+ * Subsequent mutations on the same triple are coalesced, so only the last one is sent to the storage.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+class DatasetTransaction {
+
+	/**
+	 * Mutations collected, within a transaction, for a given graph.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static class GraphMutations {
+		final Map<Triple, byte[][]> inserts = new LinkedHashMap<Triple, byte[][]>();
+		final Map<Triple, byte[][]> deletes = new LinkedHashMap<Triple, byte[][]>();
+	}
+
+	private final ReadWrite mode;
+	private final Map<NoSqlGraph, GraphMutations> mutations = new LinkedHashMap<NoSqlGraph, GraphMutations>();
+
+	/**
+	 * Builds a new transaction with the given mode.
+	 *
+	 * @param mode the transaction mode.
+	 */
+	DatasetTransaction(final ReadWrite mode) {
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns true if this is a write transaction.
+	 *
+	 * @return true if this is a write transaction.
+	 */
+	boolean isWrite() {
+		return mode == ReadWrite.WRITE;
+	}
+
+	/**
+	 * Collects the insertion of a given triple.
+	 *
+	 * @param graph the target graph.
+	 * @param triple the triple.
+	 * @throws StorageLayerException in case the triple cannot be encoded.
+	 */
+	void add(final NoSqlGraph graph, final Triple triple) throws StorageLayerException {
+		final GraphMutations graphMutations = mutationsOf(graph);
+		graphMutations.deletes.remove(triple);
+		graphMutations.inserts.put(triple, graph.asIdentifiers(triple));
+	}
+
+	/**
+	 * Collects the deletion of a given triple.
+	 *
+	 * @param graph the target graph.
+	 * @param triple the triple.
+	 * @throws StorageLayerException in case the triple cannot be encoded.
+	 */
+	void delete(final NoSqlGraph graph, final Triple triple) throws StorageLayerException {
+		final GraphMutations graphMutations = mutationsOf(graph);
+		graphMutations.inserts.remove(triple);
+		graphMutations.deletes.put(triple, graph.asIdentifiers(triple));
+	}
+
+	/**
+	 * Sends all collected mutations to the storage.
+	 *
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	void commit() throws StorageLayerException {
+		for (final Entry<NoSqlGraph, GraphMutations> entry : mutations.entrySet()) {
+			final GraphMutations graphMutations = entry.getValue();
+			entry.getKey().apply(graphMutations.inserts.values(), graphMutations.deletes.values());
+		}
+		mutations.clear();
+	}
+
+	/**
+	 * Discards all collected mutations.
+	 */
+	void abort() {
+		mutations.clear();
+	}
+
+	/**
+	 * Returns the mutations collected for a given graph.
+	 *
+	 * @param graph the graph.
+	 * @return the mutations collected for a given graph.
+	 */
+	private GraphMutations mutationsOf(final NoSqlGraph graph) {
+		GraphMutations graphMutations = mutations.get(graph);
+		if (graphMutations == null) {
+			graphMutations = new GraphMutations();
+			mutations.put(graph, graphMutations);
+		}
+		return graphMutations;
+	}
+}
@@ -0,0 +1,282 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableEntityCache;
+import org.gazzax.labs.jena.nosql.fwk.util.ClosingIterator;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * A bounded (LRU) cache of entities, that is, the (decoded) outgoing triples of a subject, keyed by subject identifier.
+ * Any triple pattern with a bound subject is answered by a cached entity, while entities are loaded (and cached)
+ * by (s, ?, ?) patterns, which is what DESCRIBE and CBD-style CONSTRUCT queries ask for.
+ *
+ * An entity is invalidated when a mutation on its subject reaches the storage. 
+ * In addition, each invalidation increments a version: an entity whose load started before an invalidation 
+ * is not cached, because it could have missed that mutation. 
+ * Mutations through any graph of the store reach all entity caches (see {@link CacheCoordinator}).
+ * As for the pattern cache, the cache is reliable only if the store has no other writers.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class EntityCache implements ManageableEntityCache {
+	static final int DEFAULT_MAX_TRIPLES_PER_ENTITY = 1000;
+	private static final int TRIPLE_OVERHEAD = 64;
+
+	/**
+	 * A cached entity.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Entity {
+		final List<Triple> triples;
+		final long estimatedSize;
+
+		/**
+		 * Builds a new cache entry with the given triples.
+		 *
+		 * @param triples the outgoing triples of the subject.
+		 */
+		Entity(final List<Triple> triples) {
+			this.triples = triples;
+			long size = 0;
+			for (final Triple triple : triples) {
+				size += TRIPLE_OVERHEAD + estimatedSize(triple.getPredicate()) + estimatedSize(triple.getObject());
+			}
+			this.estimatedSize = size;
+		}
+
+		/**
+		 * Returns the (estimated) memory, in bytes, used by the given node.
+		 * Subjects are not considered, because they are shared by all triples of an entity.
+		 *
+		 * @param node the node.
+		 * @return the (estimated) memory, in bytes, used by the given node.
+		 */
+		static long estimatedSize(final Node node) {
+			if (node.isURI()) {
+				return TRIPLE_OVERHEAD + node.getURI().length() * 2;
+			} else if (node.isLiteral()) {
+				return TRIPLE_OVERHEAD + node.getLiteralLexicalForm().length() * 2;
+			}
+			return TRIPLE_OVERHEAD;
+		}
+	}
+
+	private final String name;
+	private final int maxTriples;
+	private final int maxTriplesPerEntity;
+	private final ConcurrentLinkedHashMap<ByteBuffer, Entity> cache;
+
+	private final AtomicLong version = new AtomicLong();
+	private final AtomicLong lookupsCount = new AtomicLong();
+	private final AtomicLong hitsCount = new AtomicLong();
+	private final AtomicLong evictionsCount = new AtomicLong();
+	private final AtomicLong invalidationsCount = new AtomicLong();
+
+	/**
+	 * Builds a new entity cache with the given settings.
+	 *
+	 * @param name the name of this cache.
+	 * @param maxTriples the max number of triples (regardless the subject) that will be cached.
+	 * @param maxTriplesPerEntity the max number of triples an entity can have in order to be cached.
+	 */
+	EntityCache(final String name, final int maxTriples, final int maxTriplesPerEntity) {
+		this.name = name;
+		this.maxTriples = maxTriples;
+		this.maxTriplesPerEntity = Math.min(maxTriplesPerEntity > 0 ? maxTriplesPerEntity : DEFAULT_MAX_TRIPLES_PER_ENTITY, maxTriples);
+		this.cache = new ConcurrentLinkedHashMap
+				.Builder<ByteBuffer, Entity>()
+				.maximumWeightedCapacity(maxTriples)
+				.weigher(new Weigher<Entity>() {
+					@Override
+					public int weightOf(final Entity value) {
+						return Math.max(1, value.triples.size());
+					}
+				})
+				.listener(new EvictionListener<ByteBuffer, Entity>() {
+					@Override
+					public void onEviction(final ByteBuffer key, final Entity value) {
+						evictionsCount.incrementAndGet();
+					}
+				})
+				.build();
+	}
+
+	/**
+	 * Returns the triples of a cached entity that match a given pattern.
+	 *
+	 * @param subject the subject identifier.
+	 * @param pattern the triple pattern, whose subject is the given subject.
+	 * @return an iterator over the matching triples, or null in case of cache miss.
+	 */
+	Iterator<Triple> get(final byte[] subject, final Triple pattern) {
+		lookupsCount.incrementAndGet();
+		final Entity entity = cache.get(ByteBuffer.wrap(subject));
+		if (entity == null) {
+			return null;
+		}
+
+		hitsCount.incrementAndGet();
+		final Node predicate = pattern.getPredicate();
+		final Node object = pattern.getObject();
+		if (!predicate.isConcrete() && !object.isConcrete()) {
+			return entity.triples.iterator();
+		}
+
+		return Iterators.filter(entity.triples.iterator(), new Predicate<Triple>() {
+			@Override
+			public boolean apply(final Triple triple) {
+				return (!predicate.isConcrete() || predicate.equals(triple.getPredicate())) 
+						&& (!object.isConcrete() || object.equals(triple.getObject()));
+			}
+		});
+	}
+
+	/**
+	 * Decorates the given (decoded) entity triples so that they will be cached once they have been entirely consumed.
+	 *
+	 * @param subject the subject identifier.
+	 * @param triples the outgoing triples of the subject, as they come from the storage.
+	 * @return an iterator that returns the same triples of the given iterator.
+	 */
+	Iterator<Triple> cache(final byte[] subject, final Iterator<Triple> triples) {
+		final long versionAtQueryTime = version.get();
+		return new ClosingIterator<Triple>(new AbstractIterator<Triple>() {
+			private List<Triple> entity = new ArrayList<Triple>();
+
+			@Override
+			protected Triple computeNext() {
+				if (triples.hasNext()) {
+					final Triple triple = triples.next();
+					if (entity != null) {
+						if (entity.size() < maxTriplesPerEntity) {
+							entity.add(triple);
+						} else {
+							entity = null;
+						}
+					}
+					return triple;
+				}
+
+				if (entity != null) {
+					final ByteBuffer key = ByteBuffer.wrap(subject);
+					cache.put(key, new Entity(entity));
+					if (version.get() != versionAtQueryTime) {
+						cache.remove(key);
+					}
+					entity = null;
+				}
+				return endOfData();
+			}
+		}, triples);
+	}
+
+	/**
+	 * Invalidates the entity associated with a given subject, because of a mutation.
+	 *
+	 * @param subject the subject identifier.
+	 */
+	void invalidate(final byte[] subject) {
+		version.incrementAndGet();
+		invalidationsCount.incrementAndGet();
+		cache.remove(ByteBuffer.wrap(subject));
+	}
+
+	/**
+	 * Invalidates the entities associated with the subjects of the given triples, because of a mutation.
+	 *
+	 * @param triples the identifiers of the triples that have been inserted or deleted.
+	 */
+	void invalidate(final Iterable<byte[][]> triples) {
+		for (final byte[][] ids : triples) {
+			invalidate(ids[0]);
+		}
+	}
+
+	/**
+	 * Removes all cached entities.
+	 */
+	void clear() {
+		version.incrementAndGet();
+		invalidationsCount.incrementAndGet();
+		cache.clear();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getMaxTriples() {
+		return maxTriples;
+	}
+
+	@Override
+	public int getMaxTriplesPerEntity() {
+		return maxTriplesPerEntity;
+	}
+
+	@Override
+	public int getCachedEntitiesCount() {
+		return cache.size();
+	}
+
+	@Override
+	public long getCachedTriplesCount() {
+		return cache.weightedSize();
+	}
+
+	@Override
+	public long getEstimatedMemoryUsage() {
+		long size = 0;
+		for (final Entity entity : cache.values()) {
+			size += entity.estimatedSize;
+		}
+		return size;
+	}
+
+	@Override
+	public long getLookupsCount() {
+		return lookupsCount.get();
+	}
+
+	@Override
+	public long getHitsCount() {
+		return hitsCount.get();
+	}
+
+	@Override
+	public double getHitsRatio() {
+		final double hits = hitsCount.get();
+		if (hits != 0) {
+			return (hits / lookupsCount.get()) * 100;
+		}
+		return 0;
+	}
+
+	@Override
+	public long getEvictionsCount() {
+		return evictionsCount.get();
+	}
+
+	@Override
+	public long getInvalidationsCount() {
+		return invalidationsCount.get();
+	}
+}
@@ -0,0 +1,379 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import static org.gazzax.labs.jena.nosql.fwk.util.Bytes.SIZE_OF_LONG;
+import static org.gazzax.labs.jena.nosql.fwk.util.Bytes.decodeLong;
+import static org.gazzax.labs.jena.nosql.fwk.util.Bytes.encode;
+import static org.gazzax.labs.jena.nosql.fwk.util.Bytes.subarray;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.ds.MapDAO;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableGraphStatistics;
+import org.gazzax.labs.jena.nosql.fwk.util.HyperLogLog;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Store-wide statistics used for planning queries (e.g. for choosing the evaluation order of triple patterns).
+ * For each predicate (and for the whole store) we keep the number of triples and two HyperLogLog sketches that estimate
+ * the number of distinct subjects and objects.
+ *
+ * Statistics are updated in memory on each mutation and they are periodically written through a {@link MapDAO};
+ * statistics of a predicate are loaded lazily, the first time they are needed.
+ * Sketches cannot forget values, so deletions decrease the triple counts only: distinct counts are an upper bound.
+ * As the storage triple counters, statistics assume set semantics and, in case of several writer processes, the last
+ * persistence wins: {@link #refresh()} reloads the persisted values.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class GraphStatistics implements ManageableGraphStatistics {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(GraphStatistics.class));
+
+	public static final long DEFAULT_PERSIST_INTERVAL = 10000;
+
+	static final ByteBuffer ALL_PREDICATES = ByteBuffer.wrap(new byte[] {0, '*'});
+	static final ByteBuffer PREDICATES_REGISTRY = ByteBuffer.wrap(new byte[] {0, 'P'});
+
+	/**
+	 * Statistics of a predicate (or of the whole store).
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Entry {
+		final AtomicLong triples;
+		final HyperLogLog subjects;
+		final HyperLogLog objects;
+		volatile boolean dirty;
+
+		/**
+		 * Builds a new empty entry.
+		 *
+		 * @param precision the precision of the distinct values sketches.
+		 */
+		Entry(final int precision) {
+			this.triples = new AtomicLong();
+			this.subjects = new HyperLogLog(precision);
+			this.objects = new HyperLogLog(precision);
+		}
+
+		/**
+		 * Builds a new entry from its serialized form.
+		 *
+		 * @param serialized the serialized entry.
+		 */
+		Entry(final byte[] serialized) {
+			final int sketchSize = (serialized.length - SIZE_OF_LONG) / 2;
+			this.triples = new AtomicLong(decodeLong(serialized, 0));
+			this.subjects = new HyperLogLog(subarray(serialized, SIZE_OF_LONG, sketchSize));
+			this.objects = new HyperLogLog(subarray(serialized, SIZE_OF_LONG + sketchSize, sketchSize));
+		}
+
+		/**
+		 * Returns the serialized form of this entry.
+		 *
+		 * @return the serialized form of this entry.
+		 */
+		byte[] serialize() {
+			final int sketchSize = subjects.sizeInBytes();
+			final byte[] result = new byte[SIZE_OF_LONG + 2 * sketchSize];
+			encode(triples.get(), result, 0);
+			System.arraycopy(subjects.toByteArray(), 0, result, SIZE_OF_LONG, sketchSize);
+			System.arraycopy(objects.toByteArray(), 0, result, SIZE_OF_LONG + sketchSize, sketchSize);
+			return result;
+		}
+	}
+
+	private final String name;
+	private final MapDAO<byte[], byte[]> dao;
+	private final int precision;
+	private final long persistIntervalInMillis;
+
+	private final ConcurrentMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<ByteBuffer, Entry>();
+	private final Set<ByteBuffer> predicates = Collections.newSetFromMap(new ConcurrentHashMap<ByteBuffer, Boolean>());
+	private volatile boolean predicatesChanged;
+	private volatile long lastPersistence;
+
+	/**
+	 * Builds new statistics with the given data.
+	 *
+	 * @param name the name of these statistics (used for registering them on the management server).
+	 * @param dao the data access object used for persisting statistics.
+	 * @param precision the precision of the distinct values sketches.
+	 * @param persistIntervalInMillis the min interval between two (automatic) persistences.
+	 */
+	public GraphStatistics(
+			final String name,
+			final MapDAO<byte[], byte[]> dao,
+			final int precision,
+			final long persistIntervalInMillis) {
+		this.name = name;
+		this.dao = dao;
+		this.precision = precision;
+		this.persistIntervalInMillis = persistIntervalInMillis;
+		this.lastPersistence = System.currentTimeMillis();
+	}
+
+	/**
+	 * Updates these statistics with a triple that has been added.
+	 *
+	 * @param ids the triple identifiers.
+	 */
+	public void add(final byte[][] ids) {
+		add(entry(ALL_PREDICATES), ids);
+
+		final ByteBuffer predicate = ByteBuffer.wrap(ids[1]);
+		add(entry(predicate), ids);
+		if (predicates.add(predicate)) {
+			predicatesChanged = true;
+		}
+	}
+
+	/**
+	 * Updates these statistics with a triple that has been removed.
+	 *
+	 * @param ids the triple identifiers.
+	 */
+	public void remove(final byte[][] ids) {
+		remove(entry(ALL_PREDICATES));
+		remove(entry(ByteBuffer.wrap(ids[1])));
+	}
+
+	/**
+	 * Updates these statistics with triples that have been removed.
+	 *
+	 * @param removed the identifiers of the removed triples.
+	 */
+	public void remove(final List<byte[][]> removed) {
+		for (final byte[][] ids : removed) {
+			remove(ids);
+		}
+	}
+
+	/**
+	 * Resets these statistics (e.g. because the whole store has been cleared), including the persisted values.
+	 */
+	public synchronized void reset() {
+		final List<byte[]> keys = new ArrayList<byte[]>();
+		keys.add(ALL_PREDICATES.array());
+		keys.add(PREDICATES_REGISTRY.array());
+		for (final ByteBuffer predicate : allPredicates()) {
+			keys.add(predicate.array());
+		}
+
+		entries.clear();
+		predicates.clear();
+		predicatesChanged = false;
+		try {
+			dao.delete(keys.toArray(new byte[keys.size()][]));
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00109_UNABLE_TO_PERSIST_STATISTICS, exception);
+		}
+	}
+
+	/**
+	 * Returns the estimated number of triples that match a pattern with the given shape.
+	 *
+	 * @param predicate the predicate identifier, null if the predicate is not known at planning time.
+	 * @param subjectBound true if the subject will be bound.
+	 * @param objectBound true if the object will be bound.
+	 * @return the estimated number of triples that match a pattern with the given shape.
+	 */
+	public double estimate(final byte[] predicate, final boolean subjectBound, final boolean objectBound) {
+		final Entry entry = entry(predicate != null ? ByteBuffer.wrap(predicate) : ALL_PREDICATES);
+		double estimate = entry.triples.get();
+		if (estimate <= 0) {
+			return 0;
+		}
+
+		if (subjectBound) {
+			estimate /= Math.max(1, entry.subjects.cardinality());
+		}
+
+		if (objectBound) {
+			estimate /= Math.max(1, entry.objects.cardinality());
+		}
+		return Math.max(1, estimate);
+	}
+
+	/**
+	 * Persists these statistics if the persist interval elapsed since the last persistence.
+	 */
+	public void persistIfNeeded() {
+		if (System.currentTimeMillis() - lastPersistence >= persistIntervalInMillis) {
+			persist();
+		}
+	}
+
+	@Override
+	public synchronized void persist() {
+		lastPersistence = System.currentTimeMillis();
+		try {
+			for (final Map.Entry<ByteBuffer, Entry> entry : entries.entrySet()) {
+				final Entry statistics = entry.getValue();
+				if (statistics.dirty) {
+					statistics.dirty = false;
+					dao.set(entry.getKey().array(), statistics.serialize());
+				}
+			}
+
+			if (predicatesChanged) {
+				predicatesChanged = false;
+				dao.set(PREDICATES_REGISTRY.array(), serialize(allPredicates()));
+			}
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00109_UNABLE_TO_PERSIST_STATISTICS, exception);
+		}
+	}
+
+	@Override
+	public synchronized void refresh() {
+		persist();
+		entries.clear();
+		predicates.clear();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getTriplesCount() {
+		return entry(ALL_PREDICATES).triples.get();
+	}
+
+	@Override
+	public long getDistinctSubjectsCount() {
+		return entry(ALL_PREDICATES).subjects.cardinality();
+	}
+
+	@Override
+	public long getDistinctObjectsCount() {
+		return entry(ALL_PREDICATES).objects.cardinality();
+	}
+
+	@Override
+	public int getPredicatesCount() {
+		return allPredicates().size();
+	}
+
+	@Override
+	public int getLoadedPredicatesCount() {
+		return Math.max(0, entries.size() - (entries.containsKey(ALL_PREDICATES) ? 1 : 0));
+	}
+
+	@Override
+	public long getLastPersistenceTimestamp() {
+		return lastPersistence;
+	}
+
+	/**
+	 * Updates the given entry with a triple that has been added.
+	 *
+	 * @param entry the statistics entry.
+	 * @param ids the triple identifiers.
+	 */
+	void add(final Entry entry, final byte[][] ids) {
+		entry.triples.incrementAndGet();
+		entry.subjects.offer(ids[0]);
+		entry.objects.offer(ids[2]);
+		entry.dirty = true;
+	}
+
+	/**
+	 * Updates the given entry with a triple that has been removed.
+	 *
+	 * @param entry the statistics entry.
+	 */
+	void remove(final Entry entry) {
+		long current;
+		do {
+			current = entry.triples.get();
+		} while (current > 0 && !entry.triples.compareAndSet(current, current - 1));
+		entry.dirty = true;
+	}
+
+	/**
+	 * Returns the statistics entry associated with the given key, loading it from the storage if needed.
+	 *
+	 * @param key the predicate identifier (or the whole store key).
+	 * @return the statistics entry associated with the given key.
+	 */
+	Entry entry(final ByteBuffer key) {
+		final Entry entry = entries.get(key);
+		if (entry != null) {
+			return entry;
+		}
+
+		Entry loaded = null;
+		try {
+			final byte[] serialized = dao.get(key.array());
+			if (serialized != null && serialized.length > SIZE_OF_LONG) {
+				loaded = new Entry(serialized);
+			}
+		} catch (final Exception exception) {
+			LOGGER.error(MessageCatalog._00110_UNABLE_TO_LOAD_STATISTICS, exception);
+		}
+
+		if (loaded == null) {
+			loaded = new Entry(precision);
+		}
+
+		final Entry existing = entries.putIfAbsent(key, loaded);
+		return existing != null ? existing : loaded;
+	}
+
+	/**
+	 * Returns all predicates that have statistics, both in memory and persisted.
+	 *
+	 * @return all predicates that have statistics.
+	 */
+	Set<ByteBuffer> allPredicates() {
+		try {
+			final byte[] serialized = dao.get(PREDICATES_REGISTRY.array());
+			if (serialized != null) {
+				final ByteBuffer buffer = ByteBuffer.wrap(serialized);
+				while (buffer.remaining() > 0) {
+					final byte[] predicate = new byte[buffer.getShort()];
+					buffer.get(predicate);
+					predicates.add(ByteBuffer.wrap(predicate));
+				}
+			}
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00110_UNABLE_TO_LOAD_STATISTICS, exception);
+		}
+		return predicates;
+	}
+
+	/**
+	 * Serializes the given set of predicates.
+	 *
+	 * @param predicates the predicates.
+	 * @return the serialized form of the given set of predicates.
+	 */
+	static byte[] serialize(final Set<ByteBuffer> predicates) {
+		int size = 0;
+		for (final ByteBuffer predicate : predicates) {
+			size += 2 + predicate.capacity();
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(size);
+		for (final ByteBuffer predicate : predicates) {
+			buffer.putShort((short) predicate.capacity());
+			buffer.put(predicate.array());
+		}
+		return buffer.array();
+	}
+}
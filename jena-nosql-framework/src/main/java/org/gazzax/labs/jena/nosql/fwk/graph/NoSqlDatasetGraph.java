@@ -1,24 +1,54 @@
 package org.gazzax.labs.jena.nosql.fwk.graph;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.QuadDAO;
 import org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Iterators;
 
 import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.sparql.JenaTransactionException;
 import com.hp.hpl.jena.sparql.core.DatasetGraphCaching;
 import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.core.Transactional;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
 
 /**
  * NoSQL implementation of Jena Dataset.
  * 
+ * Transactions are supported, each of them bound to the thread that started it.
+ * Within a write transaction, inserts and deletes are collected and sent to the storage in one shot, at commit time. 
+ * Aborted transactions never touch the storage. 
+ * Note that reads within a write transaction see only the committed state.
+ * 
+ * If the underlying storage provides a {@link QuadDAO}, quad patterns are answered with one storage query
+ * per pattern, otherwise named graphs are queried one by one.
+ * In both cases mutations go through the (named) graphs, so that they invalidate the caches of all graphs of the store; 
+ * before a quad query, the triples buffered (by the current thread) in the involved graphs are flushed.
+ * 
  * @author Andrea Gazzarini
  * @since 1.0
  */
-public class NoSqlDatasetGraph extends DatasetGraphCaching {
+public class NoSqlDatasetGraph extends DatasetGraphCaching implements Transactional {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(NoSqlDatasetGraph.class));
+	private static final Iterator<Quad> EMPTY_QUADS_ITERATOR = new ArrayList<Quad>(0).iterator();
 
 	private final StorageLayerFactory factory;
+	private final QuadDAO<byte[][], byte[][]> quadDao;
+	private final ThreadLocal<DatasetTransaction> transactions = new ThreadLocal<DatasetTransaction>();
+	
 	/**
 	 * Builds a new Dataset graph with the given factory.
 	 * 
@@ -26,6 +56,7 @@ public class NoSqlDatasetGraph extends DatasetGraphCaching {
 	 */
 	public NoSqlDatasetGraph(final StorageLayerFactory factory) {
 		this.factory = factory;
+		this.quadDao = factory.getQuadDAO();
 	}
 	
 	@Override
@@ -50,30 +81,161 @@ public class NoSqlDatasetGraph extends DatasetGraphCaching {
 
 	@Override
 	protected boolean _containsGraph(Node graphNode) {
-		return false;
+		if (quadDao == null) {
+			return false;
+		}
+		
+		final Iterator<Quad> quads = findQuads(quadDao, graphNode, null, null, null);
+		try {
+			return quads.hasNext();
+		} finally {
+			NiceIterator.close(quads);
+		}
 	}
 
 	@Override
 	protected void addToDftGraph(Node s, Node p, Node o) {
-		getDefaultGraph().add(new Triple(s,p,o));
+		add(getDefaultGraph(), new Triple(s,p,o));
 	}
 
 	@Override
 	protected void addToNamedGraph(Node g, Node s, Node p, Node o) {
-		// TODO Auto-generated method stub
-
+		add(getGraph(g), new Triple(s,p,o));
 	}
 
 	@Override
 	protected void deleteFromDftGraph(Node s, Node p, Node o) {
-		getDefaultGraph().delete(new Triple(s,p,o));
+		delete(getDefaultGraph(), new Triple(s,p,o));
 
 	}
 
 	@Override
 	protected void deleteFromNamedGraph(Node g, Node s, Node p, Node o) {
-		// TODO Auto-generated method stub
+		delete(getGraph(g), new Triple(s,p,o));
+	}
+
+	@Override
+	public void begin(final ReadWrite mode) {
+		if (isInTransaction()) {
+			throw new JenaTransactionException(MessageCatalog._00105_TRANSACTION_ALREADY_ACTIVE);
+		}
+		transactions.set(new DatasetTransaction(mode));
+	}
+
+	@Override
+	public void commit() {
+		final DatasetTransaction transaction = activeTransaction();
+		try {
+			transaction.commit();
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00107_UNABLE_TO_COMMIT, exception);
+			throw new JenaTransactionException(MessageCatalog._00107_UNABLE_TO_COMMIT, exception);
+		} finally {
+			transactions.remove();
+		}
+	}
+
+	@Override
+	public void abort() {
+		activeTransaction().abort();
+		transactions.remove();
+	}
 
+	@Override
+	public boolean isInTransaction() {
+		return transactions.get() != null;
+	}
+
+	@Override
+	public void end() {
+		final DatasetTransaction transaction = transactions.get();
+		if (transaction != null) {
+			transaction.abort();
+			transactions.remove();
+		}
+	}
+
+	/**
+	 * Adds a triple to a given graph.
+	 * If a write transaction is active, the insertion is collected and it will be executed at commit time.
+	 * 
+	 * @param graph the target graph.
+	 * @param triple the triple.
+	 */
+	void add(final Graph graph, final Triple triple) {
+		final DatasetTransaction transaction = transactions.get();
+		if (transaction == null || !(graph instanceof NoSqlGraph)) {
+			graph.add(triple);
+			return;
+		}
+		
+		writeAllowed(transaction);
+		try {
+			transaction.add((NoSqlGraph) graph, triple);
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			throw new JenaTransactionException(exception);
+		}
+	}
+
+	/**
+	 * Deletes a triple (or a triple pattern) from a given graph.
+	 * If a write transaction is active, the deletion is collected and it will be executed at commit time.
+	 * 
+	 * @param graph the target graph.
+	 * @param triple the triple.
+	 */
+	void delete(final Graph graph, final Triple triple) {
+		final DatasetTransaction transaction = transactions.get();
+		if (transaction == null || !(graph instanceof NoSqlGraph)) {
+			graph.delete(triple);
+			return;
+		}
+
+		writeAllowed(transaction);
+		try {
+			if (triple.isConcrete()) {
+				transaction.delete((NoSqlGraph) graph, triple);
+			} else {
+				final ExtendedIterator<Triple> iterator = graph.find(triple);
+				try {
+					while (iterator.hasNext()) {
+						transaction.delete((NoSqlGraph) graph, iterator.next());
+					}
+				} finally {
+					iterator.close();
+				}
+			}
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			throw new JenaTransactionException(exception);
+		}
+	}
+	
+	/**
+	 * Returns the transaction associated with the current thread.
+	 * 
+	 * @return the transaction associated with the current thread.
+	 * @throws JenaTransactionException in case no transaction is associated with the current thread.
+	 */
+	DatasetTransaction activeTransaction() {
+		final DatasetTransaction transaction = transactions.get();
+		if (transaction == null) {
+			throw new JenaTransactionException(MessageCatalog._00106_NO_ACTIVE_TRANSACTION);
+		}
+		return transaction;
+	}
+	
+	/**
+	 * Checks if the given transaction allows mutations.
+	 * 
+	 * @param transaction the transaction.
+	 * @throws JenaTransactionException in case the given transaction is a read transaction.
+	 */
+	private void writeAllowed(final DatasetTransaction transaction) {
+		if (!transaction.isWrite()) {
+			throw new JenaTransactionException(MessageCatalog._00108_UPDATE_WITHIN_READ_TRANSACTION);
+		}
 	}
 
 	@Override
@@ -83,14 +245,87 @@ public class NoSqlDatasetGraph extends DatasetGraphCaching {
 
 	@Override
 	protected Iterator<Quad> findInSpecificNamedGraph(Node g, Node s, Node p, Node o) {
-		// TODO Auto-generated method stub
-		return null;
+		return (quadDao != null)
+				? findQuads(quadDao, g, s, p, o)
+				: triples2quads(g, getGraph(g).find(s, p, o));
 	}
 
 	@Override
 	protected Iterator<Quad> findInAnyNamedGraphs(Node s, Node p, Node o) {
-		// TODO Auto-generated method stub
-		return null;
+		if (quadDao != null) {
+			return findQuads(quadDao, null, s, p, o);
+		}
+		
+		final List<Iterator<Quad>> iterators = new ArrayList<Iterator<Quad>>();
+		for (final Iterator<Node> graphNodes = listGraphNodes(); graphNodes.hasNext();) {
+			iterators.add(findInSpecificNamedGraph(graphNodes.next(), s, p, o));
+		}
+		return Iterators.concat(iterators.iterator());
+	}
+
+	/**
+	 * Answers a quad pattern with a single query against the given {@link QuadDAO}.
+	 * 
+	 * @param dao the quad DAO.
+	 * @param g the graph name (null or a variable in case of any named graph).
+	 * @param s the subject.
+	 * @param p the predicate.
+	 * @param o the object.
+	 * @return an iterator over the matching quads.
+	 */
+	Iterator<Quad> findQuads(final QuadDAO<byte[][], byte[][]> dao, final Node g, final Node s, final Node p, final Node o) {
+		final TopLevelDictionary dictionary = factory.getDictionary();
+		flushNamedGraphs(asMatch(g));
+		try {
+			final byte[][] identifiers = dictionary.asIdentifiers(
+					asMatch(s), 
+					asMatch(p), 
+					asMatch(o), 
+					asMatch(g));
+			return dictionary.asQuadIterator(dao.query(identifiers));
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			return EMPTY_QUADS_ITERATOR;
+		}
+	}
+	
+	/**
+	 * Sends to the storage the triples that the current thread buffered in the named graphs involved by a quad pattern.
+	 * Graphs that haven't been created yet cannot have buffered triples, so they are not created here.
+	 * 
+	 * @param g the graph name (null in case of any named graph).
+	 */
+	void flushNamedGraphs(final Node g) {
+		final List<Graph> graphs = new ArrayList<Graph>();
+		synchronized (this) {
+			if (g != null) {
+				if (namedGraphs.containsKey(g)) {
+					graphs.add(namedGraphs.get(g));
+				}
+			} else {
+				final List<Node> names = new ArrayList<Node>();
+				Iterators.addAll(names, namedGraphs.keys());
+				for (final Node name : names) {
+					graphs.add(namedGraphs.get(name));
+				}
+			}
+		}
+		
+		for (final Graph graph : graphs) {
+			if (graph instanceof NoSqlGraph) {
+				((NoSqlGraph) graph).flush();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the given node, if it is concrete, otherwise null (i.e. a wildcard).
+	 * 
+	 * @param node the node.
+	 * @return the given node, if it is concrete, otherwise null.
+	 */
+	static Node asMatch(final Node node) {
+		return (node != null && node.isConcrete()) ? node : null;
 	}
 
 }
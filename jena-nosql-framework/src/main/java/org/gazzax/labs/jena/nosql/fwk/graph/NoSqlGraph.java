@@ -1,22 +1,40 @@
 package org.gazzax.labs.jena.nosql.fwk.graph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
 import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
 import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile.PatternProfile;
+import org.gazzax.labs.jena.nosql.fwk.ds.GroupCommitGraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.GroupCommitter;
 import org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory;
 import org.gazzax.labs.jena.nosql.fwk.log.Log;
 import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
 import org.gazzax.labs.jena.nosql.fwk.log.MessageFactory;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManagementRegistrar;
+import org.gazzax.labs.jena.nosql.fwk.sparql.EvaluationSettings;
+import org.gazzax.labs.jena.nosql.fwk.sparql.QueryPlanCache;
+import org.gazzax.labs.jena.nosql.fwk.sparql.ResultCache;
+import org.gazzax.labs.jena.nosql.fwk.util.ReadAheadIterator;
+import org.gazzax.labs.jena.nosql.fwk.util.SliceIterator;
 import org.slf4j.LoggerFactory;
 
+import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.GraphEvents;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.graph.TripleMatch;
 import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.graph.impl.SimpleEventManager;
 import com.hp.hpl.jena.shared.AddDeniedException;
 import com.hp.hpl.jena.shared.DeleteDeniedException;
 import com.hp.hpl.jena.util.iterator.ExtendedIterator;
@@ -25,18 +43,100 @@ import com.hp.hpl.jena.util.iterator.WrappedIterator;
 /**
  * NoSQL Graph implementation.
  * 
+ * Insertions are buffered (per thread) and sent to the storage in chunks: by default at the end of each add operation, 
+ * so that Jena bulk paths (e.g. GraphUtil.add, Model.add(List)) result in one round trip every 
+ * {@link #DEFAULT_BULK_LOAD_BATCH_SIZE} triples, or within an explicit bulk load session (see {@link #beginBulkLoad()}).
+ * 
+ * Read-ahead, statistics, query profiling and the SPARQL plan / result caches are enabled through the 
+ * {@link StorageLayerFactory} configuration.
+ * 
+ * The contains filter, the pattern cache and the entity cache are kept up to date by the mutations that go through 
+ * this graph instance (the result cache by the mutations that go through any graph of the same factory): 
+ * they are reliable only if there are no other writers of the underlying storage.
+ *
  * @author Andrea Gazzarini
  * @since 1.0
  */
-public class NoSqlGraph extends GraphBase {
+public class NoSqlGraph extends GraphBase implements SliceableGraph, CountableGraph {
 	private static final Log LOGGER = new Log(LoggerFactory.getLogger(NoSqlGraph.class));
 	
+	public static final int DEFAULT_BULK_LOAD_BATCH_SIZE = 1000;
+	public static final long DEFAULT_BULK_LOAD_MAX_DELAY = 1000;
+
 	private static final Iterator<byte[][]> EMPTY_IDS_ITERATOR = new ArrayList<byte[][]>(0).iterator();
+	static final String ENTITY_CACHE_INDEX = "entity-cache";
+	static final String PATTERN_CACHE_INDEX = "pattern-cache";
+	
 	private static final ExtendedIterator<Triple> EMPTY_TRIPLES_ITERATOR = WrappedIterator.createNoRemove(new ArrayList<Triple>(0).iterator());
+
+	/**
+	 * An event manager that flushes pending mutations once Jena signals the end of a bulk add operation.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	private class BulkAwareEventManager extends SimpleEventManager {
+
+		/**
+		 * Builds a new event manager for the owning graph.
+		 */
+		BulkAwareEventManager() {
+			super(NoSqlGraph.this);
+		}
+
+		@Override
+		public void notifyAddArray(final Graph graph, final Triple[] triples) {
+			flushImplicitSession();
+			super.notifyAddArray(graph, triples);
+		}
+
+		@Override
+		public void notifyAddList(final Graph graph, final List<Triple> triples) {
+			flushImplicitSession();
+			super.notifyAddList(graph, triples);
+		}
+
+		@Override
+		public void notifyAddIterator(final Graph graph, final List<Triple> triples) {
+			flushImplicitSession();
+			super.notifyAddIterator(graph, triples);
+		}
+
+		@Override
+		public void notifyAddIterator(final Graph graph, final Iterator<Triple> triples) {
+			flushImplicitSession();
+			super.notifyAddIterator(graph, triples);
+		}
+
+		@Override
+		public void notifyAddGraph(final Graph graph, final Graph added) {
+			flushImplicitSession();
+			super.notifyAddGraph(graph, added);
+		}
+	}
+
+	private final ThreadLocal<BulkLoadSession> bulkLoadSessions = new ThreadLocal<BulkLoadSession>() {
+		protected BulkLoadSession initialValue() {
+			return new BulkLoadSession();
+		};
+	};
 	
 	private final GraphDAO<byte[][], byte[][]> dao;
 	private final TopLevelDictionary dictionary;
 	private final Node name;
+	private final ExecutorService readAheadExecutor;
+	private final int readAheadBufferSize;
+	private final GraphStatistics statistics;
+	private final SlowQueryLog slowQueryLog;
+	private final QueryPlanCache queryPlanCache;
+	private final ResultCache resultCache;
+	private final EvaluationSettings evaluationSettings;
+	private final CacheCoordinator cacheCoordinator;
+	
+	private volatile ContainsFilter containsFilter;
+	private volatile PatternCache patternCache;
+	private volatile EntityCache entityCache;
+	private volatile byte[] contextId;
 	
 	/**
 	 * Builds a new unnamed graph with the given factory.
@@ -56,8 +156,166 @@ public class NoSqlGraph extends GraphBase {
 	@SuppressWarnings("unchecked")
 	public NoSqlGraph(final Node name, final StorageLayerFactory factory) {
 		this.name = name;
-		this.dao = name != null ? factory.getGraphDAO(name) : factory.getGraphDAO();
+		final GraphDAO<byte[][], byte[][]> storageDao = name != null ? factory.getGraphDAO(name) : factory.getGraphDAO();
+		final GroupCommitter committer = factory.getGroupCommitter();
+		this.dao = committer != null ? new GroupCommitGraphDAO<byte[][], byte[][]>(storageDao, committer) : storageDao;
 		this.dictionary = factory.getDictionary();
+		this.readAheadExecutor = factory.getReadAheadExecutor();
+		this.readAheadBufferSize = factory.getReadAheadBufferSize();
+		this.statistics = factory.getStatistics();
+		this.slowQueryLog = factory.getSlowQueryLog();
+		this.queryPlanCache = factory.getQueryPlanCache();
+		this.resultCache = factory.getResultCache();
+		this.evaluationSettings = factory.getEvaluationSettings();
+		this.cacheCoordinator = factory.getCacheCoordinator();
+		this.gem = new BulkAwareEventManager();
+		if (factory.getPatternCacheMaxRows() > 0) {
+			enablePatternCache(factory.getPatternCacheMaxRows(), factory.getPatternCacheMaxRowsPerPattern());
+		}
+		if (factory.getEntityCacheMaxTriples() > 0) {
+			enableEntityCache(factory.getEntityCacheMaxTriples(), factory.getEntityCacheMaxTriplesPerEntity());
+		}
+	}
+
+	/**
+	 * Opens a bulk load session, with default settings, for the current thread.
+	 *
+	 * @see #beginBulkLoad(int, long)
+	 */
+	public void beginBulkLoad() {
+		beginBulkLoad(DEFAULT_BULK_LOAD_BATCH_SIZE, DEFAULT_BULK_LOAD_MAX_DELAY);
+	}
+
+	/**
+	 * Opens a bulk load session for the current thread.
+	 * Within a bulk load session, added triples are buffered and sent to the storage each time the buffer
+	 * reaches the given size or, when a triple is added, if the given delay has elapsed since the last flush.
+	 * Note that the delay is checked only on add: triples buffered by an idle session stay in the buffer 
+	 * until the next add, {@link #flush()} or {@link #endBulkLoad()}.
+	 * The session must be closed with {@link #endBulkLoad()}.
+	 *
+	 * @param batchSize the max number of triples that will be buffered before a flush.
+	 * @param maxDelayInMillis the max time (in ms) triples will be buffered before a flush.
+	 */
+	public void beginBulkLoad(final int batchSize, final long maxDelayInMillis) {
+		bulkLoadSessions.get().begin(batchSize, maxDelayInMillis);
+	}
+
+	/**
+	 * Sends to the storage all triples that have been buffered by the current thread.
+	 */
+	public void flush() {
+		flush(bulkLoadSessions.get());
+	}
+
+	/**
+	 * Enables a client-side Bloom filter in front of {@link #contains(Triple)}, so that the common "not present" case
+	 * is answered without accessing the storage.
+	 * The filter is populated with the triples that currently belong to this graph (i.e. this method scans the whole graph).
+	 * 
+	 * @param expectedInsertions the expected number of triples.
+	 * @param falsePositiveProbability the desired false positive probability (e.g. 0.01).
+	 */
+	public void enableContainsFilter(final int expectedInsertions, final double falsePositiveProbability) {
+		flush();
+		final ContainsFilter filter = new ContainsFilter(expectedInsertions, falsePositiveProbability);
+		try {
+			final Iterator<byte[][]> iterator = query(asIdentifiers(Triple.ANY));
+			while (iterator.hasNext()) {
+				filter.put(iterator.next());
+			}
+			containsFilter = filter;
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+		}
+	}
+	
+	/**
+	 * Disables the client-side Bloom filter in front of {@link #contains(Triple)}.
+	 */
+	public void disableContainsFilter() {
+		containsFilter = null;
+	}
+	
+	/**
+	 * Enables a (bounded) cache in front of {@link #find(Triple)}, keyed by the encoded triple pattern.
+	 * The cache is registered on the management server, under the {@link ManagementRegistrar} domain.
+	 * 
+	 * @param maxRows the max number of rows (regardless the pattern) that will be cached.
+	 * @param maxRowsPerPattern the max number of rows a pattern result can have in order to be cached.
+	 */
+	public void enablePatternCache(final int maxRows, final int maxRowsPerPattern) {
+		disablePatternCache();
+		final PatternCache cache = new PatternCache(
+				(name != null ? name.toString() : "default") + "@" + Integer.toHexString(System.identityHashCode(this)), 
+				maxRows, 
+				maxRowsPerPattern,
+				cacheCoordinator.patternsVersion());
+		try {
+			ManagementRegistrar.registerPatternCache(cache);
+		} catch (final Exception exception) {
+			LOGGER.error(MessageCatalog._00166_MBEAN_ALREADY_REGISTERED, cache.getName());
+		}
+		patternCache = cache;
+	}
+	
+	/**
+	 * Disables the pattern cache in front of {@link #find(Triple)}.
+	 */
+	public void disablePatternCache() {
+		final PatternCache cache = patternCache;
+		if (cache != null) {
+			patternCache = null;
+			ManagementRegistrar.unregisterPatternCache(cache);
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * Enables a (bounded) cache of entities, that is, the decoded outgoing triples of a subject, keyed by subject identifier.
+	 * The cache is registered on the management server, under the {@link ManagementRegistrar} domain.
+	 * 
+	 * @param maxTriples the max number of triples (regardless the subject) that will be cached.
+	 * @param maxTriplesPerEntity the max number of triples an entity can have in order to be cached.
+	 */
+	public void enableEntityCache(final int maxTriples, final int maxTriplesPerEntity) {
+		disableEntityCache();
+		final EntityCache cache = new EntityCache(
+				(name != null ? name.toString() : "default") + "@" + Integer.toHexString(System.identityHashCode(this)), 
+				maxTriples, 
+				maxTriplesPerEntity);
+		try {
+			ManagementRegistrar.registerEntityCache(cache);
+		} catch (final Exception exception) {
+			LOGGER.error(MessageCatalog._00166_MBEAN_ALREADY_REGISTERED, cache.getName());
+		}
+		cacheCoordinator.register(cache);
+		entityCache = cache;
+	}
+	
+	/**
+	 * Disables the entity cache.
+	 */
+	public void disableEntityCache() {
+		final EntityCache cache = entityCache;
+		if (cache != null) {
+			entityCache = null;
+			cacheCoordinator.unregister(cache);
+			ManagementRegistrar.unregisterEntityCache(cache);
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * Flushes pending triples and closes the bulk load session associated with the current thread.
+	 */
+	public void endBulkLoad() {
+		final BulkLoadSession session = bulkLoadSessions.get();
+		try {
+			flush(session);
+		} finally {
+			session.end();
+		}
 	}
 	
 	@Override
@@ -68,7 +326,22 @@ public class NoSqlGraph extends GraphBase {
 				 	? dictionary.asIdentifiers(triple.getSubject(), triple.getPredicate(), triple.getObject())
 				 	: dictionary.asIdentifiers(triple.getSubject(), triple.getPredicate(), triple.getObject(), name);		
 			dao.insertTriple(ids);
-			dao.executePendingMutations();
+			if (statistics != null) {
+				statistics.add(ids);
+			}
+
+			final ContainsFilter filter = containsFilter;
+			if (filter != null) {
+				filter.put(ids);
+			}
+			
+			final BulkLoadSession session = bulkLoadSessions.get();
+			if (cacheCoordinator.hasEntityCaches()) {
+				session.subjectHasBeenModified(ids[0]);
+			}
+			if (session.mutationHasBeenBuffered()) {
+				flush(session);
+			}
 		} catch (final StorageLayerException exception) {
 			final String message = MessageFactory.createMessage(MessageCatalog._00101_UNABLE_TO_ADD_TRIPLE, triple);
 			LOGGER.error(message, exception);
@@ -76,10 +349,18 @@ public class NoSqlGraph extends GraphBase {
 		}
 	}
 	
+	@Override
+	public void notifyAdd(final Triple triple) {
+		flushImplicitSession();
+		super.notifyAdd(triple);
+	}
+
 	@Override
 	public void performDelete(final Triple triple) {
+		flush();
+		byte [][] identifiers = null;
 		try {
-			final byte [][] identifiers = 
+			identifiers = 
 				(name == null)
 					? dictionary.asIdentifiers(
 							triple.getSubject(), 
@@ -93,26 +374,63 @@ public class NoSqlGraph extends GraphBase {
 
 			if (triple.isConcrete()) {
 				dao.deleteTriple(identifiers);
+				if (statistics != null) {
+					statistics.remove(identifiers);
+				}
 			} else if (!triple.getSubject().isConcrete() && !triple.getPredicate().isConcrete() && !triple.getObject().isConcrete()) {
 				clear();
 			} else {
-				dao.deleteTriples(query(identifiers));
+				removed(dao.deleteTriples(query(identifiers)));
 			}	
 		} catch (final StorageLayerException exception) {
 			final String message = MessageFactory.createMessage(MessageCatalog._00100_UNABLE_TO_DELETE_TRIPLE, triple);
 			LOGGER.error(message, exception);
 			throw new DeleteDeniedException(message, triple);
+		} finally {
+			invalidateQueryCaches();
+			invalidateEntityCache(identifiers != null ? identifiers[0] : null);
 		}
 	}
 	
 	@Override
     public void clear() {
-	    dao.clear();
+		flush();
+		if (name == null) {
+			dao.clear();
+			if (statistics != null) {
+				statistics.reset();
+			}
+			invalidateQueryCaches();
+			invalidateEntityCache(null);
+		} else {
+			try {
+				removed(dao.deleteTriples(query(dictionary.asIdentifiers(null, null, null, name))));
+			} catch (final StorageLayerException exception) {
+				LOGGER.error(MessageCatalog._00170_UNABLE_TO_CLEAR, exception);
+				throw new DeleteDeniedException(MessageCatalog._00170_UNABLE_TO_CLEAR);
+			} finally {
+				invalidateQueryCaches();
+				invalidateEntityCache(null);
+			}
+		}
         getEventManager().notifyEvent(this, GraphEvents.removeAll);
 	}
 	
+	/**
+	 * Within a SPARQL query, the pattern is evaluated with the context of the query (see {@link QueryContext#running()})
+	 * and, if the query is profiled, its profile is part of the query profile.
+	 * Otherwise, if profiling has been enabled, the find is profiled as a query on its own.
+	 */
 	@Override
 	protected ExtendedIterator<Triple> graphBaseFind(final TripleMatch pattern) {
+		flush();
+		final QueryContext running = QueryContext.running();
+		final SlowQueryLog log = slowQueryLog;
+		final QueryProfile profile = running == null && log != null ? log.newProfile("find " + pattern.asTriple(), dictionary) : null;
+		final QueryContext context = running != null 
+				? running.forPattern(pattern.asTriple().toString())
+				: (profile != null ? new QueryContext(0, TimeUnit.MILLISECONDS, profile).forPattern(pattern.asTriple().toString()) : null);
+		final PatternProfile patternProfile = context != null ? context.getPatternProfile() : null;
 		try {
 			final byte [][] identifiers = 
 				(name == null)
@@ -125,13 +443,103 @@ public class NoSqlGraph extends GraphBase {
 							pattern.getMatchPredicate(), 
 							pattern.getMatchObject(), 
 							name);		
-			return WrappedIterator.createNoRemove(dictionary.asTripleIterator(query(identifiers)));
+			
+			final EntityCache entities = entityCache;
+			if (entities != null && identifiers[0] != null) {
+				final Iterator<Triple> entity = entities.get(identifiers[0], pattern.asTriple());
+				if (entity != null) {
+					if (patternProfile != null) {
+						context.recordIndex(ENTITY_CACHE_INDEX);
+						return WrappedIterator.createNoRemove(new ProfiledIterator<Triple>(entity, patternProfile, profile, log));
+					}
+					return WrappedIterator.createNoRemove(entity);
+				}
+			}
+			
+			Iterator<Triple> triples = context != null 
+					? dictionary.asTripleIterator(cachedQuery(identifiers, context), context) 
+					: dictionary.asTripleIterator(cachedQuery(identifiers));
+			if (entities != null && identifiers[0] != null && pattern.getMatchPredicate() == null && pattern.getMatchObject() == null) {
+				triples = entities.cache(identifiers[0], triples);
+			}
+			if (patternProfile != null) {
+				triples = new ProfiledIterator<Triple>(triples, patternProfile, profile, log);
+			}
+			return WrappedIterator.createNoRemove(
+					readAheadExecutor != null 
+						? new ReadAheadIterator<Triple>(triples, readAheadBufferSize, readAheadExecutor)
+						: triples);
 		} catch (StorageLayerException exception) {
 			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
 			return EMPTY_TRIPLES_ITERATOR;
 		}
 	}
 	
+	/**
+	 * The slice is pushed down to the storage, unless the pattern is answered by the pattern cache.
+	 * Sliced results are never cached.
+	 */
+	@Override
+	public ExtendedIterator<Triple> find(final Triple pattern, final long offset, final long limit) {
+		flush();
+		try {
+			final byte[][] identifiers = asIdentifiers(pattern);
+			final PatternCache cache = patternCache;
+			final Iterator<byte[][]> cached = cache != null ? cache.get(identifiers) : null;
+			return WrappedIterator.createNoRemove(
+					dictionary.asTripleIterator(
+							cached != null 
+								? new SliceIterator<byte[][]>(cached, offset, limit) 
+								: dao.query(identifiers, offset, limit)));
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			return EMPTY_TRIPLES_ITERATOR;
+		}
+	}
+	
+	@Override
+	protected boolean graphBaseContains(final Triple triple) {
+		try {
+			final byte[][] identifiers = asIdentifiers(triple);
+			final ContainsFilter filter = containsFilter;
+			if (filter != null && triple.isConcrete() && !filter.mightContain(identifiers)) {
+				return false;
+			}
+			
+			flush();
+			return identifiers != null && identifiers.length >= 3 && dao.exists(identifiers);
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			return false;
+		}
+	}
+	
+	@Override
+	public long count(final Triple pattern) throws StorageLayerException {
+		flush();
+		return dao.countTriples(asIdentifiers(pattern));
+	}
+	
+	@Override
+	public long countDistinct(final Triple pattern, final int position) throws StorageLayerException {
+		flush();
+		return dao.countDistinct(asIdentifiers(pattern), position);
+	}
+	
+	@Override
+	protected int graphBaseSize() {
+		flush();
+		try {
+			final long size = (name == null) 
+					? dao.countTriples() 
+					: dao.countTriples(dictionary.asIdentifiers(null, null, null, name));
+			return (int) Math.min(size, Integer.MAX_VALUE);
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			return super.graphBaseSize();
+		}
+	}
+	
 	/**
 	 * Executes a query using a given triple pattern.
 	 *  
@@ -145,9 +553,381 @@ public class NoSqlGraph extends GraphBase {
 					: EMPTY_IDS_ITERATOR;
 	}
 	
+	/**
+	 * Executes a triple pattern query directly in identifiers space, without decoding results.
+	 * This is the entry point for query engines (e.g. the SPARQL basic graph pattern evaluator) that join patterns
+	 * on identifiers and decode only those values that are actually needed.
+	 * 
+	 * @param s the subject identifier, null in case of wildcard.
+	 * @param p the predicate identifier, null in case of wildcard.
+	 * @param o the object identifier, null in case of wildcard.
+	 * @return an iterator over the matching identifiers rows, where the first three members are subject, predicate and object.
+	 * @throws StorageLayerException in case of storage access failure.
+	 */
+	public Iterator<byte[][]> find(final byte[] s, final byte[] p, final byte[] o) throws StorageLayerException {
+		flush();
+		return cachedQuery(name == null ? new byte[][] {s, p, o} : new byte[][] {s, p, o, contextId()});
+	}
+	
+	/**
+	 * Executes several triple pattern queries, directly in identifiers space, with one storage round trip.
+	 * Patterns that are answered by the pattern cache (if enabled) are not sent to the storage.
+	 * 
+	 * @param patterns the triple patterns, each one as a (subject, predicate, object) identifiers array where null means wildcard.
+	 * @return the matching identifiers rows, one iterator for each pattern, in the same order of the given patterns.
+	 * @throws StorageLayerException in case of storage access failure.
+	 * @see #find(byte[], byte[], byte[])
+	 */
+	public List<Iterator<byte[][]>> find(final List<byte[][]> patterns) throws StorageLayerException {
+		return find(patterns, new QueryContext());
+	}
+	
+	/**
+	 * Executes several triple pattern queries, directly in identifiers space, on behalf of a query that may be cancelled
+	 * or that has a deadline: once that happens, storage requests are abandoned.
+	 * If the query is profiled, patterns are sent one by one, so that each storage request can be ascribed to its pattern.
+	 * 
+	 * @param patterns the triple patterns, each one as a (subject, predicate, object) identifiers array where null means wildcard.
+	 * @param context the execution context of the query.
+	 * @return the matching identifiers rows, one iterator for each pattern, in the same order of the given patterns.
+	 * @throws StorageLayerException in case of storage access failure.
+	 * @see #find(List)
+	 */
+	public List<Iterator<byte[][]>> find(final List<byte[][]> patterns, final QueryContext context) throws StorageLayerException {
+		flush();
+		final List<byte[][]> queries = new ArrayList<byte[][]>(patterns.size());
+		for (final byte[][] pattern : patterns) {
+			queries.add(name == null ? pattern : new byte[][] {pattern[0], pattern[1], pattern[2], contextId()});
+		}
+		
+		if (context.getProfile() != null) {
+			final List<Iterator<byte[][]>> results = new ArrayList<Iterator<byte[][]>>(queries.size());
+			for (final byte[][] query : queries) {
+				final QueryContext patternContext = context.forPattern(describe(query));
+				results.add(new ProfiledIterator<byte[][]>(cachedQuery(query, patternContext), patternContext.getPatternProfile()));
+			}
+			return results;
+		}
+		
+		final PatternCache cache = patternCache;
+		if (cache == null) {
+			return dao.batchQuery(queries, context);
+		}
+		
+		final List<Iterator<byte[][]>> results = new ArrayList<Iterator<byte[][]>>(queries.size());
+		final List<byte[][]> misses = new ArrayList<byte[][]>();
+		for (final byte[][] query : queries) {
+			final Iterator<byte[][]> cached = cache.get(query);
+			results.add(cached);
+			if (cached == null) {
+				misses.add(query);
+			}
+		}
+		
+		if (!misses.isEmpty()) {
+			final Iterator<Iterator<byte[][]>> fromStorage = dao.batchQuery(misses, context).iterator();
+			final Iterator<byte[][]> missesIterator = misses.iterator();
+			for (int i = 0; i < results.size(); i++) {
+				if (results.get(i) == null) {
+					results.set(i, cache.cache(missesIterator.next(), fromStorage.next()));
+				}
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Returns the statistics that will be used for planning queries over this graph.
+	 * Note that statistics are store-wide, they are not limited to this (named) graph.
+	 * 
+	 * @return the statistics that will be used for planning queries over this graph, null if statistics have not been enabled.
+	 */
+	public GraphStatistics getStatistics() {
+		return statistics;
+	}
+	
+	/**
+	 * Returns the log that collects the profiles of the queries over this graph.
+	 * Note that the log is store-wide, it is not limited to this (named) graph.
+	 * 
+	 * @return the log that collects the profiles of the queries over this graph, null if query profiling has not been enabled.
+	 */
+	public SlowQueryLog getSlowQueryLog() {
+		return slowQueryLog;
+	}
+	
+	/**
+	 * Returns the cache of the plans of the SPARQL queries over this graph.
+	 * Note that the cache is store-wide, it is not limited to this (named) graph.
+	 * 
+	 * @return the cache of the plans of the SPARQL queries over this graph, null if the plan cache has not been enabled.
+	 */
+	public QueryPlanCache getQueryPlanCache() {
+		return queryPlanCache;
+	}
+	
+	/**
+	 * Returns the cache of the results of the SPARQL queries over this graph.
+	 * Note that the cache is store-wide, it is not limited to this (named) graph.
+	 * 
+	 * @return the cache of the results of the SPARQL queries over this graph, null if the result cache has not been enabled.
+	 */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+	
+	/**
+	 * Returns the settings of the SPARQL evaluation, in identifiers space, over this graph.
+	 * 
+	 * @return the settings of the SPARQL evaluation in identifiers space, null if it has not been enabled.
+	 */
+	public EvaluationSettings getEvaluationSettings() {
+		return evaluationSettings;
+	}
+	
+	/**
+	 * Starts the profile of a new query over this graph.
+	 * 
+	 * @param query the query, as it will appear in reports.
+	 * @return the profile of the given query, null if query profiling has not been enabled.
+	 */
+	public QueryProfile newQueryProfile(final String query) {
+		final SlowQueryLog log = slowQueryLog;
+		return log != null ? log.newProfile(query, dictionary) : null;
+	}
+	
+	/**
+	 * Returns the name of this graph.
+	 * 
+	 * @return the name of this graph, null if this is the default graph.
+	 */
+	public Node getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the dictionary associated with this graph.
+	 * 
+	 * @return the dictionary associated with this graph.
+	 */
+	public TopLevelDictionary getDictionary() {
+		return dictionary;
+	}
+	
+	/**
+	 * Returns the identifier of this (named) graph.
+	 * 
+	 * @return the identifier of this (named) graph.
+	 * @throws StorageLayerException in case of dictionary access failure.
+	 */
+	byte[] contextId() throws StorageLayerException {
+		if (contextId == null) {
+			contextId = dictionary.getID(name, false);
+		}
+		return contextId;
+	}
+	
+	/**
+	 * Executes a query using a given triple pattern, looking first in the pattern cache, if enabled.
+	 *  
+	 * @param query the query (as pattern).
+	 * @return an iterator of resulting triples.
+	 * @throws StorageLayerException in case of storage access layer.
+	 */
+	Iterator<byte[][]> cachedQuery(final byte[][] query) throws StorageLayerException {
+		final PatternCache cache = patternCache;
+		if (cache == null || query == null || query.length < 3) {
+			return query(query);
+		}
+		
+		final Iterator<byte[][]> cached = cache.get(query);
+		return cached != null ? cached : cache.cache(query, query(query));
+	}
+	
+	/**
+	 * Executes a query using a given triple pattern, on behalf of a profiled query, looking first in the pattern cache, if enabled.
+	 *  
+	 * @param query the query (as pattern).
+	 * @param context the pattern context, where the chosen index will be recorded.
+	 * @return an iterator of resulting triples.
+	 * @throws StorageLayerException in case of storage access layer.
+	 */
+	Iterator<byte[][]> cachedQuery(final byte[][] query, final QueryContext context) throws StorageLayerException {
+		if (query == null || query.length < 3) {
+			return EMPTY_IDS_ITERATOR;
+		}
+		
+		final PatternCache cache = patternCache;
+		final Iterator<byte[][]> cached = cache != null ? cache.get(query) : null;
+		if (cached != null) {
+			context.recordIndex(PATTERN_CACHE_INDEX);
+			return cached;
+		}
+		return cache != null ? cache.cache(query, dao.query(query, context)) : dao.query(query, context);
+	}
+	
+	/**
+	 * Returns a (readable) description of the given pattern, for query profiles.
+	 * 
+	 * @param query the pattern, in identifiers space.
+	 * @return a description of the given pattern, where wildcards are represented by a question mark.
+	 */
+	String describe(final byte[][] query) {
+		final StringBuilder builder = new StringBuilder("(");
+		for (int i = 0; i < query.length; i++) {
+			if (i > 0) {
+				builder.append(" ");
+			}
+			
+			try {
+				builder.append(query[i] != null ? dictionary.getValue(query[i], i == 1) : "?");
+			} catch (final StorageLayerException exception) {
+				builder.append(Arrays.toString(query[i]));
+			}
+		}
+		return builder.append(")").toString();
+	}
+	
+	/**
+	 * Invalidates the pattern caches of all graphs of the store and the result cache (if enabled), because of a mutation.
+	 * Note that this must be called once the mutation has been sent to the storage: a query that starts in the meantime 
+	 * may still see the previous state, but its result will be cached with the previous (i.e. invalid) version. 
+	 */
+	void invalidateQueryCaches() {
+		cacheCoordinator.invalidatePatterns();
+		
+		if (resultCache != null) {
+			resultCache.invalidate();
+		}
+	}
+	
+	/**
+	 * Invalidates the entity caches of all graphs of the store, because of a mutation on a given subject.
+	 * As for the pattern cache, this must be called once the mutation has been sent to the storage.
+	 * 
+	 * @param subject the subject identifier, null if the mutation could concern any subject.
+	 */
+	void invalidateEntityCache(final byte[] subject) {
+		if (subject != null) {
+			cacheCoordinator.invalidateEntity(subject);
+		} else {
+			cacheCoordinator.clearEntities();
+		}
+	}
+	
 	@Override
 	public void close() {
+		flush();
+		disablePatternCache();
+		disableEntityCache();
+		if (statistics != null) {
+			statistics.persist();
+		}
 		dictionary.close();
 		closed = true;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Encodes the given triple (or triple pattern) using the dictionary associated with this graph.
+	 * Wildcards are encoded as null identifiers.
+	 *
+	 * @param triple the triple.
+	 * @return the identifiers of the given triple.
+	 * @throws StorageLayerException in case of dictionary access failure.
+	 */
+	byte[][] asIdentifiers(final Triple triple) throws StorageLayerException {
+		return (name == null)
+				? dictionary.asIdentifiers(triple.getMatchSubject(), triple.getMatchPredicate(), triple.getMatchObject())
+				: dictionary.asIdentifiers(triple.getMatchSubject(), triple.getMatchPredicate(), triple.getMatchObject(), name);
+	}
+
+	/**
+	 * Sends to the storage, in one shot, a set of (already encoded) insertions and deletions.
+	 * Used for applying the mutations collected within a transaction.
+	 *
+	 * @param inserts the identifiers of the triples that will be inserted.
+	 * @param deletes the identifiers of the triples that will be deleted.
+	 * @throws StorageLayerException in case of data access failure.
+	 */
+	void apply(final Collection<byte[][]> inserts, final Collection<byte[][]> deletes) throws StorageLayerException {
+		flush();
+		try {
+			if (!deletes.isEmpty()) {
+				removed(dao.deleteTriples(deletes.iterator()));
+			}
+	
+			if (!inserts.isEmpty()) {
+				for (final byte[][] ids : inserts) {
+					dao.insertTriple(ids);
+					if (statistics != null) {
+						statistics.add(ids);
+					}
+				}
+				dao.executePendingMutations();
+			}
+		} finally {
+			invalidateQueryCaches();
+			cacheCoordinator.invalidateEntities(deletes);
+			cacheCoordinator.invalidateEntities(inserts);
+		}
+	}
+
+	/**
+	 * Updates the statistics (if enabled) with the given removed triples.
+	 * 
+	 * @param removed the identifiers of the triples that have been removed.
+	 */
+	void removed(final List<byte[][]> removed) {
+		if (statistics != null && removed != null) {
+			statistics.remove(removed);
+		}
+	}
+
+	/**
+	 * Flushes the pending mutations of the current thread, if it isn't within an explicit bulk load session.
+	 */
+	void flushImplicitSession() {
+		final BulkLoadSession session = bulkLoadSessions.get();
+		if (!session.isExplicit()) {
+			flush(session);
+		}
+	}
+
+	/**
+	 * Sends to the storage all mutations buffered within the given session.
+	 *
+	 * @param session the bulk load session.
+	 */
+	void flush(final BulkLoadSession session) {
+		if (session.hasPendingMutations()) {
+			try {
+				dao.executePendingMutations();
+				invalidateQueryCaches();
+				invalidateModifiedEntities(session);
+				session.pendingMutationsHaveBeenFlushed();
+				if (statistics != null) {
+					statistics.persistIfNeeded();
+				}
+			} catch (final StorageLayerException exception) {
+				final String message = MessageFactory.createMessage(
+						MessageCatalog._00103_UNABLE_TO_FLUSH_PENDING_MUTATIONS,
+						session.getPendingMutations());
+				LOGGER.error(message, exception);
+				invalidateModifiedEntities(session);
+				session.pendingMutationsHaveBeenFlushed();
+				throw new AddDeniedException(message);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the cached entities (if the entity cache is enabled) whose subjects have been modified within a given session.
+	 *
+	 * @param session the bulk load session.
+	 */
+	void invalidateModifiedEntities(final BulkLoadSession session) {
+		for (final byte[] subject : session.getModifiedSubjects()) {
+			invalidateEntityCache(subject);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageablePatternCache;
+import org.gazzax.labs.jena.nosql.fwk.util.ClosingIterator;
+
+import com.google.common.collect.AbstractIterator;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+
+/**
+ * A bounded (LRU) cache of triple pattern results, at identifiers level.
+ * Keys are encoded patterns, values are the identifiers rows that have been returned by the storage for that pattern.
+ *
+ * Each cached entry is stamped with the store version that was current when the storage query started:
+ * each mutation, through any graph of the store, increments the version (see {@link CacheCoordinator}) so that entries 
+ * cached before that mutation are no longer valid. Stale entries are not removed immediately: they are replaced on the 
+ * next query or evicted.
+ *
+ * A result is cached only if it has been entirely consumed and it has at most "max rows per pattern" rows.
+ * As a consequence, the cache is reliable only if the store has no other writers.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class PatternCache implements ManageablePatternCache {
+	static final int DEFAULT_MAX_ROWS_PER_PATTERN = 1000;
+	private static final int ARRAY_HEADER_SIZE = 16;
+
+	/**
+	 * The pattern (i.e. the cache key).
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Pattern {
+		private final byte[][] ids;
+		private final int hashCode;
+
+		/**
+		 * Builds a new key with the given encoded pattern.
+		 *
+		 * @param ids the encoded pattern.
+		 */
+		Pattern(final byte[][] ids) {
+			this.ids = ids;
+			this.hashCode = Arrays.deepHashCode(ids);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof Pattern && Arrays.deepEquals(ids, ((Pattern) obj).ids);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	/**
+	 * A cached pattern result.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Rows {
+		final long version;
+		final List<byte[][]> rows;
+
+		/**
+		 * Builds a new cache entry with the given data.
+		 *
+		 * @param version the graph version the rows refer to.
+		 * @param rows the identifiers rows.
+		 */
+		Rows(final long version, final List<byte[][]> rows) {
+			this.version = version;
+			this.rows = rows;
+		}
+
+		/**
+		 * Returns the (estimated) memory, in bytes, used by this entry.
+		 *
+		 * @return the (estimated) memory, in bytes, used by this entry.
+		 */
+		long estimatedSize() {
+			long size = 0;
+			for (final byte[][] row : rows) {
+				size += ARRAY_HEADER_SIZE;
+				for (final byte[] id : row) {
+					size += ARRAY_HEADER_SIZE + (id != null ? id.length : 0);
+				}
+			}
+			return size;
+		}
+	}
+
+	private final String name;
+	private final int maxRows;
+	private final int maxRowsPerPattern;
+	private final ConcurrentLinkedHashMap<Pattern, Rows> cache;
+
+	private final AtomicLong version;
+	private final AtomicLong lookupsCount = new AtomicLong();
+	private final AtomicLong hitsCount = new AtomicLong();
+	private final AtomicLong evictionsCount = new AtomicLong();
+
+	/**
+	 * Builds a new pattern cache with the given settings.
+	 *
+	 * @param name the name of this cache.
+	 * @param maxRows the max number of rows (regardless the pattern) that will be cached.
+	 * @param maxRowsPerPattern the max number of rows a pattern result can have in order to be cached.
+	 */
+	PatternCache(final String name, final int maxRows, final int maxRowsPerPattern) {
+		this(name, maxRows, maxRowsPerPattern, new AtomicLong());
+	}
+
+	/**
+	 * Builds a new pattern cache with the given settings.
+	 *
+	 * @param name the name of this cache.
+	 * @param maxRows the max number of rows (regardless the pattern) that will be cached.
+	 * @param maxRowsPerPattern the max number of rows a pattern result can have in order to be cached.
+	 * @param version the version shared by the pattern caches of the store.
+	 */
+	PatternCache(final String name, final int maxRows, final int maxRowsPerPattern, final AtomicLong version) {
+		this.name = name;
+		this.version = version;
+		this.maxRows = maxRows;
+		this.maxRowsPerPattern = Math.min(maxRowsPerPattern > 0 ? maxRowsPerPattern : DEFAULT_MAX_ROWS_PER_PATTERN, maxRows);
+		this.cache = new ConcurrentLinkedHashMap
+				.Builder<Pattern, Rows>()
+				.maximumWeightedCapacity(maxRows)
+				.weigher(new Weigher<Rows>() {
+					@Override
+					public int weightOf(final Rows value) {
+						return Math.max(1, value.rows.size());
+					}
+				})
+				.listener(new EvictionListener<Pattern, Rows>() {
+					@Override
+					public void onEviction(final Pattern key, final Rows value) {
+						evictionsCount.incrementAndGet();
+					}
+				})
+				.build();
+	}
+
+	/**
+	 * Returns the cached result of the given pattern.
+	 *
+	 * @param pattern the encoded pattern.
+	 * @return an iterator over the cached rows, or null in case of cache miss.
+	 */
+	Iterator<byte[][]> get(final byte[][] pattern) {
+		lookupsCount.incrementAndGet();
+		final Rows entry = cache.get(new Pattern(pattern));
+		if (entry != null && entry.version == version.get()) {
+			hitsCount.incrementAndGet();
+			return entry.rows.iterator();
+		}
+		return null;
+	}
+
+	/**
+	 * Decorates the given storage result so that its rows will be cached once it has been entirely consumed.
+	 *
+	 * @param pattern the encoded pattern.
+	 * @param result the storage result.
+	 * @return an iterator that returns the same rows of the given result.
+	 */
+	Iterator<byte[][]> cache(final byte[][] pattern, final Iterator<byte[][]> result) {
+		final long versionAtQueryTime = version.get();
+		return new ClosingIterator<byte[][]>(new AbstractIterator<byte[][]>() {
+			private List<byte[][]> rows = new ArrayList<byte[][]>();
+
+			@Override
+			protected byte[][] computeNext() {
+				if (result.hasNext()) {
+					final byte[][] row = result.next();
+					if (rows != null) {
+						if (rows.size() < maxRowsPerPattern) {
+							rows.add(row);
+						} else {
+							rows = null;
+						}
+					}
+					return row;
+				}
+
+				if (rows != null) {
+					cache.put(new Pattern(pattern), new Rows(versionAtQueryTime, rows));
+					rows = null;
+				}
+				return endOfData();
+			}
+		}, result);
+	}
+
+	/**
+	 * Invalidates all cached entries, because of a mutation.
+	 * Note that this invalidates all the pattern caches that share the same version.
+	 */
+	void invalidate() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Removes all cached entries.
+	 */
+	void clear() {
+		invalidate();
+		cache.clear();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	@Override
+	public int getMaxRowsPerPattern() {
+		return maxRowsPerPattern;
+	}
+
+	@Override
+	public int getCachedPatternsCount() {
+		return cache.size();
+	}
+
+	@Override
+	public long getCachedRowsCount() {
+		return cache.weightedSize();
+	}
+
+	@Override
+	public long getEstimatedMemoryUsage() {
+		long size = 0;
+		for (final Rows entry : cache.values()) {
+			size += entry.estimatedSize();
+		}
+		return size;
+	}
+
+	@Override
+	public long getLookupsCount() {
+		return lookupsCount.get();
+	}
+
+	@Override
+	public long getHitsCount() {
+		return hitsCount.get();
+	}
+
+	@Override
+	public double getHitsRatio() {
+		final double hits = hitsCount.get();
+		if (hits != 0) {
+			return (hits / lookupsCount.get()) * 100;
+		}
+		return 0;
+	}
+
+	@Override
+	public long getEvictionsCount() {
+		return evictionsCount.get();
+	}
+
+	@Override
+	public long getVersion() {
+		return version.get();
+	}
+}
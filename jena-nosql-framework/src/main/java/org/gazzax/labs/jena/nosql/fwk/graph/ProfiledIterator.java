@@ -0,0 +1,83 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import java.util.Iterator;
+
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile.PatternProfile;
+
+import com.google.common.collect.AbstractIterator;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/**
+ * An iterator over the results of a profiled pattern: it counts the returned rows and ends the pattern profile 
+ * once the results have been consumed or closed.
+ * If the pattern is a query on its own (e.g. a {@link NoSqlGraph#find(com.hp.hpl.jena.graph.TripleMatch)}), 
+ * the query profile is ended too and collected by the slow query log.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ * @param <T> the element kind.
+ */
+class ProfiledIterator<T> extends AbstractIterator<T> implements ClosableIterator<T> {
+	private final Iterator<T> source;
+	private final PatternProfile pattern;
+	private final QueryProfile query;
+	private final SlowQueryLog log;
+	private boolean closed;
+
+	/**
+	 * Builds a new iterator over the results of a pattern that is part of a wider query.
+	 *
+	 * @param source the pattern results.
+	 * @param pattern the pattern profile.
+	 */
+	ProfiledIterator(final Iterator<T> source, final PatternProfile pattern) {
+		this(source, pattern, null, null);
+	}
+
+	/**
+	 * Builds a new iterator over the results of a pattern.
+	 *
+	 * @param source the pattern results.
+	 * @param pattern the pattern profile.
+	 * @param query the query profile, if the pattern is a query on its own, null otherwise.
+	 * @param log the slow query log that will collect the query profile.
+	 */
+	ProfiledIterator(final Iterator<T> source, final PatternProfile pattern, final QueryProfile query, final SlowQueryLog log) {
+		this.source = source;
+		this.pattern = pattern;
+		this.query = query;
+		this.log = log;
+	}
+
+	@Override
+	protected T computeNext() {
+		if (!closed && source.hasNext()) {
+			pattern.rowReturned();
+			return source.next();
+		}
+
+		finish();
+		return endOfData();
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			NiceIterator.close(source);
+			finish();
+		}
+	}
+
+	/**
+	 * Ends the pattern (and the query) profile.
+	 */
+	private void finish() {
+		pattern.finish();
+		if (query != null && query.finish()) {
+			log.collect(query);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * A {@link Graph} that is able to push a slice (i.e. offset and limit) of a triple pattern query down to the storage.
+ * The SPARQL engine uses this capability for answering LIMIT / OFFSET queries without reading unnecessary rows.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public interface SliceableGraph extends Graph {
+	/**
+	 * Returns the triples that match the given pattern, skipping the first "offset" triples and returning at most "limit" triples.
+	 *
+	 * @param pattern the triple pattern.
+	 * @param offset how many triples will be skipped.
+	 * @param limit the max number of triples, a negative value means no limit.
+	 * @return an iterator over (at most "limit") triples that match the given pattern.
+	 */
+	ExtendedIterator<Triple> find(Triple pattern, long offset, long limit);
+}
@@ -0,0 +1,136 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gazzax.labs.jena.nosql.fwk.dictionary.DictionaryBase;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableDictionary;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableSlowQueryLog;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the profiles of completed queries and retains (and logs) those that took longer than a given threshold.
+ * Only the most recent slow queries are retained; they can be read through the management interface.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class SlowQueryLog implements ManageableSlowQueryLog {
+	public static final long DEFAULT_THRESHOLD = 1000;
+	public static final int DEFAULT_MAX_SIZE = 100;
+
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(SlowQueryLog.class));
+
+	private final String name;
+	private final int maxSize;
+	private final Deque<QueryProfile> slowQueries = new ArrayDeque<QueryProfile>();
+	private final AtomicLong profiledQueriesCount = new AtomicLong();
+	private final AtomicLong slowQueriesCount = new AtomicLong();
+
+	private volatile long thresholdMillis;
+
+	/**
+	 * Builds a new log with the given settings.
+	 *
+	 * @param name the log name.
+	 * @param thresholdMillis the threshold (in milliseconds) above which a query is considered slow.
+	 * @param maxSize the max number of slow query profiles that will be retained.
+	 */
+	public SlowQueryLog(final String name, final long thresholdMillis, final int maxSize) {
+		this.name = name;
+		this.thresholdMillis = thresholdMillis;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Starts the profile of a new query, that watches the tiers of the given dictionary.
+	 *
+	 * @param query the query, as it will appear in reports.
+	 * @param dictionary the dictionary used by the query.
+	 * @return the profile of the given query.
+	 */
+	public QueryProfile newProfile(final String query, final TopLevelDictionary dictionary) {
+		return new QueryProfile(
+				query, 
+				dictionary instanceof DictionaryBase 
+					? ((DictionaryBase<?>) dictionary).getTiers() 
+					: Collections.<ManageableDictionary>emptyList());
+	}
+
+	/**
+	 * Collects the profile of a completed query.
+	 *
+	 * @param profile the query profile.
+	 */
+	public void collect(final QueryProfile profile) {
+		profiledQueriesCount.incrementAndGet();
+		if (profile.getElapsedMillis() < thresholdMillis) {
+			return;
+		}
+
+		slowQueriesCount.incrementAndGet();
+		LOGGER.warning(MessageCatalog._00112_SLOW_QUERY, profile.getElapsedMillis(), profile);
+		synchronized (slowQueries) {
+			slowQueries.addFirst(profile);
+			while (slowQueries.size() > maxSize) {
+				slowQueries.removeLast();
+			}
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getThresholdMillis() {
+		return thresholdMillis;
+	}
+
+	@Override
+	public void setThresholdMillis(final long thresholdMillis) {
+		this.thresholdMillis = thresholdMillis;
+	}
+
+	@Override
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	@Override
+	public long getProfiledQueriesCount() {
+		return profiledQueriesCount.get();
+	}
+
+	@Override
+	public long getSlowQueriesCount() {
+		return slowQueriesCount.get();
+	}
+
+	@Override
+	public String[] getSlowQueries() {
+		synchronized (slowQueries) {
+			final String[] result = new String[slowQueries.size()];
+			int index = 0;
+			for (final Iterator<QueryProfile> iterator = slowQueries.iterator(); iterator.hasNext();) {
+				result[index++] = iterator.next().toString();
+			}
+			return result;
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (slowQueries) {
+			slowQueries.clear();
+		}
+	}
+}
@@ -30,6 +30,17 @@ public interface MessageCatalog {
 	String _00100_UNABLE_TO_DELETE_TRIPLE = PREFIX + "-00100> : Unable to delete the following triple %s. See below for further details.";
 	String _00101_UNABLE_TO_ADD_TRIPLE = PREFIX + "-00101> : Unable to add the following triple %s. See below for further details.";
 	String _00102_UNABLE_TO_RESOLVE_COLLISION = PREFIX + "-00102> : Unable to resolve collision for node %s after %s tries.";
+	String _00103_UNABLE_TO_FLUSH_PENDING_MUTATIONS = PREFIX + "-00103> : Unable to flush %s pending mutation(s). See below for further details.";
+	String _00104_GROUP_COMMITTER_IS_CLOSED = PREFIX + "-00104> : Group committer has been shut down and cannot accept further mutations.";
+	String _00105_TRANSACTION_ALREADY_ACTIVE = PREFIX + "-00105> : A transaction is already active for the current thread.";
+	String _00106_NO_ACTIVE_TRANSACTION = PREFIX + "-00106> : No active transaction for the current thread.";
+	String _00107_UNABLE_TO_COMMIT = PREFIX + "-00107> : Unable to commit the current transaction. See below for further details.";
+	String _00108_UPDATE_WITHIN_READ_TRANSACTION = PREFIX + "-00108> : Updates are not allowed within a read transaction.";
+	String _00109_UNABLE_TO_PERSIST_STATISTICS = PREFIX + "-00109> : Unable to persist graph statistics. See below for further details.";
+	String _00110_UNABLE_TO_LOAD_STATISTICS = PREFIX + "-00110> : Unable to load graph statistics. See below for further details.";
+	String _00112_SLOW_QUERY = PREFIX + "-00112> : Slow query (%s ms): %s";
+	String _00113_UNABLE_TO_SPILL_QUERY_RESULT = PREFIX + "-00113> : Unable to spill (or reload) a cached query result on file %s. See below for further details.";
+	String _00114_UNABLE_TO_SPILL_SORTED_RUN = PREFIX + "-00114> : Unable to spill (or read) a sorted run on file %s. See below for further details.";
 	String _00726_NODE_NOT_FOUND_IN_DICTIONARY = PREFIX + "-00726> : Node %s not found in dictionary.";
 	String _00165_NULL_DECORATEE_DICT = PREFIX + "-00165> : Null dictionary decoratee.";
 	String _00010_DATA_ACCESS_LAYER_FAILURE = PREFIX + "-00010> : Data access failure. See below for further details.";
@@ -0,0 +1,82 @@
+package org.gazzax.labs.jena.nosql.fwk.mx;
+
+import javax.management.MXBean;
+
+/**
+ * Management interface of an entity (i.e. subject outgoing triples) cache.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+@MXBean
+public interface ManageableEntityCache extends Manageable {
+	/**
+	 * Returns the cache (max) size, in terms of cached triples.
+	 *
+	 * @return the cache (max) size, in terms of cached triples.
+	 */
+	int getMaxTriples();
+
+	/**
+	 * Returns the max number of triples a single entity can have in order to be cached.
+	 *
+	 * @return the max number of triples a single entity can have in order to be cached.
+	 */
+	int getMaxTriplesPerEntity();
+
+	/**
+	 * Returns the total count of currently cached entities.
+	 *
+	 * @return the total count of currently cached entities.
+	 */
+	int getCachedEntitiesCount();
+
+	/**
+	 * Returns the total count of currently cached triples.
+	 *
+	 * @return the total count of currently cached triples.
+	 */
+	long getCachedTriplesCount();
+
+	/**
+	 * Returns the (estimated) memory, in bytes, used by cached triples.
+	 *
+	 * @return the (estimated) memory, in bytes, used by cached triples.
+	 */
+	long getEstimatedMemoryUsage();
+
+	/**
+	 * The total number of lookups occurred since this cache has been created.
+	 *
+	 * @return the total number of lookups occurred since this cache has been created.
+	 */
+	long getLookupsCount();
+
+	/**
+	 * The total number of hits occurred since this cache has been created.
+	 *
+	 * @return the total number of hits occurred since this cache has been created.
+	 */
+	long getHitsCount();
+
+	/**
+	 * Hits ratio (percentage of hits over total lookups).
+	 *
+	 * @return the hits ratio.
+	 */
+	double getHitsRatio();
+
+	/**
+	 * The total number of evictions.
+	 *
+	 * @return the total number of evictions.
+	 */
+	long getEvictionsCount();
+
+	/**
+	 * The total number of invalidations (i.e. mutations on cached or not cached subjects).
+	 *
+	 * @return the total number of invalidations.
+	 */
+	long getInvalidationsCount();
+}
@@ -0,0 +1,64 @@
+package org.gazzax.labs.jena.nosql.fwk.mx;
+
+import javax.management.MXBean;
+
+/**
+ * Management interface of the (per predicate) statistics used for planning queries.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+@MXBean
+public interface ManageableGraphStatistics extends Manageable {
+	/**
+	 * Returns the (estimated) total number of triples.
+	 *
+	 * @return the (estimated) total number of triples.
+	 */
+	long getTriplesCount();
+
+	/**
+	 * Returns the (estimated) number of distinct subjects.
+	 *
+	 * @return the (estimated) number of distinct subjects.
+	 */
+	long getDistinctSubjectsCount();
+
+	/**
+	 * Returns the (estimated) number of distinct objects.
+	 *
+	 * @return the (estimated) number of distinct objects.
+	 */
+	long getDistinctObjectsCount();
+
+	/**
+	 * Returns the number of predicates that have statistics.
+	 *
+	 * @return the number of predicates that have statistics.
+	 */
+	int getPredicatesCount();
+
+	/**
+	 * Returns the number of predicates whose statistics are currently loaded in memory.
+	 *
+	 * @return the number of predicates whose statistics are currently loaded in memory.
+	 */
+	int getLoadedPredicatesCount();
+
+	/**
+	 * Returns the timestamp of the last persistence of these statistics.
+	 *
+	 * @return the timestamp of the last persistence of these statistics, 0 if they have never been persisted.
+	 */
+	long getLastPersistenceTimestamp();
+
+	/**
+	 * Writes the statistics that changed since the last persistence.
+	 */
+	void persist();
+
+	/**
+	 * Writes the pending changes and reloads the statistics from the storage (e.g. after a load made by another process).
+	 */
+	void refresh();
+}
@@ -0,0 +1,83 @@
+package org.gazzax.labs.jena.nosql.fwk.mx;
+
+import javax.management.MXBean;
+
+/**
+ * Management interface of a triple pattern (result) cache.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+@MXBean
+public interface ManageablePatternCache extends Manageable {
+	/**
+	 * Returns the cache (max) size, in terms of cached rows.
+	 *
+	 * @return the cache (max) size, in terms of cached rows.
+	 */
+	int getMaxRows();
+
+	/**
+	 * Returns the max number of rows a single pattern result can have in order to be cached.
+	 *
+	 * @return the max number of rows a single pattern result can have in order to be cached.
+	 */
+	int getMaxRowsPerPattern();
+
+	/**
+	 * Returns the total count of currently cached patterns.
+	 *
+	 * @return the total count of currently cached patterns.
+	 */
+	int getCachedPatternsCount();
+
+	/**
+	 * Returns the total count of currently cached rows.
+	 *
+	 * @return the total count of currently cached rows.
+	 */
+	long getCachedRowsCount();
+
+	/**
+	 * Returns the (estimated) memory, in bytes, used by cached rows.
+	 *
+	 * @return the (estimated) memory, in bytes, used by cached rows.
+	 */
+	long getEstimatedMemoryUsage();
+
+	/**
+	 * The total number of lookups occurred since this cache has been created.
+	 *
+	 * @return the total number of lookups occurred since this cache has been created.
+	 */
+	long getLookupsCount();
+
+	/**
+	 * The total number of hits (i.e. lookups with a positive and valid match) occurred since this cache has been created.
+	 *
+	 * @return the total number of hits occurred since this cache has been created.
+	 */
+	long getHitsCount();
+
+	/**
+	 * Hits ratio (percentage of hits over total lookups).
+	 *
+	 * @return the hits ratio.
+	 */
+	double getHitsRatio();
+
+	/**
+	 * The total number of evictions.
+	 *
+	 * @return the total number of evictions.
+	 */
+	long getEvictionsCount();
+
+	/**
+	 * Returns the current graph version.
+	 * Each mutation on the graph increments the version, thus invalidating all entries cached so far.
+	 *
+	 * @return the current graph version.
+	 */
+	long getVersion();
+}
@@ -0,0 +1,66 @@
+package org.gazzax.labs.jena.nosql.fwk.mx;
+
+import javax.management.MXBean;
+
+/**
+ * Management interface of a (prepared) query plan cache.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+@MXBean
+public interface ManageableQueryPlanCache extends Manageable {
+	/**
+	 * Returns the cache (max) size, in terms of cached plans.
+	 *
+	 * @return the cache (max) size, in terms of cached plans.
+	 */
+	int getMaxPlans();
+
+	/**
+	 * Returns the total count of currently cached plans.
+	 *
+	 * @return the total count of currently cached plans.
+	 */
+	int getCachedPlansCount();
+
+	/**
+	 * Returns the total count of currently cached (parsed) queries.
+	 *
+	 * @return the total count of currently cached (parsed) queries.
+	 */
+	int getCachedQueriesCount();
+
+	/**
+	 * The total number of plan lookups occurred since this cache has been created.
+	 *
+	 * @return the total number of plan lookups occurred since this cache has been created.
+	 */
+	long getLookupsCount();
+
+	/**
+	 * The total number of plan hits occurred since this cache has been created.
+	 *
+	 * @return the total number of plan hits occurred since this cache has been created.
+	 */
+	long getHitsCount();
+
+	/**
+	 * Hits ratio (percentage of hits over total lookups).
+	 *
+	 * @return the hits ratio.
+	 */
+	double getHitsRatio();
+
+	/**
+	 * The total number of evictions.
+	 *
+	 * @return the total number of evictions.
+	 */
+	long getEvictionsCount();
+
+	/**
+	 * Removes all cached plans and queries.
+	 */
+	void clear();
+}
@@ -0,0 +1,102 @@
+package org.gazzax.labs.jena.nosql.fwk.mx;
+
+import javax.management.MXBean;
+
+/**
+ * Management interface of a (SPARQL) query result cache.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+@MXBean
+public interface ManageableResultCache extends Manageable {
+	/**
+	 * Returns the cache (max) size, in terms of (estimated) bytes of cached results.
+	 *
+	 * @return the cache (max) size, in terms of (estimated) bytes of cached results.
+	 */
+	long getMaxBytes();
+
+	/**
+	 * Returns the max (estimated) bytes a single query result can have in order to be cached.
+	 *
+	 * @return the max (estimated) bytes a single query result can have in order to be cached.
+	 */
+	int getMaxBytesPerQuery();
+
+	/**
+	 * Returns the total count of query results currently cached in memory.
+	 *
+	 * @return the total count of query results currently cached in memory.
+	 */
+	int getCachedQueriesCount();
+
+	/**
+	 * Returns the (estimated) memory, in bytes, used by cached results.
+	 *
+	 * @return the (estimated) memory, in bytes, used by cached results.
+	 */
+	long getEstimatedMemoryUsage();
+
+	/**
+	 * Returns the total count of query results currently spilled on the local file system.
+	 *
+	 * @return the total count of query results currently spilled on the local file system, 0 if spilling is not enabled.
+	 */
+	int getSpilledQueriesCount();
+
+	/**
+	 * Returns the total size, in bytes, of the spilled results.
+	 *
+	 * @return the total size, in bytes, of the spilled results.
+	 */
+	long getSpilledBytes();
+
+	/**
+	 * The total number of lookups occurred since this cache has been created.
+	 *
+	 * @return the total number of lookups occurred since this cache has been created.
+	 */
+	long getLookupsCount();
+
+	/**
+	 * The total number of hits (i.e. lookups with a positive and valid match) occurred since this cache has been created.
+	 *
+	 * @return the total number of hits occurred since this cache has been created.
+	 */
+	long getHitsCount();
+
+	/**
+	 * The total number of hits that have been answered by a spilled result.
+	 *
+	 * @return the total number of hits that have been answered by a spilled result.
+	 */
+	long getSpillHitsCount();
+
+	/**
+	 * Hits ratio (percentage of hits over total lookups).
+	 *
+	 * @return the hits ratio.
+	 */
+	double getHitsRatio();
+
+	/**
+	 * The total number of evictions from memory.
+	 *
+	 * @return the total number of evictions from memory.
+	 */
+	long getEvictionsCount();
+
+	/**
+	 * Returns the current dataset version.
+	 * Each mutation on the dataset increments the version, thus invalidating all results cached so far.
+	 *
+	 * @return the current dataset version.
+	 */
+	long getVersion();
+
+	/**
+	 * Removes all cached (and spilled) results.
+	 */
+	void clear();
+}
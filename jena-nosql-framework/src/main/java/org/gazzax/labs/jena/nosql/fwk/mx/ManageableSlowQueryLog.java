@@ -0,0 +1,59 @@
+package org.gazzax.labs.jena.nosql.fwk.mx;
+
+import javax.management.MXBean;
+
+/**
+ * Management interface of the slow query log, that is, the most recent profiles of queries that took too long.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+@MXBean
+public interface ManageableSlowQueryLog extends Manageable {
+	/**
+	 * Returns the threshold (in milliseconds) above which a query is considered slow.
+	 *
+	 * @return the threshold (in milliseconds) above which a query is considered slow.
+	 */
+	long getThresholdMillis();
+
+	/**
+	 * Sets the threshold (in milliseconds) above which a query is considered slow.
+	 *
+	 * @param thresholdMillis the threshold (in milliseconds) above which a query is considered slow.
+	 */
+	void setThresholdMillis(long thresholdMillis);
+
+	/**
+	 * Returns the max number of slow query profiles that are retained.
+	 *
+	 * @return the max number of slow query profiles that are retained.
+	 */
+	int getMaxSize();
+
+	/**
+	 * Returns the total number of profiled queries.
+	 *
+	 * @return the total number of profiled queries.
+	 */
+	long getProfiledQueriesCount();
+
+	/**
+	 * Returns the total number of slow queries.
+	 *
+	 * @return the total number of slow queries.
+	 */
+	long getSlowQueriesCount();
+
+	/**
+	 * Returns the profiles of the most recent slow queries, from the most recent.
+	 *
+	 * @return the profiles of the most recent slow queries.
+	 */
+	String[] getSlowQueries();
+
+	/**
+	 * Removes all retained profiles.
+	 */
+	void clear();
+}
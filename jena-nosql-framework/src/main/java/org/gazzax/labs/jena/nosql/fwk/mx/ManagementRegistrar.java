@@ -36,6 +36,66 @@ public abstract class ManagementRegistrar {
 		register(dictionary, createDictionaryObjectName(dictionary.getName()));
 	}
 
+	/**
+	 * Registers a pattern cache management interface.
+	 * 
+	 * @param cache the pattern cache.
+	 * @throws JMException in case of registration failure.
+	 */
+	public static void registerPatternCache(final ManageablePatternCache cache) throws JMException {
+		register(cache, createPatternCacheObjectName(cache.getName()));
+	}
+
+	/**
+	 * Registers an entity cache management interface.
+	 * 
+	 * @param cache the entity cache.
+	 * @throws JMException in case of registration failure.
+	 */
+	public static void registerEntityCache(final ManageableEntityCache cache) throws JMException {
+		register(cache, createEntityCacheObjectName(cache.getName()));
+	}
+
+	/**
+	 * Registers a graph statistics management interface.
+	 * 
+	 * @param statistics the graph statistics.
+	 * @throws JMException in case of registration failure.
+	 */
+	public static void registerGraphStatistics(final ManageableGraphStatistics statistics) throws JMException {
+		register(statistics, createGraphStatisticsObjectName(statistics.getName()));
+	}
+
+	/**
+	 * Registers a slow query log management interface.
+	 * 
+	 * @param log the slow query log.
+	 * @throws JMException in case of registration failure.
+	 */
+	public static void registerSlowQueryLog(final ManageableSlowQueryLog log) throws JMException {
+		register(log, createSlowQueryLogObjectName(log.getName()));
+	}
+
+	/**
+	 * Registers a query plan cache management interface.
+	 * 
+	 * @param cache the query plan cache.
+	 * @throws JMException in case of registration failure.
+	 */
+	public static void registerQueryPlanCache(final ManageableQueryPlanCache cache) throws JMException {
+		register(cache, createQueryPlanCacheObjectName(cache.getName()));
+	}
+
+	/**
+	 * Registers a query result cache management interface.
+	 * 
+	 * @param cache the query result cache.
+	 * @throws JMException in case of registration failure.
+	 */
+	public static void registerResultCache(final ManageableResultCache cache) throws JMException {
+		register(cache, createResultCacheObjectName(cache.getName()));
+	}
+
 	/**
 	 * General purposes registration method.
 	 * Note that we usually prefer specific registration methods.
@@ -61,6 +121,61 @@ public abstract class ManagementRegistrar {
 	public static void unregisterDictionary(final ManageableDictionary dictionary) {
 		unregister(createDictionaryObjectName(dictionary.getName()));
 	}
+
+	/**
+	 * Unregisters a pattern cache management interface.
+	 * 
+	 * @param cache the pattern cache.
+	 */
+	public static void unregisterPatternCache(final ManageablePatternCache cache) {
+		unregister(createPatternCacheObjectName(cache.getName()));
+	}
+
+	/**
+	 * Unregisters an entity cache management interface.
+	 * 
+	 * @param cache the entity cache.
+	 */
+	public static void unregisterEntityCache(final ManageableEntityCache cache) {
+		unregister(createEntityCacheObjectName(cache.getName()));
+	}
+	
+	/**
+	 * Unregisters a graph statistics management interface.
+	 * 
+	 * @param statistics the graph statistics.
+	 */
+	public static void unregisterGraphStatistics(final ManageableGraphStatistics statistics) {
+		unregister(createGraphStatisticsObjectName(statistics.getName()));
+	}
+	
+	/**
+	 * Unregisters a slow query log management interface.
+	 * 
+	 * @param log the slow query log.
+	 */
+	public static void unregisterSlowQueryLog(final ManageableSlowQueryLog log) {
+		unregister(createSlowQueryLogObjectName(log.getName()));
+	}
+	
+	/**
+	 * Unregisters a query plan cache management interface.
+	 * 
+	 * @param cache the query plan cache.
+	 */
+	public static void unregisterQueryPlanCache(final ManageableQueryPlanCache cache) {
+		unregister(createQueryPlanCacheObjectName(cache.getName()));
+	}
+	
+	/**
+	 * Unregisters a query result cache management interface.
+	 * 
+	 * @param cache the query result cache.
+	 */
+	public static void unregisterResultCache(final ManageableResultCache cache) {
+		unregister(createResultCacheObjectName(cache.getName()));
+	}
+	
 	/**
 	 * General purposes unregistration method.
 	 * Note that we usually prefer specific registration methods.
@@ -92,4 +207,88 @@ public abstract class ManagementRegistrar {
 			throw new RuntimeException(exception);
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * ObjectNames (i.e. management names) factory for pattern caches.
+	 * 
+	 * @param id the pattern cache identifier.
+	 * @return the {@link ObjectName} associated with the given identifier. 
+	 */
+	static ObjectName createPatternCacheObjectName(final String id) {
+		try {
+			return new ObjectName(DOMAIN + "Type=PatternCache,ID=" + ObjectName.quote(id));
+		} catch (final Exception exception) {
+			throw new RuntimeException(exception);
+		}
+	}
+	
+	/**
+	 * ObjectNames (i.e. management names) factory for entity caches.
+	 * 
+	 * @param id the entity cache identifier.
+	 * @return the {@link ObjectName} associated with the given identifier. 
+	 */
+	static ObjectName createEntityCacheObjectName(final String id) {
+		try {
+			return new ObjectName(DOMAIN + "Type=EntityCache,ID=" + ObjectName.quote(id));
+		} catch (final Exception exception) {
+			throw new RuntimeException(exception);
+		}
+	}
+	
+	/**
+	 * ObjectNames (i.e. management names) factory for graph statistics.
+	 * 
+	 * @param id the graph statistics identifier.
+	 * @return the {@link ObjectName} associated with the given identifier. 
+	 */
+	static ObjectName createGraphStatisticsObjectName(final String id) {
+		try {
+			return new ObjectName(DOMAIN + "Type=GraphStatistics,ID=" + ObjectName.quote(id));
+		} catch (final Exception exception) {
+			throw new RuntimeException(exception);
+		}
+	}
+	
+	/**
+	 * ObjectNames (i.e. management names) factory for slow query logs.
+	 * 
+	 * @param id the slow query log identifier.
+	 * @return the {@link ObjectName} associated with the given identifier. 
+	 */
+	static ObjectName createSlowQueryLogObjectName(final String id) {
+		try {
+			return new ObjectName(DOMAIN + "Type=SlowQueryLog,ID=" + ObjectName.quote(id));
+		} catch (final Exception exception) {
+			throw new RuntimeException(exception);
+		}
+	}
+	
+	/**
+	 * ObjectNames (i.e. management names) factory for query plan caches.
+	 * 
+	 * @param id the query plan cache identifier.
+	 * @return the {@link ObjectName} associated with the given identifier. 
+	 */
+	static ObjectName createQueryPlanCacheObjectName(final String id) {
+		try {
+			return new ObjectName(DOMAIN + "Type=QueryPlanCache,ID=" + ObjectName.quote(id));
+		} catch (final Exception exception) {
+			throw new RuntimeException(exception);
+		}
+	}
+	
+	/**
+	 * ObjectNames (i.e. management names) factory for query result caches.
+	 * 
+	 * @param id the query result cache identifier.
+	 * @return the {@link ObjectName} associated with the given identifier. 
+	 */
+	static ObjectName createResultCacheObjectName(final String id) {
+		try {
+			return new ObjectName(DOMAIN + "Type=ResultCache,ID=" + ObjectName.quote(id));
+		} catch (final Exception exception) {
+			throw new RuntimeException(exception);
+		}
+	}
+}
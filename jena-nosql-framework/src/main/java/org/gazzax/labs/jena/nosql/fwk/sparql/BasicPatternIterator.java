@@ -0,0 +1,526 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.sparql.IdentifierBinding.Entry;
+import org.gazzax.labs.jena.nosql.fwk.sparql.QueryPlanCache.Plan;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/**
+ * Evaluates a basic graph pattern, for a given input binding, entirely in identifiers space.
+ * Triple patterns are evaluated in the given order, as a pipeline of bind joins that compare dictionary identifiers:
+ * nothing is decoded here, the resulting {@link IdentifierBinding}s decode values only when they are accessed.
+ * 
+ * Each join collects intermediate bindings in chunks and sends the corresponding (partially bound) patterns to the 
+ * storage with one batch query, instead of one query for each binding.
+ * 
+ * Patterns that share a subject which is already bound (i.e. a star), with constant predicates, are evaluated together: 
+ * the whole subject partition is read once, and the patterns are matched against its rows on the client side.
+ *
+ * If the query has a prepared {@link Plan}, the identifiers of the template constants are taken from the plan.
+ *
+ * Note that the dictionary may encode predicates and other members with different identifiers: when a variable
+ * that has been bound in predicate position is used in subject / object position (or viceversa) its identifier is translated.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class BasicPatternIterator extends QueryIter {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(BasicPatternIterator.class));
+
+	private static final int S = 0;
+	private static final int P = 1;
+	private static final int O = 2;
+
+	/**
+	 * Joins the bindings coming from a given input with one or more triple patterns.
+	 * Input bindings are consumed in chunks: all queries of a chunk are executed with one batch query.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	abstract class Join extends AbstractIterator<IdentifierBinding> {
+		private final Iterator<IdentifierBinding> input;
+
+		final List<IdentifierBinding> chunk = new ArrayList<IdentifierBinding>();
+		final List<byte[][]> queries = new ArrayList<byte[][]>();
+		List<Iterator<byte[][]>> results = Collections.emptyList();
+		int current;
+
+		/**
+		 * Builds a new join with the given input.
+		 *
+		 * @param input the input bindings.
+		 */
+		Join(final Iterator<IdentifierBinding> input) {
+			this.input = input;
+		}
+
+		/**
+		 * Returns the query that must be executed for a given input binding.
+		 *
+		 * @param binding the input binding.
+		 * @return the identifiers query (where null members are wildcards), null if the binding cannot have any match.
+		 */
+		abstract byte[][] query(IdentifierBinding binding);
+
+		/**
+		 * Collects the next chunk of input bindings and executes the corresponding queries.
+		 *
+		 * @return false if the input has been entirely consumed, true otherwise.
+		 */
+		boolean nextChunk() {
+			chunk.clear();
+			queries.clear();
+			current = 0;
+			results = Collections.emptyList();
+
+			while (chunk.size() < batchSize && input.hasNext()) {
+				final IdentifierBinding binding = input.next();
+				final byte[][] query = query(binding);
+				if (query != null) {
+					chunk.add(binding);
+					queries.add(query);
+				}
+			}
+
+			if (chunk.isEmpty()) {
+				return false;
+			}
+
+			try {
+				results = graph.find(queries, queryContext);
+			} catch (final StorageLayerException exception) {
+				LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+				throw new QueryExecException(exception);
+			}
+			return true;
+		}
+
+		/**
+		 * Closes all pending results.
+		 */
+		void close() {
+			for (; current < results.size(); current++) {
+				NiceIterator.close(results.get(current));
+			}
+		}
+	}
+
+	/**
+	 * Joins the bindings coming from a given input with a triple pattern.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	class BindJoin extends Join {
+		private final Triple pattern;
+
+		/**
+		 * Builds a new join between the given input and the given pattern.
+		 *
+		 * @param input the input bindings.
+		 * @param pattern the triple pattern.
+		 */
+		BindJoin(final Iterator<IdentifierBinding> input, final Triple pattern) {
+			super(input);
+			this.pattern = pattern;
+		}
+
+		@Override
+		byte[][] query(final IdentifierBinding binding) {
+			return BasicPatternIterator.this.query(pattern, binding);
+		}
+
+		@Override
+		protected IdentifierBinding computeNext() {
+			while (true) {
+				if (current < results.size()) {
+					final Iterator<byte[][]> rows = results.get(current);
+					if (rows.hasNext()) {
+						final IdentifierBinding solution = extend(chunk.get(current), pattern, queries.get(current), rows.next());
+						if (solution != null) {
+							return solution;
+						}
+					} else {
+						NiceIterator.close(rows);
+						current++;
+					}
+				} else if (!nextChunk()) {
+					return endOfData();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Joins the bindings coming from a given input with a star, that is, a set of triple patterns with the same 
+	 * (already bound) subject and constant predicates.
+	 * For each input binding the whole subject partition is read (one query), then all patterns are matched on its rows.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	class StarJoin extends Join {
+		private final List<Triple> patterns;
+		private Iterator<IdentifierBinding> solutions = Iterators.emptyIterator();
+
+		/**
+		 * Builds a new join between the given input and the given star.
+		 *
+		 * @param input the input bindings.
+		 * @param patterns the triple patterns of the star.
+		 */
+		StarJoin(final Iterator<IdentifierBinding> input, final List<Triple> patterns) {
+			super(input);
+			this.patterns = patterns;
+		}
+
+		@Override
+		byte[][] query(final IdentifierBinding binding) {
+			try {
+				final byte[] subject = identifier(patterns.get(0).getSubject(), false, binding);
+				return subject != null ? new byte[][] {subject, null, null} : null;
+			} catch (final StorageLayerException exception) {
+				LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+				throw new QueryExecException(exception);
+			}
+		}
+
+		@Override
+		protected IdentifierBinding computeNext() {
+			while (!solutions.hasNext()) {
+				if (current < results.size()) {
+					final Iterator<byte[][]> rows = results.get(current);
+					final List<byte[][]> partition = new ArrayList<byte[][]>();
+					while (rows.hasNext()) {
+						partition.add(rows.next());
+					}
+					NiceIterator.close(rows);
+					solutions = match(chunk.get(current), partition).iterator();
+					current++;
+				} else if (!nextChunk()) {
+					return endOfData();
+				}
+			}
+			return solutions.next();
+		}
+
+		/**
+		 * Matches all patterns of this star against the rows of a subject partition.
+		 *
+		 * @param binding the input binding.
+		 * @param partition the rows of the subject partition.
+		 * @return the bindings that match all patterns of this star.
+		 */
+		List<IdentifierBinding> match(final IdentifierBinding binding, final List<byte[][]> partition) {
+			List<IdentifierBinding> matches = Collections.singletonList(binding);
+			for (final Triple pattern : patterns) {
+				final List<IdentifierBinding> extended = new ArrayList<IdentifierBinding>();
+				for (final IdentifierBinding partial : matches) {
+					final byte[][] query = BasicPatternIterator.this.query(pattern, partial);
+					if (query == null) {
+						continue;
+					}
+
+					for (final byte[][] row : partition) {
+						if (Arrays.equals(query[P], row[P]) && (query[O] == null || Arrays.equals(query[O], row[O]))) {
+							final IdentifierBinding solution = extend(partial, pattern, query, row);
+							if (solution != null) {
+								extended.add(solution);
+							}
+						}
+					}
+				}
+
+				if (extended.isEmpty()) {
+					return extended;
+				}
+				matches = extended;
+			}
+			return matches;
+		}
+	}
+
+	private final NoSqlGraph graph;
+	private final TopLevelDictionary dictionary;
+	private final QueryContext queryContext;
+	private final Plan plan;
+	private final Binding parent;
+	private final int batchSize;
+
+	private final List<Join> joins;
+	private final Iterator<IdentifierBinding> solutions;
+
+	/**
+	 * Builds a new iterator with the given data.
+	 *
+	 * @param graph the graph.
+	 * @param pattern the basic graph pattern.
+	 * @param parent the input binding.
+	 * @param batchSize the max number of intermediate bindings that are joined with one batch query.
+	 * @param execCxt the execution context.
+	 */
+	public BasicPatternIterator(
+			final NoSqlGraph graph, 
+			final BasicPattern pattern, 
+			final Binding parent, 
+			final int batchSize, 
+			final ExecutionContext execCxt) {
+		super(execCxt);
+		this.graph = graph;
+		this.dictionary = graph.getDictionary();
+		this.queryContext = NoSqlOpExecutor.queryContext(execCxt);
+		this.plan = execCxt.getContext() != null ? (Plan) execCxt.getContext().get(NoSqlQueryEngine.QUERY_PLAN) : null;
+		this.parent = parent;
+		this.batchSize = Math.max(1, batchSize);
+		this.joins = new ArrayList<Join>(pattern.size());
+
+		Iterator<IdentifierBinding> input = Iterators.singletonIterator(new IdentifierBinding(parent, dictionary));
+		final Set<Var> bound = new HashSet<Var>();
+		for (final Iterator<Var> vars = parent.vars(); vars.hasNext();) {
+			bound.add(vars.next());
+		}
+
+		final List<Triple> remaining = new ArrayList<Triple>(pattern.getList());
+		while (!remaining.isEmpty()) {
+			final List<Triple> star = star(remaining, bound);
+			final Join join = star.size() > 1 ? new StarJoin(input, star) : new BindJoin(input, star.get(0));
+			for (final Triple triple : star) {
+				for (int position = S; position <= O; position++) {
+					final Node node = node(triple, position);
+					if (Var.isVar(node)) {
+						bound.add(Var.alloc(node));
+					}
+				}
+			}
+			joins.add(join);
+			input = join;
+		}
+		this.solutions = input;
+	}
+
+	@Override
+	protected boolean hasNextBinding() {
+		return solutions.hasNext();
+	}
+
+	@Override
+	protected Binding moveToNextBinding() {
+		return solutions.next();
+	}
+
+	@Override
+	protected void closeIterator() {
+		for (final Join join : joins) {
+			join.close();
+		}
+	}
+
+	/**
+	 * The base iterator won't ask for further results and it will close this iterator, but pending storage requests
+	 * (of this iterator and of any other iterator of the same query) must be abandoned too.
+	 */
+	@Override
+	protected void requestCancel() {
+		queryContext.cancel();
+	}
+
+	/**
+	 * Removes, from the given patterns, the next pattern and (if the subject of that pattern is already bound) all other 
+	 * patterns that form a star with it, that is, with the same subject and constant predicates.
+	 *
+	 * @param patterns the patterns that still need to be evaluated, in evaluation order.
+	 * @param bound the variables that are bound when the next pattern is evaluated.
+	 * @return the next pattern, possibly followed by the other members of its star.
+	 */
+	static List<Triple> star(final List<Triple> patterns, final Set<Var> bound) {
+		final Triple first = patterns.remove(0);
+		final List<Triple> star = new ArrayList<Triple>();
+		star.add(first);
+
+		final Node subject = first.getSubject();
+		if (!first.getPredicate().isConcrete() || (Var.isVar(subject) ? !bound.contains(Var.alloc(subject)) : !subject.isConcrete())) {
+			return star;
+		}
+
+		for (final Iterator<Triple> iterator = patterns.iterator(); iterator.hasNext();) {
+			final Triple triple = iterator.next();
+			if (subject.equals(triple.getSubject()) && triple.getPredicate().isConcrete()) {
+				star.add(triple);
+				iterator.remove();
+			}
+		}
+		return star;
+	}
+
+	/**
+	 * Builds the identifiers query that corresponds to the given triple pattern, according with the current binding.
+	 *
+	 * @param pattern the triple pattern.
+	 * @param binding the current binding.
+	 * @return the identifiers query (where null members are wildcards), null if the pattern cannot have any match.
+	 */
+	byte[][] query(final Triple pattern, final IdentifierBinding binding) {
+		try {
+			final byte[][] query = {
+					identifier(pattern.getSubject(), false, binding),
+					identifier(pattern.getPredicate(), true, binding),
+					identifier(pattern.getObject(), false, binding) };
+
+			for (int position = S; position <= O; position++) {
+				if (query[position] == null && isBound(node(pattern, position), binding)) {
+					return null;
+				}
+			}
+			return query;
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			throw new QueryExecException(exception);
+		}
+	}
+
+	/**
+	 * Extends the given binding with the variables that have been matched by a given row.
+	 *
+	 * @param binding the current binding.
+	 * @param pattern the triple pattern.
+	 * @param query the query that has been executed.
+	 * @param row the matching row.
+	 * @return the extended binding, or null if the row is not compatible with the pattern (e.g. ?x :p ?x).
+	 */
+	IdentifierBinding extend(final IdentifierBinding binding, final Triple pattern, final byte[][] query, final byte[][] row) {
+		IdentifierBinding result = binding;
+		for (int position = S; position <= O; position++) {
+			if (query[position] != null) {
+				continue;
+			}
+
+			final Var var = (Var) node(pattern, position);
+			final boolean predicate = position == P;
+			final Entry entry = result.entry(var);
+			if (entry == null) {
+				result = result.extend(var, row[position], predicate);
+			} else {
+				try {
+					if (!Arrays.equals(translate(entry, predicate), row[position])) {
+						return null;
+					}
+				} catch (final StorageLayerException exception) {
+					LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+					throw new QueryExecException(exception);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the identifier of the given pattern member.
+	 *
+	 * @param node the pattern member.
+	 * @param predicate true if the member is in predicate position.
+	 * @param binding the current binding.
+	 * @return the identifier of the given pattern member, null in case of unbound variable (or unknown value).
+	 * @throws StorageLayerException in case of dictionary access failure.
+	 */
+	byte[] identifier(final Node node, final boolean predicate, final IdentifierBinding binding) throws StorageLayerException {
+		if (!Var.isVar(node)) {
+			return node.isConcrete() ? constant(node, predicate) : null;
+		}
+
+		final Var var = Var.alloc(node);
+		final Entry entry = binding.entry(var);
+		if (entry != null) {
+			return translate(entry, predicate);
+		}
+
+		final Node value = parent.get(var);
+		return value != null ? dictionary.getID(value, predicate) : null;
+	}
+
+	/**
+	 * Returns the identifier of the given constant.
+	 *
+	 * @param node the constant.
+	 * @param predicate true if the constant is in predicate position.
+	 * @return the identifier of the given constant.
+	 * @throws StorageLayerException in case of dictionary access failure.
+	 */
+	byte[] constant(final Node node, final boolean predicate) throws StorageLayerException {
+		final byte[] id = plan != null ? plan.getID(node, predicate, dictionary) : null;
+		return id != null ? id : dictionary.getID(node, predicate);
+	}
+
+	/**
+	 * Returns true if the given pattern member is a constant or a variable that is already bound.
+	 *
+	 * @param node the pattern member.
+	 * @param binding the current binding.
+	 * @return true if the given pattern member is a constant or a variable that is already bound.
+	 */
+	boolean isBound(final Node node, final IdentifierBinding binding) {
+		if (!Var.isVar(node)) {
+			return node.isConcrete();
+		}
+
+		final Var var = Var.alloc(node);
+		return binding.entry(var) != null || parent.contains(var);
+	}
+
+	/**
+	 * Returns the identifier of the given entry, encoded as predicate or not.
+	 *
+	 * @param entry the binding entry.
+	 * @param predicate true if the requested identifier is a predicate identifier.
+	 * @return the identifier of the given entry, encoded as predicate or not.
+	 * @throws StorageLayerException in case of dictionary access failure.
+	 */
+	byte[] translate(final Entry entry, final boolean predicate) throws StorageLayerException {
+		return entry.predicate == predicate
+				? entry.id
+				: dictionary.getID(dictionary.getValue(entry.id, entry.predicate), predicate);
+	}
+
+	/**
+	 * Returns the member of the given pattern at a given position.
+	 *
+	 * @param pattern the triple pattern.
+	 * @param position the position.
+	 * @return the member of the given pattern at a given position.
+	 */
+	static Node node(final Triple pattern, final int position) {
+		switch (position) {
+		case S:
+			return pattern.getSubject();
+		case P:
+			return pattern.getPredicate();
+		default:
+			return pattern.getObject();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.io.File;
+
+/**
+ * The settings of the SPARQL evaluation in identifiers space (see {@link NoSqlStageGenerator} and {@link NoSqlOpExecutor}).
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class EvaluationSettings {
+	public static final int DEFAULT_BIND_JOIN_BATCH_SIZE = 100;
+	public static final int DEFAULT_DISTINCT_MAX_BYTES = 64 * 1024 * 1024;
+
+	public static final EvaluationSettings DEFAULTS = new EvaluationSettings(DEFAULT_BIND_JOIN_BATCH_SIZE, null, DEFAULT_DISTINCT_MAX_BYTES, null);
+
+	private final int bindJoinBatchSize;
+	private final ParallelEvaluator parallelEvaluator;
+	private final long distinctMaxBytes;
+	private final File spillDirectory;
+
+	/**
+	 * Builds new settings with the given data.
+	 *
+	 * @param bindJoinBatchSize the max number of intermediate bindings that are joined with one batch query.
+	 * @param parallelEvaluator the evaluator of independent branches, null if branches must be evaluated sequentially.
+	 * @param distinctMaxBytes the memory budget, in bytes, of a DISTINCT in identifiers space, 0 means no budget (i.e. never spill).
+	 * @param spillDirectory the directory where DISTINCT runs are spilled, null for the default temporary directory.
+	 */
+	public EvaluationSettings(
+			final int bindJoinBatchSize,
+			final ParallelEvaluator parallelEvaluator,
+			final long distinctMaxBytes,
+			final File spillDirectory) {
+		this.bindJoinBatchSize = bindJoinBatchSize;
+		this.parallelEvaluator = parallelEvaluator;
+		this.distinctMaxBytes = distinctMaxBytes;
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Returns the max number of intermediate bindings that are joined with one batch query.
+	 *
+	 * @return the max number of intermediate bindings that are joined with one batch query.
+	 */
+	public int getBindJoinBatchSize() {
+		return bindJoinBatchSize;
+	}
+
+	/**
+	 * Returns the evaluator of independent branches (i.e. UNION branches and independent OPTIONALs).
+	 *
+	 * @return the evaluator of independent branches, null if branches are evaluated sequentially.
+	 */
+	public ParallelEvaluator getParallelEvaluator() {
+		return parallelEvaluator;
+	}
+
+	/**
+	 * Returns the memory budget, in bytes, of a DISTINCT in identifiers space.
+	 *
+	 * @return the memory budget, in bytes, of a DISTINCT in identifiers space, 0 if DISTINCT never spills.
+	 */
+	public long getDistinctMaxBytes() {
+		return distinctMaxBytes;
+	}
+
+	/**
+	 * Returns the directory where DISTINCT runs are spilled.
+	 *
+	 * @return the directory where DISTINCT runs are spilled, null for the default temporary directory.
+	 */
+	public File getSpillDirectory() {
+		return spillDirectory;
+	}
+}
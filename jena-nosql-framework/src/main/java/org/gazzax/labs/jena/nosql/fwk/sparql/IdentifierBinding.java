@@ -0,0 +1,178 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingBase;
+
+/**
+ * A {@link Binding} whose values are dictionary identifiers.
+ * Identifiers are decoded lazily, the first time a variable is accessed: in this way variables that
+ * don't survive to the projection (or that are never read by filters or other operators) are never decoded.
+ *
+ * Bindings are immutable and they are built incrementally (see {@link #extend(Var, byte[], boolean)}),
+ * sharing the identifiers of the binding they have been extended from.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class IdentifierBinding extends BindingBase {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(IdentifierBinding.class));
+
+	/**
+	 * A variable bound to an identifier.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Entry {
+		final Var var;
+		final byte[] id;
+		final boolean predicate;
+		final Entry next;
+
+		/**
+		 * Builds a new entry with the given data.
+		 *
+		 * @param var the variable.
+		 * @param id the identifier.
+		 * @param predicate true if the identifier has been encoded as a predicate.
+		 * @param next the next entry (i.e. the entries of the binding that has been extended).
+		 */
+		Entry(final Var var, final byte[] id, final boolean predicate, final Entry next) {
+			this.var = var;
+			this.id = id;
+			this.predicate = predicate;
+			this.next = next;
+		}
+	}
+
+	private final TopLevelDictionary dictionary;
+	private final Entry entries;
+	private final int size;
+	private Map<Var, Node> decoded;
+
+	/**
+	 * Builds a new empty binding.
+	 *
+	 * @param parent the parent binding.
+	 * @param dictionary the dictionary that will be used for decoding identifiers.
+	 */
+	IdentifierBinding(final Binding parent, final TopLevelDictionary dictionary) {
+		this(parent, dictionary, null, 0);
+	}
+
+	/**
+	 * Builds a new binding with the given data.
+	 *
+	 * @param parent the parent binding.
+	 * @param dictionary the dictionary that will be used for decoding identifiers.
+	 * @param entries the variables bound to identifiers.
+	 * @param size how many variables are bound in this binding.
+	 */
+	private IdentifierBinding(final Binding parent, final TopLevelDictionary dictionary, final Entry entries, final int size) {
+		super(parent);
+		this.dictionary = dictionary;
+		this.entries = entries;
+		this.size = size;
+	}
+
+	/**
+	 * Returns a new binding that includes all the variables of this binding plus the given one.
+	 *
+	 * @param var the variable.
+	 * @param id the identifier.
+	 * @param predicate true if the identifier has been encoded as a predicate.
+	 * @return a new binding that includes all the variables of this binding plus the given one.
+	 */
+	IdentifierBinding extend(final Var var, final byte[] id, final boolean predicate) {
+		return new IdentifierBinding(parent, dictionary, new Entry(var, id, predicate, entries), size + 1);
+	}
+
+	/**
+	 * Returns the entry associated with the given variable.
+	 *
+	 * @param var the variable.
+	 * @return the entry associated with the given variable, null if the variable is not bound in this binding.
+	 */
+	Entry entry(final Var var) {
+		for (Entry entry = entries; entry != null; entry = entry.next) {
+			if (entry.var.equals(var)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected Iterator<Var> vars1() {
+		return new AbstractIterator<Var>() {
+			private Entry current = entries;
+
+			@Override
+			protected Var computeNext() {
+				if (current == null) {
+					return endOfData();
+				}
+
+				final Var var = current.var;
+				current = current.next;
+				return var;
+			}
+		};
+	}
+
+	@Override
+	protected int size1() {
+		return size;
+	}
+
+	@Override
+	protected boolean isEmpty1() {
+		return size == 0;
+	}
+
+	@Override
+	protected boolean contains1(final Var var) {
+		return entry(var) != null;
+	}
+
+	@Override
+	protected Node get1(final Var var) {
+		if (decoded != null) {
+			final Node node = decoded.get(var);
+			if (node != null) {
+				return node;
+			}
+		}
+
+		final Entry entry = entry(var);
+		if (entry == null) {
+			return null;
+		}
+
+		try {
+			final Node node = dictionary.getValue(entry.id, entry.predicate);
+			if (decoded == null) {
+				decoded = new HashMap<Var, Node>(size);
+			}
+			decoded.put(var, node);
+			return node;
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			throw new QueryExecException(exception);
+		}
+	}
+}
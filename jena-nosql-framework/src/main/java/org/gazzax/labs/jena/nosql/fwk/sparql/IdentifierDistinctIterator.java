@@ -0,0 +1,220 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.List;
+
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.sparql.IdentifierBinding.Entry;
+import org.gazzax.labs.jena.nosql.fwk.util.ByteArraySet;
+import org.gazzax.labs.jena.nosql.fwk.util.NTriples;
+import org.gazzax.labs.jena.nosql.fwk.util.SortedRuns;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.binding.BindingProject;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter1;
+
+/**
+ * Removes duplicate solutions (i.e. DISTINCT / REDUCED) in identifiers space.
+ *
+ * Each solution is reduced to a key, which packs the identifiers of the projected variables (see {@link #key(Binding, List)}):
+ * keys are compared as byte arrays and kept in a compact {@link ByteArraySet}, so nothing is decoded here and
+ * only surviving solutions decode their values, when they are accessed.
+ *
+ * Solutions are streamed until the set of seen keys is over a given memory budget. From that point on, if spilling is allowed,
+ * keys of solutions not seen so far are sorted in runs that are spilled to temporary files (see {@link SortedRuns}) and,
+ * once the input has been consumed, the merged runs are returned, rebuilt as {@link IdentifierBinding}s.
+ * Note that spilled solutions are therefore not returned in input order.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class IdentifierDistinctIterator extends QueryIter1 {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static final byte UNBOUND = 0;
+	static final byte IDENTIFIER = 1;
+	static final byte PREDICATE_IDENTIFIER = 2;
+	static final byte VALUE = 3;
+
+	private final List<Var> vars;
+	private final TopLevelDictionary dictionary;
+	private final long maxBytes;
+	private final boolean spill;
+	private final File spillDirectory;
+	private final ByteArraySet seen = new ByteArraySet();
+
+	private SortedRuns runs;
+	private Iterator<byte[]> merged;
+	private Binding next;
+
+	/**
+	 * Builds a new iterator with the given data.
+	 *
+	 * @param input the input solutions.
+	 * @param vars the projected variables.
+	 * @param dictionary the dictionary that will be used for decoding identifiers.
+	 * @param maxBytes the memory budget, in bytes, of the seen keys (and of each spilled run).
+	 * @param spill true if keys can be spilled when the memory budget is exceeded (i.e. the input order needn't be preserved).
+	 * @param spillDirectory the directory where runs will be spilled, null for the default temporary directory.
+	 * @param execCxt the execution context.
+	 */
+	public IdentifierDistinctIterator(
+			final QueryIterator input,
+			final List<Var> vars,
+			final TopLevelDictionary dictionary,
+			final long maxBytes,
+			final boolean spill,
+			final File spillDirectory,
+			final ExecutionContext execCxt) {
+		super(input, execCxt);
+		this.vars = vars;
+		this.dictionary = dictionary;
+		this.maxBytes = maxBytes;
+		this.spill = spill && maxBytes > 0;
+		this.spillDirectory = spillDirectory;
+	}
+
+	@Override
+	protected boolean hasNextBinding() {
+		try {
+			while (next == null) {
+				if (merged != null) {
+					if (!merged.hasNext()) {
+						return false;
+					}
+					next = binding(merged.next(), vars, dictionary);
+				} else if (getInput().hasNext()) {
+					final Binding solution = getInput().nextBinding();
+					final byte[] key = key(solution, vars);
+					if (runs == null) {
+						if (seen.add(key)) {
+							next = new BindingProject(vars, solution);
+							if (spill && seen.memoryUsage() > maxBytes) {
+								runs = new SortedRuns(spillDirectory, maxBytes);
+							}
+						}
+					} else if (!seen.contains(key)) {
+						runs.add(key);
+					}
+				} else if (runs != null) {
+					merged = runs.merge();
+				} else {
+					return false;
+				}
+			}
+			return true;
+		} catch (final IOException exception) {
+			throw new QueryExecException(exception);
+		}
+	}
+
+	@Override
+	protected Binding moveToNextBinding() {
+		final Binding result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	protected void requestSubCancel() {
+		// Nothing to be done here
+	}
+
+	@Override
+	protected void closeSubIterator() {
+		if (runs != null) {
+			runs.close();
+		}
+	}
+
+	/**
+	 * Returns the key of the given solution, that is, for each given variable, its identifier (or its value, if the
+	 * variable has not been bound in identifiers space), tagged with its kind and prefixed with its length.
+	 * Solutions produced by the same basic graph pattern have equal keys if and only if they are equal.
+	 *
+	 * @param solution the solution.
+	 * @param vars the variables.
+	 * @return the key of the given solution.
+	 */
+	static byte[] key(final Binding solution, final List<Var> vars) {
+		final IdentifierBinding identifiers = solution instanceof IdentifierBinding ? (IdentifierBinding) solution : null;
+		final byte[][] values = new byte[vars.size()][];
+		final byte[] tags = new byte[vars.size()];
+		int size = 0;
+		for (int i = 0; i < values.length; i++) {
+			final Var var = vars.get(i);
+			final Entry entry = identifiers != null ? identifiers.entry(var) : null;
+			if (entry != null) {
+				tags[i] = entry.predicate ? PREDICATE_IDENTIFIER : IDENTIFIER;
+				values[i] = entry.id;
+			} else {
+				final Node value = solution.get(var);
+				if (value != null) {
+					tags[i] = VALUE;
+					values[i] = NTriples.asNt(value).getBytes(UTF8);
+				}
+			}
+			size += values[i] != null ? values[i].length + 5 : 1;
+		}
+
+		final ByteBuffer key = ByteBuffer.allocate(size);
+		for (int i = 0; i < values.length; i++) {
+			key.put(tags[i]);
+			if (values[i] != null) {
+				key.putInt(values[i].length);
+				key.put(values[i]);
+			}
+		}
+		return key.array();
+	}
+
+	/**
+	 * Rebuilds the solution that corresponds to a given key.
+	 * Identifiers are not decoded here: the resulting {@link IdentifierBinding} decodes them when they are accessed.
+	 *
+	 * @param key the key.
+	 * @param vars the variables of the key.
+	 * @param dictionary the dictionary that will be used for decoding identifiers.
+	 * @return the solution that corresponds to the given key.
+	 */
+	static Binding binding(final byte[] key, final List<Var> vars, final TopLevelDictionary dictionary) {
+		final ByteBuffer buffer = ByteBuffer.wrap(key);
+		final BindingMap values = BindingFactory.create();
+		final byte[][] identifiers = new byte[vars.size()][];
+		final boolean[] predicates = new boolean[vars.size()];
+		for (int i = 0; i < identifiers.length; i++) {
+			final byte tag = buffer.get();
+			if (tag == UNBOUND) {
+				continue;
+			}
+
+			final byte[] value = new byte[buffer.getInt()];
+			buffer.get(value);
+			if (tag == VALUE) {
+				values.add(vars.get(i), NTriples.asNode(new String(value, UTF8)));
+			} else {
+				identifiers[i] = value;
+				predicates[i] = tag == PREDICATE_IDENTIFIER;
+			}
+		}
+
+		IdentifierBinding result = new IdentifierBinding(values, dictionary);
+		for (int i = 0; i < identifiers.length; i++) {
+			if (identifiers[i] != null) {
+				result = result.extend(vars.get(i), identifiers[i], predicates[i]);
+			}
+		}
+		return result;
+	}
+}
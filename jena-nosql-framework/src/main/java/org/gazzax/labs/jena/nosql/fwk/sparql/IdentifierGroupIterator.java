@@ -0,0 +1,221 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.util.ByteArraySet;
+
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIter1;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprAggregator;
+import com.hp.hpl.jena.sparql.expr.ExprEvalException;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+import com.hp.hpl.jena.sparql.expr.aggregate.Accumulator;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCount;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVar;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVarDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.Aggregator;
+import com.hp.hpl.jena.sparql.function.FunctionEnv;
+
+/**
+ * Groups solutions (i.e. GROUP BY on plain variables) in identifiers space.
+ *
+ * Each solution is reduced to the key of its group variables (see {@link IdentifierDistinctIterator#key(Binding, java.util.List)}):
+ * groups are indexed by a compact {@link ByteArraySet}, so group values are decoded only once per group, when the
+ * resulting solution is accessed. COUNT(*), COUNT(?x) and COUNT(DISTINCT ?x) are computed in identifiers space too,
+ * any other aggregate is computed by the ARQ accumulator (which decodes the values it reads).
+ *
+ * As the ARQ group operator, groups are collected in memory, the first time a solution is requested.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class IdentifierGroupIterator extends QueryIter1 {
+	/**
+	 * Counts the solutions of a group that have a given variable bound (or all solutions).
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Count implements Accumulator {
+		private final Var var;
+		private long count;
+
+		/**
+		 * Builds a new counter.
+		 *
+		 * @param var the variable, null for counting all solutions.
+		 */
+		Count(final Var var) {
+			this.var = var;
+		}
+
+		@Override
+		public void accumulate(final Binding binding, final FunctionEnv functionEnv) {
+			if (var == null || binding.contains(var)) {
+				count++;
+			}
+		}
+
+		@Override
+		public NodeValue getValue() {
+			return NodeValue.makeInteger(count);
+		}
+	}
+
+	/**
+	 * Counts the distinct values of a given variable within a group.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class CountDistinct implements Accumulator {
+		private final List<Var> var;
+		private final ByteArraySet values = new ByteArraySet();
+
+		/**
+		 * Builds a new counter.
+		 *
+		 * @param var the variable.
+		 */
+		CountDistinct(final Var var) {
+			this.var = Collections.singletonList(var);
+		}
+
+		@Override
+		public void accumulate(final Binding binding, final FunctionEnv functionEnv) {
+			final byte[] key = IdentifierDistinctIterator.key(binding, var);
+			if (key[0] != IdentifierDistinctIterator.UNBOUND) {
+				values.add(key);
+			}
+		}
+
+		@Override
+		public NodeValue getValue() {
+			return NodeValue.makeInteger(values.size());
+		}
+	}
+
+	private final List<Var> groupVars;
+	private final List<ExprAggregator> aggregators;
+	private final TopLevelDictionary dictionary;
+	private List<Binding> groups;
+	private int current;
+
+	/**
+	 * Builds a new iterator with the given data.
+	 *
+	 * @param input the input solutions.
+	 * @param groupVars the group variables.
+	 * @param aggregators the aggregates.
+	 * @param dictionary the dictionary that will be used for decoding identifiers.
+	 * @param execCxt the execution context.
+	 */
+	public IdentifierGroupIterator(
+			final QueryIterator input,
+			final List<Var> groupVars,
+			final List<ExprAggregator> aggregators,
+			final TopLevelDictionary dictionary,
+			final ExecutionContext execCxt) {
+		super(input, execCxt);
+		this.groupVars = groupVars;
+		this.aggregators = aggregators;
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	protected boolean hasNextBinding() {
+		if (groups == null) {
+			groups = collect();
+		}
+		return current < groups.size();
+	}
+
+	@Override
+	protected Binding moveToNextBinding() {
+		return groups.get(current++);
+	}
+
+	@Override
+	protected void requestSubCancel() {
+		// Nothing to be done here
+	}
+
+	@Override
+	protected void closeSubIterator() {
+		groups = Collections.emptyList();
+	}
+
+	/**
+	 * Consumes the input and returns the resulting groups.
+	 *
+	 * @return the resulting groups.
+	 */
+	List<Binding> collect() {
+		final ByteArraySet keys = new ByteArraySet();
+		final List<Accumulator[]> accumulators = new ArrayList<Accumulator[]>();
+		while (getInput().hasNext()) {
+			final Binding solution = getInput().nextBinding();
+			final byte[] key = IdentifierDistinctIterator.key(solution, groupVars);
+			int index = keys.indexOf(key);
+			if (index == -1) {
+				keys.add(key);
+				index = accumulators.size();
+				accumulators.add(accumulators());
+			}
+
+			for (final Accumulator accumulator : accumulators.get(index)) {
+				accumulator.accumulate(solution, getExecContext());
+			}
+		}
+
+		final List<Binding> result = new ArrayList<Binding>(accumulators.size());
+		for (int index = 0; index < accumulators.size(); index++) {
+			final BindingMap group = BindingFactory.create(IdentifierDistinctIterator.binding(keys.get(index), groupVars, dictionary));
+			final Accumulator[] values = accumulators.get(index);
+			for (int i = 0; i < values.length; i++) {
+				try {
+					final NodeValue value = values[i].getValue();
+					if (value != null) {
+						group.add(aggregators.get(i).getVar(), value.asNode());
+					}
+				} catch (final ExprEvalException exception) {
+					// The aggregate is unbound in this group
+				}
+			}
+			result.add(group);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a new set of accumulators, one for each aggregate.
+	 *
+	 * @return a new set of accumulators, one for each aggregate.
+	 */
+	Accumulator[] accumulators() {
+		final Accumulator[] result = new Accumulator[aggregators.size()];
+		for (int i = 0; i < result.length; i++) {
+			final Aggregator aggregator = aggregators.get(i).getAggregator();
+			final Expr expression = aggregator.getExpr();
+			if (aggregator instanceof AggCount) {
+				result[i] = new Count(null);
+			} else if (aggregator instanceof AggCountVar && expression.isVariable()) {
+				result[i] = new Count(expression.asVar());
+			} else if (aggregator instanceof AggCountVarDistinct && expression.isVariable()) {
+				result[i] = new CountDistinct(expression.asVar());
+			} else {
+				result[i] = aggregator.createAccumulator();
+			}
+		}
+		return result;
+	}
+}
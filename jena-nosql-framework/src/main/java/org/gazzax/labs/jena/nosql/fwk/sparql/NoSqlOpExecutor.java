@@ -0,0 +1,800 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile;
+import org.gazzax.labs.jena.nosql.fwk.graph.CountableGraph;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlDatasetGraph;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.gazzax.labs.jena.nosql.fwk.graph.SlowQueryLog;
+import org.gazzax.labs.jena.nosql.fwk.graph.SliceableGraph;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.ARQConstants;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.OpVars;
+import com.hp.hpl.jena.sparql.algebra.op.Op1;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
+import com.hp.hpl.jena.sparql.algebra.op.OpConditional;
+import com.hp.hpl.jena.sparql.algebra.op.OpDistinct;
+import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpGroup;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpPath;
+import com.hp.hpl.jena.sparql.algebra.op.OpProject;
+import com.hp.hpl.jena.sparql.algebra.op.OpReduced;
+import com.hp.hpl.jena.sparql.algebra.op.OpSlice;
+import com.hp.hpl.jena.sparql.algebra.op.OpUnion;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.core.VarExprList;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterDistinguishedVars;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSingleton;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterProject;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRoot;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSlice;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIteratorWrapper;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutor;
+import com.hp.hpl.jena.sparql.engine.main.OpExecutorFactory;
+import com.hp.hpl.jena.sparql.engine.main.QC;
+import com.hp.hpl.jena.sparql.engine.main.StageBuilder;
+import com.hp.hpl.jena.sparql.engine.main.StageGenerator;
+import com.hp.hpl.jena.sparql.engine.main.StageGeneratorGeneric;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprAggregator;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCount;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVar;
+import com.hp.hpl.jena.sparql.expr.aggregate.AggCountVarDistinct;
+import com.hp.hpl.jena.sparql.expr.aggregate.Aggregator;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.sparql.util.Symbol;
+import com.hp.hpl.jena.util.iterator.Map1;
+
+/**
+ * ARQ {@link OpExecutor} that pushes slices (i.e. LIMIT / OFFSET) and counts over basic graph patterns down to the storage.
+ * 
+ * <ul>
+ * 	<li>A slice over a single triple pattern, on a {@link SliceableGraph}, is entirely answered by the storage (offset included).</li>
+ * 	<li>A slice over a basic graph pattern, on a {@link NoSqlGraph}, limits the intermediate bindings that each join collects.</li>
+ * 	<li>A COUNT (optionally DISTINCT on one variable) over a single triple pattern, on a {@link CountableGraph}, 
+ * 		is answered by the storage, without reading the matching triples.</li>
+ * 	<li>A basic graph pattern, on a {@link NoSqlGraph} with statistics, is reordered by the estimated number of matches 
+ * 		of its triple patterns.</li>
+ * 	<li>A transitive property path (p+ or p*), on a {@link NoSqlGraph}, is walked breadth-first, with batch queries 
+ * 		(see {@link TransitivePathIterator}).</li>
+ * 	<li>If a {@link ParallelEvaluator} has been configured, UNION branches and OPTIONALs that don't depend on each other,
+ * 		over NoSQL graphs, are evaluated concurrently.</li>
+ * 	<li>A DISTINCT (or REDUCED) or a GROUP BY (on plain variables) over a basic graph pattern, optionally filtered, 
+ * 		on a {@link NoSqlGraph}, is evaluated in identifiers space (see {@link IdentifierDistinctIterator} and 
+ * 		{@link IdentifierGroupIterator}).</li>
+ * </ul>
+ * 
+ * Any other operator is executed as usual.
+ * 
+ * Slices, counts, statistics reordering and transitive paths apply as soon as the executor is registered (i.e. by any configured 
+ * storage layer factory), while parallel branches, DISTINCT and GROUP BY apply only to graphs that are evaluated in 
+ * identifiers space (see {@link EvaluationSettings}).
+ * 
+ * All storage requests issued on behalf of the same query share a {@link QueryContext} (see {@link #queryContext(ExecutionContext)}),
+ * so that, once the query has been cancelled or its timeout has expired, in-flight requests are abandoned.
+ * If query profiling has been enabled, the same context carries the {@link QueryProfile} of the query, which is also 
+ * available in the ARQ context (see {@link #QUERY_PROFILE}) and, once the query results have been consumed, 
+ * it is collected by the {@link SlowQueryLog}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class NoSqlOpExecutor extends OpExecutor {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(NoSqlOpExecutor.class));
+	
+	/** The symbol that holds, in the ARQ context of a query execution, the {@link QueryContext} of that query. */
+	public static final Symbol QUERY_CONTEXT = Symbol.create("http://gazzax.labs.org/jena-nosql#queryContext");
+	
+	/** The symbol that holds, in the ARQ context of a query execution, the {@link QueryProfile} of that query (if profiled). */
+	public static final Symbol QUERY_PROFILE = Symbol.create("http://gazzax.labs.org/jena-nosql#queryProfile");
+	
+	public static final OpExecutorFactory FACTORY = new OpExecutorFactory() {
+		@Override
+		public OpExecutor create(final ExecutionContext execCxt) {
+			return new NoSqlOpExecutor(execCxt);
+		}
+	};
+
+	/**
+	 * Builds a new executor with the given execution context.
+	 *
+	 * @param execCxt the execution context.
+	 */
+	protected NoSqlOpExecutor(final ExecutionContext execCxt) {
+		super(execCxt);
+	}
+
+	/**
+	 * The first operator of a query execution (i.e. the root of the algebra expression) creates the {@link QueryContext} 
+	 * of the query. If the query is profiled, its profile ends once the query results have been consumed (or closed).
+	 * 
+	 * The context is bound to the thread that evaluates the query (see {@link QueryContext#running()}), while the root 
+	 * operator (or a branch evaluated on another thread) is built and consumed, and it is cancelled together with the query.
+	 */
+	@Override
+	protected QueryIterator exec(final Op op, final QueryIterator input) {
+		final Context context = execCxt.getContext();
+		if (context == null || context == ARQ.getContext()) {
+			return super.exec(op, input);
+		}
+
+		final boolean root = !context.isDefined(QUERY_CONTEXT);
+		final QueryContext queryContext = queryContext(execCxt);
+		if (!root && QueryContext.running() == queryContext) {
+			return super.exec(op, input);
+		}
+
+		final QueryProfile profile = root ? queryContext.getProfile() : null;
+		final QueryContext previous = queryContext.bind();
+		try {
+			return new RunningQueryIterator(
+					super.exec(op, input), 
+					queryContext, 
+					profile, 
+					profile != null ? ((NoSqlGraph) execCxt.getActiveGraph()).getSlowQueryLog() : null);
+		} finally {
+			QueryContext.restore(previous);
+		}
+	}
+
+	/**
+	 * A basic graph pattern over a {@link NoSqlGraph} with statistics, which is not evaluated in identifiers space, 
+	 * is evaluated as ARQ does by default, except that its triple patterns are reordered by their estimated number of matches
+	 * (see {@link StatisticsReorderTransformation}) instead of the ARQ fixed heuristic.
+	 */
+	@Override
+	protected QueryIterator execute(final OpBGP opBGP, final QueryIterator input) {
+		final Graph graph = execCxt.getActiveGraph();
+		if (opBGP.getPattern().size() < 2
+				|| !(graph instanceof NoSqlGraph)
+				|| ((NoSqlGraph) graph).getStatistics() == null
+				|| settings() != null
+				|| !isGeneric(stageGenerator)) {
+			return super.execute(opBGP, input);
+		}
+
+		final QueryIterator result = new ReorderingStageGenerator(NoSqlStageGenerator.reorderTransformation((NoSqlGraph) graph))
+				.execute(opBGP.getPattern(), input, execCxt);
+		return execCxt.getContext().isTrue(ARQ.hideNonDistiguishedVariables) 
+				? new QueryIterDistinguishedVars(result, execCxt) 
+				: result;
+	}
+
+	@Override
+	protected QueryIterator execute(final OpSlice opSlice, final QueryIterator input) {
+		final Op subOp = opSlice.getSubOp();
+		final OpProject project = subOp instanceof OpProject ? (OpProject) subOp : null;
+		final Op inner = project != null ? project.getSubOp() : subOp;
+		if (!(inner instanceof OpBGP) || !(input instanceof QueryIterRoot) || opSlice.getLength() == Query.NOLIMIT) {
+			return super.execute(opSlice, input);
+		}
+
+		final long offset = opSlice.getStart() == Query.NOLIMIT ? 0 : opSlice.getStart();
+		final long limit = opSlice.getLength();
+		final BasicPattern pattern = ((OpBGP) inner).getPattern();
+		final Graph graph = execCxt.getActiveGraph();
+
+		QueryIterator result = null;
+		if (pattern.size() == 1 && graph instanceof SliceableGraph && !hasRepeatedVariables(pattern.get(0))) {
+			input.close();
+			final Triple triple = pattern.get(0);
+			result = new QueryIterPlainWrapper(
+					((SliceableGraph) graph).find(asMatch(triple), offset, limit).mapWith(new Map1<Triple, Binding>() {
+						@Override
+						public Binding map1(final Triple match) {
+							return asBinding(triple, match);
+						}
+					}),
+					execCxt);
+		} else {
+			final StageGenerator generator = StageBuilder.chooseStageGenerator(execCxt.getContext());
+			if (graph instanceof NoSqlGraph && generator instanceof NoSqlStageGenerator) {
+				result = new QueryIterSlice(
+						((NoSqlStageGenerator) generator).execute(pattern, input, execCxt, offset + limit), 
+						offset, 
+						limit, 
+						execCxt);
+			}
+		}
+
+		if (result == null) {
+			return super.execute(opSlice, input);
+		}
+
+		return project != null ? new QueryIterProject(result, project.getVars(), execCxt) : result;
+	}
+
+	@Override
+	protected QueryIterator execute(final OpDistinct opDistinct, final QueryIterator input) {
+		final QueryIterator result = distinct(opDistinct.getSubOp(), input);
+		return result != null ? result : super.execute(opDistinct, input);
+	}
+
+	@Override
+	protected QueryIterator execute(final OpReduced opReduced, final QueryIterator input) {
+		final QueryIterator result = distinct(opReduced.getSubOp(), input);
+		return result != null ? result : super.execute(opReduced, input);
+	}
+
+	/**
+	 * Removes duplicate solutions of the given operator in identifiers space, if the operator is a (projected) basic graph pattern.
+	 * The DISTINCT spills to disk once over its memory budget, unless the solutions are ordered.
+	 * 
+	 * @param subOp the operator whose solutions must be distinct.
+	 * @param input the input solutions.
+	 * @return the distinct solutions, null if the operator cannot be evaluated in identifiers space.
+	 */
+	QueryIterator distinct(final Op subOp, final QueryIterator input) {
+		final OpProject project = subOp instanceof OpProject ? (OpProject) subOp : null;
+		final Op inner = project != null ? project.getSubOp() : subOp;
+		final EvaluationSettings settings = identifiersSpaceSettings(inner, input);
+		if (settings == null) {
+			return null;
+		}
+
+		return new IdentifierDistinctIterator(
+				exec(inner, input), 
+				project != null ? project.getVars() : new ArrayList<Var>(OpVars.visibleVars(inner)), 
+				((NoSqlGraph) execCxt.getActiveGraph()).getDictionary(), 
+				settings.getDistinctMaxBytes(), 
+				!isOrdered(inner), 
+				settings.getSpillDirectory(), 
+				execCxt);
+	}
+
+	@Override
+	protected QueryIterator execute(final OpGroup opGroup, final QueryIterator input) {
+		if (!opGroup.getGroupVars().isEmpty()) {
+			final VarExprList groupVars = opGroup.getGroupVars();
+			for (final Var var : groupVars.getVars()) {
+				if (groupVars.getExpr(var) != null) {
+					return super.execute(opGroup, input);
+				}
+			}
+
+			if (identifiersSpaceSettings(opGroup.getSubOp(), input) == null) {
+				return super.execute(opGroup, input);
+			}
+
+			return new IdentifierGroupIterator(
+					exec(opGroup.getSubOp(), input), 
+					groupVars.getVars(), 
+					opGroup.getAggregators(), 
+					((NoSqlGraph) execCxt.getActiveGraph()).getDictionary(), 
+					execCxt);
+		}
+
+		final Graph graph = execCxt.getActiveGraph();
+		final List<ExprAggregator> aggregators = opGroup.getAggregators();
+		if (!(graph instanceof CountableGraph)
+				|| !(input instanceof QueryIterRoot)
+				|| !opGroup.getGroupVars().isEmpty()
+				|| aggregators.size() != 1
+				|| !(opGroup.getSubOp() instanceof OpBGP)
+				|| ((OpBGP) opGroup.getSubOp()).getPattern().size() != 1) {
+			return super.execute(opGroup, input);
+		}
+
+		final Triple pattern = ((OpBGP) opGroup.getSubOp()).getPattern().get(0);
+		if (hasRepeatedVariables(pattern)) {
+			return super.execute(opGroup, input);
+		}
+
+		final Aggregator aggregator = aggregators.get(0).getAggregator();
+		final CountableGraph countable = (CountableGraph) graph;
+		try {
+			long count = -1;
+			if (aggregator instanceof AggCount || aggregator instanceof AggCountDistinct) {
+				count = countable.count(asMatch(pattern));
+			} else if (aggregator instanceof AggCountVar) {
+				if (position(pattern, ((AggCountVar) aggregator).getExpr()) != -1) {
+					count = countable.count(asMatch(pattern));
+				}
+			} else if (aggregator instanceof AggCountVarDistinct) {
+				final int position = position(pattern, ((AggCountVarDistinct) aggregator).getExpr());
+				if (position != -1) {
+					count = countable.countDistinct(asMatch(pattern), position);
+				}
+			}
+
+			if (count == -1) {
+				return super.execute(opGroup, input);
+			}
+
+			input.close();
+			return QueryIterSingleton.create(
+					BindingFactory.binding(aggregators.get(0).getVar(), NodeValue.makeInteger(count).asNode()), 
+					execCxt);
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			return super.execute(opGroup, input);
+		}
+	}
+
+	@Override
+	protected QueryIterator execute(final OpPath opPath, final QueryIterator input) {
+		final Graph graph = execCxt.getActiveGraph();
+		if (!(graph instanceof NoSqlGraph) || !TransitivePathIterator.isSupported(opPath.getTriplePath().getPath())) {
+			return super.execute(opPath, input);
+		}
+
+		final EvaluationSettings settings = settings();
+		return new TransitivePathIterator(
+				(NoSqlGraph) graph, 
+				opPath.getTriplePath(), 
+				input, 
+				settings != null ? settings.getBindJoinBatchSize() : EvaluationSettings.DEFAULT_BIND_JOIN_BATCH_SIZE, 
+				execCxt);
+	}
+
+	@Override
+	protected QueryIterator execute(final OpUnion opUnion, final QueryIterator input) {
+		final ParallelEvaluator evaluator = parallelEvaluator();
+		if (evaluator == null) {
+			return super.execute(opUnion, input);
+		}
+
+		final List<Op> branches = flattenUnion(opUnion);
+		return new QueryIterRepeatApply(input, execCxt) {
+			@Override
+			protected QueryIterator nextStage(final Binding binding) {
+				return new QueryIterPlainWrapper(evaluator.concat(branches, binding, getExecContext()), getExecContext());
+			}
+
+			@Override
+			protected void requestSubCancel() {
+				queryContext(getExecContext()).cancel();
+				super.requestSubCancel();
+			}
+		};
+	}
+
+	/**
+	 * A chain of OPTIONALs (i.e. conditionals) over the same left side is evaluated, for each left solution, 
+	 * with all optional parts running concurrently, provided that they don't share any variable that the left side
+	 * doesn't always bind. In that case the sequential evaluation is equivalent to the cross product of the optional parts.
+	 */
+	@Override
+	protected QueryIterator execute(final OpConditional opCondition, final QueryIterator input) {
+		final ParallelEvaluator evaluator = parallelEvaluator();
+		if (evaluator == null) {
+			return super.execute(opCondition, input);
+		}
+
+		final List<Op> optionals = new ArrayList<Op>();
+		Op left = opCondition;
+		while (left instanceof OpConditional) {
+			optionals.add(0, ((OpConditional) left).getRight());
+			left = ((OpConditional) left).getLeft();
+		}
+
+		if (optionals.size() < 2 || !areIndependent(optionals, OpVars.fixedVars(left))) {
+			return super.execute(opCondition, input);
+		}
+
+		return new QueryIterRepeatApply(exec(left, input), execCxt) {
+			@Override
+			protected QueryIterator nextStage(final Binding binding) {
+				return new QueryIterPlainWrapper(
+						product(binding, evaluator.collect(optionals, binding, getExecContext())).iterator(), 
+						getExecContext());
+			}
+
+			@Override
+			protected void requestSubCancel() {
+				queryContext(getExecContext()).cancel();
+				super.requestSubCancel();
+			}
+		};
+	}
+
+	/**
+	 * Returns the evaluator of independent branches, if it has been configured and the query runs over NoSQL graphs.
+	 * 
+	 * @return the evaluator of independent branches, null if branches must be evaluated sequentially.
+	 */
+	ParallelEvaluator parallelEvaluator() {
+		final EvaluationSettings settings = settings();
+		return settings != null ? settings.getParallelEvaluator() : null;
+	}
+
+	/**
+	 * Returns the identifiers space settings of the queried NoSQL graph (or dataset).
+	 * 
+	 * @return the identifiers space settings of the queried graph, null if the query doesn't run in identifiers space.
+	 */
+	EvaluationSettings settings() {
+		if (!(StageBuilder.chooseStageGenerator(execCxt.getContext()) instanceof NoSqlStageGenerator)) {
+			return null;
+		}
+
+		final Graph graph = execCxt.getActiveGraph() instanceof NoSqlGraph 
+				? execCxt.getActiveGraph() 
+				: (execCxt.getDataset() instanceof NoSqlDatasetGraph ? execCxt.getDataset().getDefaultGraph() : null);
+		return graph instanceof NoSqlGraph ? ((NoSqlGraph) graph).getEvaluationSettings() : null;
+	}
+
+	/**
+	 * Returns the identifiers space settings, if the given operator, evaluated with the given input, produces 
+	 * {@link IdentifierBinding}s only: that is the case of a basic graph pattern (optionally filtered or ordered) over
+	 * a {@link NoSqlGraph}, evaluated once (i.e. at the root of the query).
+	 * 
+	 * @param op the operator.
+	 * @param input the input solutions.
+	 * @return the identifiers space settings, null if the solutions of the given operator are not (all) identifier bindings.
+	 */
+	EvaluationSettings identifiersSpaceSettings(final Op op, final QueryIterator input) {
+		final EvaluationSettings settings = settings();
+		if (settings == null 
+				|| !(execCxt.getActiveGraph() instanceof NoSqlGraph) 
+				|| !(input instanceof QueryIterRoot)) {
+			return null;
+		}
+
+		Op current = op;
+		while (current instanceof OpFilter || current instanceof OpOrder) {
+			current = ((Op1) current).getSubOp();
+		}
+		return current instanceof OpBGP && !((OpBGP) current).getPattern().isEmpty() ? settings : null;
+	}
+
+	/**
+	 * Returns true if the solutions of the given operator are ordered.
+	 * 
+	 * @param op the operator.
+	 * @return true if the solutions of the given operator are ordered.
+	 */
+	static boolean isOrdered(final Op op) {
+		for (Op current = op; current instanceof OpFilter || current instanceof OpOrder; current = ((Op1) current).getSubOp()) {
+			if (current instanceof OpOrder) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the given optional parts don't share any variable, apart from those that are always bound by the left side.
+	 * 
+	 * @param optionals the optional parts.
+	 * @param fixed the variables that are always bound by the left side.
+	 * @return true if the given optional parts can be evaluated independently.
+	 */
+	static boolean areIndependent(final List<Op> optionals, final Set<Var> fixed) {
+		final Set<Var> mentioned = new HashSet<Var>();
+		for (final Op optional : optionals) {
+			final Set<Var> variables = new HashSet<Var>(OpVars.mentionedVars(optional));
+			variables.removeAll(fixed);
+			if (!Collections.disjoint(mentioned, variables)) {
+				return false;
+			}
+			mentioned.addAll(variables);
+		}
+		return true;
+	}
+
+	/**
+	 * Combines the solutions of independent optional parts, evaluated for the same left solution.
+	 * An optional part without solutions leaves the left solution unchanged.
+	 * 
+	 * @param binding the left solution.
+	 * @param solutions the solutions of each optional part, which extend the left solution.
+	 * @return the combined solutions.
+	 */
+	static List<Binding> product(final Binding binding, final List<List<Binding>> solutions) {
+		List<Binding> result = Collections.singletonList(binding);
+		for (final List<Binding> optional : solutions) {
+			if (optional.isEmpty()) {
+				continue;
+			}
+
+			final List<Binding> combined = new ArrayList<Binding>(result.size() * optional.size());
+			for (final Binding current : result) {
+				for (final Binding extension : optional) {
+					final BindingMap merged = BindingFactory.create(current);
+					for (final Iterator<Var> iterator = extension.vars(); iterator.hasNext();) {
+						final Var variable = iterator.next();
+						if (!merged.contains(variable)) {
+							merged.add(variable, extension.get(variable));
+						}
+					}
+					combined.add(merged);
+				}
+			}
+			result = combined;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the {@link QueryContext} of the query that is running with the given execution context.
+	 * The query context is created on the first request and its deadline is the overall timeout (if any) 
+	 * declared with the {@link ARQ#queryTimeout} symbol.
+	 * 
+	 * @param execCxt the execution context.
+	 * @return the {@link QueryContext} of the query that is running with the given execution context.
+	 */
+	public static QueryContext queryContext(final ExecutionContext execCxt) {
+		final Context context = execCxt.getContext();
+		if (context == null || context == ARQ.getContext()) {
+			return new QueryContext();
+		}
+		
+		synchronized (context) {
+			QueryContext queryContext = (QueryContext) context.get(QUERY_CONTEXT);
+			if (queryContext == null) {
+				final QueryProfile profile = execCxt.getActiveGraph() instanceof NoSqlGraph 
+						? ((NoSqlGraph) execCxt.getActiveGraph()).newQueryProfile(String.valueOf(context.get(ARQConstants.sysCurrentQuery)))
+						: null;
+				queryContext = new QueryContext(timeout(context.get(ARQ.queryTimeout)), TimeUnit.MILLISECONDS, profile);
+				context.set(QUERY_CONTEXT, queryContext);
+				if (profile != null) {
+					context.set(QUERY_PROFILE, profile);
+				}
+			}
+			return queryContext;
+		}
+	}
+	
+	/**
+	 * Returns the overall timeout declared with the {@link ARQ#queryTimeout} symbol.
+	 * The value can be a number or a string in the form "timeout" or "first result timeout,overall timeout".
+	 * 
+	 * @param value the {@link ARQ#queryTimeout} value.
+	 * @return the overall timeout, in milliseconds, -1 if there's no timeout.
+	 */
+	static long timeout(final Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		
+		if (value instanceof String) {
+			final String timeout = (String) value;
+			try {
+				return Long.parseLong(timeout.substring(timeout.lastIndexOf(',') + 1).trim());
+			} catch (final NumberFormatException exception) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The solutions of a query (or of a branch of a query evaluated on another thread): while they are consumed, 
+	 * the query context is the running one on the consuming thread.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	private static final class RunningQueryIterator extends QueryIteratorWrapper {
+		private final QueryContext queryContext;
+		private final QueryProfile profile;
+		private final SlowQueryLog log;
+
+		/**
+		 * Builds a new iterator over the given solutions.
+		 * 
+		 * @param solutions the solutions.
+		 * @param queryContext the query context.
+		 * @param profile the query profile, which ends once the solutions have been consumed, null if the query is not profiled. 
+		 * @param log the slow query log that collects the query profile.
+		 */
+		RunningQueryIterator(final QueryIterator solutions, final QueryContext queryContext, final QueryProfile profile, final SlowQueryLog log) {
+			super(solutions);
+			this.queryContext = queryContext;
+			this.profile = profile;
+			this.log = log;
+		}
+
+		@Override
+		protected boolean hasNextBinding() {
+			final QueryContext previous = queryContext.bind();
+			try {
+				return super.hasNextBinding();
+			} finally {
+				QueryContext.restore(previous);
+			}
+		}
+
+		@Override
+		protected Binding moveToNextBinding() {
+			final QueryContext previous = queryContext.bind();
+			try {
+				return super.moveToNextBinding();
+			} finally {
+				QueryContext.restore(previous);
+			}
+		}
+
+		@Override
+		protected void closeIterator() {
+			final QueryContext previous = queryContext.bind();
+			try {
+				super.closeIterator();
+			} finally {
+				QueryContext.restore(previous);
+			}
+			if (profile != null && profile.finish()) {
+				log.collect(profile);
+			}
+		}
+
+		@Override
+		protected void requestCancel() {
+			queryContext.cancel();
+			super.requestCancel();
+		}
+	}
+
+	/**
+	 * Returns true if the given generator evaluates basic graph patterns as ARQ does by default.
+	 * 
+	 * @param generator the stage generator.
+	 * @return true if the given generator evaluates basic graph patterns as ARQ does by default.
+	 */
+	static boolean isGeneric(final StageGenerator generator) {
+		StageGenerator current = generator;
+		while (current instanceof NoSqlStageGenerator) {
+			current = ((NoSqlStageGenerator) current).getFallback();
+		}
+		return current != null && current.getClass() == StageGeneratorGeneric.class;
+	}
+
+	/**
+	 * Evaluates basic graph patterns as ARQ does by default, with a given reordering of their triple patterns.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	private static final class ReorderingStageGenerator extends StageGeneratorGeneric {
+		private final ReorderTransformation reorder;
+
+		/**
+		 * Builds a new generator with the given reordering.
+		 * 
+		 * @param reorder the transformation that reorders triple patterns.
+		 */
+		ReorderingStageGenerator(final ReorderTransformation reorder) {
+			this.reorder = reorder;
+		}
+
+		@Override
+		public QueryIterator execute(final BasicPattern pattern, final QueryIterator input, final ExecutionContext execCxt) {
+			return execute(pattern, reorder, null, input, execCxt);
+		}
+	}
+
+	/**
+	 * Registers this executor in the global ARQ context.
+	 */
+	public static void register() {
+		QC.setFactory(ARQ.getContext(), FACTORY);
+	}
+
+	/**
+	 * Removes this executor from the global ARQ context, restoring the default executor.
+	 */
+	public static void unregister() {
+		if (QC.getFactory(ARQ.getContext()) == FACTORY) {
+			QC.setFactory(ARQ.getContext(), OpExecutor.stdFactory);
+		}
+	}
+
+	/**
+	 * Returns true if the same variable occurs more than once in the given pattern (e.g. ?x :p ?x).
+	 * Such patterns need a further (client-side) check on each match, so they cannot be sliced by the storage.
+	 *
+	 * @param pattern the triple pattern.
+	 * @return true if the same variable occurs more than once in the given pattern.
+	 */
+	static boolean hasRepeatedVariables(final Triple pattern) {
+		final Node s = pattern.getSubject();
+		final Node p = pattern.getPredicate();
+		final Node o = pattern.getObject();
+		return (Var.isVar(s) && (s.equals(p) || s.equals(o))) || (Var.isVar(p) && p.equals(o));
+	}
+
+	/**
+	 * Returns the position (0 = subject, 1 = predicate, 2 = object) of a given (variable) expression within a triple pattern.
+	 *
+	 * @param pattern the triple pattern.
+	 * @param expression the expression.
+	 * @return the position of the given expression within the triple pattern, -1 if it is not a variable of the pattern.
+	 */
+	static int position(final Triple pattern, final Expr expression) {
+		if (!expression.isVariable()) {
+			return -1;
+		}
+
+		final Var variable = expression.asVar();
+		if (variable.equals(pattern.getSubject())) {
+			return 0;
+		} else if (variable.equals(pattern.getPredicate())) {
+			return 1;
+		} else if (variable.equals(pattern.getObject())) {
+			return 2;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the match (i.e. variables replaced by {@link Node#ANY}) of a given triple pattern.
+	 *
+	 * @param pattern the triple pattern.
+	 * @return the match of the given triple pattern.
+	 */
+	static Triple asMatch(final Triple pattern) {
+		return Triple.createMatch(
+				constant(pattern.getSubject()), 
+				constant(pattern.getPredicate()), 
+				constant(pattern.getObject()));
+	}
+
+	/**
+	 * Returns the given node if it is a constant, null otherwise.
+	 *
+	 * @param node the node.
+	 * @return the given node if it is a constant, null otherwise.
+	 */
+	static Node constant(final Node node) {
+		return Var.isVar(node) ? null : node;
+	}
+
+	/**
+	 * Builds the binding that corresponds to a triple that matches a given pattern.
+	 *
+	 * @param pattern the triple pattern.
+	 * @param match the matching triple.
+	 * @return the binding that corresponds to a triple that matches the given pattern.
+	 */
+	static Binding asBinding(final Triple pattern, final Triple match) {
+		final BindingMap binding = BindingFactory.create();
+		bind(binding, pattern.getSubject(), match.getSubject());
+		bind(binding, pattern.getPredicate(), match.getPredicate());
+		bind(binding, pattern.getObject(), match.getObject());
+		return binding;
+	}
+
+	/**
+	 * Binds the given pattern member, if it is a variable, to a given value.
+	 *
+	 * @param binding the binding.
+	 * @param member the pattern member.
+	 * @param value the value.
+	 */
+	static void bind(final BindingMap binding, final Node member, final Node value) {
+		if (Var.isVar(member)) {
+			binding.add(Var.alloc(member), value);
+		}
+	}
+}
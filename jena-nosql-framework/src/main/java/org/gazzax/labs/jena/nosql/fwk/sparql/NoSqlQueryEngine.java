@@ -0,0 +1,197 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.util.List;
+
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlDatasetGraph;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.gazzax.labs.jena.nosql.fwk.sparql.QueryPlanCache.Plan;
+import org.gazzax.labs.jena.nosql.fwk.sparql.QueryPlanCache.Template;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryEngineFactory;
+import com.hp.hpl.jena.sparql.engine.QueryEngineRegistry;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.engine.main.QC;
+import com.hp.hpl.jena.sparql.engine.main.QueryEngineMain;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.sparql.util.Symbol;
+
+/**
+ * ARQ query engine for the queries over a {@link NoSqlGraph} that has a {@link QueryPlanCache} and / or a {@link ResultCache}.
+ *
+ * Each query is reduced to its template (i.e. its algebra with parameter slots in place of the subject / object constants
+ * of triple patterns): the first execution of a template optimizes it and looks up the identifiers of its constants,
+ * subsequent executions just fill the cached plan with their own parameters.
+ * Initial bindings are substituted before the query is reduced to its template, so templates that are executed with
+ * different initial bindings share the same plan too.
+ *
+ * The plan of the running query is available in the ARQ context (see {@link #QUERY_PLAN}), where {@link BasicPatternIterator}
+ * finds the identifiers of the template constants.
+ *
+ * The (optimized) algebra of each query, together with its initial bindings and the queried graph (see {@link #scope(DatasetGraph)}), 
+ * is also the key of the result cache: a repeated query, if the dataset hasn't been changed in the meantime, returns 
+ * the cached solutions without touching the storage.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class NoSqlQueryEngine extends QueryEngineMain {
+	/** The symbol that holds, in the ARQ context of a query execution, the prepared {@link Plan} of that query. */
+	public static final Symbol QUERY_PLAN = Symbol.create("http://gazzax.labs.org/jena-nosql#queryPlan");
+
+	public static final QueryEngineFactory FACTORY = new QueryEngineFactory() {
+		@Override
+		public boolean accept(final Query query, final DatasetGraph dataset, final Context context) {
+			return planCache(dataset) != null || resultCache(dataset) != null;
+		}
+
+		@Override
+		public com.hp.hpl.jena.sparql.engine.Plan create(
+				final Query query,
+				final DatasetGraph dataset,
+				final Binding input,
+				final Context context) {
+			return new NoSqlQueryEngine(query, dataset, input, context).getPlan();
+		}
+
+		@Override
+		public boolean accept(final Op op, final DatasetGraph dataset, final Context context) {
+			return false;
+		}
+
+		@Override
+		public com.hp.hpl.jena.sparql.engine.Plan create(
+				final Op op,
+				final DatasetGraph dataset,
+				final Binding input,
+				final Context context) {
+			return QueryEngineMain.getFactory().create(op, dataset, input, context);
+		}
+	};
+
+	private final boolean ask;
+
+	/**
+	 * Builds a new engine for the given query.
+	 *
+	 * @param query the query.
+	 * @param dataset the dataset.
+	 * @param input the initial bindings.
+	 * @param context the ARQ context of the query execution.
+	 */
+	protected NoSqlQueryEngine(final Query query, final DatasetGraph dataset, final Binding input, final Context context) {
+		super(query, dataset, input, context);
+		this.ask = query.isAskType();
+	}
+
+	@Override
+	public QueryIterator eval(final Op op, final DatasetGraph dsg, final Binding input, final Context context) {
+		final ResultCache cache = resultCache(dsg);
+		if (cache == null || !ResultCache.isCacheable(op)) {
+			return super.eval(op, dsg, input, context);
+		}
+
+		final ResultCache.Key key = new ResultCache.Key(scope(dsg), op, input, ask);
+		final List<Binding> cached = cache.get(key);
+		if (cached != null) {
+			return new QueryIterPlainWrapper(
+					cached.iterator(),
+					new ExecutionContext(context, dsg.getDefaultGraph(), dsg, QC.getFactory(context)));
+		}
+
+		final long version = cache.getVersion();
+		return cache.cache(key, version, super.eval(op, dsg, input, context));
+	}
+
+	@Override
+	protected Op modifyOp(final Op op) {
+		final QueryPlanCache cache = planCache(dataset);
+		if (cache == null || context.isFalse(ARQ.optimization)) {
+			return super.modifyOp(op);
+		}
+
+		final Template template = QueryPlanCache.template(op);
+		Plan plan = cache.get(template);
+		if (plan == null) {
+			final Op optimized = super.modifyOp(template.op);
+			plan = cache.put(
+					template,
+					new Plan(template.canBeFilled(optimized) ? optimized : null, ((NoSqlGraph) dataset.getDefaultGraph()).getDictionary()));
+		}
+
+		if (plan.getOp() == null) {
+			return super.modifyOp(op);
+		}
+
+		context.set(QUERY_PLAN, plan);
+		return template.fill(plan);
+	}
+
+	/**
+	 * Returns the plan cache of the given dataset.
+	 *
+	 * @param dataset the dataset.
+	 * @return the plan cache of the given dataset, null if the dataset default graph is not a {@link NoSqlGraph} with a plan cache.
+	 */
+	static QueryPlanCache planCache(final DatasetGraph dataset) {
+		final Graph graph = dataset != null ? dataset.getDefaultGraph() : null;
+		return graph instanceof NoSqlGraph ? ((NoSqlGraph) graph).getQueryPlanCache() : null;
+	}
+
+	/**
+	 * Returns the result cache of the given dataset.
+	 *
+	 * @param dataset the dataset.
+	 * @return the result cache of the given dataset, null if the dataset default graph is not a {@link NoSqlGraph} with a result cache.
+	 */
+	static ResultCache resultCache(final DatasetGraph dataset) {
+		final Graph graph = dataset != null ? dataset.getDefaultGraph() : null;
+		return graph instanceof NoSqlGraph ? ((NoSqlGraph) graph).getResultCache() : null;
+	}
+
+	/**
+	 * Returns the data a query over the given dataset is evaluated against, as part of the result cache key.
+	 * A {@link NoSqlDatasetGraph} is the whole store (named graphs are identified by their names, which are part of the algebra), 
+	 * otherwise the scope is the name of the queried (default) graph or, if the dataset has other named graphs, the dataset itself.
+	 *
+	 * @param dataset the dataset.
+	 * @return the data a query over the given dataset is evaluated against.
+	 */
+	static Object scope(final DatasetGraph dataset) {
+		if (dataset instanceof NoSqlDatasetGraph) {
+			return NoSqlDatasetGraph.class;
+		}
+
+		if (dataset.listGraphNodes().hasNext()) {
+			return dataset;
+		}
+
+		final Node name = ((NoSqlGraph) dataset.getDefaultGraph()).getName();
+		return name != null ? name : Quad.defaultGraphIRI;
+	}
+
+	/**
+	 * Registers this engine in the ARQ engine registry.
+	 */
+	public static void register() {
+		if (!QueryEngineRegistry.containsFactory(FACTORY)) {
+			QueryEngineRegistry.addFactory(FACTORY);
+		}
+	}
+
+	/**
+	 * Removes this engine from the ARQ engine registry.
+	 */
+	public static void unregister() {
+		QueryEngineRegistry.removeFactory(FACTORY);
+	}
+}
@@ -0,0 +1,127 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import org.gazzax.labs.jena.nosql.fwk.graph.GraphStatistics;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import com.hp.hpl.jena.sparql.engine.main.StageBuilder;
+import com.hp.hpl.jena.sparql.engine.main.StageGenerator;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderLib;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+
+/**
+ * ARQ {@link StageGenerator} that evaluates basic graph patterns over a {@link NoSqlGraph} in identifiers space.
+ * Patterns are joined on dictionary identifiers and values are decoded only when they are needed (e.g. projected or filtered).
+ * Basic graph patterns over any other kind of graph, or over a graph without {@link EvaluationSettings} 
+ * (see {@link NoSqlGraph#getEvaluationSettings()}), are delegated to the previously registered generator.
+ * 
+ * If the graph has statistics, triple patterns are reordered by their estimated number of matches 
+ * (see {@link StatisticsReorderTransformation}), otherwise the ARQ fixed heuristic is used.
+ * Graphs that are not evaluated in identifiers space are reordered by {@link NoSqlOpExecutor}.
+ * Other operators over basic graph patterns are handled by {@link NoSqlOpExecutor}, which is registered together with this generator
+ * (and, in any case, by each configured {@link org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory}).
+ *
+ * @see BasicPatternIterator
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class NoSqlStageGenerator implements StageGenerator {
+	private static final ReorderTransformation REORDER = ReorderLib.fixed();
+
+	private final StageGenerator fallback;
+
+	/**
+	 * Builds a new generator that delegates to the given generator for non NoSQL graphs.
+	 *
+	 * @param fallback the generator that will be used for non NoSQL graphs.
+	 */
+	public NoSqlStageGenerator(final StageGenerator fallback) {
+		this.fallback = fallback;
+	}
+
+	@Override
+	public QueryIterator execute(final BasicPattern pattern, final QueryIterator input, final ExecutionContext execCxt) {
+		return execute(pattern, input, execCxt, -1);
+	}
+
+	/**
+	 * Evaluates the given basic graph pattern, knowing that the caller needs (at most) a given number of solutions.
+	 * In that case bind joins don't collect (and don't send to the storage) more intermediate bindings than needed.
+	 * 
+	 * @param pattern the basic graph pattern.
+	 * @param input the input bindings.
+	 * @param execCxt the execution context.
+	 * @param rows how many solutions the caller needs, a negative value means all solutions.
+	 * @return an iterator over the solutions of the given pattern.
+	 */
+	public QueryIterator execute(final BasicPattern pattern, final QueryIterator input, final ExecutionContext execCxt, final long rows) {
+		final Graph graph = execCxt.getActiveGraph();
+		final EvaluationSettings settings = graph instanceof NoSqlGraph ? ((NoSqlGraph) graph).getEvaluationSettings() : null;
+		if (settings == null || pattern.isEmpty()) {
+			return fallback.execute(pattern, input, execCxt);
+		}
+
+		final NoSqlGraph noSqlGraph = (NoSqlGraph) graph;
+		final int bindJoinBatchSize = settings.getBindJoinBatchSize();
+		final int batchSize = rows > 0 ? (int) Math.min(bindJoinBatchSize, rows) : bindJoinBatchSize;
+		final BasicPattern reordered = pattern.size() > 1 ? reorderTransformation(noSqlGraph).reorder(pattern) : pattern;
+		return new QueryIterRepeatApply(input, execCxt) {
+			@Override
+			protected QueryIterator nextStage(final Binding binding) {
+				return new BasicPatternIterator(noSqlGraph, reordered, binding, batchSize, getExecContext());
+			}
+		};
+	}
+
+	/**
+	 * Returns the transformation that will be used for reordering the basic graph patterns of the given graph.
+	 * 
+	 * @param graph the graph.
+	 * @return the transformation that will be used for reordering the basic graph patterns of the given graph.
+	 */
+	static ReorderTransformation reorderTransformation(final NoSqlGraph graph) {
+		final GraphStatistics statistics = graph.getStatistics();
+		return statistics != null ? new StatisticsReorderTransformation(statistics, graph.getDictionary()) : REORDER;
+	}
+
+	/**
+	 * Returns the generator that is used for non NoSQL graphs.
+	 * 
+	 * @return the generator that is used for non NoSQL graphs.
+	 */
+	StageGenerator getFallback() {
+		return fallback;
+	}
+
+	/**
+	 * Registers the identifiers space evaluation in the global ARQ context, if it hasn't been already registered.
+	 * The evaluation applies only to graphs that have {@link EvaluationSettings}, so registering it doesn't change 
+	 * how any other graph is queried.
+	 */
+	public static synchronized void register() {
+		final StageGenerator current = StageBuilder.chooseStageGenerator(ARQ.getContext());
+		if (!(current instanceof NoSqlStageGenerator)) {
+			StageBuilder.setGenerator(ARQ.getContext(), new NoSqlStageGenerator(current));
+		}
+		NoSqlOpExecutor.register();
+		NoSqlQueryEngine.register();
+	}
+
+	/**
+	 * Removes the identifiers space evaluation from the global ARQ context, restoring the previous generator.
+	 */
+	public static synchronized void unregister() {
+		final StageGenerator current = StageBuilder.chooseStageGenerator(ARQ.getContext());
+		if (current instanceof NoSqlStageGenerator) {
+			StageBuilder.setGenerator(ARQ.getContext(), ((NoSqlStageGenerator) current).fallback);
+		}
+		NoSqlOpExecutor.unregister();
+		NoSqlQueryEngine.unregister();
+	}
+}
@@ -0,0 +1,280 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.gazzax.labs.jena.nosql.fwk.util.ReadAheadIterator;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSingleton;
+import com.hp.hpl.jena.sparql.engine.main.QC;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+
+/**
+ * Evaluates independent query branches (e.g. UNION branches) concurrently, on a bounded pool of threads.
+ *
+ * A branch is handed to the pool only if a thread is immediately available, otherwise it is evaluated (lazily) by the caller.
+ * In this way nested branches (e.g. a UNION within a UNION branch) never wait for a thread that is held by their parent,
+ * so the pool cannot deadlock.
+ *
+ * Each branch is evaluated with its own {@link ExecutionContext}, because the ARQ one keeps track of open iterators
+ * without any synchronization.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class ParallelEvaluator {
+	/**
+	 * The (lazy) evaluation of a branch, for a given input binding.
+	 * The branch is compiled on the first access, so that, if the branch runs on the pool, the storage
+	 * is accessed by the pool thread. Each step holds the branch monitor, so the branch can't be closed while it is running.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Branch extends AbstractIterator<Binding> implements ClosableIterator<Binding> {
+		private final Op op;
+		private final Binding binding;
+		private final ExecutionContext execCxt;
+		private QueryIterator iterator;
+		private boolean closed;
+
+		/**
+		 * Builds a new branch with the given data.
+		 *
+		 * @param op the branch operator.
+		 * @param binding the input binding.
+		 * @param execCxt the (parent) execution context.
+		 */
+		Branch(final Op op, final Binding binding, final ExecutionContext execCxt) {
+			this.op = op;
+			this.binding = binding;
+			this.execCxt = new ExecutionContext(
+					execCxt.getContext(),
+					execCxt.getActiveGraph(),
+					execCxt.getDataset(),
+					execCxt.getExecutor());
+		}
+
+		@Override
+		protected synchronized Binding computeNext() {
+			if (closed) {
+				return endOfData();
+			}
+			if (iterator == null) {
+				iterator = QC.execute(op, QueryIterSingleton.create(binding, execCxt), execCxt);
+			}
+			return iterator.hasNext() ? iterator.nextBinding() : endOfData();
+		}
+
+		/**
+		 * Evaluates this branch, collecting all its solutions.
+		 *
+		 * @return the solutions of this branch.
+		 */
+		List<Binding> toList() {
+			final List<Binding> result = new ArrayList<Binding>();
+			try {
+				while (hasNext()) {
+					result.add(next());
+				}
+			} finally {
+				close();
+			}
+			return result;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!closed) {
+				closed = true;
+				if (iterator != null) {
+					iterator.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The concatenation of the solutions of several branches.
+	 * Closing the concatenation closes all branches, including those that haven't been consumed yet.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Concatenation extends AbstractIterator<Binding> implements ClosableIterator<Binding> {
+		private final List<ClosableIterator<Binding>> branches;
+		private int current;
+
+		/**
+		 * Builds a new concatenation of the given branches.
+		 *
+		 * @param branches the branches.
+		 */
+		Concatenation(final List<ClosableIterator<Binding>> branches) {
+			this.branches = branches;
+		}
+
+		@Override
+		protected Binding computeNext() {
+			while (current < branches.size()) {
+				final ClosableIterator<Binding> branch = branches.get(current);
+				if (branch.hasNext()) {
+					return branch.next();
+				}
+				branch.close();
+				current++;
+			}
+			return endOfData();
+		}
+
+		@Override
+		public void close() {
+			for (final ClosableIterator<Binding> branch : branches) {
+				branch.close();
+			}
+			current = branches.size();
+		}
+	}
+
+	private final Semaphore threads;
+	private final ThreadPoolExecutor executor;
+	private final int bufferSize;
+
+	/**
+	 * Builds a new evaluator with the given settings.
+	 *
+	 * @param threadsCount the max number of branches that will be evaluated concurrently.
+	 * @param bufferSize the max number of solutions that will be buffered for each branch.
+	 */
+	public ParallelEvaluator(final int threadsCount, final int bufferSize) {
+		this.threads = new Semaphore(threadsCount);
+		this.bufferSize = bufferSize;
+		this.executor = new ThreadPoolExecutor(
+				threadsCount,
+				threadsCount,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder()
+					.setDaemon(true)
+					.setNameFormat("jena-nosql-sparql-parallel-%d")
+					.build()) {
+			@Override
+			protected void afterExecute(final Runnable task, final Throwable failure) {
+				threads.release();
+			}
+		};
+	}
+
+	/**
+	 * Evaluates the given branches, for a given input binding, and concatenates their solutions.
+	 * The first branch is evaluated by the caller, while the others are (if possible) immediately started on the pool.
+	 *
+	 * @param branches the branches.
+	 * @param binding the input binding.
+	 * @param execCxt the execution context.
+	 * @return an iterator over the solutions of all branches, in branch order.
+	 */
+	public ClosableIterator<Binding> concat(final List<Op> branches, final Binding binding, final ExecutionContext execCxt) {
+		final List<ClosableIterator<Binding>> iterators = new ArrayList<ClosableIterator<Binding>>(branches.size());
+		for (int i = 0; i < branches.size(); i++) {
+			final Branch branch = new Branch(branches.get(i), binding, execCxt);
+			if (i > 0 && threads.tryAcquire()) {
+				iterators.add(new ReadAheadIterator<Binding>(branch, bufferSize, executor));
+			} else {
+				iterators.add(branch);
+			}
+		}
+		return new Concatenation(iterators);
+	}
+
+	/**
+	 * Evaluates the given branches, for a given input binding, and collects their solutions.
+	 * All branches but the first are (if possible) evaluated on the pool. 
+	 * Branches that didn't get a thread, or that are still waiting for it, are evaluated by the caller.
+	 *
+	 * @param branches the branches.
+	 * @param binding the input binding.
+	 * @param execCxt the execution context.
+	 * @return the solutions of each branch.
+	 */
+	public List<List<Binding>> collect(final List<Op> branches, final Binding binding, final ExecutionContext execCxt) {
+		final List<FutureTask<List<Binding>>> tasks = new ArrayList<FutureTask<List<Binding>>>(branches.size());
+		for (int i = 0; i < branches.size(); i++) {
+			final Branch branch = new Branch(branches.get(i), binding, execCxt);
+			final FutureTask<List<Binding>> task = new FutureTask<List<Binding>>(new Callable<List<Binding>>() {
+				@Override
+				public List<Binding> call() {
+					return branch.toList();
+				}
+			});
+			if (i > 0 && threads.tryAcquire()) {
+				executor.execute(task);
+			}
+			tasks.add(task);
+		}
+
+		final List<List<Binding>> result = new ArrayList<List<Binding>>(branches.size());
+		try {
+			for (final FutureTask<List<Binding>> task : tasks) {
+				task.run();
+				result.add(get(task));
+			}
+		} finally {
+			for (final FutureTask<List<Binding>> task : tasks) {
+				task.cancel(true);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Waits for the solutions of a given branch.
+	 *
+	 * @param task the branch evaluation.
+	 * @return the solutions of the given branch.
+	 */
+	List<Binding> get(final Future<List<Binding>> task) {
+		try {
+			return task.get();
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(exception);
+		} catch (final ExecutionException exception) {
+			if (exception.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) exception.getCause();
+			}
+			throw new IllegalStateException(exception.getCause());
+		}
+	}
+
+	/**
+	 * Returns the number of pool threads that are currently available for new branches.
+	 * 
+	 * @return the number of pool threads that are currently available for new branches.
+	 */
+	int availableThreads() {
+		return threads.availablePermits();
+	}
+
+	/**
+	 * Stops the pool threads.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
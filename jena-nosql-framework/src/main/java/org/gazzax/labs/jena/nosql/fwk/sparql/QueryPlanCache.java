@@ -0,0 +1,366 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableQueryPlanCache;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.OpVars;
+import com.hp.hpl.jena.sparql.algebra.OpVisitorBase;
+import com.hp.hpl.jena.sparql.algebra.OpWalker;
+import com.hp.hpl.jena.sparql.algebra.TransformCopy;
+import com.hp.hpl.jena.sparql.algebra.Transformer;
+import com.hp.hpl.jena.sparql.algebra.op.OpBGP;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.Substitute;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+
+/**
+ * A bounded (LRU) cache of prepared query plans.
+ *
+ * Queries that differ only in the subject / object constants of their triple patterns share the same template,
+ * that is, the same algebra expression with parameter slots in place of those constants (see {@link #template(Op)}).
+ * The cache maps each template to its optimized algebra and to the dictionary identifiers of the constants that are
+ * part of the template (e.g. predicates), so that a repeated execution skips the optimization and those dictionary lookups:
+ * it only needs to fill the optimized template with its own parameters.
+ *
+ * The cache also keeps the parsed queries (see {@link #parse(String)}): templates that are executed with their
+ * parameters as initial bindings are therefore parsed only once.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class QueryPlanCache implements ManageableQueryPlanCache {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(QueryPlanCache.class));
+
+	public static final int DEFAULT_MAX_PLANS = 1000;
+	static final String SLOT_PREFIX = "#slot";
+
+	/**
+	 * An algebra expression with parameter slots in place of the subject / object constants of its triple patterns.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Template {
+		final Op op;
+		final BindingMap parameters;
+
+		/**
+		 * Builds a new template with the given data.
+		 *
+		 * @param op the algebra expression, with parameter slots.
+		 * @param parameters the values of the parameter slots.
+		 */
+		Template(final Op op, final BindingMap parameters) {
+			this.op = op;
+			this.parameters = parameters;
+		}
+
+		/**
+		 * Returns true if the given (optimized) template still has all parameter slots of this template.
+		 * That is not the case if the optimizer renamed some slot (e.g. a slot in a sub-query): such a template cannot be filled.
+		 *
+		 * @param optimized the optimized template.
+		 * @return true if the given template can be filled with the parameters of this template.
+		 */
+		boolean canBeFilled(final Op optimized) {
+			if (parameters.isEmpty()) {
+				return true;
+			}
+
+			final Collection<Var> variables = OpVars.mentionedVars(optimized);
+			for (final Iterator<Var> iterator = parameters.vars(); iterator.hasNext();) {
+				if (!variables.contains(iterator.next())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Fills the given plan with the parameters of this template.
+		 *
+		 * @param plan the plan.
+		 * @return the algebra expression that will be executed.
+		 */
+		Op fill(final Plan plan) {
+			return parameters.isEmpty() ? plan.op : Substitute.substitute(plan.op, parameters);
+		}
+	}
+
+	/**
+	 * A prepared plan: the optimized template and the identifiers of the template constants.
+	 * Templates that cannot be filled once optimized (see {@link Template#canBeFilled(Op)}) have a plan without algebra,
+	 * which means that each execution must be optimized as usual.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	public static final class Plan {
+		private final Op op;
+		private final TopLevelDictionary dictionary;
+		private final Map<Node, byte[]> predicates = new HashMap<Node, byte[]>();
+		private final Map<Node, byte[]> nodes = new HashMap<Node, byte[]>();
+
+		/**
+		 * Builds a new plan with the given data.
+		 * The identifiers of the constants that occur in the triple patterns of the template are immediately looked up.
+		 *
+		 * @param op the optimized template, null if the template cannot be prepared.
+		 * @param dictionary the dictionary of the store.
+		 */
+		Plan(final Op op, final TopLevelDictionary dictionary) {
+			this.op = op;
+			this.dictionary = dictionary;
+			if (op == null) {
+				return;
+			}
+
+			OpWalker.walk(op, new OpVisitorBase() {
+				@Override
+				public void visit(final OpBGP opBGP) {
+					for (final Triple triple : opBGP.getPattern()) {
+						encode(triple.getSubject(), nodes);
+						encode(triple.getPredicate(), predicates);
+						encode(triple.getObject(), nodes);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Looks up and stores the identifier of the given node, if it is a constant.
+		 *
+		 * @param node the node.
+		 * @param identifiers the identifiers (predicates or other nodes) where the identifier will be stored.
+		 */
+		private void encode(final Node node, final Map<Node, byte[]> identifiers) {
+			if (!node.isConcrete() || identifiers.containsKey(node)) {
+				return;
+			}
+
+			try {
+				final byte[] id = dictionary.getID(node, identifiers == predicates);
+				if (id != null) {
+					identifiers.put(node, id);
+				}
+			} catch (final StorageLayerException exception) {
+				LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			}
+		}
+
+		/**
+		 * Returns the optimized template.
+		 *
+		 * @return the optimized template, null if the template cannot be prepared.
+		 */
+		public Op getOp() {
+			return op;
+		}
+
+		/**
+		 * Returns the identifier of a given template constant.
+		 *
+		 * @param node the constant.
+		 * @param predicate true if the constant is in predicate position.
+		 * @param dictionary the dictionary that will be used if the identifier is not part of this plan.
+		 * @return the identifier of the given constant, null if the constant is not part of this plan (e.g. it is a parameter).
+		 */
+		public byte[] getID(final Node node, final boolean predicate, final TopLevelDictionary dictionary) {
+			if (dictionary != this.dictionary) {
+				return null;
+			}
+			return predicate ? predicates.get(node) : nodes.get(node);
+		}
+	}
+
+	private final String name;
+	private final int maxPlans;
+	private final ConcurrentLinkedHashMap<Op, Plan> plans;
+	private final ConcurrentLinkedHashMap<String, Query> queries;
+
+	private final AtomicLong lookupsCount = new AtomicLong();
+	private final AtomicLong hitsCount = new AtomicLong();
+	private final AtomicLong evictionsCount = new AtomicLong();
+
+	/**
+	 * Builds a new plan cache with the given settings.
+	 *
+	 * @param name the name of this cache.
+	 * @param maxPlans the max number of plans (and parsed queries) that will be cached.
+	 */
+	public QueryPlanCache(final String name, final int maxPlans) {
+		this.name = name;
+		this.maxPlans = maxPlans > 0 ? maxPlans : DEFAULT_MAX_PLANS;
+		this.plans = new ConcurrentLinkedHashMap
+				.Builder<Op, Plan>()
+				.maximumWeightedCapacity(this.maxPlans)
+				.listener(new EvictionListener<Op, Plan>() {
+					@Override
+					public void onEviction(final Op key, final Plan value) {
+						evictionsCount.incrementAndGet();
+					}
+				})
+				.build();
+		this.queries = new ConcurrentLinkedHashMap
+				.Builder<String, Query>()
+				.maximumWeightedCapacity(this.maxPlans)
+				.build();
+	}
+
+	/**
+	 * Returns the parsed query that corresponds to the given SPARQL string.
+	 * The returned query is shared among all callers, so it must not be modified: parameters must be passed as initial bindings
+	 * of the query execution.
+	 *
+	 * @param sparql the SPARQL query string.
+	 * @return the parsed query that corresponds to the given SPARQL string.
+	 */
+	public Query parse(final String sparql) {
+		Query query = queries.get(sparql);
+		if (query == null) {
+			query = QueryFactory.create(sparql);
+			query.setResultVars();
+			queries.put(sparql, query);
+		}
+		return query;
+	}
+
+	/**
+	 * Returns the prepared plan of the given template.
+	 *
+	 * @param template the template.
+	 * @return the prepared plan of the given template, null in case of cache miss.
+	 */
+	Plan get(final Template template) {
+		lookupsCount.incrementAndGet();
+		final Plan plan = plans.get(template.op);
+		if (plan != null) {
+			hitsCount.incrementAndGet();
+		}
+		return plan;
+	}
+
+	/**
+	 * Caches the prepared plan of the given template.
+	 *
+	 * @param template the template.
+	 * @param plan the prepared plan.
+	 * @return the plan that is associated with the given template (i.e. the given plan, unless a concurrent thread already cached one).
+	 */
+	Plan put(final Template template, final Plan plan) {
+		final Plan previous = plans.putIfAbsent(template.op, plan);
+		return previous != null ? previous : plan;
+	}
+
+	/**
+	 * Builds the template of the given algebra expression, replacing the subject / object constants of its triple patterns
+	 * with parameter slots. Each occurrence gets its own slot, in (deterministic) visiting order, so expressions that differ
+	 * only in those constants have equal templates.
+	 *
+	 * @param op the algebra expression.
+	 * @return the template of the given algebra expression.
+	 */
+	static Template template(final Op op) {
+		final BindingMap parameters = BindingFactory.create();
+		final Op template = Transformer.transform(new TransformCopy() {
+			@Override
+			public Op transform(final OpBGP opBGP) {
+				final BasicPattern pattern = new BasicPattern();
+				for (final Triple triple : opBGP.getPattern()) {
+					pattern.add(Triple.create(
+							slot(triple.getSubject(), parameters),
+							triple.getPredicate(),
+							slot(triple.getObject(), parameters)));
+				}
+				return new OpBGP(pattern);
+			}
+		}, op);
+		return new Template(template, parameters);
+	}
+
+	/**
+	 * Replaces the given node, if it is a constant, with a new parameter slot.
+	 *
+	 * @param node the node.
+	 * @param parameters the parameters collected so far.
+	 * @return the parameter slot, or the given node if it is not a constant.
+	 */
+	static Node slot(final Node node, final BindingMap parameters) {
+		if (!node.isConcrete()) {
+			return node;
+		}
+
+		final Var slot = Var.alloc(SLOT_PREFIX + parameters.size());
+		parameters.add(slot, node);
+		return slot;
+	}
+
+	@Override
+	public void clear() {
+		plans.clear();
+		queries.clear();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public int getMaxPlans() {
+		return maxPlans;
+	}
+
+	@Override
+	public int getCachedPlansCount() {
+		return plans.size();
+	}
+
+	@Override
+	public int getCachedQueriesCount() {
+		return queries.size();
+	}
+
+	@Override
+	public long getLookupsCount() {
+		return lookupsCount.get();
+	}
+
+	@Override
+	public long getHitsCount() {
+		return hitsCount.get();
+	}
+
+	@Override
+	public double getHitsRatio() {
+		final double hits = hitsCount.get();
+		if (hits != 0) {
+			return (hits / lookupsCount.get()) * 100;
+		}
+		return 0;
+	}
+
+	@Override
+	public long getEvictionsCount() {
+		return evictionsCount.get();
+	}
+}
@@ -0,0 +1,635 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.mx.ManageableResultCache;
+import org.gazzax.labs.jena.nosql.fwk.util.NTriples;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.algebra.OpVisitorBase;
+import com.hp.hpl.jena.sparql.algebra.OpWalker;
+import com.hp.hpl.jena.sparql.algebra.op.OpAssign;
+import com.hp.hpl.jena.sparql.algebra.op.OpExtend;
+import com.hp.hpl.jena.sparql.algebra.op.OpFilter;
+import com.hp.hpl.jena.sparql.algebra.op.OpGroup;
+import com.hp.hpl.jena.sparql.algebra.op.OpLeftJoin;
+import com.hp.hpl.jena.sparql.algebra.op.OpOrder;
+import com.hp.hpl.jena.sparql.algebra.op.OpService;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.core.VarExprList;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingBase;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIteratorWrapper;
+import com.hp.hpl.jena.sparql.expr.E_BNode;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprFunction0;
+import com.hp.hpl.jena.sparql.expr.ExprFunctionN;
+import com.hp.hpl.jena.sparql.expr.ExprList;
+import com.hp.hpl.jena.sparql.expr.ExprVisitorBase;
+import com.hp.hpl.jena.sparql.expr.ExprWalker;
+
+/**
+ * A bounded (LRU) cache of whole query results, that is, the solutions of a (normalized) algebra expression.
+ *
+ * Each cached result is stamped with the dataset version that was current when the query started: each mutation,
+ * through any graph of the store, increments the version (see {@link #invalidate()}) so that results cached before that
+ * mutation are no longer valid. As for the other caches, this is reliable only if the store has no other writers.
+ *
+ * The cache is bounded by the (estimated) memory used by cached solutions: a result is cached only if it has been entirely
+ * consumed (or, for ASK queries, once it is known whether there's a solution) and if it is not larger than "max bytes per query".
+ * If a spill directory has been configured, valid results evicted from memory are written on the local file system
+ * (up to "spill max bytes") and moved back into memory on the next hit.
+ *
+ * Queries that call SERVICE or non deterministic functions (e.g. RAND(), NOW(), BNODE()) are never cached.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class ResultCache implements ManageableResultCache {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(ResultCache.class));
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int OBJECT_HEADER_SIZE = 16;
+
+	public static final int DEFAULT_MAX_BYTES_PER_QUERY = 1024 * 1024;
+	public static final int DEFAULT_SPILL_MAX_BYTES = 100 * 1024 * 1024;
+
+	/**
+	 * The cache key: an algebra expression with its initial bindings and the data it is evaluated against.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Key {
+		private final Object scope;
+		private final Op op;
+		private final Binding input;
+		private final boolean ask;
+		private final int hashCode;
+
+		/**
+		 * Builds a new key with the given data.
+		 *
+		 * @param scope the data the expression is evaluated against (e.g. the name of the queried graph).
+		 * @param op the algebra expression.
+		 * @param input the initial bindings.
+		 * @param ask true if the query only needs to know if there's a solution (i.e. ASK): in that case the cached result is
+		 *            an empty solution (i.e. true) or no solution at all (i.e. false).
+		 */
+		Key(final Object scope, final Op op, final Binding input, final boolean ask) {
+			this.scope = scope;
+			this.op = op;
+			this.input = input != null ? input : BindingFactory.binding();
+			this.ask = ask;
+			this.hashCode = 31 * (31 * (31 * scope.hashCode() + op.hashCode()) + BindingBase.hashCode(this.input)) + (ask ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			final Key other = (Key) obj;
+			return ask == other.ask && scope.equals(other.scope) && op.equals(other.op) && BindingBase.equals(input, other.input);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	/**
+	 * A cached query result.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Result {
+		final long version;
+		final List<Binding> bindings;
+		final int size;
+
+		/**
+		 * Builds a new cache entry with the given data.
+		 *
+		 * @param version the dataset version the solutions refer to.
+		 * @param bindings the solutions.
+		 * @param size the (estimated) memory, in bytes, used by the solutions.
+		 */
+		Result(final long version, final List<Binding> bindings, final int size) {
+			this.version = version;
+			this.bindings = bindings;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * A query result that has been spilled on the local file system.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Spilled {
+		final long version;
+		final File file;
+		final int size;
+
+		/**
+		 * Builds a new spilled entry with the given data.
+		 *
+		 * @param version the dataset version the solutions refer to.
+		 * @param file the file that contains the solutions.
+		 * @param size the (estimated) memory, in bytes, used by the solutions, once they are loaded.
+		 */
+		Spilled(final long version, final File file, final int size) {
+			this.version = version;
+			this.file = file;
+			this.size = size;
+		}
+	}
+
+	private final String name;
+	private final long maxBytes;
+	private final int maxBytesPerQuery;
+	private final File spillDirectory;
+	private final ConcurrentLinkedHashMap<Key, Result> cache;
+	private final ConcurrentLinkedHashMap<Key, Spilled> spills;
+
+	private final AtomicLong version = new AtomicLong();
+	private final AtomicLong lookupsCount = new AtomicLong();
+	private final AtomicLong hitsCount = new AtomicLong();
+	private final AtomicLong spillHitsCount = new AtomicLong();
+	private final AtomicLong evictionsCount = new AtomicLong();
+
+	/**
+	 * Builds a new result cache with the given settings.
+	 *
+	 * @param name the name of this cache.
+	 * @param maxBytes the max (estimated) memory, in bytes, used by cached results.
+	 * @param maxBytesPerQuery the max (estimated) memory, in bytes, a query result can use in order to be cached.
+	 * @param spillDirectory the directory where results evicted from memory are spilled, null if spilling is not enabled.
+	 * @param spillMaxBytes the max size, in bytes, of the spilled results.
+	 */
+	public ResultCache(
+			final String name,
+			final long maxBytes,
+			final int maxBytesPerQuery,
+			final File spillDirectory,
+			final long spillMaxBytes) {
+		this.name = name;
+		this.maxBytes = maxBytes;
+		this.maxBytesPerQuery = (int) Math.min(maxBytesPerQuery > 0 ? maxBytesPerQuery : DEFAULT_MAX_BYTES_PER_QUERY, maxBytes);
+		this.spillDirectory = spillDirectory;
+		this.cache = new ConcurrentLinkedHashMap
+				.Builder<Key, Result>()
+				.maximumWeightedCapacity(maxBytes)
+				.weigher(new Weigher<Result>() {
+					@Override
+					public int weightOf(final Result value) {
+						return Math.max(1, value.size);
+					}
+				})
+				.listener(new EvictionListener<Key, Result>() {
+					@Override
+					public void onEviction(final Key key, final Result value) {
+						evictionsCount.incrementAndGet();
+						spill(key, value);
+					}
+				})
+				.build();
+
+		if (spillDirectory != null && (spillDirectory.isDirectory() || spillDirectory.mkdirs())) {
+			this.spills = new ConcurrentLinkedHashMap
+					.Builder<Key, Spilled>()
+					.maximumWeightedCapacity(spillMaxBytes > 0 ? spillMaxBytes : DEFAULT_SPILL_MAX_BYTES)
+					.weigher(new Weigher<Spilled>() {
+						@Override
+						public int weightOf(final Spilled value) {
+							return (int) Math.max(1, Math.min(Integer.MAX_VALUE, value.file.length()));
+						}
+					})
+					.listener(new EvictionListener<Key, Spilled>() {
+						@Override
+						public void onEviction(final Key key, final Spilled value) {
+							value.file.delete();
+						}
+					})
+					.build();
+		} else {
+			this.spills = null;
+		}
+	}
+
+	/**
+	 * Returns the cached result of the given query.
+	 *
+	 * @param key the query.
+	 * @return the cached solutions, or null in case of cache miss.
+	 */
+	List<Binding> get(final Key key) {
+		lookupsCount.incrementAndGet();
+		final long current = version.get();
+		final Result result = cache.get(key);
+		if (result != null && result.version == current) {
+			hitsCount.incrementAndGet();
+			return result.bindings;
+		}
+
+		final Spilled spilled = spills != null ? spills.remove(key) : null;
+		if (spilled != null) {
+			try {
+				if (spilled.version == current) {
+					final List<Binding> bindings = read(spilled.file);
+					cache.put(key, new Result(current, bindings, spilled.size));
+					hitsCount.incrementAndGet();
+					spillHitsCount.incrementAndGet();
+					return bindings;
+				}
+			} catch (final IOException exception) {
+				LOGGER.error(MessageCatalog._00113_UNABLE_TO_SPILL_QUERY_RESULT, exception, spilled.file);
+			} finally {
+				spilled.file.delete();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decorates the given query result so that its solutions will be cached once it has been entirely consumed.
+	 *
+	 * @param key the query.
+	 * @param versionAtQueryTime the dataset version that was current when the query started.
+	 * @param result the query result.
+	 * @return an iterator that returns the same solutions of the given result.
+	 */
+	QueryIterator cache(final Key key, final long versionAtQueryTime, final QueryIterator result) {
+		return new QueryIteratorWrapper(result) {
+			private List<Binding> bindings = new ArrayList<Binding>();
+			private int size;
+
+			@Override
+			protected boolean hasNextBinding() {
+				final boolean hasNext = super.hasNextBinding();
+				if (key.ask && hasNext && bindings != null) {
+					bindings.add(BindingFactory.binding());
+					complete();
+				} else if (!hasNext) {
+					complete();
+				}
+				return hasNext;
+			}
+
+			@Override
+			protected Binding moveToNextBinding() {
+				final Binding binding = super.moveToNextBinding();
+				if (bindings != null) {
+					final Binding copy = copy(binding);
+					size += estimatedSize(copy);
+					if (size <= maxBytesPerQuery) {
+						bindings.add(copy);
+					} else {
+						bindings = null;
+					}
+				}
+				return binding;
+			}
+
+			/**
+			 * Caches the collected solutions, which are the whole query result.
+			 */
+			private void complete() {
+				if (bindings != null) {
+					cache.put(key, new Result(versionAtQueryTime, bindings, Math.max(size, OBJECT_HEADER_SIZE)));
+					bindings = null;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Invalidates all cached results, because of a mutation on the dataset.
+	 * Note that this must be called once the mutation has been sent to the storage: a query that starts in the meantime
+	 * may still see the previous state, but its result will be cached with the previous (i.e. invalid) version.
+	 */
+	public void invalidate() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Writes the given (evicted) result on the local file system, if spilling is enabled and the result is still valid.
+	 *
+	 * @param key the query.
+	 * @param result the query result.
+	 */
+	void spill(final Key key, final Result result) {
+		if (spills == null || result.version != version.get()) {
+			return;
+		}
+
+		File file = null;
+		try {
+			file = File.createTempFile("result-", ".bindings", spillDirectory);
+			final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				output.writeInt(result.bindings.size());
+				for (final Binding binding : result.bindings) {
+					final List<Var> vars = new ArrayList<Var>();
+					for (final Iterator<Var> iterator = binding.vars(); iterator.hasNext();) {
+						vars.add(iterator.next());
+					}
+
+					output.writeInt(vars.size());
+					for (final Var var : vars) {
+						output.writeUTF(var.getVarName());
+						final byte[] value = NTriples.asNt(binding.get(var)).getBytes(UTF8);
+						output.writeInt(value.length);
+						output.write(value);
+					}
+				}
+			} finally {
+				output.close();
+			}
+			spills.put(key, new Spilled(result.version, file, result.size));
+		} catch (final Exception exception) {
+			LOGGER.error(MessageCatalog._00113_UNABLE_TO_SPILL_QUERY_RESULT, exception, file);
+			if (file != null) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Reads the solutions that have been spilled on a given file.
+	 *
+	 * @param file the file.
+	 * @return the solutions that have been spilled on the given file.
+	 * @throws IOException in case of I/O failure.
+	 */
+	List<Binding> read(final File file) throws IOException {
+		final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			final int count = input.readInt();
+			final List<Binding> bindings = new ArrayList<Binding>(count);
+			for (int i = 0; i < count; i++) {
+				final BindingMap binding = BindingFactory.create();
+				final int vars = input.readInt();
+				for (int j = 0; j < vars; j++) {
+					final Var var = Var.alloc(input.readUTF());
+					final byte[] value = new byte[input.readInt()];
+					input.readFully(value);
+					binding.add(var, NTriples.asNode(new String(value, UTF8)));
+				}
+				bindings.add(binding);
+			}
+			return bindings;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Returns a copy of the given solution, with all values decoded.
+	 *
+	 * @param binding the solution.
+	 * @return a copy of the given solution.
+	 */
+	static Binding copy(final Binding binding) {
+		final BindingMap copy = BindingFactory.create();
+		for (final Iterator<Var> iterator = binding.vars(); iterator.hasNext();) {
+			final Var var = iterator.next();
+			final Node value = binding.get(var);
+			if (value != null) {
+				copy.add(var, value);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns the (estimated) memory, in bytes, used by the given solution.
+	 *
+	 * @param binding the solution.
+	 * @return the (estimated) memory, in bytes, used by the given solution.
+	 */
+	static int estimatedSize(final Binding binding) {
+		int size = OBJECT_HEADER_SIZE * 3;
+		for (final Iterator<Var> iterator = binding.vars(); iterator.hasNext();) {
+			final Var var = iterator.next();
+			size += OBJECT_HEADER_SIZE * 2 + estimatedSize(binding.get(var));
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the (estimated) memory, in bytes, used by the given node.
+	 *
+	 * @param node the node.
+	 * @return the (estimated) memory, in bytes, used by the given node.
+	 */
+	static int estimatedSize(final Node node) {
+		int length = 0;
+		if (node.isURI()) {
+			length = node.getURI().length();
+		} else if (node.isLiteral()) {
+			length = node.getLiteralLexicalForm().length() + node.getLiteralLanguage().length();
+		} else if (node.isBlank()) {
+			length = node.getBlankNodeLabel().length();
+		}
+		return OBJECT_HEADER_SIZE * 3 + length * 2;
+	}
+
+	/**
+	 * Returns true if the solutions of the given algebra expression depend only on the dataset, that is, the expression
+	 * doesn't call remote services or non deterministic functions.
+	 *
+	 * @param op the algebra expression.
+	 * @return true if the solutions of the given algebra expression can be cached.
+	 */
+	static boolean isCacheable(final Op op) {
+		final boolean [] cacheable = {true};
+		final ExprVisitorBase functions = new ExprVisitorBase() {
+			@Override
+			public void visit(final ExprFunction0 function) {
+				cacheable[0] = false;
+			}
+
+			@Override
+			public void visit(final ExprFunctionN function) {
+				if (function instanceof E_BNode) {
+					cacheable[0] = false;
+				}
+			}
+		};
+
+		OpWalker.walk(op, new OpVisitorBase() {
+			@Override
+			public void visit(final OpService opService) {
+				cacheable[0] = false;
+			}
+
+			@Override
+			public void visit(final OpFilter opFilter) {
+				walk(opFilter.getExprs());
+			}
+
+			@Override
+			public void visit(final OpLeftJoin opLeftJoin) {
+				walk(opLeftJoin.getExprs());
+			}
+
+			@Override
+			public void visit(final OpAssign opAssign) {
+				walk(opAssign.getVarExprList());
+			}
+
+			@Override
+			public void visit(final OpExtend opExtend) {
+				walk(opExtend.getVarExprList());
+			}
+
+			@Override
+			public void visit(final OpGroup opGroup) {
+				walk(opGroup.getGroupVars());
+			}
+
+			@Override
+			public void visit(final OpOrder opOrder) {
+				for (final SortCondition condition : opOrder.getConditions()) {
+					ExprWalker.walk(functions, condition.getExpression());
+				}
+			}
+
+			/**
+			 * Looks for non deterministic functions within the given expressions.
+			 *
+			 * @param expressions the expressions.
+			 */
+			private void walk(final ExprList expressions) {
+				if (expressions != null) {
+					for (final Expr expression : expressions) {
+						ExprWalker.walk(functions, expression);
+					}
+				}
+			}
+
+			/**
+			 * Looks for non deterministic functions within the given assignments.
+			 *
+			 * @param assignments the assignments.
+			 */
+			private void walk(final VarExprList assignments) {
+				for (final Var var : assignments.getVars()) {
+					final Expr expression = assignments.getExpr(var);
+					if (expression != null) {
+						ExprWalker.walk(functions, expression);
+					}
+				}
+			}
+		});
+		return cacheable[0];
+	}
+
+	@Override
+	public void clear() {
+		cache.clear();
+		if (spills != null) {
+			for (final Spilled spilled : spills.values()) {
+				spilled.file.delete();
+			}
+			spills.clear();
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public int getMaxBytesPerQuery() {
+		return maxBytesPerQuery;
+	}
+
+	@Override
+	public int getCachedQueriesCount() {
+		return cache.size();
+	}
+
+	@Override
+	public long getEstimatedMemoryUsage() {
+		return cache.weightedSize();
+	}
+
+	@Override
+	public int getSpilledQueriesCount() {
+		return spills != null ? spills.size() : 0;
+	}
+
+	@Override
+	public long getSpilledBytes() {
+		return spills != null ? spills.weightedSize() : 0;
+	}
+
+	@Override
+	public long getLookupsCount() {
+		return lookupsCount.get();
+	}
+
+	@Override
+	public long getHitsCount() {
+		return hitsCount.get();
+	}
+
+	@Override
+	public long getSpillHitsCount() {
+		return spillHitsCount.get();
+	}
+
+	@Override
+	public double getHitsRatio() {
+		final double hits = hitsCount.get();
+		if (hits != 0) {
+			return (hits / lookupsCount.get()) * 100;
+		}
+		return 0;
+	}
+
+	@Override
+	public long getEvictionsCount() {
+		return evictionsCount.get();
+	}
+
+	@Override
+	public long getVersion() {
+		return version.get();
+	}
+}
@@ -0,0 +1,80 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.graph.GraphStatistics;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternElements;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.PatternTriple;
+import com.hp.hpl.jena.sparql.engine.optimizer.reorder.ReorderTransformationSubstitution;
+import com.hp.hpl.jena.sparql.sse.Item;
+
+/**
+ * Reorders the triple patterns of a basic graph pattern using the {@link GraphStatistics} of the store.
+ * The weight of a pattern is its estimated number of matches: the triple count of its predicate (or of the whole store,
+ * if the predicate is a variable), divided by the number of distinct subjects (objects) if the subject (object) is bound,
+ * either as a constant or by a pattern that comes before.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class StatisticsReorderTransformation extends ReorderTransformationSubstitution {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(StatisticsReorderTransformation.class));
+
+	private final GraphStatistics statistics;
+	private final TopLevelDictionary dictionary;
+
+	/**
+	 * Builds a new transformation with the given data.
+	 *
+	 * @param statistics the store statistics.
+	 * @param dictionary the dictionary used for encoding the (constant) predicates.
+	 */
+	public StatisticsReorderTransformation(final GraphStatistics statistics, final TopLevelDictionary dictionary) {
+		this.statistics = statistics;
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	protected double weight(final PatternTriple pattern) {
+		byte[] predicate = null;
+		final Node node = constant(pattern.predicate);
+		if (node != null) {
+			try {
+				predicate = dictionary.getID(node, true);
+				if (predicate == null) {
+					return 0;
+				}
+			} catch (final StorageLayerException exception) {
+				LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+				return defaultWeight(pattern);
+			}
+		}
+
+		return statistics.estimate(predicate, isBound(pattern.subject), isBound(pattern.object));
+	}
+
+	/**
+	 * Returns the constant node associated with the given pattern member.
+	 *
+	 * @param item the pattern member.
+	 * @return the constant node associated with the given pattern member, null if the member is a variable.
+	 */
+	static Node constant(final Item item) {
+		return item.isNode() && item.getNode().isConcrete() ? item.getNode() : null;
+	}
+
+	/**
+	 * Returns true if the given pattern member is a constant or a variable that has been bound by a previous pattern.
+	 *
+	 * @param item the pattern member.
+	 * @return true if the given pattern member is a constant or a bound variable.
+	 */
+	static boolean isBound(final Item item) {
+		return item.equals(PatternElements.TERM) || constant(item) != null;
+	}
+}
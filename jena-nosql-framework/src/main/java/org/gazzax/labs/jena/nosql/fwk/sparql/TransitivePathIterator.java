@@ -0,0 +1,266 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.gazzax.labs.jena.nosql.fwk.util.ByteArraySet;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.sparql.core.TriplePath;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterNullIterator;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRepeatApply;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterSingleton;
+import com.hp.hpl.jena.sparql.path.P_Inverse;
+import com.hp.hpl.jena.sparql.path.P_Link;
+import com.hp.hpl.jena.sparql.path.P_OneOrMore1;
+import com.hp.hpl.jena.sparql.path.P_Path0;
+import com.hp.hpl.jena.sparql.path.P_ReverseLink;
+import com.hp.hpl.jena.sparql.path.P_ZeroOrMore1;
+import com.hp.hpl.jena.sparql.path.Path;
+import com.hp.hpl.jena.sparql.path.PathLib;
+
+/**
+ * Evaluates a transitive property path (i.e. p+ or p*, where p is a predicate or its inverse) over a {@link NoSqlGraph}.
+ * 
+ * The graph is walked breadth-first, starting from the bound end of the path: each level (frontier) is expanded 
+ * with batch queries, instead of one query for each visited node. Visited nodes are tracked as identifiers, 
+ * so nothing is decoded during the walk: the resulting {@link IdentifierBinding}s decode a reached node only if it is accessed.
+ * 
+ * Paths with both ends unbound (or with values that are unknown to the dictionary) are evaluated by ARQ.
+ * A storage failure fails the query (with a {@link QueryExecException}), instead of truncating the closure.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class TransitivePathIterator extends QueryIterRepeatApply {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(TransitivePathIterator.class));
+
+	/**
+	 * The nodes that are reachable from a given start node, in breadth-first order.
+	 * Each level is expanded in chunks, and each chunk is sent to the storage with one batch query.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	class Closure extends AbstractIterator<byte[]> {
+		private final byte[] predicate;
+		private final boolean forward;
+		private final ByteArraySet visited = new ByteArraySet();
+
+		private List<byte[]> frontier;
+		private List<byte[]> nextLevel = new ArrayList<byte[]>();
+		private int expanded;
+		private Iterator<byte[]> reached;
+
+		/**
+		 * Builds a new closure with the given data.
+		 *
+		 * @param start the start node identifier.
+		 * @param predicate the predicate identifier.
+		 * @param forward true if the walk follows the predicate from subjects to objects, false otherwise.
+		 * @param includeStart true if the start node must be included in the closure (i.e. zero-length paths are allowed).
+		 */
+		Closure(final byte[] start, final byte[] predicate, final boolean forward, final boolean includeStart) {
+			this.predicate = predicate;
+			this.forward = forward;
+			this.frontier = Collections.singletonList(start);
+			this.reached = includeStart && visited.add(start) 
+					? Iterators.singletonIterator(start) 
+					: Iterators.<byte[]>emptyIterator();
+		}
+
+		@Override
+		protected byte[] computeNext() {
+			while (!reached.hasNext()) {
+				if (expanded == frontier.size()) {
+					if (nextLevel.isEmpty()) {
+						return endOfData();
+					}
+					frontier = nextLevel;
+					nextLevel = new ArrayList<byte[]>();
+					expanded = 0;
+				}
+				reached = expand().iterator();
+			}
+			return reached.next();
+		}
+
+		/**
+		 * Expands the next chunk of the current level.
+		 *
+		 * @return the identifiers of the nodes that have been reached for the first time.
+		 */
+		List<byte[]> expand() {
+			final int end = Math.min(frontier.size(), expanded + batchSize);
+			final List<byte[][]> queries = new ArrayList<byte[][]>(end - expanded);
+			for (; expanded < end; expanded++) {
+				final byte[] node = frontier.get(expanded);
+				queries.add(forward ? new byte[][] {node, predicate, null} : new byte[][] {null, predicate, node});
+			}
+
+			final List<byte[]> result = new ArrayList<byte[]>();
+			try {
+				for (final Iterator<byte[][]> rows : graph.find(queries, queryContext)) {
+					while (rows.hasNext()) {
+						final byte[] node = rows.next()[forward ? 2 : 0];
+						if (visited.add(node)) {
+							result.add(node);
+						}
+					}
+				}
+			} catch (final StorageLayerException exception) {
+				LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+				throw new QueryExecException(exception);
+			}
+			nextLevel.addAll(result);
+			return result;
+		}
+	}
+
+	private final NoSqlGraph graph;
+	private final TopLevelDictionary dictionary;
+	private final TriplePath path;
+	private final int batchSize;
+	private final QueryContext queryContext;
+
+	/**
+	 * Builds a new iterator with the given data.
+	 *
+	 * @param graph the graph.
+	 * @param path the transitive path (see {@link #isSupported(Path)}).
+	 * @param input the input bindings.
+	 * @param batchSize the max number of nodes that are expanded with one batch query.
+	 * @param execCxt the execution context.
+	 */
+	public TransitivePathIterator(
+			final NoSqlGraph graph, 
+			final TriplePath path, 
+			final QueryIterator input, 
+			final int batchSize, 
+			final ExecutionContext execCxt) {
+		super(input, execCxt);
+		this.graph = graph;
+		this.dictionary = graph.getDictionary();
+		this.path = path;
+		this.batchSize = Math.max(1, batchSize);
+		this.queryContext = NoSqlOpExecutor.queryContext(execCxt);
+	}
+
+	/**
+	 * Returns true if the given path can be evaluated by this iterator.
+	 *
+	 * @param path the property path.
+	 * @return true if the given path is p+ or p*, where p is a predicate or its inverse.
+	 */
+	public static boolean isSupported(final Path path) {
+		return step(path) != null;
+	}
+
+	@Override
+	protected void requestSubCancel() {
+		queryContext.cancel();
+		super.requestSubCancel();
+	}
+
+	@Override
+	protected QueryIterator nextStage(final Binding binding) {
+		final P_Path0 step = step(path.getPath());
+		final boolean includeStart = path.getPath() instanceof P_ZeroOrMore1;
+		final Node subject = substitute(path.getSubject(), binding);
+		final Node object = substitute(path.getObject(), binding);
+
+		final boolean fromSubject = subject.isConcrete();
+		if (!fromSubject && !object.isConcrete()) {
+			return PathLib.execTriplePath(binding, path, getExecContext());
+		}
+
+		final Node start = fromSubject ? subject : object;
+		final Node end = fromSubject ? object : subject;
+		try {
+			final byte[] startId = dictionary.getID(start, false);
+			final byte[] predicateId = dictionary.getID(step.getNode(), true);
+			final byte[] endId = end.isConcrete() ? dictionary.getID(end, false) : null;
+			if (startId == null || predicateId == null || (end.isConcrete() && endId == null)) {
+				return PathLib.execTriplePath(binding, path, getExecContext());
+			}
+
+			final Closure closure = new Closure(startId, predicateId, step.isForward() == fromSubject, includeStart);
+			if (endId != null) {
+				while (closure.hasNext()) {
+					if (Arrays.equals(endId, closure.next())) {
+						return QueryIterSingleton.create(binding, getExecContext());
+					}
+				}
+				return QueryIterNullIterator.create(getExecContext());
+			}
+
+			final Var var = Var.alloc(end);
+			final IdentifierBinding parent = new IdentifierBinding(binding, dictionary);
+			return new QueryIterPlainWrapper(
+					Iterators.transform(closure, new Function<byte[], Binding>() {
+						@Override
+						public Binding apply(final byte[] id) {
+							return parent.extend(var, id, false);
+						}
+					}), 
+					getExecContext());
+		} catch (final StorageLayerException exception) {
+			LOGGER.error(MessageCatalog._00010_DATA_ACCESS_LAYER_FAILURE, exception);
+			throw new QueryExecException(exception);
+		}
+	}
+
+	/**
+	 * Returns the single step of a given transitive path.
+	 *
+	 * @param path the property path.
+	 * @return the single step (a link or a reverse link) of the given path, null if the path is not supported.
+	 */
+	static P_Path0 step(final Path path) {
+		Path step = null;
+		if (path instanceof P_OneOrMore1) {
+			step = ((P_OneOrMore1) path).getSubPath();
+		} else if (path instanceof P_ZeroOrMore1) {
+			step = ((P_ZeroOrMore1) path).getSubPath();
+		}
+
+		if (step instanceof P_Inverse && ((P_Inverse) step).getSubPath() instanceof P_Link) {
+			return new P_ReverseLink(((P_Link) ((P_Inverse) step).getSubPath()).getNode());
+		}
+		return step instanceof P_Path0 ? (P_Path0) step : null;
+	}
+
+	/**
+	 * Replaces the given node, if it is a bound variable, with its value.
+	 *
+	 * @param node the node.
+	 * @param binding the current binding.
+	 * @return the value of the given node, if it is a bound variable, the node itself otherwise.
+	 */
+	static Node substitute(final Node node, final Binding binding) {
+		if (Var.isVar(node)) {
+			final Node value = binding.get(Var.alloc(node));
+			return value != null ? value : node;
+		}
+		return node;
+	}
+}
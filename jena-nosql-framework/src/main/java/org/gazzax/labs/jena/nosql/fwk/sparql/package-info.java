@@ -0,0 +1,7 @@
+/**
+ * SPARQL (ARQ) query execution extensions for NoSQL-backed graphs.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+package org.gazzax.labs.jena.nosql.fwk.sparql;
\ No newline at end of file
@@ -0,0 +1,191 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import java.util.Arrays;
+
+/**
+ * A compact set of byte arrays (e.g. dictionary identifiers).
+ * Members are appended to a single byte buffer and they are indexed by an open addressing hash table of ints, 
+ * so a member costs its length plus a few ints, instead of an object (wrapper, array and hash entry) per member.
+ * 
+ * Members cannot be removed. Stored members must not be modified by the caller.
+ * This class is not thread-safe.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class ByteArraySet {
+	private static final int FREE = -1;
+
+	private byte[] data;
+	private int dataSize;
+	private int[] offsets;
+	private int[] hashes;
+	private int[] slots;
+	private int size;
+
+	/**
+	 * Builds a new empty set.
+	 */
+	public ByteArraySet() {
+		this(16);
+	}
+
+	/**
+	 * Builds a new empty set, sized for the given number of members.
+	 *
+	 * @param expectedSize the expected number of members.
+	 */
+	public ByteArraySet(final int expectedSize) {
+		final int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, expectedSize) * 2 - 1) * 2);
+		data = new byte[capacity * 8];
+		offsets = new int[capacity / 2 + 1];
+		hashes = new int[capacity / 2];
+		slots = new int[capacity];
+		Arrays.fill(slots, FREE);
+	}
+
+	/**
+	 * Adds the given member to this set.
+	 *
+	 * @param value the member.
+	 * @return true if the member has been added, false if it was already in this set.
+	 */
+	public boolean add(final byte[] value) {
+		final int hash = hash(value);
+		int slot = hash & (slots.length - 1);
+		while (slots[slot] != FREE) {
+			final int index = slots[slot];
+			if (hashes[index] == hash && equals(index, value)) {
+				return false;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+
+		if (size == hashes.length) {
+			hashes = Arrays.copyOf(hashes, size * 2);
+			offsets = Arrays.copyOf(offsets, size * 2 + 1);
+		}
+
+		if (dataSize + value.length > data.length) {
+			data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + value.length));
+		}
+
+		System.arraycopy(value, 0, data, dataSize, value.length);
+		dataSize += value.length;
+		hashes[size] = hash;
+		offsets[size + 1] = dataSize;
+		slots[slot] = size++;
+
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if this set contains the given member.
+	 *
+	 * @param value the member.
+	 * @return true if this set contains the given member.
+	 */
+	public boolean contains(final byte[] value) {
+		return indexOf(value) != -1;
+	}
+
+	/**
+	 * Returns the index of the given member, that is, the number of members that have been added before it.
+	 *
+	 * @param value the member.
+	 * @return the index of the given member, -1 if this set doesn't contain the given member.
+	 */
+	public int indexOf(final byte[] value) {
+		final int hash = hash(value);
+		int slot = hash & (slots.length - 1);
+		while (slots[slot] != FREE) {
+			final int index = slots[slot];
+			if (hashes[index] == hash && equals(index, value)) {
+				return index;
+			}
+			slot = (slot + 1) & (slots.length - 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns (a copy of) the member at the given index.
+	 *
+	 * @param index the member index.
+	 * @return the member at the given index.
+	 * @see #indexOf(byte[])
+	 */
+	public byte[] get(final int index) {
+		return Arrays.copyOfRange(data, offsets[index], offsets[index + 1]);
+	}
+
+	/**
+	 * Returns the number of members of this set.
+	 *
+	 * @return the number of members of this set.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the memory, in bytes, used by this set (i.e. the size of its internal arrays).
+	 *
+	 * @return the memory, in bytes, used by this set.
+	 */
+	public long memoryUsage() {
+		return data.length + (offsets.length + hashes.length + slots.length) * 4L;
+	}
+
+	/**
+	 * Returns true if the member at the given index is equal to the given value.
+	 *
+	 * @param index the member index.
+	 * @param value the value.
+	 * @return true if the member at the given index is equal to the given value.
+	 */
+	private boolean equals(final int index, final byte[] value) {
+		final int offset = offsets[index];
+		if (offsets[index + 1] - offset != value.length) {
+			return false;
+		}
+
+		for (int i = 0; i < value.length; i++) {
+			if (data[offset + i] != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Rebuilds the hash table with a given capacity.
+	 *
+	 * @param capacity the new capacity (a power of two).
+	 */
+	private void rehash(final int capacity) {
+		slots = new int[capacity];
+		Arrays.fill(slots, FREE);
+		for (int index = 0; index < size; index++) {
+			int slot = hashes[index] & (capacity - 1);
+			while (slots[slot] != FREE) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			slots[slot] = index;
+		}
+	}
+
+	/**
+	 * Returns the (spread) hash of the given value.
+	 *
+	 * @param value the value.
+	 * @return the hash of the given value.
+	 */
+	private static int hash(final byte[] value) {
+		final int hash = Arrays.hashCode(value) * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
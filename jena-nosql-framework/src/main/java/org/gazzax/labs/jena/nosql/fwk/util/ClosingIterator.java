@@ -0,0 +1,68 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/**
+ * A {@link ClosableIterator} decorator that propagates {@link #close()} down to the underlying (source) iterator.
+ * Once closed, the iterator doesn't return any further element, so no further storage request will be issued
+ * on behalf of an abandoned iteration.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ * @param <T> the element kind.
+ */
+public class ClosingIterator<T> implements ClosableIterator<T> {
+	private final Iterator<T> delegate;
+	private final Iterator<?> source;
+	private volatile boolean closed;
+
+	/**
+	 * Builds a new iterator that closes the given iterator.
+	 *
+	 * @param delegate the decorated iterator.
+	 */
+	public ClosingIterator(final Iterator<T> delegate) {
+		this(delegate, delegate);
+	}
+
+	/**
+	 * Builds a new iterator with the given data.
+	 *
+	 * @param delegate the decorated iterator.
+	 * @param source the iterator that will be closed together with this iterator (could be different from the decorated iterator).
+	 */
+	public ClosingIterator(final Iterator<T> delegate, final Iterator<?> source) {
+		this.delegate = delegate;
+		this.source = source;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !closed && delegate.hasNext();
+	}
+
+	@Override
+	public T next() {
+		if (closed) {
+			throw new NoSuchElementException();
+		}
+		return delegate.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			NiceIterator.close(source);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import java.util.Arrays;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A HyperLogLog sketch for estimating the number of distinct identifiers in a (possibly huge) stream.
+ * The sketch has a fixed size (2^precision registers, one byte each) and its standard error is about 1.04 / sqrt(2^precision).
+ *
+ * Sketches with the same precision can be merged, so they can be persisted and combined with sketches built elsewhere.
+ *
+ * @see http://algo.inria.fr/flajolet/Publications/FlFuGaMe07.pdf
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class HyperLogLog {
+	public static final int DEFAULT_PRECISION = 9;
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final int precision;
+	private final byte[] registers;
+
+	/**
+	 * Builds a new empty sketch with the given precision.
+	 *
+	 * @param precision the precision (i.e. the sketch will have 2^precision registers), between 4 and 16.
+	 */
+	public HyperLogLog(final int precision) {
+		if (precision < 4 || precision > 16) {
+			throw new IllegalArgumentException("Precision must be between 4 and 16 (was " + precision + ")");
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Builds a sketch from its serialized form.
+	 *
+	 * @param registers the registers, as returned by {@link #toByteArray()}.
+	 */
+	public HyperLogLog(final byte[] registers) {
+		this(Integer.numberOfTrailingZeros(registers.length));
+		System.arraycopy(registers, 0, this.registers, 0, this.registers.length);
+	}
+
+	/**
+	 * Adds the given identifier to this sketch.
+	 *
+	 * @param id the identifier.
+	 * @return true if the sketch has been modified.
+	 */
+	public synchronized boolean offer(final byte[] id) {
+		final long hash = HASH.hashBytes(id).asLong();
+		final int index = (int) (hash >>> (Long.SIZE - precision));
+		final byte rank = (byte) Math.min(Long.numberOfLeadingZeros(hash << precision) + 1, Long.SIZE - precision + 1);
+		if (registers[index] < rank) {
+			registers[index] = rank;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the estimated number of distinct identifiers that have been added to this sketch.
+	 *
+	 * @return the estimated number of distinct identifiers that have been added to this sketch.
+	 */
+	public synchronized long cardinality() {
+		final int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (final byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+
+		final double estimate = alpha(m) * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			return Math.round(m * Math.log((double) m / zeros));
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Merges the given sketch into this sketch.
+	 *
+	 * @param other the sketch that will be merged.
+	 */
+	public synchronized void merge(final HyperLogLog other) {
+		final byte[] otherRegisters = other.toByteArray();
+		if (otherRegisters.length != registers.length) {
+			throw new IllegalArgumentException("Cannot merge sketches with different precision.");
+		}
+
+		for (int i = 0; i < registers.length; i++) {
+			if (registers[i] < otherRegisters[i]) {
+				registers[i] = otherRegisters[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the serialized form of this sketch.
+	 *
+	 * @return the serialized form of this sketch.
+	 */
+	public synchronized byte[] toByteArray() {
+		return Arrays.copyOf(registers, registers.length);
+	}
+
+	/**
+	 * Returns the size, in bytes, of the serialized form of this sketch.
+	 *
+	 * @return the size, in bytes, of the serialized form of this sketch.
+	 */
+	public int sizeInBytes() {
+		return registers.length;
+	}
+
+	/**
+	 * Returns the bias correction constant for the given number of registers.
+	 *
+	 * @param m the number of registers.
+	 * @return the bias correction constant for the given number of registers.
+	 */
+	static double alpha(final int m) {
+		switch (m) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.AbstractIterator;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/**
+ * An iterator that consumes a source iterator on a background thread, keeping a bounded buffer of ready elements.
+ * In this way the work needed for producing elements (e.g. fetching storage pages, decoding identifiers) overlaps with the
+ * work done by the consumer.
+ *
+ * The producer reads ahead at most "buffer size" elements. The read-ahead window starts small and grows by one element
+ * for each consumed element, so that a consumer that needs just a few elements (e.g. ASK, LIMIT) doesn't pay for a full buffer.
+ *
+ * A consumer that abandons the iteration should call {@link #close()} in order to stop the producer:
+ * the close request is also propagated to the source iterator. The source is closed by the producer itself, once it stops
+ * (or by {@link #close()} if the producer never started), so it is never accessed by two threads at the same time.
+ *
+ * The producer never holds a thread of the executor for long: if the consumer doesn't take anything for a while,
+ * the producer stops and hands the source over to the consumer. The consumer reads the source directly in that case,
+ * and also when the producer didn't start in time (e.g. the executor is busy or it has been shut down).
+ * Elements that have been read ahead are returned first, so the consumer sees all elements, in the same order.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ * @param <T> the element kind.
+ */
+public class ReadAheadIterator<T> extends AbstractIterator<T> implements ClosableIterator<T> {
+	private static final Object END_OF_DATA = new Object();
+	private static final long WAIT_TIMEOUT = 100;
+	private static final int INITIAL_READ_AHEAD = 1;
+	static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+	/**
+	 * Wraps a failure raised by the producer, in order to rethrow it on the consumer side.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	private static final class Failure {
+		final RuntimeException exception;
+
+		/**
+		 * Builds a new failure wrapper.
+		 *
+		 * @param exception the failure cause.
+		 */
+		Failure(final RuntimeException exception) {
+			this.exception = exception;
+		}
+	}
+
+	private final Iterator<T> source;
+	private final BlockingQueue<Object> buffer = new LinkedBlockingQueue<Object>();
+	private final Semaphore window = new Semaphore(INITIAL_READ_AHEAD);
+	private final int bufferSize;
+	private final long idleTimeout;
+	private final Future<?> producer;
+	private final AtomicBoolean started = new AtomicBoolean();
+	private int granted = INITIAL_READ_AHEAD;
+	private volatile long lastTake = System.currentTimeMillis();
+	private volatile Object leftover;
+	private volatile boolean handedOver;
+	private volatile boolean direct;
+	private volatile boolean closed;
+
+	/**
+	 * Builds a new read-ahead iterator and immediately starts consuming the source iterator.
+	 *
+	 * @param source the source iterator.
+	 * @param bufferSize the max number of elements that will be read ahead.
+	 * @param executor the executor that will run the producer.
+	 */
+	public ReadAheadIterator(final Iterator<T> source, final int bufferSize, final ExecutorService executor) {
+		this(source, bufferSize, executor, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Builds a new read-ahead iterator and immediately starts consuming the source iterator.
+	 *
+	 * @param source the source iterator.
+	 * @param bufferSize the max number of elements that will be read ahead.
+	 * @param executor the executor that will run the producer.
+	 * @param idleTimeout how many milliseconds the producer waits for the consumer, with a full window, before handing the source over.
+	 */
+	ReadAheadIterator(final Iterator<T> source, final int bufferSize, final ExecutorService executor, final long idleTimeout) {
+		this.source = source;
+		this.bufferSize = Math.max(INITIAL_READ_AHEAD, bufferSize);
+		this.idleTimeout = idleTimeout;
+		
+		Future<?> task = null;
+		try {
+			task = executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (!started.compareAndSet(false, true)) {
+						return;
+					}
+
+					boolean handOver = false;
+					try {
+						while (!closed && source.hasNext()) {
+							final T element = source.next();
+							if (!enqueue(element)) {
+								leftover = element;
+								handOver = true;
+								return;
+							}
+						}
+						buffer.add(END_OF_DATA);
+					} catch (final RuntimeException exception) {
+						buffer.add(new Failure(exception));
+					} finally {
+						release(handOver);
+					}
+				}
+			});
+		} catch (final RejectedExecutionException exception) {
+			started.set(true);
+			direct = true;
+		}
+		this.producer = task;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected T computeNext() {
+		if (closed) {
+			return endOfData();
+		}
+
+		Object next = null;
+		try {
+			next = buffer.poll();
+			while (next == null && !direct) {
+				if (handedOver) {
+					next = buffer.poll();
+					if (next == null) {
+						direct = true;
+						next = leftover;
+						leftover = null;
+					}
+				} else if (producer.isDone()) {
+					if (!handedOver) {
+						next = buffer.poll();
+						if (next == null) {
+							return endOfData();
+						}
+					}
+				} else {
+					next = buffer.poll(WAIT_TIMEOUT, TimeUnit.MILLISECONDS);
+					if (next == null && started.compareAndSet(false, true)) {
+						producer.cancel(false);
+						direct = true;
+					}
+				}
+			}
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			close();
+			return endOfData();
+		}
+
+		if (next == null) {
+			if (source.hasNext()) {
+				return source.next();
+			}
+			close();
+			return endOfData();
+		}
+
+		if (!direct) {
+			taken();
+		}
+
+		if (next == END_OF_DATA) {
+			return endOfData();
+		}
+
+		if (next instanceof Failure) {
+			close();
+			throw ((Failure) next).exception;
+		}
+
+		return (T) next;
+	}
+
+	/**
+	 * Stops the producer and releases buffered elements.
+	 * The source iterator is closed by the producer, once it stops, or immediately if the producer didn't start yet
+	 * (or it has handed the source over).
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (producer != null) {
+			producer.cancel(true);
+		}
+		buffer.clear();
+		if (direct || handedOver || started.compareAndSet(false, true)) {
+			NiceIterator.close(source);
+		}
+	}
+
+	/**
+	 * Puts the given element in the buffer, waiting for room in the read-ahead window unless this iterator has been closed.
+	 *
+	 * @param element the element.
+	 * @return false if the producer must stop and hand the source over (i.e. it has been interrupted or the consumer is idle).
+	 */
+	boolean enqueue(final Object element) {
+		try {
+			while (!closed) {
+				if (window.tryAcquire(WAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					buffer.add(element);
+					return true;
+				}
+				if (System.currentTimeMillis() - lastTake > idleTimeout) {
+					return false;
+				}
+			}
+			return true;
+		} catch (final InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Records that the consumer has taken an element from the buffer: the taken element is given back to the read-ahead window,
+	 * which also grows by one element, up to the buffer size.
+	 */
+	private void taken() {
+		lastTake = System.currentTimeMillis();
+		if (granted < bufferSize) {
+			granted++;
+			window.release(2);
+		} else {
+			window.release();
+		}
+	}
+
+	/**
+	 * Called by the producer once it stops: the source is handed over to the consumer or, if the producer has completed
+	 * (or this iterator has been closed), it is closed.
+	 *
+	 * @param handOver true if the producer stopped before the end of the source.
+	 */
+	private synchronized void release(final boolean handOver) {
+		if (handOver && !closed) {
+			handedOver = true;
+		} else {
+			NiceIterator.close(source);
+		}
+	}
+}
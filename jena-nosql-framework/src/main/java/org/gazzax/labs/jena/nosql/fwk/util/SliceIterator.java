@@ -0,0 +1,65 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import java.util.Iterator;
+
+import com.google.common.collect.AbstractIterator;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/**
+ * An iterator that skips the first "offset" elements of a source iterator and returns at most "limit" elements.
+ * The source is skipped lazily (i.e. on the first access) and it is closed as soon as the limit has been reached,
+ * so no further (storage) page is requested.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ * @param <T> the element kind.
+ */
+public class SliceIterator<T> extends AbstractIterator<T> implements ClosableIterator<T> {
+	private final Iterator<T> source;
+	private final long offset;
+	private final long limit;
+
+	private boolean skipped;
+	private long count;
+	private boolean closed;
+
+	/**
+	 * Builds a new iterator with the given data.
+	 *
+	 * @param source the source iterator.
+	 * @param offset how many elements will be skipped.
+	 * @param limit the max number of elements that will be returned, a negative value means no limit.
+	 */
+	public SliceIterator(final Iterator<T> source, final long offset, final long limit) {
+		this.source = source;
+		this.offset = Math.max(0, offset);
+		this.limit = limit;
+	}
+
+	@Override
+	protected T computeNext() {
+		if (!skipped) {
+			skipped = true;
+			for (long i = 0; i < offset && source.hasNext(); i++) {
+				source.next();
+			}
+		}
+
+		if (closed || (limit >= 0 && count >= limit) || !source.hasNext()) {
+			close();
+			return endOfData();
+		}
+
+		count++;
+		return source.next();
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			NiceIterator.close(source);
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.gazzax.labs.jena.nosql.fwk.log.Log;
+import org.gazzax.labs.jena.nosql.fwk.log.MessageCatalog;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * An external merge sort of byte arrays (e.g. solution keys packed as dictionary identifiers), that removes duplicates.
+ *
+ * Members are collected in memory; when the collected members are over a given memory budget, they are sorted and
+ * written (i.e. spilled) to a temporary file as a sorted run. Once all members have been added, runs are memory-mapped
+ * and merged with the members that are still in memory (see {@link #merge()}).
+ *
+ * Files are deleted on {@link #close()}. This class is not thread-safe.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class SortedRuns {
+	private static final Log LOGGER = new Log(LoggerFactory.getLogger(SortedRuns.class));
+	private static final Comparator<byte[]> ORDER = UnsignedBytes.lexicographicalComparator();
+	private static final int MEMBER_OVERHEAD = 32;
+
+	/**
+	 * A sorted run, while it is being merged.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	static final class Cursor {
+		private final Iterator<byte[]> members;
+		private byte[] current;
+
+		/**
+		 * Builds a new cursor over the given (sorted) members.
+		 *
+		 * @param members the members.
+		 */
+		Cursor(final Iterator<byte[]> members) {
+			this.members = members;
+		}
+
+		/**
+		 * Moves this cursor to the next member.
+		 *
+		 * @return true if there's a next member, false if the run has been entirely read.
+		 */
+		boolean advance() {
+			current = members.hasNext() ? members.next() : null;
+			return current != null;
+		}
+	}
+
+	private final File directory;
+	private final long maxBytes;
+	private final List<File> files = new ArrayList<File>();
+	private List<byte[]> members = new ArrayList<byte[]>();
+	private long memoryUsage;
+
+	/**
+	 * Builds a new (empty) sort with the given settings.
+	 *
+	 * @param directory the directory where runs will be spilled, null for the default temporary directory.
+	 * @param maxBytes the max memory, in bytes, used by the members that are collected before spilling a run.
+	 */
+	public SortedRuns(final File directory, final long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Adds the given member.
+	 *
+	 * @param member the member.
+	 * @throws IOException in case the members collected so far cannot be spilled.
+	 */
+	public void add(final byte[] member) throws IOException {
+		members.add(member);
+		memoryUsage += member.length + MEMBER_OVERHEAD;
+		if (memoryUsage > maxBytes) {
+			spill();
+		}
+	}
+
+	/**
+	 * Returns the number of runs that have been spilled so far.
+	 *
+	 * @return the number of runs that have been spilled so far.
+	 */
+	public int getSpilledRunsCount() {
+		return files.size();
+	}
+
+	/**
+	 * Returns all members, sorted and without duplicates.
+	 * No other member can be added after this call.
+	 *
+	 * @return all members, sorted and without duplicates.
+	 * @throws IOException in case a spilled run cannot be read.
+	 */
+	public Iterator<byte[]> merge() throws IOException {
+		final List<Cursor> cursors = new ArrayList<Cursor>(files.size() + 1);
+		Collections.sort(members, ORDER);
+		cursors.add(new Cursor(members.iterator()));
+		members = null;
+		for (final File file : files) {
+			cursors.add(new Cursor(read(file)));
+		}
+
+		final PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(cursors.size(), new Comparator<Cursor>() {
+			@Override
+			public int compare(final Cursor first, final Cursor second) {
+				return ORDER.compare(first.current, second.current);
+			}
+		});
+		for (final Cursor cursor : cursors) {
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+
+		return new AbstractIterator<byte[]>() {
+			private byte[] last;
+
+			@Override
+			protected byte[] computeNext() {
+				while (!queue.isEmpty()) {
+					final Cursor cursor = queue.poll();
+					final byte[] member = cursor.current;
+					if (cursor.advance()) {
+						queue.add(cursor);
+					}
+
+					if (last == null || ORDER.compare(last, member) != 0) {
+						last = member;
+						return member;
+					}
+				}
+				return endOfData();
+			}
+		};
+	}
+
+	/**
+	 * Deletes all spilled runs.
+	 */
+	public void close() {
+		for (final File file : files) {
+			file.delete();
+		}
+		files.clear();
+	}
+
+	/**
+	 * Sorts the members collected so far and writes them, without duplicates, to a new run file.
+	 *
+	 * @throws IOException in case the run cannot be written.
+	 */
+	void spill() throws IOException {
+		Collections.sort(members, ORDER);
+		final File file = File.createTempFile("run-", ".keys", directory);
+		files.add(file);
+		final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			byte[] last = null;
+			for (final byte[] member : members) {
+				if (last == null || ORDER.compare(last, member) != 0) {
+					output.writeInt(member.length);
+					output.write(member);
+					last = member;
+				}
+			}
+		} catch (final IOException exception) {
+			LOGGER.error(MessageCatalog._00114_UNABLE_TO_SPILL_SORTED_RUN, exception, file);
+			throw exception;
+		} finally {
+			output.close();
+		}
+		members = new ArrayList<byte[]>();
+		memoryUsage = 0;
+	}
+
+	/**
+	 * Returns the members of a given run file, which is memory-mapped.
+	 *
+	 * @param file the run file.
+	 * @return the members of the given run file.
+	 * @throws IOException in case the run file cannot be mapped.
+	 */
+	Iterator<byte[]> read(final File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		final MappedByteBuffer buffer;
+		try {
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} catch (final IOException exception) {
+			LOGGER.error(MessageCatalog._00114_UNABLE_TO_SPILL_SORTED_RUN, exception, file);
+			throw exception;
+		} finally {
+			raf.close();
+		}
+
+		return new AbstractIterator<byte[]>() {
+			@Override
+			protected byte[] computeNext() {
+				if (!buffer.hasRemaining()) {
+					return endOfData();
+				}
+
+				final byte[] member = new byte[buffer.getInt()];
+				buffer.get(member);
+				return member;
+			}
+		};
+	}
+}
@@ -0,0 +1,163 @@
+package org.gazzax.labs.jena.nosql.fwk.ds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for {@link GroupCommitter} and {@link GroupCommitGraphDAO}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class GroupCommitterTestCase {
+	private GroupCommitter cut;
+	private GraphDAO<byte[][], byte[][]> decoratee;
+
+	/**
+	 * Setup fixture for this test case.
+	 */
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		cut = new GroupCommitter(1000, 500);
+		decoratee = mock(GraphDAO.class);
+	}
+
+	/**
+	 * Shutdown procedure for this test case.
+	 */
+	@After
+	public void tearDown() {
+		cut.shutdown();
+	}
+
+	/**
+	 * Mutations coming from concurrent writers must be coalesced in shared batches.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void concurrentWriters() throws Exception {
+		final int howManyWriters = 10;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(howManyWriters);
+		final AtomicInteger failures = new AtomicInteger();
+
+		for (int i = 0; i < howManyWriters; i++) {
+			new Thread() {
+				@Override
+				public void run() {
+					final GraphDAO<byte[][], byte[][]> dao = new GroupCommitGraphDAO<byte[][], byte[][]>(decoratee, cut);
+					try {
+						start.await();
+						dao.insertTriple(new byte[3][]);
+						dao.insertTriple(new byte[3][]);
+						dao.executePendingMutations();
+					} catch (final Exception exception) {
+						failures.incrementAndGet();
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		start.countDown();
+		done.await();
+
+		assertEquals(0, failures.get());
+		verify(decoratee, times(howManyWriters * 2)).insertTriple(any(byte[][].class));
+		verify(decoratee, atMost(2)).executePendingMutations();
+	}
+
+	/**
+	 * A batch failure must be propagated to all writers that belong to that batch.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void batchFailure() throws Exception {
+		final StorageLayerException failure = new StorageLayerException(new RuntimeException());
+		doThrow(failure).when(decoratee).executePendingMutations();
+
+		final GraphDAO<byte[][], byte[][]> dao = new GroupCommitGraphDAO<byte[][], byte[][]>(decoratee, cut);
+		dao.insertTriple(new byte[3][]);
+		try {
+			dao.executePendingMutations();
+			fail();
+		} catch (final StorageLayerException expected) {
+			assertSame(failure, expected);
+		}
+	}
+
+	/**
+	 * A failing writer must not fail the other writers of its batch, and the mutations it left pending must be discarded.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void batchFailureIsolatesTheFailingWriter() throws Exception {
+		final byte[][] poison = { {1}, {2}, {3} };
+		final StorageLayerException failure = new StorageLayerException(new RuntimeException());
+		doThrow(failure).when(decoratee).insertTriple(poison);
+
+		final GroupCommitter.Commit good = commit(new byte[3][]);
+		final GroupCommitter.Commit bad = commit(poison);
+		cut.apply(Arrays.asList(good, bad));
+
+		assertEquals(0, good.acknowledged.getCount());
+		assertEquals(0, bad.acknowledged.getCount());
+		assertNull(good.failure);
+		assertSame(failure, bad.failure);
+		verify(decoratee, times(2)).discardPendingMutations();
+		verify(decoratee).executePendingMutations();
+	}
+
+	/**
+	 * Once the committer has been shut down, new mutations must be refused.
+	 */
+	@Test
+	public void commitAfterShutdown() {
+		cut.shutdown();
+
+		final List<GroupCommitter.Mutation<?>> mutations = new ArrayList<GroupCommitter.Mutation<?>>();
+		mutations.add(new GroupCommitter.Mutation<byte[][]>(decoratee, new byte[3][], true));
+		try {
+			cut.commit(mutations);
+			fail();
+		} catch (final StorageLayerException expected) {
+			// Nothing, this is the expected behaviour
+		}
+	}
+
+	/**
+	 * Builds a commit with a single insert of the given triple.
+	 *
+	 * @param triple the triple.
+	 * @return a commit with a single insert of the given triple.
+	 */
+	private GroupCommitter.Commit commit(final byte[][] triple) {
+		final List<GroupCommitter.Mutation<?>> mutations = new ArrayList<GroupCommitter.Mutation<?>>();
+		mutations.add(new GroupCommitter.Mutation<byte[][]>(decoratee, triple, true));
+		return new GroupCommitter.Commit(mutations);
+	}
+}
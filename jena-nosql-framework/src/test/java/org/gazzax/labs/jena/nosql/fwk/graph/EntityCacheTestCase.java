@@ -0,0 +1,96 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildLiteral;
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterators;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Test case for {@link EntityCache}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class EntityCacheTestCase {
+	private static final byte[] SUBJECT_ID = "s".getBytes();
+
+	private final Node subject = buildResource("s");
+	private final Node name = buildResource("name");
+	private final Node email = buildResource("email");
+
+	private List<Triple> entity;
+	private EntityCache cut;
+
+	/**
+	 * Setup fixture for this test case.
+	 */
+	@Before
+	public void setUp() {
+		entity = Arrays.asList(
+				Triple.create(subject, name, buildLiteral("Andrea")),
+				Triple.create(subject, email, buildLiteral("a@b.c")));
+		cut = new EntityCache("test", 10, 5);
+	}
+
+	/**
+	 * An entity is cached once it has been entirely read and it answers any pattern with that subject.
+	 */
+	@Test
+	public void hitAfterFullRead() {
+		final Triple all = Triple.create(subject, Node.ANY, Node.ANY);
+		assertNull(cut.get(SUBJECT_ID, all));
+
+		final Iterator<Triple> partial = cut.cache(SUBJECT_ID, entity.iterator());
+		partial.next();
+		assertNull(cut.get(SUBJECT_ID, all));
+
+		assertEquals(2, Iterators.size(cut.cache(SUBJECT_ID, entity.iterator())));
+		assertEquals(2, Iterators.size(cut.get(SUBJECT_ID, all)));
+		assertEquals(1, Iterators.size(cut.get(SUBJECT_ID, Triple.create(subject, email, Node.ANY))));
+		assertEquals(0, Iterators.size(cut.get(SUBJECT_ID, Triple.create(subject, email, buildLiteral("x")))));
+
+		assertEquals(1, cut.getCachedEntitiesCount());
+		assertEquals(2, cut.getCachedTriplesCount());
+		assertEquals(5, cut.getLookupsCount());
+		assertEquals(3, cut.getHitsCount());
+	}
+
+	/**
+	 * A mutation on the subject invalidates the entity, as well as any load that was in progress.
+	 */
+	@Test
+	public void invalidation() {
+		Iterators.size(cut.cache(SUBJECT_ID, entity.iterator()));
+		cut.invalidate(SUBJECT_ID);
+		assertNull(cut.get(SUBJECT_ID, Triple.create(subject, Node.ANY, Node.ANY)));
+
+		final Iterator<Triple> inProgress = cut.cache(SUBJECT_ID, entity.iterator());
+		inProgress.next();
+		cut.invalidate(SUBJECT_ID);
+		Iterators.size(inProgress);
+		assertNull(cut.get(SUBJECT_ID, Triple.create(subject, Node.ANY, Node.ANY)));
+		assertEquals(2, cut.getInvalidationsCount());
+	}
+
+	/**
+	 * Entities with too many triples are not cached.
+	 */
+	@Test
+	public void largeEntitiesAreNotCached() {
+		final EntityCache small = new EntityCache("small", 10, 1);
+		Iterators.size(small.cache(SUBJECT_ID, entity.iterator()));
+		assertNull(small.get(SUBJECT_ID, Triple.create(subject, Node.ANY, Node.ANY)));
+		assertEquals(0, small.getCachedEntitiesCount());
+	}
+}
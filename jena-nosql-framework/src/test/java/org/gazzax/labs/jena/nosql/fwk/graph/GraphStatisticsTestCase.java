@@ -0,0 +1,103 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.gazzax.labs.jena.nosql.fwk.ds.MapDAO;
+import org.gazzax.labs.jena.nosql.fwk.util.HyperLogLog;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test case for {@link GraphStatistics}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class GraphStatisticsTestCase {
+	private static final byte[] TYPE = "type".getBytes();
+	private static final byte[] NAME = "name".getBytes();
+
+	private final Map<ByteBuffer, byte[]> storage = new HashMap<ByteBuffer, byte[]>();
+	private MapDAO<byte[], byte[]> dao;
+
+	/**
+	 * Setup fixture for this test case.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+		dao = mock(MapDAO.class);
+		when(dao.get(any(byte[].class))).thenAnswer(new Answer<byte[]>() {
+			@Override
+			public byte[] answer(final InvocationOnMock invocation) {
+				return storage.get(ByteBuffer.wrap((byte[]) invocation.getArguments()[0]));
+			}
+		});
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) {
+				storage.put(ByteBuffer.wrap((byte[]) invocation.getArguments()[0]), (byte[]) invocation.getArguments()[1]);
+				return null;
+			}
+		}).when(dao).set(any(byte[].class), any(byte[].class));
+	}
+
+	/**
+	 * Estimates must reflect triple counts and distinct values of each predicate.
+	 */
+	@Test
+	public void estimates() {
+		final GraphStatistics cut = new GraphStatistics("test", dao, HyperLogLog.DEFAULT_PRECISION, Long.MAX_VALUE);
+		for (int i = 0; i < 1000; i++) {
+			cut.add(new byte[][] {("s" + i).getBytes(), TYPE, ("c" + (i % 2)).getBytes()});
+			cut.add(new byte[][] {("s" + i).getBytes(), NAME, ("n" + i).getBytes()});
+		}
+
+		assertEquals(2000, cut.getTriplesCount());
+		assertEquals(1000, cut.estimate(TYPE, false, false), 0);
+		assertEquals(500, cut.estimate(TYPE, false, true), 5);
+		assertEquals(1, cut.estimate(NAME, false, true), 0.1);
+		assertEquals(0, cut.estimate("unknown".getBytes(), false, false), 0);
+
+		final long distinctSubjects = cut.getDistinctSubjectsCount();
+		assertTrue(String.valueOf(distinctSubjects), Math.abs(distinctSubjects - 1000) < 100);
+
+		cut.remove(new byte[][] {"s0".getBytes(), NAME, "n0".getBytes()});
+		assertEquals(999, cut.estimate(NAME, false, false), 0);
+	}
+
+	/**
+	 * Persisted statistics must be reloaded after a refresh (or by another instance).
+	 */
+	@Test
+	public void persistAndRefresh() {
+		final GraphStatistics writer = new GraphStatistics("writer", dao, HyperLogLog.DEFAULT_PRECISION, Long.MAX_VALUE);
+		for (int i = 0; i < 100; i++) {
+			writer.add(new byte[][] {("s" + i).getBytes(), TYPE, "c".getBytes()});
+		}
+
+		final GraphStatistics reader = new GraphStatistics("reader", dao, HyperLogLog.DEFAULT_PRECISION, Long.MAX_VALUE);
+		assertEquals(0, reader.getTriplesCount());
+
+		writer.persist();
+		assertEquals(0, reader.getTriplesCount());
+
+		reader.refresh();
+		assertEquals(100, reader.getTriplesCount());
+		assertEquals(100, reader.estimate(TYPE, false, false), 0);
+		assertEquals(1, reader.getPredicatesCount());
+	}
+}
@@ -0,0 +1,271 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildLiteral;
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.randomString;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.gazzax.labs.jena.nosql.fwk.TestUtility.TestStorageLayerFactory;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QuadDAO;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.sparql.JenaTransactionException;
+import com.hp.hpl.jena.sparql.core.Quad;
+
+/**
+ * Test case for {@link NoSqlDatasetGraph}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class NoSqlDatasetGraphTestCase {
+	private NoSqlDatasetGraph cut;
+	private GraphDAO<byte[][], byte[][]> dao;
+	private TopLevelDictionary dictionary;
+
+	/**
+	 * Setup fixture for this test case.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+		dao = mock(GraphDAO.class);
+		dictionary = mock(TopLevelDictionary.class);
+		when(dictionary.asIdentifiers(any(Node.class), any(Node.class), any(Node.class))).thenReturn(new byte[3][]);
+
+		cut = new NoSqlDatasetGraph(new TestStorageLayerFactory() {
+			@Override
+			public GraphDAO<byte[][], byte[][]> getGraphDAO() {
+				return dao;
+			}
+
+			@Override
+			public TopLevelDictionary getDictionary() {
+				return dictionary;
+			}
+		});
+	}
+
+	/**
+	 * Mutations within a write transaction must be sent to the storage only at commit time.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void commit() throws Exception {
+		cut.begin(ReadWrite.WRITE);
+		assertTrue(cut.isInTransaction());
+
+		for (int i = 0; i < 10; i++) {
+			cut.add(Quad.defaultGraphIRI, aResource(), aResource(), aLiteral());
+		}
+
+		final Node s = aResource();
+		final Node p = aResource();
+		final Node o = aLiteral();
+		cut.delete(Quad.defaultGraphIRI, s, p, o);
+
+		verify(dao, never()).insertTriple(any(byte[][].class));
+		verify(dao, never()).executePendingMutations();
+
+		cut.commit();
+
+		assertFalse(cut.isInTransaction());
+		verify(dao, times(10)).insertTriple(any(byte[][].class));
+		verify(dao).deleteTriples(any(Iterator.class));
+		verify(dao).executePendingMutations();
+	}
+
+	/**
+	 * An aborted transaction must never touch the storage.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void abort() throws Exception {
+		cut.begin(ReadWrite.WRITE);
+		cut.add(Quad.defaultGraphIRI, aResource(), aResource(), aLiteral());
+		cut.delete(Quad.defaultGraphIRI, aResource(), aResource(), aLiteral());
+		cut.abort();
+
+		assertFalse(cut.isInTransaction());
+		verify(dao, never()).insertTriple(any(byte[][].class));
+		verify(dao, never()).deleteTriples(any(Iterator.class));
+		verify(dao, never()).executePendingMutations();
+	}
+
+	/**
+	 * Subsequent mutations on the same triple must be coalesced.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void coalescedMutations() throws Exception {
+		final Node s = aResource();
+		final Node p = aResource();
+		final Node o = aLiteral();
+
+		cut.begin(ReadWrite.WRITE);
+		cut.delete(Quad.defaultGraphIRI, s, p, o);
+		cut.add(Quad.defaultGraphIRI, s, p, o);
+		cut.commit();
+
+		verify(dao).insertTriple(any(byte[][].class));
+		verify(dao, never()).deleteTriples(any(Iterator.class));
+	}
+
+	/**
+	 * Mutations are not allowed within a read transaction.
+	 */
+	@Test
+	public void updateWithinReadTransaction() {
+		cut.begin(ReadWrite.READ);
+		try {
+			cut.add(Quad.defaultGraphIRI, aResource(), aResource(), aLiteral());
+			fail();
+		} catch (final JenaTransactionException expected) {
+			// Nothing, this is the expected behaviour
+		} finally {
+			cut.end();
+		}
+	}
+
+	/**
+	 * Nested transactions are not allowed.
+	 */
+	@Test
+	public void nestedTransaction() {
+		cut.begin(ReadWrite.WRITE);
+		try {
+			cut.begin(ReadWrite.WRITE);
+			fail();
+		} catch (final JenaTransactionException expected) {
+			// Nothing, this is the expected behaviour
+		} finally {
+			cut.end();
+		}
+		assertFalse(cut.isInTransaction());
+	}
+
+	/**
+	 * If the storage provides a {@link QuadDAO}, a quad pattern must be answered with just one storage query.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void findWithQuadDAO() throws Exception {
+		final QuadDAO<byte[][], byte[][]> quadDao = mock(QuadDAO.class);
+		final Iterator<byte[][]> ids = new ArrayList<byte[][]>().iterator();
+		when(quadDao.query(any(byte[][].class))).thenReturn(ids);
+		when(dictionary.asQuadIterator(ids)).thenReturn(new ArrayList<Quad>().iterator());
+
+		cut = new NoSqlDatasetGraph(new TestStorageLayerFactory() {
+			@Override
+			public QuadDAO<byte[][], byte[][]> getQuadDAO() {
+				return quadDao;
+			}
+
+			@Override
+			public TopLevelDictionary getDictionary() {
+				return dictionary;
+			}
+		});
+
+		final Node s = aResource();
+		assertFalse(cut.findNG(Node.ANY, s, Node.ANY, Node.ANY).hasNext());
+
+		verify(quadDao).query(any(byte[][].class));
+		verify(dictionary).asIdentifiers(s, null, null, null);
+	}
+
+	/**
+	 * Triples buffered in a named graph must be flushed before a quad query, so that the query sees them.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void findWithQuadDAOFlushesNamedGraphs() throws Exception {
+		final QuadDAO<byte[][], byte[][]> quadDao = mock(QuadDAO.class);
+		final Iterator<byte[][]> ids = new ArrayList<byte[][]>().iterator();
+		when(quadDao.query(any(byte[][].class))).thenReturn(ids);
+		when(dictionary.asQuadIterator(ids)).thenReturn(new ArrayList<Quad>().iterator());
+		when(dictionary.asIdentifiers(any(Node.class), any(Node.class), any(Node.class), any(Node.class))).thenReturn(new byte[4][]);
+
+		cut = new NoSqlDatasetGraph(new TestStorageLayerFactory() {
+			@Override
+			public GraphDAO<byte[][], byte[][]> getGraphDAO(final Node name) {
+				return dao;
+			}
+
+			@Override
+			public QuadDAO<byte[][], byte[][]> getQuadDAO() {
+				return quadDao;
+			}
+
+			@Override
+			public TopLevelDictionary getDictionary() {
+				return dictionary;
+			}
+		});
+
+		final Node g = aResource();
+		final NoSqlGraph named = (NoSqlGraph) cut.getGraph(g);
+		named.beginBulkLoad();
+		try {
+			named.add(new Triple(aResource(), aResource(), aLiteral()));
+			verify(dao, never()).executePendingMutations();
+
+			assertFalse(cut.findNG(Node.ANY, Node.ANY, Node.ANY, Node.ANY).hasNext());
+
+			final InOrder inOrder = inOrder(dao, quadDao);
+			inOrder.verify(dao).executePendingMutations();
+			inOrder.verify(quadDao).query(any(byte[][].class));
+		} finally {
+			named.endBulkLoad();
+		}
+	}
+
+	/**
+	 * Builds a sample resource.
+	 *
+	 * @return a sample resource.
+	 */
+	private Node aResource() {
+		return buildResource(randomString());
+	}
+
+	/**
+	 * Builds a sample literal.
+	 *
+	 * @return a sample literal.
+	 */
+	private Node aLiteral() {
+		return buildLiteral(randomString());
+	}
+}
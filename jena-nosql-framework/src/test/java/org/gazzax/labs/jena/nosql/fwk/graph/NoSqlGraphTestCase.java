@@ -0,0 +1,351 @@
+package org.gazzax.labs.jena.nosql.fwk.graph;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildLiteral;
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.randomString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.gazzax.labs.jena.nosql.fwk.TestUtility.TestStorageLayerFactory;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.factory.StorageLayerFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hp.hpl.jena.graph.GraphUtil;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * Test case for {@link NoSqlGraph}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class NoSqlGraphTestCase {
+	private NoSqlGraph cut;
+	private StorageLayerFactory factory;
+	private GraphDAO<byte[][], byte[][]> dao;
+	private TopLevelDictionary dictionary;
+
+	/**
+	 * Setup fixture for this test case.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+		dao = mock(GraphDAO.class);
+		dictionary = mock(TopLevelDictionary.class);
+		when(dictionary.asIdentifiers(any(Node.class), any(Node.class), any(Node.class))).thenReturn(new byte[3][]);
+
+		factory = new TestStorageLayerFactory() {
+			@Override
+			public GraphDAO<byte[][], byte[][]> getGraphDAO() {
+				return dao;
+			}
+
+			@Override
+			public TopLevelDictionary getDictionary() {
+				return dictionary;
+			}
+		};
+		cut = new NoSqlGraph(factory);
+	}
+
+	/**
+	 * Adding a single triple must result in one storage round trip.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void addSingleTriple() throws Exception {
+		cut.add(aTriple());
+
+		verify(dao).insertTriple(any(byte[][].class));
+		verify(dao).executePendingMutations();
+	}
+
+	/**
+	 * Jena bulk paths must be flushed in chunks of {@link NoSqlGraph#DEFAULT_BULK_LOAD_BATCH_SIZE} triples.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void addListOfTriples() throws Exception {
+		final int howManyTriples = (NoSqlGraph.DEFAULT_BULK_LOAD_BATCH_SIZE * 2) + 1;
+
+		GraphUtil.add(cut, triples(howManyTriples));
+
+		verify(dao, times(howManyTriples)).insertTriple(any(byte[][].class));
+		verify(dao, times(3)).executePendingMutations();
+	}
+
+	/**
+	 * Within an explicit bulk load session, triples must be flushed only when the batch size is reached or the session ends.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void explicitBulkLoadSession() throws Exception {
+		cut.beginBulkLoad(10, Long.MAX_VALUE);
+
+		for (final Triple triple : triples(25)) {
+			cut.add(triple);
+		}
+
+		verify(dao, times(25)).insertTriple(any(byte[][].class));
+		verify(dao, times(2)).executePendingMutations();
+
+		cut.endBulkLoad();
+		verify(dao, times(3)).executePendingMutations();
+
+		cut.add(aTriple());
+		verify(dao, times(4)).executePendingMutations();
+	}
+
+	/**
+	 * Pending triples must be flushed before running a query.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void flushBeforeFind() throws Exception {
+		cut.beginBulkLoad(10, Long.MAX_VALUE);
+		cut.add(aTriple());
+
+		verify(dao, times(0)).executePendingMutations();
+
+		cut.find(Node.ANY, Node.ANY, Node.ANY);
+		verify(dao).executePendingMutations();
+	}
+
+	/**
+	 * Clearing a named graph must remove only the triples that belong to that graph.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void clearNamedGraph() throws Exception {
+		final Node name = buildResource(randomString());
+		when(dictionary.asIdentifiers(null, null, null, name)).thenReturn(new byte[4][]);
+		when(dao.query(any(byte[][].class))).thenReturn(new ArrayList<byte[][]>().iterator());
+
+		cut = new NoSqlGraph(name, new TestStorageLayerFactory() {
+			@Override
+			public GraphDAO<byte[][], byte[][]> getGraphDAO(final Node name) {
+				return dao;
+			}
+
+			@Override
+			public TopLevelDictionary getDictionary() {
+				return dictionary;
+			}
+		});
+
+		cut.clear();
+
+		verify(dao).deleteTriples(any(Iterator.class));
+		verify(dao, never()).clear();
+	}
+
+	/**
+	 * Graph size must be answered by the DAO, without iterating over triples.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void size() throws Exception {
+		when(dao.countTriples()).thenReturn(12345L);
+
+		assertEquals(12345, cut.size());
+		verify(dao, never()).query(any(byte[][].class));
+	}
+
+	/**
+	 * Contains must be answered with an existence query, without decoding any triple.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void contains() throws Exception {
+		when(dao.exists(any(byte[][].class))).thenReturn(true);
+
+		assertTrue(cut.contains(aTriple()));
+		verify(dao).exists(any(byte[][].class));
+		verify(dao, never()).query(any(byte[][].class));
+	}
+
+	/**
+	 * If the contains filter is enabled, triples that have never been added must be excluded without any storage access.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void containsWithFilter() throws Exception {
+		when(dao.query(any(byte[][].class))).thenReturn(new ArrayList<byte[][]>().iterator());
+		when(dao.exists(any(byte[][].class))).thenReturn(true);
+
+		final Triple added = aTriple();
+		final Triple neverAdded = aTriple();
+		when(dictionary.asIdentifiers(added.getSubject(), added.getPredicate(), added.getObject()))
+			.thenReturn(new byte[][] {{1}, {2}, {3}});
+		when(dictionary.asIdentifiers(neverAdded.getSubject(), neverAdded.getPredicate(), neverAdded.getObject()))
+			.thenReturn(new byte[][] {{4}, {5}, {6}});
+
+		cut.enableContainsFilter(1000, 0.01);
+		cut.add(added);
+
+		assertFalse(cut.contains(neverAdded));
+		verify(dao, never()).exists(any(byte[][].class));
+
+		assertTrue(cut.contains(added));
+		verify(dao).exists(any(byte[][].class));
+	}
+
+	/**
+	 * If the pattern cache is enabled, a repeated pattern must be answered without accessing the storage, until the next mutation.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void patternCache() throws Exception {
+		answerWithOneRow(aTriple());
+
+		cut.enablePatternCache(100, 10);
+		try {
+			assertEquals(1, cut.find(Node.ANY, Node.ANY, Node.ANY).toList().size());
+			assertEquals(1, cut.find(Node.ANY, Node.ANY, Node.ANY).toList().size());
+			verify(dao, times(1)).query(any(byte[][].class));
+
+			cut.add(aTriple());
+
+			assertEquals(1, cut.find(Node.ANY, Node.ANY, Node.ANY).toList().size());
+			verify(dao, times(2)).query(any(byte[][].class));
+		} finally {
+			cut.disablePatternCache();
+		}
+	}
+
+	/**
+	 * A mutation through another graph of the same store must invalidate the pattern cache, because that graph 
+	 * could be part of this graph (e.g. a named graph within the default graph of a dataset).
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void patternCacheIsInvalidatedByOtherGraphs() throws Exception {
+		answerWithOneRow(aTriple());
+		when(dictionary.asIdentifiers(any(Node.class), any(Node.class), any(Node.class), any(Node.class))).thenReturn(new byte[4][]);
+		final NoSqlGraph named = new NoSqlGraph(buildResource(randomString()), factory);
+
+		cut.enablePatternCache(100, 10);
+		try {
+			assertEquals(1, cut.find(Node.ANY, Node.ANY, Node.ANY).toList().size());
+			verify(dao, times(1)).query(any(byte[][].class));
+
+			named.add(aTriple());
+
+			assertEquals(1, cut.find(Node.ANY, Node.ANY, Node.ANY).toList().size());
+			verify(dao, times(2)).query(any(byte[][].class));
+		} finally {
+			cut.disablePatternCache();
+		}
+	}
+
+	/**
+	 * A mutation on a subject through another graph of the same store must invalidate the corresponding cached entity.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void entityCacheIsInvalidatedByOtherGraphs() throws Exception {
+		final byte[] subject = {1};
+		answerWithOneRow(aTriple());
+		when(dictionary.asIdentifiers(any(Node.class), any(Node.class), any(Node.class))).thenReturn(new byte[][] {subject, null, null});
+		when(dictionary.asIdentifiers(any(Node.class), any(Node.class), any(Node.class), any(Node.class))).thenReturn(new byte[][] {subject, {2}, {3}, {4}});
+		final NoSqlGraph named = new NoSqlGraph(buildResource(randomString()), factory);
+		final Node s = buildResource(randomString());
+
+		cut.enableEntityCache(100, 10);
+		try {
+			assertEquals(1, cut.find(s, Node.ANY, Node.ANY).toList().size());
+			assertEquals(1, cut.find(s, Node.ANY, Node.ANY).toList().size());
+			verify(dao, times(1)).query(any(byte[][].class));
+
+			named.add(new Triple(s, buildResource(randomString()), buildLiteral(randomString())));
+
+			assertEquals(1, cut.find(s, Node.ANY, Node.ANY).toList().size());
+			verify(dao, times(2)).query(any(byte[][].class));
+		} finally {
+			cut.disableEntityCache();
+		}
+	}
+
+	/**
+	 * Stubs the storage and the dictionary so that any pattern query returns one row, decoded as the given triple.
+	 *
+	 * @param triple the triple.
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@SuppressWarnings("unchecked")
+	private void answerWithOneRow(final Triple triple) throws Exception {
+		when(dao.query(any(byte[][].class))).thenAnswer(new Answer<Iterator<byte[][]>>() {
+			@Override
+			public Iterator<byte[][]> answer(final InvocationOnMock invocation) {
+				final List<byte[][]> rows = new ArrayList<byte[][]>();
+				rows.add(new byte[][] {{1}, {2}, {3}});
+				return rows.iterator();
+			}
+		});
+		when(dictionary.asTripleIterator(any(Iterator.class))).thenAnswer(new Answer<Iterator<Triple>>() {
+			@Override
+			public Iterator<Triple> answer(final InvocationOnMock invocation) {
+				final List<Triple> triples = new ArrayList<Triple>();
+				for (final Iterator<byte[][]> ids = (Iterator<byte[][]>) invocation.getArguments()[0]; ids.hasNext(); ids.next()) {
+					triples.add(triple);
+				}
+				return triples.iterator();
+			}
+		});
+	}
+
+	/**
+	 * Builds a list of sample triples.
+	 *
+	 * @param howMany how many triples the list will contain.
+	 * @return a list of sample triples.
+	 */
+	private List<Triple> triples(final int howMany) {
+		final List<Triple> triples = new ArrayList<Triple>(howMany);
+		for (int i = 0; i < howMany; i++) {
+			triples.add(aTriple());
+		}
+		return triples;
+	}
+
+	/**
+	 * Builds a sample triple.
+	 *
+	 * @return a sample triple.
+	 */
+	private Triple aTriple() {
+		return new Triple(buildResource(randomString()), buildResource(randomString()), buildLiteral(randomString()));
+	}
+}
@@ -0,0 +1,176 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Test case for {@link BasicPatternIterator}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class BasicPatternIteratorTestCase extends SparqlTestFixture {
+	/**
+	 * Intermediate bindings must be joined with the next pattern using one batch query.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void bindingsAreJoinedInBatch() throws Exception {
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?name WHERE { ?s <" + NS + "type> ?type . ?s <" + NS + "name> ?name }",
+				ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			int count = 0;
+			while (resultSet.hasNext()) {
+				resultSet.next();
+				count++;
+			}
+			assertEquals(3, count);
+		} finally {
+			execution.close();
+		}
+
+		verify(dao, times(2)).batchQuery(any(List.class), any(QueryContext.class));
+		verify(dao, never()).query(any(byte[][].class));
+		verify(dao, never()).query(any(byte[][].class), any(QueryContext.class));
+	}
+
+	/**
+	 * Patterns that share a bound subject must be answered with one read of the subject partition.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void starIsAnsweredBySubjectRead() throws Exception {
+		add("john", "knows", buildResource("mary"));
+		add("john", "knows", buildResource("rex"));
+
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT * WHERE { <" + NS + "john> <" + NS + "name> ?name . <" + NS + "john> <" + NS + "type> ?type . "
+				+ "<" + NS + "john> <" + NS + "knows> ?friend }",
+				ModelFactory.createModelForGraph(graph));
+		final Set<Node> friends = new HashSet<Node>();
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				final QuerySolution solution = resultSet.next();
+				assertEquals("John", solution.getLiteral("name").getLexicalForm());
+				assertEquals(buildResource("Person"), solution.get("type").asNode());
+				friends.add(solution.get("friend").asNode());
+			}
+		} finally {
+			execution.close();
+		}
+		assertEquals(new HashSet<Node>(Arrays.asList(buildResource("mary"), buildResource("rex"))), friends);
+
+		final ArgumentCaptor<List> batches = ArgumentCaptor.forClass(List.class);
+		verify(dao).batchQuery(batches.capture(), any(QueryContext.class));
+		final byte[][] query = (byte[][]) batches.getValue().get(0);
+		assertEquals(1, batches.getValue().size());
+		assertEquals(null, query[1]);
+		assertEquals(null, query[2]);
+	}
+
+	/**
+	 * Storage requests must carry the query deadline and they must be cancelled together with the query.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void queryContextReachesTheStorage() throws Exception {
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?name WHERE { ?s <" + NS + "type> ?type . ?s <" + NS + "name> ?name }",
+				ModelFactory.createModelForGraph(graph));
+		execution.getContext().set(ARQ.queryTimeout, "60000");
+		final ArgumentCaptor<QueryContext> context = ArgumentCaptor.forClass(QueryContext.class);
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			resultSet.next();
+
+			verify(dao, atLeastOnce()).batchQuery(any(List.class), context.capture());
+			assertEquals(true, context.getValue().hasDeadline());
+			assertEquals(true, context.getValue().remainingMillis() <= 60000);
+			assertEquals(false, context.getValue().isCancelled());
+
+			execution.abort();
+			assertEquals(true, context.getValue().isCancelled());
+		} finally {
+			execution.close();
+		}
+	}
+
+	/**
+	 * A storage failure during a join must fail the query, instead of silently dropping the corresponding bindings.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void storageFailureDuringJoinFailsTheQuery() throws Exception {
+		doAnswer(new Answer<List<Iterator<byte[][]>>>() {
+			@Override
+			public List<Iterator<byte[][]>> answer(final InvocationOnMock invocation) {
+				final List<Iterator<byte[][]>> result = new ArrayList<Iterator<byte[][]>>();
+				for (final byte[][] query : (List<byte[][]>) invocation.getArguments()[0]) {
+					result.add(select(query));
+				}
+				return result;
+			}
+		})
+		.doThrow(new StorageLayerException(new IllegalStateException()))
+		.when(dao).batchQuery(any(List.class), any(QueryContext.class));
+
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?name WHERE { ?s <" + NS + "type> ?type . ?s <" + NS + "name> ?name }",
+				ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				resultSet.next();
+			}
+			fail();
+		} catch (final QueryExecException expected) {
+			assertTrue(expected.getCause() instanceof StorageLayerException);
+		} finally {
+			execution.close();
+		}
+
+		verify(dao, times(2)).batchQuery(any(List.class), any(QueryContext.class));
+	}
+}
@@ -0,0 +1,438 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildLiteral;
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.gazzax.labs.jena.nosql.fwk.StorageLayerException;
+import org.gazzax.labs.jena.nosql.fwk.ds.MapDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile.PatternProfile;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryProfile;
+import org.gazzax.labs.jena.nosql.fwk.graph.GraphStatistics;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.gazzax.labs.jena.nosql.fwk.graph.SlowQueryLog;
+import org.gazzax.labs.jena.nosql.fwk.util.HyperLogLog;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Test case for {@link NoSqlOpExecutor}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class NoSqlOpExecutorTestCase extends SparqlTestFixture {
+	/**
+	 * LIMIT and OFFSET over a single triple pattern must be pushed down to the storage.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void sliceIsPushedDown() throws Exception {
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?s WHERE { ?s <" + NS + "type> ?type } LIMIT 2 OFFSET 1",
+				ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			assertEquals(buildResource("mary"), resultSet.next().get("s").asNode());
+			assertEquals(buildResource("rex"), resultSet.next().get("s").asNode());
+			assertEquals(false, resultSet.hasNext());
+		} finally {
+			execution.close();
+		}
+
+		verify(dao).query(any(byte[][].class), eq(1L), eq(2L));
+		verify(dao, never()).query(any(byte[][].class));
+		verify(dao, never()).query(any(byte[][].class), any(QueryContext.class));
+	}
+
+	/**
+	 * A LIMIT over a join must not collect (and send to the storage) more intermediate bindings than needed.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void sliceLimitsBindJoinBatches() throws Exception {
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?name WHERE { ?s <" + NS + "type> ?type . ?s <" + NS + "name> ?name } LIMIT 1",
+				ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			resultSet.next();
+			assertEquals(false, resultSet.hasNext());
+		} finally {
+			execution.close();
+		}
+
+		final ArgumentCaptor<List> batches = ArgumentCaptor.forClass(List.class);
+		verify(dao, atLeastOnce()).batchQuery(batches.capture(), any(QueryContext.class));
+		for (final List<?> batch : batches.getAllValues()) {
+			assertEquals(1, batch.size());
+		}
+	}
+
+	/**
+	 * COUNT (and COUNT DISTINCT) over a single triple pattern must be answered by the storage.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void countIsPushedDown() throws Exception {
+		assertEquals(3, count("SELECT (COUNT(*) AS ?c) WHERE { ?s <" + NS + "type> ?type }"));
+		assertEquals(2, count("SELECT (COUNT(DISTINCT ?type) AS ?c) WHERE { ?s <" + NS + "type> ?type }"));
+
+		verify(dao).countTriples(any(byte[][].class));
+		verify(dao).countDistinct(any(byte[][].class), eq(2));
+		verify(dao, never()).query(any(byte[][].class));
+		verify(dao, never()).query(any(byte[][].class), any(QueryContext.class));
+	}
+
+	/**
+	 * Slice pushdown must not depend on the identifiers space evaluation.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void sliceIsPushedDownWithoutIdentifiersSpace() throws Exception {
+		withoutIdentifiersSpace();
+
+		assertEquals(
+				Arrays.asList(buildResource("mary"), buildResource("rex")),
+				values("SELECT ?s WHERE { ?s <" + NS + "type> ?type } LIMIT 2 OFFSET 1", "s"));
+
+		verify(dao).query(any(byte[][].class), eq(1L), eq(2L));
+		verify(dao, never()).query(any(byte[][].class));
+		verify(dao, never()).query(any(byte[][].class), any(QueryContext.class));
+	}
+
+	/**
+	 * Count pushdown must not depend on the identifiers space evaluation.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void countIsPushedDownWithoutIdentifiersSpace() throws Exception {
+		withoutIdentifiersSpace();
+
+		assertEquals(3, count("SELECT (COUNT(*) AS ?c) WHERE { ?s <" + NS + "type> ?type }"));
+		assertEquals(2, count("SELECT (COUNT(DISTINCT ?type) AS ?c) WHERE { ?s <" + NS + "type> ?type }"));
+
+		verify(dao).countTriples(any(byte[][].class));
+		verify(dao).countDistinct(any(byte[][].class), eq(2));
+		verify(dao, never()).query(any(byte[][].class));
+		verify(dao, never()).query(any(byte[][].class), any(QueryContext.class));
+	}
+
+	/**
+	 * Without identifiers space, the triple patterns of a basic graph pattern must still be ordered by statistics.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void statisticsReorderWithoutIdentifiersSpace() throws Exception {
+		statistics = new GraphStatistics("test", mock(MapDAO.class), HyperLogLog.DEFAULT_PRECISION, Long.MAX_VALUE);
+		for (int i = 0; i < 100; i++) {
+			statistics.add(new byte[][] {id(buildResource("s" + i), false), id(buildResource("type"), true), id(buildResource("Person"), false)});
+		}
+		statistics.add(new byte[][] {id(buildResource("john"), false), id(buildResource("name"), true), id(buildLiteral("John"), false)});
+		withoutIdentifiersSpace();
+
+		assertEquals(
+				3, 
+				values("SELECT ?n WHERE { ?s <" + NS + "type> ?t . ?s <" + NS + "name> ?n }", "n").size());
+
+		final ArgumentCaptor<byte[][]> queries = ArgumentCaptor.forClass(byte[][].class);
+		verify(dao, atLeastOnce()).query(queries.capture(), any(QueryContext.class));
+		assertArrayEquals(id(buildResource("name"), true), queries.getAllValues().get(0)[1]);
+	}
+
+	/**
+	 * Without identifiers space, triple patterns must still be evaluated with the context of the running query, 
+	 * which has its timeout and which is cancelled together with the query.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void findRunsWithTheQueryContext() throws Exception {
+		withoutIdentifiersSpace();
+
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?n WHERE { ?s <" + NS + "type> ?t . ?s <" + NS + "name> ?n }",
+				ModelFactory.createModelForGraph(graph));
+		execution.getContext().set(ARQ.queryTimeout, 60000L);
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			resultSet.next();
+			assertNull(QueryContext.running());
+			execution.abort();
+		} finally {
+			execution.close();
+		}
+
+		final ArgumentCaptor<QueryContext> contexts = ArgumentCaptor.forClass(QueryContext.class);
+		verify(dao, atLeastOnce()).query(any(byte[][].class), contexts.capture());
+		verify(dao, never()).query(any(byte[][].class));
+		verify(dictionary, atLeastOnce()).asTripleIterator(any(Iterator.class), eq(contexts.getValue()));
+		for (final QueryContext context : contexts.getAllValues()) {
+			assertSame(contexts.getValue(), context);
+			assertTrue(context.hasDeadline());
+			assertTrue(context.isCancelled());
+		}
+	}
+
+	/**
+	 * Queries the sample graph as a storage layer factory does by default: executor registered, no identifiers space.
+	 */
+	private void withoutIdentifiersSpace() {
+		NoSqlStageGenerator.unregister();
+		NoSqlOpExecutor.register();
+		settings = null;
+		graph = new NoSqlGraph(new SampleStorageLayerFactory());
+	}
+
+	/**
+	 * Transitive paths must be walked breadth-first with batch queries, in both directions, and cycles must be detected.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void transitivePath() throws Exception {
+		add("a", "broader", buildResource("b"));
+		add("b", "broader", buildResource("c"));
+		add("c", "broader", buildResource("a"));
+		add("d", "broader", buildResource("b"));
+
+		assertEquals(
+				new HashSet<Node>(Arrays.asList(buildResource("a"), buildResource("b"), buildResource("c"))),
+				reached("SELECT ?x WHERE { <" + NS + "a> <" + NS + "broader>+ ?x }"));
+		assertEquals(
+				new HashSet<Node>(Arrays.asList(buildResource("a"), buildResource("b"), buildResource("c"), buildResource("d"))),
+				reached("SELECT ?x WHERE { ?x <" + NS + "broader>* <" + NS + "b> }"));
+		assertEquals(
+				new HashSet<Node>(Arrays.asList(buildResource("a"), buildResource("b"), buildResource("c"))),
+				reached("SELECT ?x WHERE { ?x ^<" + NS + "broader>+ <" + NS + "d> }"));
+
+		verify(dao, never()).query(any(byte[][].class));
+		verify(dao, never()).query(any(byte[][].class), any(QueryContext.class));
+	}
+
+	/**
+	 * A storage failure while walking a transitive path must fail the query, instead of truncating the path.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void storageFailureDuringTransitivePathFailsTheQuery() throws Exception {
+		add("a", "broader", buildResource("b"));
+		doThrow(new StorageLayerException(new IllegalStateException()))
+			.when(dao).batchQuery(any(List.class), any(QueryContext.class));
+
+		try {
+			reached("SELECT ?x WHERE { <" + NS + "a> <" + NS + "broader>+ ?x }");
+			fail();
+		} catch (final QueryExecException expected) {
+			assertTrue(expected.getCause() instanceof StorageLayerException);
+		}
+		verify(dao, never()).query(any(byte[][].class));
+	}
+
+	/**
+	 * DISTINCT must compare identifiers and decode only the surviving solutions.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void distinctInIdentifiersSpace() throws Exception {
+		final List<Node> classes = values("SELECT DISTINCT ?class WHERE { ?s <" + NS + "type> ?class }", "class");
+
+		assertEquals(2, classes.size());
+		assertEquals(new HashSet<Node>(Arrays.asList(buildResource("Person"), buildResource("Dog"))), new HashSet<Node>(classes));
+		verify(dictionary, times(1)).getValue(id(buildResource("Person"), false), false);
+	}
+
+	/**
+	 * Once over its memory budget, DISTINCT must spill sorted runs and merge them, without duplicates.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void distinctSpill() throws Exception {
+		add("alice", "type", buildResource("Person"));
+		add("fido", "type", buildResource("Dog"));
+		add("tom", "type", buildResource("Cat"));
+
+		final File directory = Files.createTempDirectory("distinct").toFile();
+		try {
+			settings = new EvaluationSettings(EvaluationSettings.DEFAULT_BIND_JOIN_BATCH_SIZE, null, 1, directory);
+			graph = new NoSqlGraph(new SampleStorageLayerFactory());
+			final List<Node> classes = values("SELECT DISTINCT ?class WHERE { ?s <" + NS + "type> ?class }", "class");
+
+			assertEquals(3, classes.size());
+			assertEquals(
+					new HashSet<Node>(Arrays.asList(buildResource("Person"), buildResource("Dog"), buildResource("Cat"))), 
+					new HashSet<Node>(classes));
+			assertEquals(0, directory.list().length);
+		} finally {
+			directory.delete();
+		}
+	}
+
+	/**
+	 * GROUP BY must group on identifiers, count in identifiers space and decode only the group values.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void groupByInIdentifiersSpace() throws Exception {
+		final Map<Node, Integer> counts = new HashMap<Node, Integer>();
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?class (COUNT(?s) AS ?count) (COUNT(DISTINCT ?s) AS ?distinct) WHERE { ?s <" + NS + "type> ?class } GROUP BY ?class",
+				ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				final QuerySolution solution = resultSet.next();
+				assertEquals(solution.getLiteral("count").getInt(), solution.getLiteral("distinct").getInt());
+				counts.put(solution.get("class").asNode(), solution.getLiteral("count").getInt());
+			}
+		} finally {
+			execution.close();
+		}
+
+		assertEquals(2, counts.size());
+		assertEquals(Integer.valueOf(2), counts.get(buildResource("Person")));
+		assertEquals(Integer.valueOf(1), counts.get(buildResource("Dog")));
+		verify(dictionary, never()).getValue(id(buildResource("john"), false), false);
+		verify(dictionary, times(1)).getValue(id(buildResource("Person"), false), false);
+	}
+
+	/**
+	 * A profiled query must report, for each evaluated pattern, the chosen index, the returned rows and the storage round trips.
+	 * Queries slower than the threshold must be collected by the slow query log.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void queryProfile() throws Exception {
+		final SlowQueryLog log = new SlowQueryLog("test", 0, 10);
+		final NoSqlGraph profiled = new NoSqlGraph(new SampleStorageLayerFactory() {
+			@Override
+			public SlowQueryLog getSlowQueryLog() {
+				return log;
+			}
+		});
+
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?name WHERE { ?s <" + NS + "type> <" + NS + "Person> . ?s <" + NS + "name> ?name }",
+				ModelFactory.createModelForGraph(profiled));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				resultSet.next();
+			}
+		} finally {
+			execution.close();
+		}
+
+		assertEquals(1, log.getSlowQueriesCount());
+		final QueryProfile profile = (QueryProfile) execution.getContext().get(NoSqlOpExecutor.QUERY_PROFILE);
+		assertEquals(true, profile.getElapsedMillis() >= 0);
+		assertEquals(profile.toString(), log.getSlowQueries()[0]);
+
+		long rows = 0;
+		for (final PatternProfile pattern : profile.getPatterns()) {
+			assertEquals("SPO", pattern.getIndex());
+			assertEquals(1, pattern.getPages());
+			rows += pattern.getRows();
+		}
+		assertEquals(true, profile.getPatterns().get(0).getPattern().contains(NS + "Person"));
+		assertEquals(4, rows);
+
+		final Iterator<Triple> triples = profiled.find(Node.ANY, buildResource("type"), buildResource("Dog"));
+		while (triples.hasNext()) {
+			triples.next();
+		}
+		assertEquals(2, log.getSlowQueriesCount());
+		assertEquals(true, log.getSlowQueries()[0].startsWith("find"));
+	}
+
+	/**
+	 * Without identifiers space, the patterns of a profiled query must be part of the query profile, 
+	 * instead of being collected as queries on their own.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void queryProfileWithoutIdentifiersSpace() throws Exception {
+		withoutIdentifiersSpace();
+		final SlowQueryLog log = new SlowQueryLog("test", 0, 10);
+		final NoSqlGraph profiled = new NoSqlGraph(new SampleStorageLayerFactory() {
+			@Override
+			public SlowQueryLog getSlowQueryLog() {
+				return log;
+			}
+		});
+
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?name WHERE { ?s <" + NS + "type> <" + NS + "Person> . ?s <" + NS + "name> ?name }",
+				ModelFactory.createModelForGraph(profiled));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				resultSet.next();
+			}
+		} finally {
+			execution.close();
+		}
+
+		assertEquals(1, log.getSlowQueriesCount());
+		final QueryProfile profile = (QueryProfile) execution.getContext().get(NoSqlOpExecutor.QUERY_PROFILE);
+		assertEquals(profile.toString(), log.getSlowQueries()[0]);
+		assertEquals(3, profile.getPatterns().size());
+
+		long rows = 0;
+		for (final PatternProfile pattern : profile.getPatterns()) {
+			assertEquals("SPO", pattern.getIndex());
+			assertEquals(1, pattern.getPages());
+			rows += pattern.getRows();
+		}
+		assertEquals(4, rows);
+	}
+}
@@ -0,0 +1,100 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.junit.Test;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Test case for {@link NoSqlStageGenerator}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class NoSqlStageGeneratorTestCase extends SparqlTestFixture {
+	/**
+	 * Patterns must be joined in identifiers space and only projected variables must be decoded.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void onlyProjectedVariablesAreDecoded() throws Exception {
+		final Set<String> names = new HashSet<String>();
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?name WHERE { ?s <" + NS + "type> <" + NS + "Person> . ?s <" + NS + "name> ?name }",
+				ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				names.add(resultSet.next().getLiteral("name").getLexicalForm());
+			}
+		} finally {
+			execution.close();
+		}
+
+		assertEquals(2, names.size());
+		assertEquals(true, names.contains("John"));
+		assertEquals(true, names.contains("Mary"));
+
+		verify(dictionary, never()).getValue(id(buildResource("john"), false), false);
+		verify(dictionary, never()).getValue(id(buildResource("mary"), false), false);
+	}
+
+	/**
+	 * A variable bound in predicate position and then used in object position must be translated.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void predicateVariableUsedAsObject() throws Exception {
+		add("type", "label", buildResource("type"));
+
+		final QueryExecution execution = QueryExecutionFactory.create(
+				"SELECT ?p WHERE { <" + NS + "john> ?p <" + NS + "Person> . ?p <" + NS + "label> ?p }",
+				ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			assertEquals(buildResource("type"), resultSet.next().get("p").asNode());
+			assertEquals(false, resultSet.hasNext());
+		} finally {
+			execution.close();
+		}
+	}
+
+	/**
+	 * A graph without evaluation settings must be queried as usual, even if another graph in the same JVM is not.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void identifiersSpaceIsEnabledPerGraph() throws Exception {
+		final NoSqlGraph enabled = graph;
+		settings = null;
+		final NoSqlGraph disabled = new NoSqlGraph(new SampleStorageLayerFactory());
+
+		final Query query = QueryFactory.create("SELECT ?name WHERE { ?s <" + NS + "type> <" + NS + "Person> . ?s <" + NS + "name> ?name }");
+		assertEquals(set("John", "Mary"), names(disabled, query, null));
+		verify(dao, never()).batchQuery(any(List.class), any(QueryContext.class));
+
+		assertEquals(set("John", "Mary"), names(enabled, query, null));
+		verify(dao, atLeastOnce()).batchQuery(any(List.class), any(QueryContext.class));
+	}
+}
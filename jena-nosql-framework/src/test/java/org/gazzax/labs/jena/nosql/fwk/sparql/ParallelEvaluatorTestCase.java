@@ -0,0 +1,151 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Test case for {@link ParallelEvaluator}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class ParallelEvaluatorTestCase extends SparqlTestFixture {
+	/**
+	 * UNION branches and independent OPTIONALs must be evaluated concurrently, with the same solutions of a sequential evaluation.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void parallelUnionAndOptionals() throws Exception {
+		add("john", "knows", buildResource("mary"));
+		add("john", "knows", buildResource("rex"));
+
+		final ParallelEvaluator evaluator = new ParallelEvaluator(4, 10);
+		settings = new EvaluationSettings(EvaluationSettings.DEFAULT_BIND_JOIN_BATCH_SIZE, evaluator, 0, null);
+		graph = new NoSqlGraph(new SampleStorageLayerFactory());
+		try {
+			final List<Node> union = new ArrayList<Node>();
+			final QueryExecution execution = QueryExecutionFactory.create(
+					"SELECT ?x WHERE { { ?x <" + NS + "type> <" + NS + "Person> } UNION { ?x <" + NS + "type> <" + NS + "Dog> } "
+					+ "UNION { ?x <" + NS + "name> \"Rex\" } }",
+					ModelFactory.createModelForGraph(graph));
+			try {
+				final ResultSet resultSet = execution.execSelect();
+				while (resultSet.hasNext()) {
+					union.add(resultSet.next().get("x").asNode());
+				}
+			} finally {
+				execution.close();
+			}
+			assertEquals(Arrays.asList(buildResource("john"), buildResource("mary"), buildResource("rex"), buildResource("rex")), union);
+
+			final Set<String> optionals = new HashSet<String>();
+			final QueryExecution optionalExecution = QueryExecutionFactory.create(
+					"SELECT * WHERE { ?s <" + NS + "type> <" + NS + "Person> "
+					+ "OPTIONAL { ?s <" + NS + "name> ?name } OPTIONAL { ?s <" + NS + "knows> ?friend } }",
+					ModelFactory.createModelForGraph(graph));
+			try {
+				final ResultSet resultSet = optionalExecution.execSelect();
+				while (resultSet.hasNext()) {
+					final QuerySolution solution = resultSet.next();
+					optionals.add(solution.getLiteral("name").getLexicalForm() + ":" + solution.get("friend"));
+				}
+			} finally {
+				optionalExecution.close();
+			}
+			assertEquals(new HashSet<String>(Arrays.asList("John:" + NS + "mary", "John:" + NS + "rex", "Mary:null")), optionals);
+		} finally {
+			evaluator.shutdown();
+		}
+
+		boolean parallel = false;
+		for (final String reader : readers) {
+			parallel |= reader.startsWith("jena-nosql-sparql-parallel");
+		}
+		assertEquals(true, parallel);
+	}
+
+	/**
+	 * Cancelling a query while a UNION branch is running on the pool must not wait for (or interfere with) that branch, 
+	 * whose thread must be returned to the pool once the branch stops.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void cancellationDuringParallelUnion() throws Exception {
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		doAnswer(new Answer<List<Iterator<byte[][]>>>() {
+			@Override
+			public List<Iterator<byte[][]>> answer(final InvocationOnMock invocation) {
+				if (Thread.currentThread().getName().startsWith("jena-nosql-sparql-parallel")) {
+					reading.countDown();
+					Uninterruptibles.awaitUninterruptibly(release);
+				}
+
+				final List<Iterator<byte[][]>> result = new ArrayList<Iterator<byte[][]>>();
+				for (final byte[][] query : (List<byte[][]>) invocation.getArguments()[0]) {
+					result.add(select(query));
+				}
+				return result;
+			}
+		}).when(dao).batchQuery(any(List.class), any(QueryContext.class));
+
+		final ParallelEvaluator evaluator = new ParallelEvaluator(1, 10);
+		settings = new EvaluationSettings(EvaluationSettings.DEFAULT_BIND_JOIN_BATCH_SIZE, evaluator, 0, null);
+		graph = new NoSqlGraph(new SampleStorageLayerFactory());
+		try {
+			final QueryExecution execution = QueryExecutionFactory.create(
+					"SELECT ?x WHERE { { ?x <" + NS + "type> <" + NS + "Person> } UNION { ?x <" + NS + "type> <" + NS + "Dog> } }",
+					ModelFactory.createModelForGraph(graph));
+			try {
+				final ResultSet resultSet = execution.execSelect();
+				assertEquals(buildResource("john"), resultSet.next().get("x").asNode());
+				assertTrue(reading.await(1, TimeUnit.SECONDS));
+				assertEquals(0, evaluator.availableThreads());
+
+				execution.abort();
+			} finally {
+				execution.close();
+			}
+			assertEquals(1, release.getCount());
+
+			release.countDown();
+			final long deadline = System.currentTimeMillis() + 1000;
+			while (evaluator.availableThreads() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, evaluator.availableThreads());
+		} finally {
+			release.countDown();
+			evaluator.shutdown();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.junit.Test;
+
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+/**
+ * Test case for {@link QueryPlanCache}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class QueryPlanCacheTestCase extends SparqlTestFixture {
+	/**
+	 * Queries that differ only in their constants must share the same prepared plan, including those executed
+	 * with initial bindings, and the template constants must be looked up only once.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void queryPlanCache() throws Exception {
+		final QueryPlanCache cache = new QueryPlanCache("test", 10);
+		final NoSqlGraph prepared = new NoSqlGraph(new SampleStorageLayerFactory() {
+			@Override
+			public QueryPlanCache getQueryPlanCache() {
+				return cache;
+			}
+		});
+
+		final String template = "SELECT ?name WHERE { ?s <" + NS + "type> ?class . ?s <" + NS + "name> ?name }";
+		assertEquals(set("John", "Mary"), names(prepared, QueryFactory.create(template.replace("?class", "<" + NS + "Person>")), null));
+		assertEquals(set("Rex"), names(prepared, QueryFactory.create(template.replace("?class", "<" + NS + "Dog>")), null));
+
+		final QuerySolutionMap parameters = new QuerySolutionMap();
+		parameters.add("class", ResourceFactory.createResource(NS + "Person"));
+		assertEquals(set("John", "Mary"), names(prepared, cache.parse(template), parameters));
+		assertSame(cache.parse(template), cache.parse(template));
+
+		assertEquals(1, cache.getCachedPlansCount());
+		assertEquals(1, cache.getCachedQueriesCount());
+		assertEquals(3, cache.getLookupsCount());
+		assertEquals(2, cache.getHitsCount());
+
+		verify(dictionary, times(1)).getID(buildResource("type"), true);
+		verify(dictionary, times(1)).getID(buildResource("name"), true);
+		verify(dictionary, times(2)).getID(buildResource("Person"), false);
+	}
+}
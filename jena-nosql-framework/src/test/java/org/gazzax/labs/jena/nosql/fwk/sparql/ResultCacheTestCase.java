@@ -0,0 +1,185 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildLiteral;
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Test case for {@link ResultCache}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class ResultCacheTestCase extends SparqlTestFixture {
+	/**
+	 * Repeated queries must be answered by the result cache, until the next mutation.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void resultCache() throws Exception {
+		final ResultCache cache = new ResultCache("test", 1024 * 1024, 0, null, 0);
+		final NoSqlGraph cached = graphWithResultCache(cache);
+
+		final Query query = QueryFactory.create("SELECT ?name WHERE { ?s <" + NS + "type> <" + NS + "Person> . ?s <" + NS + "name> ?name }");
+		assertEquals(set("John", "Mary"), names(cached, query, null));
+		readers.clear();
+		assertEquals(set("John", "Mary"), names(cached, query, null));
+		assertEquals(true, readers.isEmpty());
+		assertEquals(1, cache.getHitsCount());
+
+		cached.add(Triple.create(buildResource("alice"), buildResource("type"), buildResource("Person")));
+		add("alice", "type", buildResource("Person"));
+		add("alice", "name", buildLiteral("Alice"));
+		assertEquals(1, cache.getVersion());
+		assertEquals(set("John", "Mary", "Alice"), names(cached, query, null));
+		assertEquals(1, cache.getHitsCount());
+
+		final Query ask = QueryFactory.create("ASK { <" + NS + "rex> <" + NS + "type> <" + NS + "Dog> }");
+		for (int i = 0; i < 2; i++) {
+			final QueryExecution execution = QueryExecutionFactory.create(ask, ModelFactory.createModelForGraph(cached));
+			try {
+				assertEquals(true, execution.execAsk());
+			} finally {
+				execution.close();
+			}
+		}
+		assertEquals(2, cache.getHitsCount());
+
+		final long lookups = cache.getLookupsCount();
+		names(cached, QueryFactory.create("SELECT ?name WHERE { ?s <" + NS + "name> ?name } ORDER BY RAND()"), null);
+		assertEquals(lookups, cache.getLookupsCount());
+	}
+
+	/**
+	 * Results evicted from memory must be spilled on file and moved back into memory on the next hit.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void resultCacheSpill() throws Exception {
+		final File directory = Files.createTempDirectory("results").toFile();
+		final ResultCache cache = new ResultCache("test", 300, 0, directory, 0);
+		try {
+			final NoSqlGraph cached = graphWithResultCache(cache);
+			final String template = "SELECT ?name WHERE { ?s <" + NS + "type> ?class . ?s <" + NS + "name> ?name }";
+			final Query persons = QueryFactory.create(template.replace("?class", "<" + NS + "Person>"));
+			final Query dogs = QueryFactory.create(template.replace("?class", "<" + NS + "Dog>"));
+
+			assertEquals(set("John", "Mary"), names(cached, persons, null));
+			assertEquals(set("Rex"), names(cached, dogs, null));
+			assertEquals(1, cache.getEvictionsCount());
+			assertEquals(1, cache.getSpilledQueriesCount());
+
+			readers.clear();
+			assertEquals(set("John", "Mary"), names(cached, persons, null));
+			assertEquals(true, readers.isEmpty());
+			assertEquals(1, cache.getSpillHitsCount());
+			assertEquals(1, cache.getSpilledQueriesCount());
+		} finally {
+			cache.clear();
+			assertEquals(0, directory.list().length);
+			directory.delete();
+		}
+	}
+
+	/**
+	 * The same query over different graphs must not share cached results.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void resultCacheIsScopedByGraph() throws Exception {
+		add("alice", "type", buildResource("Person"), "g1");
+		add("alice", "name", buildLiteral("Alice"), "g1");
+		add("bob", "type", buildResource("Person"), "g2");
+		add("bob", "name", buildLiteral("Bob"), "g2");
+
+		final ResultCache cache = new ResultCache("test", 1024 * 1024, 0, null, 0);
+		final NoSqlGraph defaultGraph = graphWithResultCache(null, cache);
+		final NoSqlGraph g1 = graphWithResultCache(buildResource("g1"), cache);
+		final NoSqlGraph g2 = graphWithResultCache(buildResource("g2"), cache);
+
+		final Query query = QueryFactory.create("SELECT ?name WHERE { ?s <" + NS + "type> <" + NS + "Person> . ?s <" + NS + "name> ?name }");
+		assertEquals(set("Alice"), names(g1, query, null));
+		assertEquals(set("Bob"), names(g2, query, null));
+		assertEquals(set("John", "Mary"), names(defaultGraph, query, null));
+		assertEquals(0, cache.getHitsCount());
+		assertEquals(3, cache.getCachedQueriesCount());
+
+		assertEquals(set("Alice"), names(graphWithResultCache(buildResource("g1"), cache), query, null));
+		assertEquals(1, cache.getHitsCount());
+	}
+
+	/**
+	 * A mutation through any graph of the store must invalidate the results cached by queries over the other graphs.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void resultCacheIsInvalidatedAcrossGraphs() throws Exception {
+		add("alice", "type", buildResource("Person"), "g1");
+		add("alice", "name", buildLiteral("Alice"), "g1");
+
+		final ResultCache cache = new ResultCache("test", 1024 * 1024, 0, null, 0);
+		final NoSqlGraph g1 = graphWithResultCache(buildResource("g1"), cache);
+		final NoSqlGraph writer = graphWithResultCache(buildResource("g1"), cache);
+		final NoSqlGraph g2 = graphWithResultCache(buildResource("g2"), cache);
+
+		final Query query = QueryFactory.create("SELECT ?name WHERE { ?s <" + NS + "type> <" + NS + "Person> . ?s <" + NS + "name> ?name }");
+		assertEquals(set("Alice"), names(g1, query, null));
+
+		writer.add(Triple.create(buildResource("bob"), buildResource("type"), buildResource("Person")));
+		add("bob", "type", buildResource("Person"), "g1");
+		add("bob", "name", buildLiteral("Bob"), "g1");
+		assertEquals(set("Alice", "Bob"), names(g1, query, null));
+		assertEquals(0, cache.getHitsCount());
+
+		g2.add(Triple.create(buildResource("rex"), buildResource("type"), buildResource("Dog")));
+		assertEquals(set("Alice", "Bob"), names(g1, query, null));
+		assertEquals(0, cache.getHitsCount());
+
+		assertEquals(set("Alice", "Bob"), names(g1, query, null));
+		assertEquals(1, cache.getHitsCount());
+	}
+
+	/**
+	 * Returns a graph, over the sample storage, with the given result cache.
+	 *
+	 * @param cache the result cache.
+	 * @return a graph, over the sample storage, with the given result cache.
+	 */
+	private NoSqlGraph graphWithResultCache(final ResultCache cache) {
+		return graphWithResultCache(null, cache);
+	}
+
+	/**
+	 * Returns a (named) graph, over the sample storage, with the given result cache.
+	 *
+	 * @param name the graph name, null for the default graph.
+	 * @param cache the result cache.
+	 * @return a (named) graph, over the sample storage, with the given result cache.
+	 */
+	private NoSqlGraph graphWithResultCache(final Node name, final ResultCache cache) {
+		return new NoSqlGraph(name, new SampleStorageLayerFactory() {
+			@Override
+			public ResultCache getResultCache() {
+				return cache;
+			}
+		});
+	}
+}
@@ -0,0 +1,390 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildLiteral;
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gazzax.labs.jena.nosql.fwk.TestUtility.TestStorageLayerFactory;
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.GraphDAO;
+import org.gazzax.labs.jena.nosql.fwk.ds.QueryContext;
+import org.gazzax.labs.jena.nosql.fwk.graph.GraphStatistics;
+import org.gazzax.labs.jena.nosql.fwk.graph.NoSqlGraph;
+import org.gazzax.labs.jena.nosql.fwk.util.SliceIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Base fixture of the SPARQL evaluation test cases: a {@link NoSqlGraph} over a sample, in memory, storage
+ * (i.e. a mock {@link GraphDAO}) and a mock dictionary.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public abstract class SparqlTestFixture {
+	protected static final String NS = "http://gazzax.rdf.org/";
+
+	protected final Map<ByteBuffer, Node> values = new ConcurrentHashMap<ByteBuffer, Node>();
+	protected final List<byte[][]> rows = new ArrayList<byte[][]>();
+	protected final Set<String> readers = Collections.synchronizedSet(new HashSet<String>());
+
+	protected TopLevelDictionary dictionary;
+	protected NoSqlGraph graph;
+	protected GraphDAO<byte[][], byte[][]> dao;
+	protected EvaluationSettings settings = EvaluationSettings.DEFAULTS;
+	protected GraphStatistics statistics;
+
+	/**
+	 * A storage layer factory over the sample (in memory) storage.
+	 *
+	 * @author Andrea Gazzarini
+	 * @since 1.0
+	 */
+	protected class SampleStorageLayerFactory extends TestStorageLayerFactory {
+		@Override
+		public GraphDAO<byte[][], byte[][]> getGraphDAO() {
+			return dao;
+		}
+
+		@Override
+		public GraphDAO<byte[][], byte[][]> getGraphDAO(final Node name) {
+			return dao;
+		}
+
+		@Override
+		public TopLevelDictionary getDictionary() {
+			return dictionary;
+		}
+
+		@Override
+		public EvaluationSettings getEvaluationSettings() {
+			return settings;
+		}
+
+		@Override
+		public GraphStatistics getStatistics() {
+			return statistics;
+		}
+	}
+
+	/**
+	 * Setup fixture for this test case.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+		dictionary = mock(TopLevelDictionary.class);
+		when(dictionary.getID(any(Node.class), anyBoolean())).thenAnswer(new Answer<byte[]>() {
+			@Override
+			public byte[] answer(final InvocationOnMock invocation) {
+				return id((Node) invocation.getArguments()[0], (Boolean) invocation.getArguments()[1]);
+			}
+		});
+		when(dictionary.getValue(any(byte[].class), anyBoolean())).thenAnswer(new Answer<Node>() {
+			@Override
+			public Node answer(final InvocationOnMock invocation) {
+				return values.get(ByteBuffer.wrap((byte[]) invocation.getArguments()[0]));
+			}
+		});
+
+		when(dictionary.asIdentifiers(any(Node.class), any(Node.class), any(Node.class))).thenAnswer(new Answer<byte[][]>() {
+			@Override
+			public byte[][] answer(final InvocationOnMock invocation) {
+				final byte[][] ids = new byte[3][];
+				for (int i = 0; i < 3; i++) {
+					final Node node = (Node) invocation.getArguments()[i];
+					ids[i] = node != null ? id(node, i == 1) : null;
+				}
+				return ids;
+			}
+		});
+		final Answer<Iterator<Triple>> decode = new Answer<Iterator<Triple>>() {
+			@Override
+			public Iterator<Triple> answer(final InvocationOnMock invocation) {
+				final List<Triple> triples = new ArrayList<Triple>();
+				final Iterator<byte[][]> iterator = (Iterator<byte[][]>) invocation.getArguments()[0];
+				while (iterator.hasNext()) {
+					final byte[][] ids = iterator.next();
+					triples.add(Triple.create(
+							values.get(ByteBuffer.wrap(ids[0])), 
+							values.get(ByteBuffer.wrap(ids[1])), 
+							values.get(ByteBuffer.wrap(ids[2]))));
+				}
+				return triples.iterator();
+			}
+		};
+		when(dictionary.asTripleIterator(any(Iterator.class))).thenAnswer(decode);
+		when(dictionary.asTripleIterator(any(Iterator.class), any(QueryContext.class))).thenAnswer(decode);
+
+		final GraphDAO<byte[][], byte[][]> dao = mock(GraphDAO.class);
+		when(dao.query(any(byte[][].class))).thenAnswer(new Answer<Iterator<byte[][]>>() {
+			@Override
+			public Iterator<byte[][]> answer(final InvocationOnMock invocation) {
+				return select((byte[][]) invocation.getArguments()[0]);
+			}
+		});
+		when(dao.query(any(byte[][].class), any(QueryContext.class))).thenAnswer(new Answer<Iterator<byte[][]>>() {
+			@Override
+			public Iterator<byte[][]> answer(final InvocationOnMock invocation) {
+				final QueryContext context = (QueryContext) invocation.getArguments()[1];
+				context.recordIndex("SPO");
+				context.recordPage();
+				return select((byte[][]) invocation.getArguments()[0]);
+			}
+		});
+		when(dao.query(any(byte[][].class), anyLong(), anyLong())).thenAnswer(new Answer<Iterator<byte[][]>>() {
+			@Override
+			public Iterator<byte[][]> answer(final InvocationOnMock invocation) {
+				return new SliceIterator<byte[][]>(
+						select((byte[][]) invocation.getArguments()[0]), 
+						(Long) invocation.getArguments()[1], 
+						(Long) invocation.getArguments()[2]);
+			}
+		});
+		when(dao.countTriples(any(byte[][].class))).thenAnswer(new Answer<Long>() {
+			@Override
+			public Long answer(final InvocationOnMock invocation) {
+				long count = 0;
+				for (final Iterator<byte[][]> iterator = select((byte[][]) invocation.getArguments()[0]); iterator.hasNext(); iterator.next()) {
+					count++;
+				}
+				return count;
+			}
+		});
+		when(dao.countDistinct(any(byte[][].class), anyInt())).thenAnswer(new Answer<Long>() {
+			@Override
+			public Long answer(final InvocationOnMock invocation) {
+				final Set<ByteBuffer> distinct = new HashSet<ByteBuffer>();
+				final int position = (Integer) invocation.getArguments()[1];
+				for (final Iterator<byte[][]> iterator = select((byte[][]) invocation.getArguments()[0]); iterator.hasNext();) {
+					distinct.add(ByteBuffer.wrap(iterator.next()[position]));
+				}
+				return (long) distinct.size();
+			}
+		});
+		when(dao.batchQuery(any(List.class), any(QueryContext.class))).thenAnswer(new Answer<List<Iterator<byte[][]>>>() {
+			@Override
+			public List<Iterator<byte[][]>> answer(final InvocationOnMock invocation) {
+				final List<Iterator<byte[][]>> result = new ArrayList<Iterator<byte[][]>>();
+				for (final byte[][] query : (List<byte[][]>) invocation.getArguments()[0]) {
+					result.add(select(query));
+				}
+				return result;
+			}
+		});
+		this.dao = dao;
+
+		graph = new NoSqlGraph(new SampleStorageLayerFactory());
+
+		add("john", "type", buildResource("Person"));
+		add("john", "name", buildLiteral("John"));
+		add("mary", "type", buildResource("Person"));
+		add("mary", "name", buildLiteral("Mary"));
+		add("rex", "type", buildResource("Dog"));
+		add("rex", "name", buildLiteral("Rex"));
+
+		NoSqlStageGenerator.register();
+	}
+
+	/**
+	 * Shutdown procedure for this test case.
+	 */
+	@After
+	public void tearDown() {
+		NoSqlStageGenerator.unregister();
+	}
+
+	/**
+	 * Executes a given query and returns the values of a given variable.
+	 *
+	 * @param query the query.
+	 * @param var the variable name.
+	 * @return the values of the given variable.
+	 */
+	protected List<Node> values(final String query, final String var) {
+		final List<Node> result = new ArrayList<Node>();
+		final QueryExecution execution = QueryExecutionFactory.create(query, ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				result.add(resultSet.next().get(var).asNode());
+			}
+		} finally {
+			execution.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Executes a given query and returns the values of its ?name variable.
+	 *
+	 * @param graph the graph.
+	 * @param query the query.
+	 * @param parameters the initial bindings, null if the query has no parameters.
+	 * @return the values of the ?name variable.
+	 */
+	protected Set<String> names(final NoSqlGraph graph, final Query query, final QuerySolution parameters) {
+		final Set<String> result = new HashSet<String>();
+		final QueryExecution execution = parameters != null
+				? QueryExecutionFactory.create(query, ModelFactory.createModelForGraph(graph), parameters)
+				: QueryExecutionFactory.create(query, ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				result.add(resultSet.next().getLiteral("name").getLexicalForm());
+			}
+		} finally {
+			execution.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a set with the given values.
+	 *
+	 * @param values the values.
+	 * @return a set with the given values.
+	 */
+	protected Set<String> set(final String ... values) {
+		return new HashSet<String>(Arrays.asList(values));
+	}
+
+	/**
+	 * Executes a given query and returns the values of its ?x variable.
+	 *
+	 * @param query the query.
+	 * @return the values of the ?x variable.
+	 */
+	protected Set<Node> reached(final String query) {
+		final Set<Node> result = new HashSet<Node>();
+		final QueryExecution execution = QueryExecutionFactory.create(query, ModelFactory.createModelForGraph(graph));
+		try {
+			final ResultSet resultSet = execution.execSelect();
+			while (resultSet.hasNext()) {
+				assertEquals(true, result.add(resultSet.next().get("x").asNode()));
+			}
+		} finally {
+			execution.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Executes a given COUNT query.
+	 *
+	 * @param query the query, which must have a ?c count variable.
+	 * @return the count.
+	 */
+	protected int count(final String query) {
+		final QueryExecution execution = QueryExecutionFactory.create(query, ModelFactory.createModelForGraph(graph));
+		try {
+			return execution.execSelect().next().getLiteral("c").getInt();
+		} finally {
+			execution.close();
+		}
+	}
+
+	/**
+	 * Returns the rows that match the given query.
+	 *
+	 * @param query the query.
+	 * @return the rows that match the given query.
+	 */
+	protected Iterator<byte[][]> select(final byte[][] query) {
+		readers.add(Thread.currentThread().getName());
+		final List<byte[][]> result = new ArrayList<byte[][]>();
+		for (final byte[][] row : rows) {
+			if (matches(query, row)) {
+				result.add(row);
+			}
+		}
+		return result.iterator();
+	}
+
+	/**
+	 * Adds a sample triple to the (in memory) storage.
+	 *
+	 * @param s the subject local name.
+	 * @param p the predicate local name.
+	 * @param o the object.
+	 */
+	protected void add(final String s, final String p, final Node o) {
+		rows.add(new byte[][] {id(buildResource(s), false), id(buildResource(p), true), id(o, false)});
+	}
+
+	/**
+	 * Adds a sample triple, in a given named graph, to the (in memory) storage.
+	 *
+	 * @param s the subject local name.
+	 * @param p the predicate local name.
+	 * @param o the object.
+	 * @param g the graph local name.
+	 */
+	protected void add(final String s, final String p, final Node o, final String g) {
+		rows.add(new byte[][] {id(buildResource(s), false), id(buildResource(p), true), id(o, false), id(buildResource(g), false)});
+	}
+
+	/**
+	 * Returns the (fake) identifier of a given node, registering the corresponding value.
+	 * Predicate identifiers are different from subject / object identifiers.
+	 *
+	 * @param node the node.
+	 * @param predicate true if the node is in predicate position.
+	 * @return the identifier of the given node.
+	 */
+	protected byte[] id(final Node node, final boolean predicate) {
+		final byte[] id = ((predicate ? "P:" : "SO:") + node).getBytes();
+		values.put(ByteBuffer.wrap(id), node);
+		return id;
+	}
+
+	/**
+	 * Returns true if the given row matches the given query.
+	 * Queries without a graph match the default graph only.
+	 *
+	 * @param query the query.
+	 * @param row the row.
+	 * @return true if the given row matches the given query.
+	 */
+	protected boolean matches(final byte[][] query, final byte[][] row) {
+		for (int i = 0; i < 3; i++) {
+			if (query[i] != null && !ByteBuffer.wrap(query[i]).equals(ByteBuffer.wrap(row[i]))) {
+				return false;
+			}
+		}
+
+		final ByteBuffer graph = query.length == 4 ? ByteBuffer.wrap(query[3]) : null;
+		final ByteBuffer context = row.length == 4 ? ByteBuffer.wrap(row[3]) : null;
+		return graph == null ? context == null : graph.equals(context);
+	}
+}
@@ -0,0 +1,66 @@
+package org.gazzax.labs.jena.nosql.fwk.sparql;
+
+import static org.gazzax.labs.jena.nosql.fwk.TestUtility.buildResource;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.gazzax.labs.jena.nosql.fwk.dictionary.TopLevelDictionary;
+import org.gazzax.labs.jena.nosql.fwk.ds.MapDAO;
+import org.gazzax.labs.jena.nosql.fwk.graph.GraphStatistics;
+import org.gazzax.labs.jena.nosql.fwk.util.HyperLogLog;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.BasicPattern;
+import com.hp.hpl.jena.sparql.core.Var;
+
+/**
+ * Test case for {@link StatisticsReorderTransformation}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class StatisticsReorderTransformationTestCase {
+
+	/**
+	 * The most selective pattern must be evaluated first, even if it comes last.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void mostSelectivePatternFirst() throws Exception {
+		final TopLevelDictionary dictionary = mock(TopLevelDictionary.class);
+		when(dictionary.getID(any(Node.class), anyBoolean())).thenAnswer(new Answer<byte[]>() {
+			@Override
+			public byte[] answer(final InvocationOnMock invocation) {
+				return invocation.getArguments()[0].toString().getBytes();
+			}
+		});
+
+		final Node type = buildResource("type");
+		final Node email = buildResource("email");
+		final GraphStatistics statistics = new GraphStatistics("test", mock(MapDAO.class), HyperLogLog.DEFAULT_PRECISION, Long.MAX_VALUE);
+		for (int i = 0; i < 1000; i++) {
+			statistics.add(new byte[][] {("s" + i).getBytes(), type.toString().getBytes(), ("c" + (i % 3)).getBytes()});
+		}
+		for (int i = 0; i < 10; i++) {
+			statistics.add(new byte[][] {("s" + i).getBytes(), email.toString().getBytes(), ("e" + i).getBytes()});
+		}
+
+		final Node s = Var.alloc("s");
+		final BasicPattern pattern = new BasicPattern();
+		pattern.add(Triple.create(s, type, Var.alloc("t")));
+		pattern.add(Triple.create(s, email, Var.alloc("e")));
+
+		final BasicPattern reordered = new StatisticsReorderTransformation(statistics, dictionary).reorder(pattern);
+		assertEquals(email, reordered.get(0).getPredicate());
+		assertEquals(type, reordered.get(1).getPredicate());
+	}
+}
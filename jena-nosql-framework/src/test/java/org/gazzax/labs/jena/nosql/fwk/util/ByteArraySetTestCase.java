@@ -0,0 +1,56 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link ByteArraySet}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class ByteArraySetTestCase {
+
+	/**
+	 * Members must be compared by value and the set must keep working while it grows.
+	 */
+	@Test
+	public void addAndContains() {
+		final ByteArraySet cut = new ByteArraySet(1);
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(cut.add(("id" + i).getBytes()));
+		}
+
+		for (int i = 0; i < 10000; i++) {
+			assertFalse(cut.add(("id" + i).getBytes()));
+			assertTrue(cut.contains(("id" + i).getBytes()));
+		}
+
+		assertFalse(cut.contains("id10000".getBytes()));
+		assertFalse(cut.contains("id".getBytes()));
+		assertTrue(cut.add(new byte[0]));
+		assertTrue(cut.contains(new byte[0]));
+		assertEquals(10001, cut.size());
+	}
+
+	/**
+	 * Members must be indexed in insertion order.
+	 */
+	@Test
+	public void indexOfAndGet() {
+		final ByteArraySet cut = new ByteArraySet();
+		for (int i = 0; i < 100; i++) {
+			cut.add(("id" + i).getBytes());
+		}
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, cut.indexOf(("id" + i).getBytes()));
+			assertArrayEquals(("id" + i).getBytes(), cut.get(i));
+		}
+		assertEquals(-1, cut.indexOf("id100".getBytes()));
+	}
+}
@@ -0,0 +1,61 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+
+/**
+ * Test case for {@link ClosingIterator}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class ClosingIteratorTestCase {
+
+	/**
+	 * Closing the iterator must close the source iterator, and no further element must be returned.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void closePropagatesToSource() {
+		final ClosableIterator<Integer> source = mock(ClosableIterator.class);
+		when(source.hasNext()).thenReturn(true);
+
+		final ClosingIterator<Integer> cut = new ClosingIterator<Integer>(source);
+		assertTrue(cut.hasNext());
+
+		cut.close();
+		cut.close();
+
+		assertFalse(cut.hasNext());
+		verify(source, times(1)).close();
+	}
+
+	/**
+	 * The closed source could be different from the decorated iterator.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void closeDistinctSource() {
+		final ClosableIterator<byte[][]> source = mock(ClosableIterator.class);
+		final Iterator<Integer> delegate = Arrays.asList(1, 2, 3).iterator();
+
+		final ClosingIterator<Integer> cut = new ClosingIterator<Integer>(delegate, source);
+		assertTrue(cut.hasNext());
+
+		cut.close();
+
+		assertFalse(cut.hasNext());
+		verify(source).close();
+	}
+}
@@ -0,0 +1,311 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/**
+ * Test case for {@link ReadAheadIterator}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class ReadAheadIteratorTestCase {
+	private ExecutorService executor;
+
+	/**
+	 * Setup fixture for this test case.
+	 */
+	@Before
+	public void setUp() {
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	/**
+	 * Shutdown procedure for this test case.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@After
+	public void tearDown() throws Exception {
+		executor.shutdownNow();
+		executor.awaitTermination(1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * All elements of the source iterator must be returned, in the same order.
+	 */
+	@Test
+	public void sameElementsSameOrder() {
+		final List<Integer> source = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			source.add(i);
+		}
+
+		final Iterator<Integer> cut = new ReadAheadIterator<Integer>(source.iterator(), 10, executor);
+		for (final Integer expected : source) {
+			assertTrue(cut.hasNext());
+			assertEquals(expected, cut.next());
+		}
+		assertFalse(cut.hasNext());
+	}
+
+	/**
+	 * A failure on the producer side must be rethrown on the consumer side.
+	 */
+	@Test
+	public void producerFailure() {
+		final RuntimeException failure = new IllegalStateException();
+		final Iterator<Integer> source = new AbstractIterator<Integer>() {
+			@Override
+			protected Integer computeNext() {
+				throw failure;
+			}
+		};
+
+		final Iterator<Integer> cut = new ReadAheadIterator<Integer>(source, 10, executor);
+		try {
+			cut.hasNext();
+			fail();
+		} catch (final IllegalStateException expected) {
+			assertEquals(failure, expected);
+		}
+	}
+
+	/**
+	 * The producer must read ahead at most "buffer size" elements and must stop once the iterator has been closed.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void boundedReadAheadAndClose() throws Exception {
+		final AtomicInteger produced = new AtomicInteger();
+		final Iterator<Integer> source = new AbstractIterator<Integer>() {
+			@Override
+			protected Integer computeNext() {
+				return produced.incrementAndGet();
+			}
+		};
+
+		final ReadAheadIterator<Integer> cut = new ReadAheadIterator<Integer>(source, 10, executor);
+		assertEquals(Integer.valueOf(1), cut.next());
+
+		Thread.sleep(200);
+		assertTrue(produced.get() <= 12);
+
+		cut.close();
+		Thread.sleep(200);
+		final int producedAfterClose = produced.get();
+		Thread.sleep(200);
+		assertEquals(producedAfterClose, produced.get());
+		assertFalse(cut.hasNext());
+	}
+
+	/**
+	 * The read-ahead window must start small and grow with the consumed elements.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void readAheadGrowsWithTheConsumer() throws Exception {
+		final AtomicInteger produced = new AtomicInteger();
+		final Iterator<Integer> source = new AbstractIterator<Integer>() {
+			@Override
+			protected Integer computeNext() {
+				return produced.incrementAndGet();
+			}
+		};
+
+		final ReadAheadIterator<Integer> cut = new ReadAheadIterator<Integer>(source, 1000, executor);
+		assertEquals(Integer.valueOf(1), cut.next());
+		Thread.sleep(200);
+		assertTrue(produced.get() <= 4);
+
+		for (int i = 2; i <= 100; i++) {
+			assertEquals(Integer.valueOf(i), cut.next());
+		}
+		Thread.sleep(200);
+		assertTrue(produced.get() > 150);
+		assertTrue(produced.get() <= 1100);
+		cut.close();
+	}
+
+	/**
+	 * If the producer never runs (e.g. the executor has been shut down), the consumer must read the source directly.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void producerNeverRuns() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Uninterruptibles.awaitUninterruptibly(release);
+			}
+		});
+
+		final List<Integer> source = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++) {
+			source.add(i);
+		}
+
+		final ReadAheadIterator<Integer> cut = new ReadAheadIterator<Integer>(source.iterator(), 10, executor);
+		executor.shutdownNow();
+
+		final List<Integer> result = new ArrayList<Integer>();
+		while (cut.hasNext()) {
+			result.add(cut.next());
+		}
+		assertEquals(source, result);
+		release.countDown();
+
+		final ReadAheadIterator<Integer> rejected = new ReadAheadIterator<Integer>(source.iterator(), 10, executor);
+		assertEquals(Integer.valueOf(0), rejected.next());
+		rejected.close();
+	}
+
+	/**
+	 * An idle consumer mustn't hold the producer thread: the producer hands the source over, and the consumer 
+	 * gets all elements anyway.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void idleConsumerReleasesTheProducer() throws Exception {
+		final List<Integer> source = new ArrayList<Integer>();
+		for (int i = 0; i < 100; i++) {
+			source.add(i);
+		}
+
+		final ReadAheadIterator<Integer> cut = new ReadAheadIterator<Integer>(source.iterator(), 10, executor, 50);
+		assertEquals(Integer.valueOf(0), cut.next());
+
+		final CountDownLatch executed = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				executed.countDown();
+			}
+		});
+		assertTrue(executed.await(1, TimeUnit.SECONDS));
+
+		final List<Integer> result = new ArrayList<Integer>();
+		result.add(0);
+		while (cut.hasNext()) {
+			result.add(cut.next());
+		}
+		assertEquals(source, result);
+	}
+
+	/**
+	 * Closing the iterator while the producer is reading must not close the source concurrently: the producer closes it once it stops.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void sourceIsClosedByTheProducer() throws Exception {
+		final CountDownLatch reading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean insideNext = new AtomicBoolean();
+		final AtomicBoolean closedWhileReading = new AtomicBoolean();
+		final List<String> closedBy = Collections.synchronizedList(new ArrayList<String>());
+		final ClosableIterator<Integer> source = new NiceIterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				return true;
+			}
+
+			@Override
+			public Integer next() {
+				insideNext.set(true);
+				reading.countDown();
+				Uninterruptibles.awaitUninterruptibly(release);
+				insideNext.set(false);
+				return 1;
+			}
+
+			@Override
+			public void close() {
+				closedWhileReading.compareAndSet(false, insideNext.get());
+				closedBy.add(Thread.currentThread().getName());
+			}
+		};
+
+		final ReadAheadIterator<Integer> cut = new ReadAheadIterator<Integer>(source, 10, executor);
+		assertTrue(reading.await(1, TimeUnit.SECONDS));
+
+		cut.close();
+		assertTrue(closedBy.isEmpty());
+
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+
+		assertEquals(1, closedBy.size());
+		assertFalse(closedBy.contains(Thread.currentThread().getName()));
+		assertFalse(closedWhileReading.get());
+	}
+
+	/**
+	 * If the producer didn't start yet, closing the iterator must close the source, which mustn't be read at all.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void closeBeforeTheProducerStarts() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Uninterruptibles.awaitUninterruptibly(release);
+			}
+		});
+
+		final AtomicInteger reads = new AtomicInteger();
+		final AtomicInteger closes = new AtomicInteger();
+		final ClosableIterator<Integer> source = new NiceIterator<Integer>() {
+			@Override
+			public boolean hasNext() {
+				reads.incrementAndGet();
+				return false;
+			}
+
+			@Override
+			public void close() {
+				closes.incrementAndGet();
+			}
+		};
+
+		final ReadAheadIterator<Integer> cut = new ReadAheadIterator<Integer>(source, 10, executor);
+		cut.close();
+		assertEquals(1, closes.get());
+
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+		assertEquals(0, reads.get());
+		assertEquals(1, closes.get());
+	}
+}
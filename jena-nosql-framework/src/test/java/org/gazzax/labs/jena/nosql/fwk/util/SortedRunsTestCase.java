@@ -0,0 +1,71 @@
+package org.gazzax.labs.jena.nosql.fwk.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for {@link SortedRuns}.
+ *
+ * @author Andrea Gazzarini
+ * @since 1.0
+ */
+public class SortedRunsTestCase {
+	private File directory;
+
+	/**
+	 * Setup fixture for this test case.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("runs").toFile();
+	}
+
+	/**
+	 * Shutdown procedure for this test case.
+	 */
+	@After
+	public void tearDown() {
+		directory.delete();
+	}
+
+	/**
+	 * Spilled and in-memory members must be merged in order, without duplicates, and runs must be deleted on close.
+	 *
+	 * @throws Exception never, otherwise the corresponding test will fail.
+	 */
+	@Test
+	public void mergeWithoutDuplicates() throws Exception {
+		final SortedRuns cut = new SortedRuns(directory, 200);
+		for (int i = 99; i >= 0; i--) {
+			cut.add(String.format("%03d", i).getBytes());
+			cut.add(String.format("%03d", i % 10).getBytes());
+		}
+		assertTrue(cut.getSpilledRunsCount() > 1);
+		assertEquals(cut.getSpilledRunsCount(), directory.list().length);
+
+		final List<String> merged = new ArrayList<String>();
+		for (final Iterator<byte[]> iterator = cut.merge(); iterator.hasNext();) {
+			merged.add(new String(iterator.next()));
+		}
+
+		assertEquals(100, merged.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(String.format("%03d", i), merged.get(i));
+		}
+
+		cut.close();
+		assertEquals(0, directory.list().length);
+	}
+}